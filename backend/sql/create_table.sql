@@ -37,6 +37,24 @@ create table if not exists keep_report
     INDEX idx_user_time (userId, updateTime)  -- 按用户和时间查询的索引
 ) comment '上下文对话表' collate = utf8mb4_unicode_ci;
 
+-- 对话消息表（追加写模式，每条消息一行）
+create table if not exists chat_message
+(
+    id          bigint auto_increment comment 'id' primary key,
+    chatId      varchar(255)                       not null comment '对话id',
+    userId      bigint   default 0                 not null comment '创建用户id（匿名对话为 0，唯一键不把 NULL 视为重复）',
+    seq         int                                not null comment '消息序号（对话内自增）',
+    messageType varchar(32)                        not null comment '消息类型：USER/ASSISTANT/SYSTEM',
+    content     mediumtext                         null comment '消息内容',
+    createTime  datetime default CURRENT_TIMESTAMP not null comment '创建时间',
+    isDelete    tinyint  default 0                 not null comment '是否删除',
+    UNIQUE KEY uk_chat_user_seq (chatId, userId, seq)  -- 按序号倒序取最近 N 条
+) comment '对话消息表' collate = utf8mb4_unicode_ci;
+
+-- 已有 chat_message 表的升级：
+-- update chat_message set userId = 0 where userId is null;
+-- alter table chat_message modify userId bigint default 0 not null comment '创建用户id（匿名对话为 0，唯一键不把 NULL 视为重复）';
+
 -- 健身数据表
 create table if not exists fitness_data
 (
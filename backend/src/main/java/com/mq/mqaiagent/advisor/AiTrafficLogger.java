@@ -0,0 +1,378 @@
+package com.mq.mqaiagent.advisor;
+
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AI 请求日志
+ * 每次请求都统计耗时和 token 用量（按客户端类型汇总），只有被采样的请求才记录内容：
+ * 请求和响应文本按上限截断，流式响应边输出边累积、达到上限后不再保留；
+ * 日志记录放入有界队列，由后台线程格式化为 JSON 写入 AI_TRAFFIC 日志，队列满时丢弃而不阻塞请求；
+ * 关闭时停止后台线程并写完队列中剩余的记录。
+ * 采样率和截断长度可以按客户端类型单独配置。
+ */
+@Slf4j
+public class AiTrafficLogger {
+
+    private static final Logger TRAFFIC_LOG = LoggerFactory.getLogger("AI_TRAFFIC");
+
+    private static final String TRUNCATED_SUFFIX = "...[已截断]";
+
+    private final BlockingQueue<TrafficRecord> queue;
+
+    private final Map<String, ClientMetrics> metrics = new ConcurrentHashMap<>();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final AtomicBoolean appenderStarted = new AtomicBoolean();
+
+    private volatile Thread appender;
+
+    private volatile boolean closed;
+
+    private volatile Policy defaultPolicy = Policy.DEFAULT;
+
+    private volatile Map<String, Policy> clientPolicies = Map.of();
+
+    /**
+     * @param queueCapacity 待写入日志的队列容量
+     */
+    public AiTrafficLogger(int queueCapacity) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    }
+
+    /**
+     * Advisor 通过 new 创建，共用这个实例；启动时由配置类设置采样策略
+     */
+    public static AiTrafficLogger getInstance() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * 记录策略
+     *
+     * @param enabled    是否记录内容（关闭时仍统计指标）
+     * @param sampleRate 采样率，0 到 1
+     * @param maxChars   请求和响应文本各自的最大字符数
+     */
+    public record Policy(boolean enabled, double sampleRate, int maxChars) {
+
+        public static final Policy DEFAULT = new Policy(true, 1.0, 2000);
+    }
+
+    /**
+     * 客户端类型的汇总指标
+     */
+    public record MetricsSnapshot(long requests, long errors, long sampled, long avgLatencyMs, long maxLatencyMs,
+                                  long promptTokens, long completionTokens) {
+    }
+
+    /**
+     * 设置记录策略
+     *
+     * @param defaultPolicy  默认策略
+     * @param clientPolicies 按客户端类型覆盖的策略
+     */
+    public void configure(Policy defaultPolicy, Map<String, Policy> clientPolicies) {
+        this.defaultPolicy = defaultPolicy;
+        this.clientPolicies = Map.copyOf(clientPolicies);
+    }
+
+    public Policy policyFor(String clientType) {
+        return clientPolicies.getOrDefault(clientType, defaultPolicy);
+    }
+
+    /**
+     * 开始记录一次请求，是否采样在此时决定
+     *
+     * @param clientType  客户端类型
+     * @param mode        call / stream
+     * @param requestText 用户输入
+     */
+    public Exchange start(String clientType, String mode, String requestText) {
+        Policy policy = policyFor(clientType);
+        boolean sampled = policy.enabled() && policy.sampleRate() > 0
+                && (policy.sampleRate() >= 1 || ThreadLocalRandom.current().nextDouble() < policy.sampleRate());
+        return new Exchange(clientType, mode, sampled ? truncate(requestText, policy.maxChars()) : null,
+                sampled, policy.maxChars());
+    }
+
+    /**
+     * @return 按客户端类型汇总的指标
+     */
+    public Map<String, MetricsSnapshot> getMetrics() {
+        Map<String, MetricsSnapshot> snapshot = new TreeMap<>();
+        metrics.forEach((clientType, clientMetrics) -> snapshot.put(clientType, clientMetrics.snapshot()));
+        return snapshot;
+    }
+
+    /**
+     * @return 因队列已满被丢弃的日志数
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private void finish(Exchange exchange) {
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - exchange.startNanos);
+        metrics.computeIfAbsent(exchange.clientType, key -> new ClientMetrics()).record(exchange, latencyMs);
+        if (!exchange.sampled) {
+            return;
+        }
+        TrafficRecord record = new TrafficRecord(System.currentTimeMillis(), exchange.clientType, exchange.mode,
+                latencyMs, exchange.firstChunkMs, exchange.promptTokens, exchange.completionTokens,
+                exchange.requestText, exchange.responseText(), exchange.error);
+        if (closed) {
+            // 已关闭，直接在调用线程写入
+            write(record);
+            return;
+        }
+        startAppender();
+        if (!queue.offer(record)) {
+            dropped.increment();
+        }
+        if (closed) {
+            // 入队时恰好在关闭，后台线程可能已经退出
+            drain();
+        }
+    }
+
+    /**
+     * 停止后台线程并写完队列中剩余的日志，之后的记录直接在调用线程写入
+     *
+     * @param timeout 等待后台线程退出的最长时间，超时后由调用线程写完剩余的日志
+     */
+    public void shutdown(Duration timeout) {
+        closed = true;
+        Thread thread = appender;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(timeout.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drain();
+    }
+
+    private void startAppender() {
+        if (appenderStarted.get() || !appenderStarted.compareAndSet(false, true)) {
+            return;
+        }
+        appender = Thread.ofPlatform().name("ai-traffic-log").daemon(true).start(() -> {
+            try {
+                while (!closed) {
+                    write(queue.take());
+                }
+            } catch (InterruptedException e) {
+                // 关闭时被中断，写完剩余的记录后退出
+            }
+            drain();
+        });
+    }
+
+    private void drain() {
+        TrafficRecord record;
+        while ((record = queue.poll()) != null) {
+            write(record);
+        }
+    }
+
+    private static void write(TrafficRecord record) {
+        try {
+            TRAFFIC_LOG.info(record.toJson());
+        } catch (RuntimeException e) {
+            log.warn("写入 AI 请求日志失败: {}", e.getMessage());
+        }
+    }
+
+    static String truncate(String text, int maxChars) {
+        if (text == null || text.length() <= maxChars) {
+            return text;
+        }
+        return text.substring(0, Math.max(0, maxChars)) + TRUNCATED_SUFFIX;
+    }
+
+    /**
+     * 一次请求的记录，流式请求的每个分片由同一个订阅顺序调用
+     */
+    public final class Exchange {
+
+        private final String clientType;
+
+        private final String mode;
+
+        private final String requestText;
+
+        private final boolean sampled;
+
+        private final int maxChars;
+
+        private final long startNanos = System.nanoTime();
+
+        // 未采样时为 null，不累积响应文本
+        private final StringBuilder response;
+
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private boolean responseTruncated;
+
+        private long firstChunkMs = -1;
+
+        private Integer promptTokens;
+
+        private Integer completionTokens;
+
+        private String error;
+
+        private Exchange(String clientType, String mode, String requestText, boolean sampled, int maxChars) {
+            this.clientType = clientType;
+            this.mode = mode;
+            this.requestText = requestText;
+            this.sampled = sampled;
+            this.maxChars = maxChars;
+            this.response = sampled ? new StringBuilder() : null;
+        }
+
+        public boolean isSampled() {
+            return sampled;
+        }
+
+        /**
+         * 读入一次完整响应或一个流式分片
+         */
+        public void onResponse(ChatResponse chatResponse) {
+            if (firstChunkMs < 0) {
+                firstChunkMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            }
+            if (chatResponse == null) {
+                return;
+            }
+            // 流式响应的用量通常在最后一个分片中，取最后一次非空的值
+            Usage usage = chatResponse.getMetadata() != null ? chatResponse.getMetadata().getUsage() : null;
+            if (usage != null && usage.getTotalTokens() != null && usage.getTotalTokens() > 0) {
+                promptTokens = usage.getPromptTokens();
+                completionTokens = usage.getCompletionTokens();
+            }
+            if (response == null || responseTruncated || chatResponse.getResult() == null
+                    || chatResponse.getResult().getOutput() == null) {
+                return;
+            }
+            String text = chatResponse.getResult().getOutput().getText();
+            if (text == null) {
+                return;
+            }
+            int remaining = maxChars - response.length();
+            if (text.length() > remaining) {
+                response.append(text, 0, Math.max(0, remaining));
+                responseTruncated = true;
+            } else {
+                response.append(text);
+            }
+        }
+
+        public void onError(Throwable throwable) {
+            error = throwable.getClass().getSimpleName() + ": " + throwable.getMessage();
+        }
+
+        /**
+         * 结束记录，重复调用只记录一次
+         */
+        public void finish() {
+            if (finished.compareAndSet(false, true)) {
+                AiTrafficLogger.this.finish(this);
+            }
+        }
+
+        private String responseText() {
+            if (response == null) {
+                return null;
+            }
+            return responseTruncated ? response + TRUNCATED_SUFFIX : response.toString();
+        }
+    }
+
+    private record TrafficRecord(long timestamp, String clientType, String mode, long latencyMs, long firstChunkMs,
+                                 Integer promptTokens, Integer completionTokens, String request, String response,
+                                 String error) {
+
+        String toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("timestamp", timestamp);
+            json.put("clientType", clientType);
+            json.put("mode", mode);
+            json.put("latencyMs", latencyMs);
+            json.put("firstChunkMs", firstChunkMs);
+            json.put("promptTokens", promptTokens);
+            json.put("completionTokens", completionTokens);
+            json.put("request", request);
+            json.put("response", response);
+            json.put("error", error);
+            return JSONUtil.toJsonStr(json);
+        }
+    }
+
+    private static class ClientMetrics {
+
+        private final LongAdder requests = new LongAdder();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final LongAdder sampled = new LongAdder();
+
+        private final LongAdder totalLatencyMs = new LongAdder();
+
+        private final LongAccumulator maxLatencyMs = new LongAccumulator(Math::max, 0);
+
+        private final LongAdder promptTokens = new LongAdder();
+
+        private final LongAdder completionTokens = new LongAdder();
+
+        void record(Exchange exchange, long latencyMs) {
+            requests.increment();
+            if (exchange.error != null) {
+                errors.increment();
+            }
+            if (exchange.sampled) {
+                sampled.increment();
+            }
+            totalLatencyMs.add(latencyMs);
+            maxLatencyMs.accumulate(latencyMs);
+            if (exchange.promptTokens != null) {
+                promptTokens.add(exchange.promptTokens);
+            }
+            if (exchange.completionTokens != null) {
+                completionTokens.add(exchange.completionTokens);
+            }
+        }
+
+        MetricsSnapshot snapshot() {
+            long count = requests.sum();
+            return new MetricsSnapshot(count, errors.sum(), sampled.sum(),
+                    count == 0 ? 0 : totalLatencyMs.sum() / count, maxLatencyMs.get(),
+                    promptTokens.sum(), completionTokens.sum());
+        }
+    }
+
+    private static class DefaultHolder {
+        private static final AiTrafficLogger INSTANCE = new AiTrafficLogger(10000);
+    }
+}
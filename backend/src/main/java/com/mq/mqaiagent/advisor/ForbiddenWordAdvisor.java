@@ -2,61 +2,144 @@ package com.mq.mqaiagent.advisor;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.advisor.api.*;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
 import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.List;
 import java.util.stream.Collectors;
 
 
 
 
+/**
+ * 违禁词 Advisor
+ * 违禁词编译为 Aho-Corasick 自动机，检查时对文本只扫描一遍；全角/半角、大小写视为相同。
+ * 词表文件修改后无需重启：检查时按间隔比较文件修改时间，有变化则重新编译并替换自动机。
+ * 流式调用时还会逐段检查模型输出，段与段之间保留自动机状态。
+ */
 @Slf4j
 public class ForbiddenWordAdvisor implements CallAroundAdvisor, StreamAroundAdvisor {
 
     private static final String DEFAULT_PROHIBITED_WORDS_FILE = "tmp/forbidden-words.txt";
-    private final List<String> prohibitedWords;
+
+    private static final Duration DEFAULT_RELOAD_INTERVAL = Duration.ofSeconds(30);
+
+    private final Resource prohibitedWordsResource;
+
+    // 检查词表文件是否修改的间隔（纳秒）
+    private final long reloadIntervalNanos;
+
+    private volatile ForbiddenWordMatcher matcher;
+
+    // 当前词表文件的修改时间，无法获取时为 -1
+    private volatile long lastModified;
+
+    private volatile long nextReloadCheckNanos;
 
     /**
      * 创建默认违禁词Advisor，从默认文件读取违禁词列表
      */
     public ForbiddenWordAdvisor() {
-        this.prohibitedWords = loadProhibitedWordsFromFile(DEFAULT_PROHIBITED_WORDS_FILE);
-        log.info("初始化违禁词Advisor，违禁词数量: {}", prohibitedWords.size());
+        this(DEFAULT_PROHIBITED_WORDS_FILE);
     }
 
     /**
      * 创建违禁词Advisor，从指定文件读取违禁词列表
+     *
+     * @param prohibitedWordsFile 违禁词文件，默认从类路径读取，也可以使用 file: 前缀指定文件系统路径
      */
     public ForbiddenWordAdvisor(String prohibitedWordsFile) {
-        this.prohibitedWords = loadProhibitedWordsFromFile(prohibitedWordsFile);
-        log.info("初始化违禁词Advisor，违禁词数量: {}", prohibitedWords.size());
+        this(prohibitedWordsFile, DEFAULT_RELOAD_INTERVAL);
+    }
+
+    /**
+     * @param prohibitedWordsFile 违禁词文件
+     * @param reloadInterval      检查词表文件是否修改的间隔
+     */
+    public ForbiddenWordAdvisor(String prohibitedWordsFile, Duration reloadInterval) {
+        this.prohibitedWordsResource = new DefaultResourceLoader().getResource(prohibitedWordsFile);
+        this.reloadIntervalNanos = reloadInterval.toNanos();
+        reload();
+        log.info("初始化违禁词Advisor，违禁词数量: {}", matcher.size());
+    }
+
+    /**
+     * 重新加载违禁词文件并编译，加载失败时保留原有词表（首次加载失败时为空）
+     */
+    public synchronized void reload() {
+        long modified = lastModifiedOf(prohibitedWordsResource);
+        List<String> words = loadProhibitedWordsFromFile(prohibitedWordsResource);
+        if (words == null) {
+            if (matcher == null) {
+                matcher = ForbiddenWordMatcher.compile(List.of());
+            }
+        } else {
+            matcher = ForbiddenWordMatcher.compile(words);
+        }
+        lastModified = modified;
+        nextReloadCheckNanos = System.nanoTime() + reloadIntervalNanos;
+    }
+
+    /**
+     * @return 当前生效的违禁词自动机
+     */
+    public ForbiddenWordMatcher getMatcher() {
+        reloadIfModified();
+        return matcher;
     }
 
     /**
-     * 从文件加载违禁词列表
+     * 到达检查间隔时比较文件修改时间，有变化则重新加载
      */
-    private List<String> loadProhibitedWordsFromFile(String filePath) {
+    private void reloadIfModified() {
+        if (System.nanoTime() - nextReloadCheckNanos < 0) {
+            return;
+        }
+        synchronized (this) {
+            if (System.nanoTime() - nextReloadCheckNanos < 0) {
+                return;
+            }
+            nextReloadCheckNanos = System.nanoTime() + reloadIntervalNanos;
+            long modified = lastModifiedOf(prohibitedWordsResource);
+            if (modified != lastModified) {
+                reload();
+                log.info("违禁词文件 {} 已修改，重新加载后违禁词数量: {}", prohibitedWordsResource, matcher.size());
+            }
+        }
+    }
+
+    private static long lastModifiedOf(Resource resource) {
         try {
-            var resource = new ClassPathResource(filePath);
-            var reader = new BufferedReader(
-                    new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8));
+            return resource.lastModified();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
 
+    /**
+     * 从文件加载违禁词列表，失败时返回 null
+     */
+    private List<String> loadProhibitedWordsFromFile(Resource resource) {
+        try (var reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
             List<String> words = reader.lines()
                     .filter(StringUtils::hasText)
                     .map(String::trim)
                     .collect(Collectors.toList());
 
-            log.info("从文件 {} 加载违禁词 {} 个", filePath, words.size());
+            log.info("从文件 {} 加载违禁词 {} 个", resource, words.size());
             return words;
         } catch (Exception e) {
-            log.error("加载违禁词文件 {} 失败", filePath, e);
-            return new ArrayList<>();
+            log.error("加载违禁词文件 {} 失败", resource, e);
+            return null;
         }
     }
 
@@ -89,13 +172,7 @@ public class ForbiddenWordAdvisor implements CallAroundAdvisor, StreamAroundAdvi
         if (!StringUtils.hasText(text)) {
             return false;
         }
-
-        for (String word : prohibitedWords) {
-            if (text.toLowerCase().contains(word.toLowerCase())) {
-                return true;
-            }
-        }
-        return false;
+        return getMatcher().containsAny(text);
     }
 
     @Override
@@ -105,7 +182,28 @@ public class ForbiddenWordAdvisor implements CallAroundAdvisor, StreamAroundAdvi
 
     @Override
     public Flux<AdvisedResponse> aroundStream(AdvisedRequest advisedRequest, StreamAroundAdvisorChain chain) {
-        return chain.nextAroundStream(checkRequest(advisedRequest));
+        Flux<AdvisedResponse> responses = chain.nextAroundStream(checkRequest(advisedRequest));
+        // 每次订阅使用独立的扫描状态；自动机在订阅时取定，输出过程中词表热加载不影响已有状态
+        return Flux.defer(() -> {
+            ForbiddenWordMatcher.Scanner scanner = getMatcher().newScanner();
+            return responses.map(response -> checkResponseChunk(response, scanner));
+        });
+    }
+
+    /**
+     * 检查流式输出的一段内容，违禁词跨段时也能识别；完成匹配的这一段不会发送给下游
+     */
+    private AdvisedResponse checkResponseChunk(AdvisedResponse response, ForbiddenWordMatcher.Scanner scanner) {
+        ChatResponse chatResponse = response.response();
+        if (chatResponse == null || chatResponse.getResult() == null || chatResponse.getResult().getOutput() == null) {
+            return response;
+        }
+        String word = scanner.feed(chatResponse.getResult().getOutput().getText());
+        if (word != null) {
+            log.warn("检测到违禁词在模型输出中: {}", word);
+            throw new ProhibitedWordException("模型输出包含违禁词");
+        }
+        return response;
     }
 
     /**
@@ -0,0 +1,261 @@
+package com.mq.mqaiagent.advisor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 违禁词匹配自动机（Aho-Corasick）
+ * 加载时把所有违禁词编译为一个自动机，匹配时对文本只扫描一遍，耗时与违禁词数量无关。
+ * 违禁词和文本都先规范化：全角字符转半角、英文字母统一小写。
+ * 状态以 int 表示，调用方可以逐字符推进并在多段文本之间保留状态（如流式输出）。
+ * 构建完成后不可变，可在多线程间共享。
+ */
+public final class ForbiddenWordMatcher {
+
+    /**
+     * 初始状态
+     */
+    public static final int ROOT = 0;
+
+    // 第 i 个状态的子节点为 childChars/childTargets[childStart[i], childStart[i + 1])，按字符升序
+    private final int[] childStart;
+
+    private final char[] childChars;
+
+    private final int[] childTargets;
+
+    private final int[] failure;
+
+    // 在该状态结束的最长违禁词（包括沿失败链可达的），没有时为 -1
+    private final int[] output;
+
+    private final String[] words;
+
+    private ForbiddenWordMatcher(int[] childStart, char[] childChars, int[] childTargets,
+                                 int[] failure, int[] output, String[] words) {
+        this.childStart = childStart;
+        this.childChars = childChars;
+        this.childTargets = childTargets;
+        this.failure = failure;
+        this.output = output;
+        this.words = words;
+    }
+
+    /**
+     * 编译违禁词，空白词会被忽略
+     */
+    public static ForbiddenWordMatcher compile(Collection<String> prohibitedWords) {
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        List<String> words = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminal.add(-1);
+        for (String raw : prohibitedWords) {
+            String word = normalize(raw == null ? "" : raw.trim());
+            if (word.isEmpty()) {
+                continue;
+            }
+            int state = ROOT;
+            for (int i = 0; i < word.length(); i++) {
+                Integer next = trie.get(state).get(word.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(word.charAt(i), next);
+                    trie.add(new TreeMap<>());
+                    terminal.add(-1);
+                }
+                state = next;
+            }
+            if (terminal.get(state) < 0) {
+                terminal.set(state, words.size());
+                words.add(word);
+            }
+        }
+
+        // 展平为数组，减少匹配时的对象访问
+        int size = trie.size();
+        int[] childStart = new int[size + 1];
+        int edges = 0;
+        for (int i = 0; i < size; i++) {
+            childStart[i] = edges;
+            edges += trie.get(i).size();
+        }
+        childStart[size] = edges;
+        char[] childChars = new char[edges];
+        int[] childTargets = new int[edges];
+        for (int i = 0; i < size; i++) {
+            int j = childStart[i];
+            for (Map.Entry<Character, Integer> entry : trie.get(i).entrySet()) {
+                childChars[j] = entry.getKey();
+                childTargets[j] = entry.getValue();
+                j++;
+            }
+        }
+
+        // 按层次遍历计算失败链和输出
+        int[] failure = new int[size];
+        int[] output = new int[size];
+        output[ROOT] = -1;
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int j = childStart[ROOT]; j < childStart[ROOT + 1]; j++) {
+            int child = childTargets[j];
+            failure[child] = ROOT;
+            output[child] = terminal.get(child);
+            queue.add(child);
+        }
+        ForbiddenWordMatcher matcher = new ForbiddenWordMatcher(childStart, childChars, childTargets,
+                failure, output, words.toArray(new String[0]));
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int j = childStart[state]; j < childStart[state + 1]; j++) {
+                int child = childTargets[j];
+                int fail = matcher.next(failure[state], childChars[j]);
+                failure[child] = fail;
+                output[child] = terminal.get(child) >= 0 ? terminal.get(child) : output[fail];
+                queue.add(child);
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * 文本中是否包含违禁词
+     */
+    public boolean containsAny(CharSequence text) {
+        return findFirst(text) != null;
+    }
+
+    /**
+     * 查找文本中最先出现（结束位置最靠前）的违禁词
+     *
+     * @return 规范化后的违禁词，没有时为 null
+     */
+    public String findFirst(CharSequence text) {
+        if (text == null || words.length == 0) {
+            return null;
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            if (output[state] >= 0) {
+                return words[output[state]];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读入一个字符（会先规范化）后的状态
+     */
+    public int step(int state, char c) {
+        return next(state, normalize(c));
+    }
+
+    /**
+     * 在该状态结束的违禁词，没有时为 null
+     */
+    public String matchAt(int state) {
+        return output[state] >= 0 ? words[output[state]] : null;
+    }
+
+    /**
+     * 创建增量扫描器
+     */
+    public Scanner newScanner() {
+        return new Scanner();
+    }
+
+    /**
+     * @return 违禁词数量（规范化并去重后）
+     */
+    public int size() {
+        return words.length;
+    }
+
+    private int next(int state, char c) {
+        while (true) {
+            int target = child(state, c);
+            if (target >= 0) {
+                return target;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = failure[state];
+        }
+    }
+
+    private int child(int state, char c) {
+        int low = childStart[state];
+        int high = childStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char key = childChars[mid];
+            if (key < c) {
+                low = mid + 1;
+            } else if (key > c) {
+                high = mid - 1;
+            } else {
+                return childTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    static String normalize(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            builder.append(normalize(text.charAt(i)));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 全角转半角，英文字母转小写
+     */
+    static char normalize(char c) {
+        if (c == '　') {
+            return ' ';
+        }
+        if (c >= '！' && c <= '～') {
+            c = (char) (c - 0xFEE0);
+        }
+        return Character.toLowerCase(c);
+    }
+
+    /**
+     * 增量扫描器
+     * 逐段读入文本，段与段之间保留自动机状态，违禁词被拆在相邻的两段中也能匹配，且不需要缓存已读入的文本。
+     * 非线程安全，每个文本流使用一个。
+     */
+    public final class Scanner {
+
+        private int state = ROOT;
+
+        private Scanner() {
+        }
+
+        /**
+         * 读入一段文本
+         *
+         * @return 在这段文本中完成匹配的第一个违禁词（可能从之前的段开始），没有时为 null
+         */
+        public String feed(CharSequence chunk) {
+            if (chunk == null || words.length == 0) {
+                return null;
+            }
+            for (int i = 0; i < chunk.length(); i++) {
+                state = step(state, chunk.charAt(i));
+                if (output[state] >= 0) {
+                    return words[output[state]];
+                }
+            }
+            return null;
+        }
+    }
+}
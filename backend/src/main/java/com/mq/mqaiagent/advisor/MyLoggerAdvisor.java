@@ -4,12 +4,37 @@ package com.mq.mqaiagent.advisor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.advisor.api.*;
 import reactor.core.publisher.Flux;
-import org.springframework.ai.chat.model.MessageAggregator;
 
 
+/**
+ * AI 请求日志 Advisor
+ * 记录交给 AiTrafficLogger：按客户端类型采样、截断并异步写出，流式响应不再聚合完整文本。
+ */
 @Slf4j
 public class MyLoggerAdvisor implements CallAroundAdvisor, StreamAroundAdvisor {
 
+    public static final String DEFAULT_CLIENT_TYPE = "default";
+
+    private final String clientType;
+
+    private final AiTrafficLogger trafficLogger;
+
+    public MyLoggerAdvisor() {
+        this(DEFAULT_CLIENT_TYPE);
+    }
+
+    /**
+     * @param clientType 客户端类型（如 keep-app、mq-manus），用于选择采样策略和汇总指标
+     */
+    public MyLoggerAdvisor(String clientType) {
+        this(clientType, AiTrafficLogger.getInstance());
+    }
+
+    public MyLoggerAdvisor(String clientType, AiTrafficLogger trafficLogger) {
+        this.clientType = clientType;
+        this.trafficLogger = trafficLogger;
+    }
+
     @Override
     public String getName() {
         return this.getClass().getSimpleName();
@@ -20,25 +45,28 @@ public class MyLoggerAdvisor implements CallAroundAdvisor, StreamAroundAdvisor {
         return 0;
     }
 
-    private AdvisedRequest before(AdvisedRequest request) {
-        log.info("AI Request: {}", request.userText());
-        return request;
-    }
-
-    private void observeAfter(AdvisedResponse advisedResponse) {
-        log.info("AI Response: {}", advisedResponse.response().getResult().getOutput().getText());
-    }
-
     public AdvisedResponse aroundCall(AdvisedRequest advisedRequest, CallAroundAdvisorChain chain) {
-        advisedRequest = this.before(advisedRequest);
-        AdvisedResponse advisedResponse = chain.nextAroundCall(advisedRequest);
-        this.observeAfter(advisedResponse);
-        return advisedResponse;
+        AiTrafficLogger.Exchange exchange = trafficLogger.start(clientType, "call", advisedRequest.userText());
+        try {
+            AdvisedResponse advisedResponse = chain.nextAroundCall(advisedRequest);
+            exchange.onResponse(advisedResponse.response());
+            return advisedResponse;
+        } catch (RuntimeException e) {
+            exchange.onError(e);
+            throw e;
+        } finally {
+            exchange.finish();
+        }
     }
 
     public Flux<AdvisedResponse> aroundStream(AdvisedRequest advisedRequest, StreamAroundAdvisorChain chain) {
-        advisedRequest = this.before(advisedRequest);
-        Flux<AdvisedResponse> advisedResponses = chain.nextAroundStream(advisedRequest);
-        return (new MessageAggregator()).aggregateAdvisedResponse(advisedResponses, this::observeAfter);
+        // 每次订阅单独记录，分片到达时只累积（截断后的）文本和用量
+        return Flux.defer(() -> {
+            AiTrafficLogger.Exchange exchange = trafficLogger.start(clientType, "stream", advisedRequest.userText());
+            return chain.nextAroundStream(advisedRequest)
+                    .doOnNext(advisedResponse -> exchange.onResponse(advisedResponse.response()))
+                    .doOnError(exchange::onError)
+                    .doFinally(signal -> exchange.finish());
+        });
     }
 }
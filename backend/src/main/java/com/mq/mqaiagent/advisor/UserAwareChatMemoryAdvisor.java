@@ -0,0 +1,38 @@
+package com.mq.mqaiagent.advisor;
+
+import com.mq.mqaiagent.chatmemory.UserAwareChatMemory;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
+
+import java.util.Map;
+
+/**
+ * 按请求区分用户的对话记忆 Advisor
+ * 从 advisor 上下文参数 {@link #CHAT_MEMORY_USER_ID_KEY} 中读取用户ID，与对话ID一起交给
+ * {@link UserAwareChatMemory}，使一个 ChatClient 可以被所有用户共享，记忆仍按用户隔离。
+ * <pre>
+ * chatClient.prompt()
+ *         .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
+ *                 .param(CHAT_MEMORY_USER_ID_KEY, userId))
+ * </pre>
+ */
+public class UserAwareChatMemoryAdvisor extends MessageChatMemoryAdvisor {
+
+    /**
+     * 用户ID的 advisor 上下文参数名
+     */
+    public static final String CHAT_MEMORY_USER_ID_KEY = "chat_memory_user_id";
+
+    public UserAwareChatMemoryAdvisor(UserAwareChatMemory chatMemory) {
+        super(chatMemory);
+    }
+
+    @Override
+    protected String doGetConversationId(Map<String, Object> context) {
+        String conversationId = super.doGetConversationId(context);
+        Object userId = context.get(CHAT_MEMORY_USER_ID_KEY);
+        if (userId == null) {
+            return conversationId;
+        }
+        return UserAwareChatMemory.scopedConversationId(conversationId, Long.valueOf(userId.toString()));
+    }
+}
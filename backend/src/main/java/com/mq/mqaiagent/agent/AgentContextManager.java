@@ -0,0 +1,171 @@
+package com.mq.mqaiagent.agent;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 智能体上下文管理
+ * 多步执行时消息列表会不断增长（尤其是网页抓取等工具返回的大段内容），每次思考都要重新发送给模型。
+ * 这里按字符预算压缩上下文：最近的若干条消息保持原样，较早的工具结果只保留开头的摘录，
+ * 仍超出预算时再用占位说明替换；较早的重复“下一步提示”直接移除。
+ * 只缩减内容、不删除助手消息和工具结果，保证每个工具调用都有对应的结果消息。
+ */
+@Slf4j
+@Getter
+public class AgentContextManager {
+
+    /**
+     * 截断说明预留的长度，已截断过的结果不会因为附加了说明而被重复截断
+     */
+    private static final int MARKER_SLACK = 64;
+
+    private static final String OMITTED_PREFIX = "[较早的工具结果已省略";
+
+    /**
+     * 上下文字符预算（中文约 1 字符 1 token，英文约 4 字符 1 token）
+     */
+    private final int maxContextChars;
+
+    /**
+     * 原样保留的最近消息数
+     */
+    private final int keepRecentMessages;
+
+    /**
+     * 较早的工具结果保留的字符数
+     */
+    private final int oldToolResponseChars;
+
+    /**
+     * 单个工具结果的字符上限（包括最近的消息）
+     */
+    private final int maxToolResponseChars;
+
+    public AgentContextManager() {
+        this(60000, 6, 2000, 20000);
+    }
+
+    public AgentContextManager(int maxContextChars, int keepRecentMessages, int oldToolResponseChars,
+            int maxToolResponseChars) {
+        this.maxContextChars = maxContextChars;
+        this.keepRecentMessages = keepRecentMessages;
+        this.oldToolResponseChars = oldToolResponseChars;
+        this.maxToolResponseChars = maxToolResponseChars;
+    }
+
+    /**
+     * 压缩上下文
+     *
+     * @param messages       当前消息列表
+     * @param nextStepPrompt 每一步追加的提示词（较早的重复提示会被移除，可为 null）
+     * @return 压缩后的消息列表（不修改传入的列表）
+     */
+    public List<Message> compact(List<Message> messages, String nextStepPrompt) {
+        int recentStart = Math.max(0, messages.size() - keepRecentMessages);
+        List<Message> result = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            boolean recent = i >= recentStart;
+            // 第一条用户消息是任务本身，始终保留
+            if (!recent && i > 0 && message instanceof UserMessage
+                    && StrUtil.isNotEmpty(nextStepPrompt) && nextStepPrompt.equals(message.getText())) {
+                continue;
+            }
+            if (message instanceof ToolResponseMessage toolResponseMessage) {
+                int limit = recent ? maxToolResponseChars : Math.min(oldToolResponseChars, maxToolResponseChars);
+                message = truncateToolResponses(toolResponseMessage, limit);
+            }
+            result.add(message);
+        }
+        // 仍超出预算时，从最早的工具结果开始替换为占位说明
+        int size = sizeOf(result);
+        int recentStartInResult = Math.max(0, result.size() - keepRecentMessages);
+        for (int i = 0; i < recentStartInResult && size > maxContextChars; i++) {
+            if (result.get(i) instanceof ToolResponseMessage toolResponseMessage && !isOmitted(toolResponseMessage)) {
+                ToolResponseMessage omitted = omitToolResponses(toolResponseMessage);
+                size -= sizeOf(toolResponseMessage) - sizeOf(omitted);
+                result.set(i, omitted);
+            }
+        }
+        if (size > maxContextChars) {
+            log.warn("上下文压缩后仍超出预算: {} 字符（预算 {}），最近 {} 条消息未压缩", size, maxContextChars, keepRecentMessages);
+        }
+        return result;
+    }
+
+    /**
+     * 单步上下文统计
+     *
+     * @param step          步骤序号
+     * @param messageCount  发送给模型的消息数
+     * @param originalChars 压缩前的字符数
+     * @param promptChars   实际发送的字符数
+     */
+    public record ContextStats(int step, int messageCount, int originalChars, int promptChars) {
+    }
+
+    /**
+     * 估算消息列表的字符数（文本、工具调用参数和工具结果）
+     *
+     * @param messages 消息列表
+     * @return 字符数
+     */
+    public static int sizeOf(List<Message> messages) {
+        int size = 0;
+        for (Message message : messages) {
+            size += sizeOf(message);
+        }
+        return size;
+    }
+
+    private static int sizeOf(Message message) {
+        int size = StrUtil.length(message.getText());
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.getToolCalls() != null) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                size += StrUtil.length(toolCall.arguments());
+            }
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                size += StrUtil.length(response.responseData());
+            }
+        }
+        return size;
+    }
+
+    private static ToolResponseMessage truncateToolResponses(ToolResponseMessage message, int limit) {
+        boolean truncated = false;
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+        for (ToolResponseMessage.ToolResponse response : message.getResponses()) {
+            String data = response.responseData();
+            if (data != null && data.length() > limit + MARKER_SLACK) {
+                data = data.substring(0, limit) + "\n...[结果过长，已截断 " + (data.length() - limit) + " 字符]";
+                truncated = true;
+            }
+            responses.add(new ToolResponseMessage.ToolResponse(response.id(), response.name(), data));
+        }
+        return truncated ? new ToolResponseMessage(responses, message.getMetadata()) : message;
+    }
+
+    private static boolean isOmitted(ToolResponseMessage message) {
+        return message.getResponses().stream()
+                .allMatch(response -> StrUtil.startWith(response.responseData(), OMITTED_PREFIX));
+    }
+
+    private static ToolResponseMessage omitToolResponses(ToolResponseMessage message) {
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+        for (ToolResponseMessage.ToolResponse response : message.getResponses()) {
+            responses.add(new ToolResponseMessage.ToolResponse(response.id(), response.name(),
+                    OMITTED_PREFIX + "，原长度 " + StrUtil.length(response.responseData()) + " 字符]"));
+        }
+        return new ToolResponseMessage(responses, message.getMetadata());
+    }
+}
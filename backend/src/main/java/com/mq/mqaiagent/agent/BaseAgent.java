@@ -13,6 +13,8 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 
 @Data
@@ -36,6 +38,18 @@ public abstract class BaseAgent {
     // LLM 大模型
     private ChatClient chatClient;
 
+    // 当前用户ID（共享 ChatClient 时用于隔离对话记忆，可为 null）
+    private Long userId;
+
+    // 流式运行使用的执行器（为 null 时使用公共 ForkJoinPool）
+    private Executor executor;
+
+    // 步骤执行过程中的增量输出（仅流式运行时设置，为 null 表示不需要增量输出）
+    private Consumer<String> partialOutputConsumer;
+
+    // 工具执行过程中的进度（仅流式运行时设置，为 null 表示不需要进度）
+    private Consumer<String> progressConsumer;
+
     // Memory 记忆（需要自主维护会话上下文）
     private List<Message> messageList = new ArrayList<>();
 
@@ -93,6 +107,28 @@ public abstract class BaseAgent {
      */
     public abstract String step();
 
+    /**
+     * 输出步骤执行过程中的增量内容（如模型逐字生成的思考文本）
+     *
+     * @param chunk 增量内容
+     */
+    protected void emitPartialOutput(String chunk) {
+        if (partialOutputConsumer != null && StrUtil.isNotEmpty(chunk)) {
+            partialOutputConsumer.accept(chunk);
+        }
+    }
+
+    /**
+     * 输出工具执行过程中的进度（如文件下载的字节数）
+     *
+     * @param message 进度描述
+     */
+    protected void emitProgress(String message) {
+        if (progressConsumer != null && StrUtil.isNotEmpty(message)) {
+            progressConsumer.accept(message);
+        }
+    }
+
     /**
      * 清理资源
      */
@@ -111,7 +147,7 @@ public abstract class BaseAgent {
         SseEmitter emitter = new SseEmitter(300000L); // 5分钟超时
 
         // 使用线程异步处理，避免阻塞主线程
-        CompletableFuture.runAsync(() -> {
+        Runnable task = () -> {
             try {
                 if (this.state != AgentState.IDLE) {
                     emitter.send("错误：无法从状态运行代理: " + this.state);
@@ -128,6 +164,10 @@ public abstract class BaseAgent {
                 state = AgentState.RUNNING;
                 // 记录消息上下文
                 messageList.add(new UserMessage(userPrompt));
+                // 增量内容以 thinking 事件发送，与每一步的结果区分开
+                partialOutputConsumer = chunk -> sendEvent(emitter, "thinking", chunk);
+                // 工具进度以 progress 事件发送
+                progressConsumer = message -> sendEvent(emitter, "progress", message);
 
                 try {
                     for (int i = 0; i < maxSteps && state != AgentState.FINISHED; i++) {
@@ -159,13 +199,20 @@ public abstract class BaseAgent {
                         emitter.completeWithError(ex);
                     }
                 } finally {
+                    partialOutputConsumer = null;
+                    progressConsumer = null;
                     // 清理资源
                     this.cleanup();
                 }
             } catch (Exception e) {
                 emitter.completeWithError(e);
             }
-        });
+        };
+        if (executor != null) {
+            CompletableFuture.runAsync(task, executor);
+        } else {
+            CompletableFuture.runAsync(task);
+        }
 
         // 设置超时和完成回调
         emitter.onTimeout(() -> {
@@ -184,4 +231,13 @@ public abstract class BaseAgent {
 
         return emitter;
     }
+
+    private static void sendEvent(SseEmitter emitter, String name, String data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (Exception e) {
+            // 连接已断开时忽略，发送下一步结果时会结束执行
+            log.debug("发送增量输出失败: {}", e.getMessage());
+        }
+    }
 }
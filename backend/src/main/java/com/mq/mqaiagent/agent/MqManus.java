@@ -29,7 +29,7 @@ public class MqManus extends ToolCallAgent {
                 this.setMaxSteps(20);
                 // 初始化客户端
                 ChatClient chatClient = ChatClient.builder(dashscopeChatModel)
-                                .defaultAdvisors(new MyLoggerAdvisor())
+                                .defaultAdvisors(new MyLoggerAdvisor("mq-manus"))
                                 .build();
                 this.setChatClient(chatClient);
         }
@@ -61,7 +61,7 @@ public class MqManus extends ToolCallAgent {
                 ChatClient chatClient = ChatClient.builder(dashscopeChatModel)
                                 .defaultAdvisors(
                                                 new MessageChatMemoryAdvisor(chatMemory),
-                                                new MyLoggerAdvisor())
+                                                new MyLoggerAdvisor("mq-manus"))
                                 .build();
                 this.setChatClient(chatClient);
         }
@@ -116,8 +116,9 @@ public class MqManus extends ToolCallAgent {
                                 """;
                 this.setNextStepPrompt(NEXT_STEP_PROMPT);
                 this.setMaxSteps(20);
-                // 使用对象池获取支持用户记忆的ChatClient
-                ChatClient chatClient = chatClientPool.getMqManusClientWithMemory(userId, SYSTEM_PROMPT);
+                // 使用对象池获取支持用户记忆的共享ChatClient，用户ID在每次调用时传入
+                ChatClient chatClient = chatClientPool.getMqManusClientWithMemory(SYSTEM_PROMPT);
                 this.setChatClient(chatClient);
+                this.setUserId(userId);
         }
 }
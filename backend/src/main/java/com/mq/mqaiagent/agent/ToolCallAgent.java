@@ -1,25 +1,48 @@
 package com.mq.mqaiagent.agent;
 
 import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
 import com.mq.mqaiagent.agent.model.AgentState;
+import com.mq.mqaiagent.config.BoundedVirtualThreadExecutor;
+import com.mq.mqaiagent.tools.ToolProgress;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
 import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionResult;
 import org.springframework.ai.tool.ToolCallback;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import static com.mq.mqaiagent.advisor.UserAwareChatMemoryAdvisor.CHAT_MEMORY_USER_ID_KEY;
+
 
 @EqualsAndHashCode(callSuper = true)
 @Data
@@ -38,6 +61,30 @@ public class ToolCallAgent extends ReActAgent{
     // 禁用内置的工具调用机制，自己维护上下文
     private final ChatOptions chatOptions;
 
+    // 同一步中的多个工具调用是否并行执行
+    private boolean parallelToolCalls = false;
+
+    // 并行执行时同时运行的工具数上限
+    private int maxParallelTools = 4;
+
+    // 单个工具的超时时间（毫秒），从该工具开始执行时计时，仅并行模式生效
+    private long toolTimeoutMs = 60000;
+
+    // 并行执行工具的执行器，所有智能体共享以限制总并发（为 null 时使用默认的共享执行器）
+    private Executor toolExecutor;
+
+    // 并行执行累计节省的时间（毫秒）：各工具耗时之和减去实际耗时
+    private long toolTimeSavedMs;
+
+    // 流式运行时是否逐字输出思考内容
+    private boolean streamThinking = true;
+
+    // 上下文管理，每次思考前压缩消息列表（为 null 时不压缩）
+    private AgentContextManager contextManager = new AgentContextManager();
+
+    // 每一步发送给模型的上下文大小
+    private final List<AgentContextManager.ContextStats> contextStats = new ArrayList<>();
+
     public ToolCallAgent(ToolCallback[] availableTools) {
         super();
         this.availableTools = availableTools;
@@ -59,15 +106,22 @@ public class ToolCallAgent extends ReActAgent{
             UserMessage userMessage = new UserMessage(getNextStepPrompt());
             getMessageList().add(userMessage);
         }
+        compactContext();
         List<Message> messageList = getMessageList();
         Prompt prompt = new Prompt(messageList, chatOptions);
         try {
             // 获取带工具选项的响应
-            ChatResponse chatResponse = getChatClient().prompt(prompt)
+            ChatClient.ChatClientRequestSpec requestSpec = getChatClient().prompt(prompt)
                     .system(getSystemPrompt())
-                    .tools(availableTools)
-                    .call()
-                    .chatResponse();
+                    .tools(availableTools);
+            if (getUserId() != null) {
+                // 共享的 ChatClient 按请求传入用户ID隔离对话记忆
+                requestSpec = requestSpec.advisors(spec -> spec.param(CHAT_MEMORY_USER_ID_KEY, getUserId()));
+            }
+            // 流式运行时逐字输出思考内容，否则一次性获取完整响应
+            ChatResponse chatResponse = streamThinking && getPartialOutputConsumer() != null
+                    ? streamChatResponse(requestSpec)
+                    : requestSpec.call().chatResponse();
             // 记录响应，用于 Act
             this.toolCallChatResponse = chatResponse;
             AssistantMessage assistantMessage = chatResponse.getResult().getOutput();
@@ -99,6 +153,82 @@ public class ToolCallAgent extends ReActAgent{
         }
     }
 
+    /**
+     * 按预算压缩消息列表并记录本步的上下文大小
+     */
+    private void compactContext() {
+        if (contextManager == null) {
+            return;
+        }
+        int originalChars = AgentContextManager.sizeOf(getMessageList());
+        List<Message> compacted = contextManager.compact(getMessageList(), getNextStepPrompt());
+        setMessageList(compacted);
+        AgentContextManager.ContextStats stats = new AgentContextManager.ContextStats(getCurrentStep(),
+                compacted.size(), originalChars, AgentContextManager.sizeOf(compacted));
+        contextStats.add(stats);
+        log.info("{} 第 {} 步上下文: {} 条消息，{} 字符（压缩前 {} 字符）", getName(), stats.step(),
+                stats.messageCount(), stats.promptChars(), stats.originalChars());
+    }
+
+    /**
+     * 以流式方式获取模型响应
+     * 文本片段实时输出，工具调用在流结束后合并，返回与非流式调用等价的完整响应，供 act 使用。
+     *
+     * @param requestSpec 请求
+     * @return 合并后的完整响应
+     */
+    private ChatResponse streamChatResponse(ChatClient.ChatClientRequestSpec requestSpec) {
+        StringBuilder text = new StringBuilder();
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+        AtomicReference<ChatResponseMetadata> metadata = new AtomicReference<>();
+        requestSpec.stream()
+                .chatResponse()
+                .doOnNext(chunk -> {
+                    if (chunk.getMetadata() != null) {
+                        metadata.set(chunk.getMetadata());
+                    }
+                    if (chunk.getResult() == null || chunk.getResult().getOutput() == null) {
+                        return;
+                    }
+                    AssistantMessage output = chunk.getResult().getOutput();
+                    if (output.getText() != null) {
+                        text.append(output.getText());
+                        emitPartialOutput(output.getText());
+                    }
+                    mergeToolCalls(toolCalls, output.getToolCalls());
+                })
+                .blockLast();
+        AssistantMessage assistantMessage = new AssistantMessage(text.toString(), Map.of(), toolCalls);
+        return metadata.get() == null
+                ? new ChatResponse(List.of(new Generation(assistantMessage)))
+                : new ChatResponse(List.of(new Generation(assistantMessage)), metadata.get());
+    }
+
+    /**
+     * 合并流式片段中的工具调用
+     * 部分模型会把一个工具调用拆成多个片段：首个片段带ID和名称，后续片段ID为空或相同，只带参数的增量。
+     *
+     * @param merged 已合并的工具调用
+     * @param chunk  当前片段中的工具调用
+     */
+    static void mergeToolCalls(List<AssistantMessage.ToolCall> merged, List<AssistantMessage.ToolCall> chunk) {
+        if (chunk == null) {
+            return;
+        }
+        for (AssistantMessage.ToolCall toolCall : chunk) {
+            AssistantMessage.ToolCall last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            boolean continuation = last != null
+                    && (StrUtil.isEmpty(toolCall.id()) || toolCall.id().equals(last.id()));
+            if (!continuation) {
+                merged.add(toolCall);
+                continue;
+            }
+            String name = StrUtil.isEmpty(last.name()) ? toolCall.name() : last.name();
+            String arguments = StrUtil.nullToEmpty(last.arguments()) + StrUtil.nullToEmpty(toolCall.arguments());
+            merged.set(merged.size() - 1, new AssistantMessage.ToolCall(last.id(), last.type(), name, arguments));
+        }
+    }
+
     /**
      * 执行工具调用并处理结果
      *
@@ -109,16 +239,24 @@ public class ToolCallAgent extends ReActAgent{
         if (!toolCallChatResponse.hasToolCalls()) {
             return "没有工具需要调用";
         }
-        // 调用工具
-        Prompt prompt = new Prompt(getMessageList(), this.chatOptions);
-        ToolExecutionResult toolExecutionResult = toolCallingManager.executeToolCalls(prompt, toolCallChatResponse);
+        ToolExecutionResult toolExecutionResult;
+        AssistantMessage assistantMessage = parallelToolCalls ? toolCallChatResponse.getResult().getOutput() : null;
+        if (assistantMessage != null && assistantMessage.getToolCalls().size() > 1) {
+            toolExecutionResult = executeToolCallsInParallel(assistantMessage);
+        } else {
+            // 调用工具
+            Prompt prompt = new Prompt(getMessageList(), this.chatOptions);
+            toolExecutionResult = ToolProgress.callWith(progressListener(),
+                    () -> toolCallingManager.executeToolCalls(prompt, toolCallChatResponse));
+        }
+        List<Message> conversationHistory = toolExecutionResult.conversationHistory();
         // 记录消息上下文，conversationHistory 已经包含了助手消息和工具调用返回的结果
-        setMessageList(toolExecutionResult.conversationHistory());
-        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) CollUtil.getLast(toolExecutionResult.conversationHistory());
-        // 判断是否调用了终止工具
+        setMessageList(conversationHistory);
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) CollUtil.getLast(conversationHistory);
+        // 判断是否调用了终止工具，或工具要求直接返回结果（returnDirect）
         boolean terminateToolCalled = toolResponseMessage.getResponses().stream()
                 .anyMatch(response -> response.name().equals("doTerminate"));
-        if (terminateToolCalled) {
+        if (terminateToolCalled || toolExecutionResult.returnDirect()) {
             // 任务结束，更改状态
             setState(AgentState.FINISHED);
         }
@@ -128,4 +266,160 @@ public class ToolCallAgent extends ReActAgent{
         log.info(results);
         return results;
     }
+
+    /**
+     * 并行执行同一步中的多个工具调用
+     * 每个工具调用单独交给 ToolCallingManager 执行（与顺序执行一致地传入 ToolContext、处理 returnDirect），
+     * 运行在共享的限流虚拟线程执行器上，同一步同时运行的数量不超过 maxParallelTools；
+     * 单个工具失败或超时只影响自己的结果，结果按原调用顺序组装为 ToolResponseMessage。
+     *
+     * @param assistantMessage 包含工具调用的助手消息
+     * @return 执行结果，对话上下文追加了助手消息和工具结果；全部工具都要求直接返回时 returnDirect 为 true
+     */
+    private ToolExecutionResult executeToolCallsInParallel(AssistantMessage assistantMessage) {
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        Map<String, ToolCallback> callbacks = new HashMap<>();
+        for (ToolCallback callback : availableTools) {
+            callbacks.put(callback.getToolDefinition().name(), callback);
+        }
+        Prompt prompt = new Prompt(getMessageList(), toolCallingOptions());
+        Executor executor = toolExecutor != null ? toolExecutor : DefaultToolExecutorHolder.INSTANCE;
+
+        long stepStart = System.nanoTime();
+        AtomicLongArray durations = new AtomicLongArray(toolCalls.size());
+        List<CompletableFuture<ToolExecutionResult>> results = new ArrayList<>(toolCalls.size());
+        Semaphore permits = new Semaphore(Math.max(1, maxParallelTools));
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            CompletableFuture<ToolExecutionResult> result = new CompletableFuture<>();
+            results.add(result);
+            if (!callbacks.containsKey(toolCall.name())) {
+                result.complete(toolResult(toolCall, "未找到工具: " + toolCall.name()));
+                continue;
+            }
+            int index = i;
+            try {
+                executor.execute(() -> runToolCall(prompt, toolCall, permits, result, durations, index));
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+        }
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(toolCalls.size());
+        boolean returnDirect = true;
+        for (int i = 0; i < toolCalls.size(); i++) {
+            ToolExecutionResult toolExecutionResult = awaitToolResult(results.get(i), toolCalls.get(i));
+            responses.addAll(((ToolResponseMessage) CollUtil.getLast(toolExecutionResult.conversationHistory())).getResponses());
+            returnDirect &= toolExecutionResult.returnDirect();
+        }
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stepStart);
+        long sequentialNanos = 0;
+        for (int i = 0; i < durations.length(); i++) {
+            sequentialNanos += durations.get(i);
+        }
+        long sequentialMs = TimeUnit.NANOSECONDS.toMillis(sequentialNanos);
+        long savedMs = Math.max(0, sequentialMs - elapsedMs);
+        toolTimeSavedMs += savedMs;
+        log.info("{} 并行执行 {} 个工具，耗时 {} ms，顺序执行约需 {} ms，节省 {} ms",
+                getName(), toolCalls.size(), elapsedMs, sequentialMs, savedMs);
+
+        List<Message> conversationHistory = new ArrayList<>(getMessageList());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(responses));
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    /**
+     * 并行执行时交给 ToolCallingManager 的选项：显式带上可用工具；智能体选项实现 ToolCallingChatOptions 时沿用其 ToolContext
+     * （当前的 DashScope 选项不带 ToolContext）
+     */
+    private ToolCallingChatOptions toolCallingOptions() {
+        Map<String, Object> toolContext = chatOptions instanceof ToolCallingChatOptions options
+                && options.getToolContext() != null ? options.getToolContext() : Map.of();
+        return ToolCallingChatOptions.builder()
+                .toolCallbacks(availableTools)
+                .toolContext(toolContext)
+                .build();
+    }
+
+    /**
+     * 在虚拟线程中执行单个工具调用，拿到并发许可后开始计时，超时则中断该线程
+     */
+    private void runToolCall(Prompt prompt, AssistantMessage.ToolCall toolCall, Semaphore permits,
+                             CompletableFuture<ToolExecutionResult> result, AtomicLongArray durations, int index) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return;
+        }
+        Consumer<String> progressListener = progressListener();
+        Thread worker = Thread.currentThread();
+        long start = System.nanoTime();
+        CompletableFuture.delayedExecutor(toolTimeoutMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (result.completeExceptionally(new TimeoutException())) {
+                worker.interrupt();
+            }
+        });
+        // 只包含当前工具调用的响应，交给 ToolCallingManager 单独执行
+        ChatResponse toolCallResponse = new ChatResponse(List.of(new Generation(
+                new AssistantMessage("", Map.of(), List.of(toolCall)))));
+        try {
+            ToolExecutionResult output = ToolProgress.callWith(progressListener,
+                    () -> toolCallingManager.executeToolCalls(prompt, toolCallResponse));
+            durations.set(index, System.nanoTime() - start);
+            result.complete(output);
+        } catch (Throwable e) {
+            // 包括 Error，保证等待结果的一方不会一直阻塞
+            durations.set(index, System.nanoTime() - start);
+            result.completeExceptionally(e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 工具上报的进度转发到智能体的输出，非流式运行时为 null
+     */
+    private Consumer<String> progressListener() {
+        return getProgressConsumer() != null ? this::emitProgress : null;
+    }
+
+    private ToolExecutionResult awaitToolResult(CompletableFuture<ToolExecutionResult> result,
+                                                AssistantMessage.ToolCall toolCall) {
+        try {
+            return result.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof TimeoutException) {
+                log.warn("工具 {} 执行超时（{} ms）", toolCall.name(), toolTimeoutMs);
+                return toolResult(toolCall, "工具执行超时（" + toolTimeoutMs + " ms）");
+            }
+            log.error("工具 {} 执行失败: {}", toolCall.name(), cause.getMessage(), cause);
+            return toolResult(toolCall, "工具执行失败: " + cause.getMessage());
+        }
+    }
+
+    /**
+     * 未实际执行的工具调用（未找到、超时或失败）的结果
+     */
+    private static ToolExecutionResult toolResult(AssistantMessage.ToolCall toolCall, String responseData) {
+        ToolResponseMessage toolResponseMessage = new ToolResponseMessage(
+                List.of(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(), responseData)));
+        return ToolExecutionResult.builder()
+                .conversationHistory(List.of(toolResponseMessage))
+                .returnDirect(false)
+                .build();
+    }
+
+    /**
+     * 未通过 Spring 设置执行器时使用的共享执行器
+     */
+    private static class DefaultToolExecutorHolder {
+        private static final Executor INSTANCE = new BoundedVirtualThreadExecutor("agent-tool-", 64);
+    }
 }
@@ -1,6 +1,7 @@
 package com.mq.mqaiagent.app;
 
 import com.mq.mqaiagent.advisor.MyLoggerAdvisor;
+import com.mq.mqaiagent.manager.InFlightRequestCoalescer;
 import com.mq.mqaiagent.mapper.KeepReportMapper;
 import com.mq.mqaiagent.pool.ChatClientPool;
 import com.mq.mqaiagent.service.AiResponseCacheService;
@@ -13,11 +14,18 @@ import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
+import static com.mq.mqaiagent.advisor.UserAwareChatMemoryAdvisor.CHAT_MEMORY_USER_ID_KEY;
 import static com.mq.mqaiagent.constant.AiConstant.SYSTEM_PROMPT;
 import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
 import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_RETRIEVE_SIZE_KEY;
@@ -33,6 +41,7 @@ public class KeepApp {
         private final CacheService cacheService;
         private final AiResponseCacheService aiResponseCacheService;
         private final ChatClientPool chatClientPool;
+        private final InFlightRequestCoalescer inFlightRequestCoalescer;
 
         // /**
         // * 初始化 ChatClient
@@ -67,15 +76,17 @@ public class KeepApp {
          * @param cacheService           缓存服务
          * @param aiResponseCacheService AI响应缓存服务
          * @param chatClientPool         ChatClient对象池
+         * @param inFlightRequestCoalescer 相同问题的在途请求合并
          */
         public KeepApp(ChatModel dashscopeChatModel, KeepReportMapper keepReportMapper,
                         CacheService cacheService, AiResponseCacheService aiResponseCacheService,
-                        ChatClientPool chatClientPool) {
+                        ChatClientPool chatClientPool, InFlightRequestCoalescer inFlightRequestCoalescer) {
                 this.dashscopeChatModel = dashscopeChatModel;
                 this.keepReportMapper = keepReportMapper;
                 this.cacheService = cacheService;
                 this.aiResponseCacheService = aiResponseCacheService;
                 this.chatClientPool = chatClientPool;
+                this.inFlightRequestCoalescer = inFlightRequestCoalescer;
                 // 使用对象池获取默认的 ChatClient（不支持用户记忆）
                 this.chatClient = chatClientPool.getKeepAppClient(SYSTEM_PROMPT);
         }
@@ -118,15 +129,30 @@ public class KeepApp {
                         log.info("使用缓存的AI响应，message: {}", message.substring(0, Math.min(50, message.length())));
                         return cachedResponse;
                 }
-                // 2. 缓存未命中，调用AI模型
+                // 2. 缓存未命中，相同问题的并发请求合并为一次模型调用
+                return inFlightRequestCoalescer.execute(inFlightRequestCoalescer.keyOf(message, chatId, userId),
+                                () -> aiResponseCacheService.getCachedResponse(message, userId),
+                                () -> callModel(message, chatId, userId));
+        }
+
+        /**
+         * 调用AI模型并缓存响应
+         *
+         * @param message 用户消息
+         * @param chatId  对话ID
+         * @param userId  用户ID（可选）
+         * @return AI响应内容
+         */
+        private String callModel(String message, String chatId, Long userId) {
                 String response;
                 if (userId != null) {
-                        // 使用对象池获取支持用户记忆的ChatClient
-                        ChatClient userChatClient = chatClientPool.getKeepAppClientWithMemory(userId, SYSTEM_PROMPT);
+                        // 使用对象池获取支持用户记忆的共享ChatClient，用户ID按请求传入
+                        ChatClient userChatClient = chatClientPool.getKeepAppClientWithMemory(SYSTEM_PROMPT);
                         ChatResponse chatResponse = userChatClient
                                         .prompt()
                                         .user(message)
                                         .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
+                                                        .param(CHAT_MEMORY_USER_ID_KEY, userId)
                                                         .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
                                         .call()
                                         .chatResponse();
@@ -190,7 +216,7 @@ public class KeepApp {
                                 .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
                                                 .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
                                 // 开启日志，便于观察效果
-                                .advisors(new MyLoggerAdvisor())
+                                .advisors(new MyLoggerAdvisor("keep-app"))
                                 // 应用知识库问答
                                 // .advisors(new QuestionAnswerAdvisor(keepAppVectorStore))
                                 // 应用增强检索服务（云知识库服务）
@@ -215,7 +241,7 @@ public class KeepApp {
                                 .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
                                                 .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
                                 // 开启日志，便于观察效果
-                                .advisors(new MyLoggerAdvisor())
+                                .advisors(new MyLoggerAdvisor("keep-app"))
                                 .tools(allTools)
                                 .call()
                                 .chatResponse();
@@ -224,17 +250,29 @@ public class KeepApp {
                 return content;
         }
 
+        /**
+         * 缓存回放时每个分片的字符数（<=0 时整段一次返回）
+         */
+        @Value("${mq.cache.stream-replay.chunk-size:16}")
+        private int replayChunkSize;
+
+        /**
+         * 缓存回放时分片之间的间隔（毫秒），模拟模型逐段输出的节奏
+         */
+        @Value("${mq.cache.stream-replay.chunk-delay-ms:20}")
+        private long replayChunkDelayMs;
+
         /**
          * KeepApp 使用流式对话
          */
         public Flux<String> doChatByStream(String message, String chatId) {
-                return chatClient
+                return doChatByStreamWithCache(message, chatId, null, () -> chatClient
                                 .prompt()
                                 .user(message)
                                 .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
                                                 .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
                                 .stream()
-                                .content();
+                                .content());
         }
 
         /**
@@ -246,14 +284,86 @@ public class KeepApp {
          * @return 流式响应
          */
         public Flux<String> doChatByStream(String message, String chatId, Long userId) {
-                // 使用对象池获取支持用户记忆的ChatClient
-                ChatClient userChatClient = chatClientPool.getKeepAppClientWithMemory(userId, SYSTEM_PROMPT);
-                return userChatClient
-                                .prompt()
-                                .user(message)
-                                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
-                                                .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
-                                .stream()
-                                .content();
+                return doChatByStreamWithCache(message, chatId, userId, () -> {
+                        // 使用对象池获取支持用户记忆的共享ChatClient，用户ID按请求传入
+                        ChatClient userChatClient = chatClientPool.getKeepAppClientWithMemory(SYSTEM_PROMPT);
+                        return userChatClient
+                                        .prompt()
+                                        .user(message)
+                                        .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
+                                                        .param(CHAT_MEMORY_USER_ID_KEY, userId)
+                                                        .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
+                                        .stream()
+                                        .content();
+                });
+        }
+
+        /**
+         * 带缓存的流式对话（内部实现）
+         * 命中缓存时按分片回放缓存的回答；未命中时边转发边累积模型输出，
+         * 正常结束后写入缓存，出错或客户端取消时不写入（避免缓存不完整的回答）。
+         * 同一对话中同一问题的并发请求共享一次模型调用。
+         *
+         * @param message     用户消息
+         * @param chatId      对话ID
+         * @param userId      用户ID（可选）
+         * @param modelStream 调用模型的流式响应
+         * @return 流式响应
+         */
+        private Flux<String> doChatByStreamWithCache(String message, String chatId, Long userId,
+                                                     Supplier<Flux<String>> modelStream) {
+                return Flux.defer(() -> {
+                        // 1. 尝试从缓存获取响应
+                        String cachedResponse = aiResponseCacheService.getCachedResponse(message, userId);
+                        if (cachedResponse != null) {
+                                log.info("使用缓存的AI响应（流式回放），message: {}",
+                                                message.substring(0, Math.min(50, message.length())));
+                                return replayCachedResponse(cachedResponse);
+                        }
+                        // 2. 缓存未命中，相同问题的并发请求共享同一个上游流
+                        return inFlightRequestCoalescer.stream(inFlightRequestCoalescer.keyOf(message, chatId, userId),
+                                        () -> aiResponseCacheService.getCachedResponse(message, userId),
+                                        this::replayCachedResponse,
+                                        () -> {
+                                                // 3. 调用AI模型并累积完整回答
+                                                StringBuilder response = new StringBuilder();
+                                                return modelStream.get()
+                                                                .doOnNext(response::append)
+                                                                // 4. 仅在正常结束时缓存AI响应，写缓存放到弹性线程，不阻塞流的线程；
+                                                                // 缓存写完后流才结束，在途锁随之释放，等待的节点此时能读到缓存
+                                                                .concatWith(Mono.<String>fromRunnable(() ->
+                                                                                                aiResponseCacheService.cacheResponse(message, response.toString(), userId))
+                                                                                .subscribeOn(Schedulers.boundedElastic())
+                                                                                .onErrorResume(e -> {
+                                                                                        log.error("缓存流式AI响应失败: {}", e.getMessage(), e);
+                                                                                        return Mono.empty();
+                                                                                }));
+                                        });
+                });
+        }
+
+        /**
+         * 将缓存的回答按分片回放为流
+         *
+         * @param cachedResponse 缓存的回答
+         * @return 分片流
+         */
+        private Flux<String> replayCachedResponse(String cachedResponse) {
+                if (replayChunkSize <= 0 || cachedResponse.length() <= replayChunkSize) {
+                        return Flux.just(cachedResponse);
+                }
+                List<String> chunks = new ArrayList<>();
+                int start = 0;
+                while (start < cachedResponse.length()) {
+                        int end = Math.min(start + replayChunkSize, cachedResponse.length());
+                        // 不拆开代理对（如 emoji）
+                        if (end < cachedResponse.length() && Character.isHighSurrogate(cachedResponse.charAt(end - 1))) {
+                                end++;
+                        }
+                        chunks.add(cachedResponse.substring(start, end));
+                        start = end;
+                }
+                Flux<String> replay = Flux.fromIterable(chunks);
+                return replayChunkDelayMs > 0 ? replay.delayElements(Duration.ofMillis(replayChunkDelayMs)) : replay;
         }
 }
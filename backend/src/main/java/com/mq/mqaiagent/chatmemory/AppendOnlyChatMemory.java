@@ -0,0 +1,302 @@
+package com.mq.mqaiagent.chatmemory;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mq.mqaiagent.mapper.ChatMessageMapper;
+import com.mq.mqaiagent.mapper.KeepReportMapper;
+import com.mq.mqaiagent.model.dto.keepReport.KeepReport;
+import com.mq.mqaiagent.model.entity.ChatMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.*;
+
+/**
+ * 追加写模式的数据库对话记忆
+ * 每条消息单独存入 chat_message 表（chatId + userId + seq），写入只追加新行，
+ * 读取最近 N 条走 ORDER BY seq DESC LIMIT N，不再整段反序列化 keep_report.messages。
+ * keep_report 仅作为会话头（lastMessage、updateTime）继续服务历史对话列表。
+ * 匿名对话在消息表中以 userId = 0 存储：唯一键不把 NULL 视为重复，序号冲突重试只对非空值生效。
+ * keep_report.messages 中的 JSON 历史固定占用序号 1..M（第 i 条即 seq = i）：每个对话首次读写前先补齐缺失的历史行，
+ * 新消息排在其后，因此切换存储模式前后执行迁移都不会丢失或打乱历史。
+ */
+@Slf4j
+public class AppendOnlyChatMemory extends DatabaseChatMemory {
+
+    private final ChatMessageMapper chatMessageMapper;
+
+    private final KeepReportMapper keepReportMapper;
+
+    /**
+     * 序号冲突（并发追加同一对话）时的最大重试次数
+     */
+    private static final int MAX_APPEND_ATTEMPTS = 3;
+
+    /**
+     * 匿名对话在消息表中的用户ID
+     */
+    static final long ANONYMOUS_USER_ID = 0L;
+
+    /**
+     * 已补齐 JSON 历史的对话（chatId:userId）。切换到追加写模式后 JSON 不再变化，每个对话只需检查一次
+     */
+    private final Cache<String, Boolean> mergedConversations = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .build();
+
+    /**
+     * 构造函数
+     *
+     * @param keepReportMapper  会话头数据库映射器
+     * @param chatMessageMapper 消息表数据库映射器
+     */
+    public AppendOnlyChatMemory(KeepReportMapper keepReportMapper, ChatMessageMapper chatMessageMapper) {
+        super(keepReportMapper);
+        this.keepReportMapper = keepReportMapper;
+        this.chatMessageMapper = chatMessageMapper;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        add(conversationId, getCurrentUserId(), messages);
+    }
+
+    /**
+     * 向指定对话追加消息（支持用户ID）。
+     * 只插入新消息行并刷新会话头，写入成本与历史长度无关。
+     *
+     * @param conversationId 对话的唯一标识符。
+     * @param userId         用户ID（可为null）。
+     * @param messages       要追加的消息列表。
+     */
+    @Override
+    public void add(String conversationId, Long userId, List<Message> messages) {
+        try {
+            append(conversationId, userId, messages);
+        } catch (Exception e) {
+            log.error("追加对话消息失败，对话ID: {}, 用户ID: {}, 错误: {}",
+                    getSafeConversationId(conversationId), userId, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 追加消息，写库失败时抛出异常（供写后缓冲刷写使用）。
+     */
+    @Override
+    public void append(String conversationId, Long userId, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        String safeConversationId = getSafeConversationId(conversationId);
+        ensureHistoryMerged(safeConversationId, userId);
+        appendMessages(safeConversationId, rowUserId(userId), messages);
+        touchConversationHeader(safeConversationId, userId, messages);
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        return get(conversationId, getCurrentUserId(), lastN);
+    }
+
+    /**
+     * 获取指定对话最近 N 条消息（支持用户ID），只读取需要的行。
+     *
+     * @param conversationId 对话的唯一标识符。
+     * @param userId         用户ID（可为null）。
+     * @param lastN          要获取的最近消息的数量。
+     * @return 包含最近 N 条消息的列表，按时间顺序排列（旧 -> 新）。
+     */
+    @Override
+    public List<Message> get(String conversationId, Long userId, int lastN) {
+        if (lastN <= 0) {
+            return new ArrayList<>();
+        }
+        String safeConversationId = getSafeConversationId(conversationId);
+        try {
+            ensureHistoryMerged(safeConversationId, userId);
+            List<ChatMessage> rows = chatMessageMapper.selectLatest(safeConversationId, rowUserId(userId), lastN);
+            if (rows == null || rows.isEmpty()) {
+                return new ArrayList<>();
+            }
+            List<Message> messages = new ArrayList<>(rows.size());
+            // 查询结果为 新 -> 旧，倒序遍历还原时间顺序
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                Message message = createMessage(rows.get(i).getMessageType(), rows.get(i).getContent());
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            return messages;
+        } catch (Exception e) {
+            log.error("获取对话消息失败，对话ID: {}, 用户ID: {}, 错误: {}", safeConversationId, userId, e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 清除该用户的对话消息（逻辑删除）。
+     * 删除的行仍占用序号，之后追加的消息从其后的序号继续（见 selectMaxSeq）。
+     */
+    @Override
+    public void clear(String conversationId, Long userId) {
+        try {
+            LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.eq(ChatMessage::getChatId, getSafeConversationId(conversationId))
+                    .eq(ChatMessage::getUserId, rowUserId(userId));
+            chatMessageMapper.delete(queryWrapper);
+        } catch (Exception e) {
+            log.error("清除对话消息失败: {}, 用户ID: {}", conversationId, userId, e);
+        }
+        super.clear(conversationId, userId);
+    }
+
+    /**
+     * 从 keep_report 的 JSON 消息迁移到消息表。
+     * 只补齐消息表中缺失的历史序号，可重复执行：迁移后仍在 json 模式下写入的消息，再次执行时会补上。
+     *
+     * @param report 会话记录
+     * @return 迁移的消息条数
+     */
+    public int migrateConversation(KeepReport report) {
+        if (report == null) {
+            return 0;
+        }
+        Long userId = rowUserId(report.getUserId());
+        int count = mergeJsonHistory(report.getChatId(), userId, report);
+        mergedConversations.put(report.getChatId() + ":" + userId, Boolean.TRUE);
+        return count;
+    }
+
+    /**
+     * 对话首次读写前补齐 JSON 历史，之后不再读取会话头中的消息正文
+     */
+    private void ensureHistoryMerged(String chatId, Long userId) {
+        String mergeKey = chatId + ":" + rowUserId(userId);
+        if (mergedConversations.getIfPresent(mergeKey) != null) {
+            return;
+        }
+        LambdaQueryWrapper<KeepReport> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(KeepReport::getChatId, chatId)
+                .eq(userId != null, KeepReport::getUserId, userId)
+                .isNull(userId == null, KeepReport::getUserId);
+        KeepReport report = keepReportMapper.selectOne(queryWrapper);
+        int count = mergeJsonHistory(chatId, rowUserId(userId), report);
+        if (count > 0) {
+            log.info("已补齐对话的 JSON 历史，对话ID: {}, 用户ID: {}, 消息数: {}", chatId, userId, count);
+        }
+        mergedConversations.put(mergeKey, Boolean.TRUE);
+    }
+
+    /**
+     * 将 JSON 历史中消息表缺失的序号插入消息表（第 i 条消息对应 seq = i），并发补齐时重试
+     *
+     * @return 插入的消息条数
+     */
+    private int mergeJsonHistory(String chatId, Long userId, KeepReport report) {
+        if (report == null || report.getMessages() == null || report.getMessages().isBlank()) {
+            return 0;
+        }
+        List<Message> messages;
+        try {
+            messages = deserializeMessages(report.getMessages());
+        } catch (Exception e) {
+            // 数据已损坏，与 json 模式一样按空历史处理
+            log.error("反序列化对话消息失败，跳过迁移，对话ID: {}, 用户ID: {}, 错误: {}", chatId, userId, e.getMessage(), e);
+            return 0;
+        }
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        Date createTime = report.getCreateTime() != null ? report.getCreateTime() : new Date();
+        for (int attempt = 1; ; attempt++) {
+            Set<Integer> existingSeqs = new HashSet<>(chatMessageMapper.selectSeqs(chatId, userId, messages.size()));
+            List<ChatMessage> missing = new ArrayList<>();
+            for (int i = 0; i < messages.size(); i++) {
+                if (!existingSeqs.contains(i + 1)) {
+                    missing.addAll(toRows(chatId, userId, i + 1, List.of(messages.get(i)), createTime));
+                }
+            }
+            if (missing.isEmpty()) {
+                log.debug("对话历史已迁移，跳过，对话ID: {}, 用户ID: {}", chatId, userId);
+                return 0;
+            }
+            try {
+                chatMessageMapper.insertBatch(missing);
+                return missing.size();
+            } catch (DuplicateKeyException e) {
+                if (attempt >= MAX_APPEND_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("其他请求正在补齐对话历史，重试，对话ID: {}, 用户ID: {}, 第{}次", chatId, userId, attempt);
+            }
+        }
+    }
+
+    /**
+     * 追加消息，序号冲突时重新读取最大序号后重试
+     */
+    private void appendMessages(String chatId, Long userId, List<Message> messages) {
+        for (int attempt = 1; ; attempt++) {
+            Integer maxSeq = chatMessageMapper.selectMaxSeq(chatId, userId);
+            int startSeq = maxSeq == null ? 1 : maxSeq + 1;
+            try {
+                chatMessageMapper.insertBatch(toRows(chatId, userId, startSeq, messages, new Date()));
+                return;
+            } catch (DuplicateKeyException e) {
+                if (attempt >= MAX_APPEND_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("消息序号冲突，重试追加，对话ID: {}, 用户ID: {}, 第{}次", chatId, userId, attempt);
+            }
+        }
+    }
+
+    /**
+     * 刷新会话头（lastMessage、updateTime），不存在时创建
+     */
+    private void touchConversationHeader(String chatId, Long userId, List<Message> messages) {
+        String lastMessage = getLastMessageContent(messages);
+        LambdaUpdateWrapper<KeepReport> updateWrapper = new LambdaUpdateWrapper<>();
+        updateWrapper.eq(KeepReport::getChatId, chatId)
+                .eq(userId != null, KeepReport::getUserId, userId)
+                .isNull(userId == null, KeepReport::getUserId)
+                .set(KeepReport::getLastMessage, lastMessage)
+                .set(KeepReport::getUpdateTime, new Date());
+        if (keepReportMapper.update(null, updateWrapper) > 0) {
+            return;
+        }
+        KeepReport header = KeepReport.builder()
+                .chatId(chatId)
+                .userId(userId)
+                .createTime(new Date())
+                .updateTime(new Date())
+                // 消息正文存放在 chat_message 表
+                .messages("[]")
+                .lastMessage(lastMessage)
+                .build();
+        keepReportMapper.insert(header);
+    }
+
+    private static Long rowUserId(Long userId) {
+        return userId != null ? userId : ANONYMOUS_USER_ID;
+    }
+
+    private List<ChatMessage> toRows(String chatId, Long userId, int startSeq, List<Message> messages, Date createTime) {
+        List<ChatMessage> rows = new ArrayList<>(messages.size());
+        int seq = startSeq;
+        for (Message message : messages) {
+            rows.add(ChatMessage.builder()
+                    .chatId(chatId)
+                    .userId(userId)
+                    .seq(seq++)
+                    .messageType(message.getMessageType().name())
+                    .content(message.getText())
+                    .createTime(createTime)
+                    .build());
+        }
+        return rows;
+    }
+}
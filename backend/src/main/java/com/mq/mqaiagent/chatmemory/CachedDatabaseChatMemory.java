@@ -6,32 +6,90 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.IntFunction;
 
 /**
  * 带缓存的数据库对话记忆实现
- * 继承DatabaseChatMemory，增加Redis缓存层，实现双层缓存策略
+ * 在数据库对话记忆（整段 JSON 或追加写模式）之上增加Redis缓存层，实现双层缓存策略
+ * 缓存使用 Redis 列表：追加新消息为 RPUSH，读取最近 N 条为 LRANGE，并按上限 LTRIM 裁剪
  */
 @Slf4j
-public class CachedDatabaseChatMemory extends DatabaseChatMemory implements ChatMemory {
+public class CachedDatabaseChatMemory implements ChatMemory {
+
+    private final DatabaseChatMemory databaseChatMemory;
 
     private final CacheService cacheService;
 
+    /**
+     * 写后缓冲（可选，为null或未开启时同步写库）
+     */
+    private final ChatMemoryWriteBehindBuffer writeBehindBuffer;
+
     /**
      * 缓存过期时间（小时）
      */
     private static final long CACHE_EXPIRE_HOURS = 6;
 
     /**
-     * 构造函数
+     * 默认每个对话缓存保留的最大消息数
+     */
+    public static final int DEFAULT_CACHE_MAX_MESSAGES = 100;
+
+    /**
+     * 每个对话缓存保留的最大消息数（更早的消息只在数据库中）
+     */
+    private final int cacheMaxMessages;
+
+    /**
+     * 构造函数（使用整段 JSON 存储的数据库对话记忆）
      *
      * @param keepReportMapper 数据库映射器
      * @param cacheService     缓存服务
      */
     public CachedDatabaseChatMemory(KeepReportMapper keepReportMapper, CacheService cacheService) {
-        super(keepReportMapper);
+        this(new DatabaseChatMemory(keepReportMapper), cacheService);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param databaseChatMemory 数据库对话记忆（决定持久化方式）
+     * @param cacheService       缓存服务
+     */
+    public CachedDatabaseChatMemory(DatabaseChatMemory databaseChatMemory, CacheService cacheService) {
+        this(databaseChatMemory, cacheService, null);
+    }
+
+    /**
+     * 构造函数（支持写后缓冲）
+     *
+     * @param databaseChatMemory 数据库对话记忆（决定持久化方式）
+     * @param cacheService       缓存服务
+     * @param writeBehindBuffer  写后缓冲（可为null）
+     */
+    public CachedDatabaseChatMemory(DatabaseChatMemory databaseChatMemory, CacheService cacheService,
+                                    ChatMemoryWriteBehindBuffer writeBehindBuffer) {
+        this(databaseChatMemory, cacheService, writeBehindBuffer, DEFAULT_CACHE_MAX_MESSAGES);
+    }
+
+    /**
+     * 构造函数（支持写后缓冲与缓存条数上限）
+     *
+     * @param databaseChatMemory 数据库对话记忆（决定持久化方式）
+     * @param cacheService       缓存服务
+     * @param writeBehindBuffer  写后缓冲（可为null）
+     * @param cacheMaxMessages   每个对话缓存保留的最大消息数，非正数时使用默认值
+     */
+    public CachedDatabaseChatMemory(DatabaseChatMemory databaseChatMemory, CacheService cacheService,
+                                    ChatMemoryWriteBehindBuffer writeBehindBuffer, int cacheMaxMessages) {
+        this.databaseChatMemory = databaseChatMemory;
         this.cacheService = cacheService;
-        log.info("CachedDatabaseChatMemory 初始化完成");
+        this.writeBehindBuffer = writeBehindBuffer;
+        this.cacheMaxMessages = cacheMaxMessages > 0 ? cacheMaxMessages : DEFAULT_CACHE_MAX_MESSAGES;
+        log.info("CachedDatabaseChatMemory 初始化完成，存储实现: {}", databaseChatMemory.getClass().getSimpleName());
     }
 
     /**
@@ -40,9 +98,6 @@ public class CachedDatabaseChatMemory extends DatabaseChatMemory implements Chat
      * @return 当前用户ID
      */
     protected Long getCurrentUserId() {
-        // 通过反射或直接访问父类的currentUserId字段
-        // 由于父类的currentUserId是private，我们需要通过其他方式获取
-        // 这里我们添加一个字段来跟踪当前用户ID
         return this.currentUserId;
     }
 
@@ -52,31 +107,33 @@ public class CachedDatabaseChatMemory extends DatabaseChatMemory implements Chat
     private Long currentUserId;
 
     /**
-     * 设置当前用户ID（重写父类方法以同步本地字段）
+     * 设置当前用户ID（同步到底层数据库对话记忆）
      *
      * @param userId 用户ID
      */
-    @Override
     public void setCurrentUserId(Long userId) {
-        super.setCurrentUserId(userId);
+        databaseChatMemory.setCurrentUserId(userId);
         this.currentUserId = userId;
     }
 
     /**
      * 向指定对话 ID 的记忆中添加消息列表（带缓存）
-     * 会将新消息追加到现有消息列表末尾，并同时更新缓存和数据库
+     * 写入数据库后将新消息追加到缓存列表尾部（不再重新读取完整历史）
      *
      * @param conversationId 对话的唯一标识符
      * @param messages       要添加的消息列表
      */
     @Override
     public void add(String conversationId, List<Message> messages) {
+        if (addWriteBehind(conversationId, getCurrentUserId(), messages)) {
+            return;
+        }
         try {
-            // 1. 先调用父类方法更新数据库
-            super.add(conversationId, messages);
+            // 1. 先写数据库
+            databaseChatMemory.add(conversationId, messages);
 
-            // 2. 更新缓存
-            updateCache(conversationId, getCurrentUserId());
+            // 2. 追加缓存
+            appendCache(conversationId, getCurrentUserId(), messages);
 
             log.debug("对话记忆添加成功，conversationId: {}, messageCount: {}", conversationId, messages.size());
         } catch (Exception e) {
@@ -93,12 +150,15 @@ public class CachedDatabaseChatMemory extends DatabaseChatMemory implements Chat
      * @param messages       要添加的消息列表
      */
     public void add(String conversationId, Long userId, List<Message> messages) {
+        if (addWriteBehind(conversationId, userId, messages)) {
+            return;
+        }
         try {
-            // 1. 先调用父类方法更新数据库
-            super.add(conversationId, userId, messages);
+            // 1. 先写数据库
+            databaseChatMemory.add(conversationId, userId, messages);
 
-            // 2. 更新缓存
-            updateCache(conversationId, userId);
+            // 2. 追加缓存
+            appendCache(conversationId, userId, messages);
 
             log.debug("对话记忆添加成功，conversationId: {}, userId: {}, messageCount: {}",
                     conversationId, userId, messages.size());
@@ -111,46 +171,16 @@ public class CachedDatabaseChatMemory extends DatabaseChatMemory implements Chat
 
     /**
      * 获取指定对话 ID 的最近 N 条消息（带缓存）
-     * 优先从缓存获取，缓存未命中时从数据库获取并回写缓存
+     * 优先从缓存列表读取最近 N 条（LRANGE -N -1），缓存未命中时从数据库获取并回写缓存
      *
      * @param conversationId 对话的唯一标识符
      * @param lastN          要获取的最近消息的数量
      * @return 包含最近 N 条消息的列表，按时间顺序排列（旧 -> 新）
      */
     @Override
-    @SuppressWarnings("unchecked")
     public List<Message> get(String conversationId, int lastN) {
-        String cacheKey = cacheService.generateChatMemoryKey(conversationId, getCurrentUserId());
-
-        try {
-            // 1. 优先从缓存获取
-            if (cacheService.isRedisAvailable()) {
-                List<Message> cachedMessages = cacheService.get(cacheKey, List.class);
-                if (cachedMessages != null) {
-                    // 缓存命中，返回最近N条消息
-                    return getLastNMessages(cachedMessages, lastN);
-                }
-            }
-
-            // 2. 缓存未命中，从数据库获取
-            List<Message> dbMessages = super.get(conversationId, lastN);
-
-            // 3. 回写缓存（存储完整消息列表，而不仅仅是lastN条）
-            if (cacheService.isRedisAvailable() && !dbMessages.isEmpty()) {
-                // 获取完整消息列表用于缓存
-                List<Message> fullMessages = super.get(conversationId, Integer.MAX_VALUE);
-                cacheService.set(cacheKey, fullMessages, CACHE_EXPIRE_HOURS);
-            }
-
-            return dbMessages;
-
-        } catch (Exception e) {
-            log.error("获取对话记忆失败，conversationId: {}, lastN: {}, error: {}",
-                    conversationId, lastN, e.getMessage(), e);
-
-            // 缓存异常时降级到数据库直连
-            return super.get(conversationId, lastN);
-        }
+        return getWithCache(conversationId, getCurrentUserId(), lastN,
+                n -> databaseChatMemory.get(conversationId, n));
     }
 
     /**
@@ -161,82 +191,201 @@ public class CachedDatabaseChatMemory extends DatabaseChatMemory implements Chat
      * @param lastN          要获取的最近消息的数量
      * @return 包含最近 N 条消息的列表，按时间顺序排列（旧 -> 新）
      */
-    @SuppressWarnings("unchecked")
     public List<Message> get(String conversationId, Long userId, int lastN) {
+        return getWithCache(conversationId, userId, lastN,
+                n -> databaseChatMemory.get(conversationId, userId, n));
+    }
+
+    /**
+     * 清除指定对话的所有记忆（数据库记录与缓存）
+     *
+     * @param conversationId 对话的唯一标识符
+     */
+    @Override
+    public void clear(String conversationId) {
+        clear(conversationId, getCurrentUserId());
+    }
+
+    /**
+     * 清除指定对话的所有记忆（支持用户ID）
+     *
+     * @param conversationId 对话的唯一标识符
+     * @param userId         用户ID（可选，用于限定删除的记录并定位缓存键）
+     */
+    public void clear(String conversationId, Long userId) {
+        databaseChatMemory.clear(conversationId, userId);
+        clearCache(conversationId, userId);
+    }
+
+    /**
+     * 清除指定对话的缓存
+     *
+     * @param conversationId 对话ID
+     * @param userId         用户ID（可选）
+     */
+    public void clearCache(String conversationId, Long userId) {
+        try {
+            String cacheKey = cacheService.generateChatMemoryKey(conversationId, userId);
+            cacheService.delete(cacheKey);
+            log.debug("对话缓存清除成功，conversationId: {}, userId: {}", conversationId, userId);
+        } catch (Exception e) {
+            log.error("对话缓存清除失败，conversationId: {}, userId: {}, error: {}",
+                    conversationId, userId, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 带缓存读取最近 N 条消息
+     * lastN 超出缓存保留上限（或不限条数）时缓存无法给出完整结果，直接读数据库
+     *
+     * @param dbLoader 按条数从数据库读取消息
+     */
+    private List<Message> getWithCache(String conversationId, Long userId, int lastN, IntFunction<List<Message>> dbLoader) {
+        if (lastN <= 0 || lastN > cacheMaxMessages) {
+            return dbLoader.apply(lastN);
+        }
         String cacheKey = cacheService.generateChatMemoryKey(conversationId, userId);
 
         try {
-            // 1. 优先从缓存获取
-            if (cacheService.isRedisAvailable()) {
-                List<Message> cachedMessages = cacheService.get(cacheKey, List.class);
-                if (cachedMessages != null) {
-                    // 缓存命中，返回最近N条消息
-                    return getLastNMessages(cachedMessages, lastN);
+            boolean redisAvailable = cacheService.isRedisAvailable();
+            // 1. 优先从缓存获取，只取需要的最近 N 条
+            if (redisAvailable) {
+                List<Message> cachedMessages = toMessages(cacheService.range(cacheKey, -lastN, -1));
+                if (!cachedMessages.isEmpty()) {
+                    return cachedMessages;
                 }
             }
 
-            // 2. 缓存未命中，从数据库获取
-            List<Message> dbMessages = super.get(conversationId, userId, lastN);
-
-            // 3. 回写缓存（存储完整消息列表）
-            if (cacheService.isRedisAvailable() && !dbMessages.isEmpty()) {
-                // 获取完整消息列表用于缓存
-                List<Message> fullMessages = super.get(conversationId, userId, Integer.MAX_VALUE);
-                cacheService.set(cacheKey, fullMessages, CACHE_EXPIRE_HOURS);
+            // 2. 缓存未命中，从数据库按缓存上限读取，回写缓存后返回最近 N 条
+            // 写后缓冲中尚未刷写的消息不在数据库中，需要补在后面；此时不回写缓存，刷写完成后再加载
+            List<Message> pendingMessages = pendingMessages(conversationId, userId);
+            List<Message> dbMessages = dbLoader.apply(cacheMaxMessages);
+            if (!pendingMessages.isEmpty()) {
+                return getLastNMessages(appendPending(dbMessages, pendingMessages), lastN);
             }
-
-            return dbMessages;
+            if (redisAvailable && !dbMessages.isEmpty()) {
+                loadCache(cacheKey, dbMessages);
+            }
+            return getLastNMessages(dbMessages, lastN);
 
         } catch (Exception e) {
             log.error("获取对话记忆失败，conversationId: {}, userId: {}, lastN: {}, error: {}",
                     conversationId, userId, lastN, e.getMessage(), e);
 
             // 缓存异常时降级到数据库直连
-            return super.get(conversationId, userId, lastN);
+            return dbLoader.apply(lastN);
         }
     }
 
+    private List<Message> pendingMessages(String conversationId, Long userId) {
+        if (writeBehindBuffer == null || !writeBehindBuffer.isEnabled()) {
+            return List.of();
+        }
+        return writeBehindBuffer.pendingMessages(conversationId, userId);
+    }
+
     /**
-     * 清除指定对话的缓存
+     * 把待写消息接在数据库消息之后
+     * 先读待写日志再读数据库，两次读取之间可能刚好完成刷写，此时数据库末尾已包含待写消息的开头部分，去掉重叠后再拼接
+     */
+    static List<Message> appendPending(List<Message> dbMessages, List<Message> pendingMessages) {
+        int overlap = Math.min(dbMessages.size(), pendingMessages.size());
+        while (overlap > 0 && !sameMessages(dbMessages.subList(dbMessages.size() - overlap, dbMessages.size()),
+                pendingMessages.subList(0, overlap))) {
+            overlap--;
+        }
+        List<Message> merged = new ArrayList<>(dbMessages);
+        merged.addAll(pendingMessages.subList(overlap, pendingMessages.size()));
+        return merged;
+    }
+
+    private static boolean sameMessages(List<Message> left, List<Message> right) {
+        for (int i = 0; i < left.size(); i++) {
+            if (left.get(i).getMessageType() != right.get(i).getMessageType()
+                    || !Objects.equals(left.get(i).getText(), right.get(i).getText())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 写后缓冲模式下添加消息：写入待写日志，并把新消息追加到已有缓存
+     * 缓存未命中时不回填（此时数据库尚未包含待写消息），由刷写完成后的读取重新加载
      *
-     * @param conversationId 对话ID
-     * @param userId         用户ID（可选）
+     * @return 是否已由写后缓冲处理，false 时调用方应同步写库
      */
-    public void clearCache(String conversationId, Long userId) {
-        try {
-            String cacheKey = cacheService.generateChatMemoryKey(conversationId, userId);
-            cacheService.delete(cacheKey);
-            log.debug("对话缓存清除成功，conversationId: {}, userId: {}", conversationId, userId);
-        } catch (Exception e) {
-            log.error("对话缓存清除失败，conversationId: {}, userId: {}, error: {}",
-                    conversationId, userId, e.getMessage(), e);
+    private boolean addWriteBehind(String conversationId, Long userId, List<Message> messages) {
+        if (writeBehindBuffer == null || !writeBehindBuffer.isEnabled() || !cacheService.isRedisAvailable()) {
+            return false;
         }
+        if (!writeBehindBuffer.enqueue(conversationId, userId, messages)) {
+            log.warn("写入待写日志失败，降级为同步写库，conversationId: {}", conversationId);
+            return false;
+        }
+        appendCache(conversationId, userId, messages);
+        return true;
     }
 
     /**
-     * 更新缓存
+     * 将新消息追加到缓存列表尾部（RPUSHX），超出保留上限时裁剪最旧的消息
+     * 缓存列表不存在时不创建，避免生成缺少历史的残缺缓存
      *
      * @param conversationId 对话ID
      * @param userId         用户ID（可选）
+     * @param messages       新消息
      */
-    private void updateCache(String conversationId, Long userId) {
+    private void appendCache(String conversationId, Long userId, List<Message> messages) {
         if (!cacheService.isRedisAvailable()) {
             return;
         }
 
         try {
-            // 从数据库获取最新的完整消息列表
-            List<Message> fullMessages = super.get(conversationId, userId, Integer.MAX_VALUE);
-            if (!fullMessages.isEmpty()) {
-                String cacheKey = cacheService.generateChatMemoryKey(conversationId, userId);
-                cacheService.set(cacheKey, fullMessages, CACHE_EXPIRE_HOURS);
+            String cacheKey = cacheService.generateChatMemoryKey(conversationId, userId);
+            long size = cacheService.rightPushAllIfPresent(cacheKey, toCachedMessages(messages));
+            if (size <= 0) {
+                return;
             }
+            if (size > cacheMaxMessages) {
+                cacheService.trim(cacheKey, -cacheMaxMessages, -1);
+            }
+            cacheService.expire(cacheKey, CACHE_EXPIRE_HOURS);
         } catch (Exception e) {
             log.error("缓存更新失败，conversationId: {}, userId: {}, error: {}",
                     conversationId, userId, e.getMessage(), e);
         }
     }
 
+    /**
+     * 用数据库中的消息重建缓存列表
+     * 删除旧键、写入和设置过期在一个脚本内完成，兼容旧版本整段存储的字符串值，并发读取不会看到半成品列表
+     */
+    private void loadCache(String cacheKey, List<Message> messages) {
+        cacheService.replaceList(cacheKey, toCachedMessages(getLastNMessages(messages, cacheMaxMessages)),
+                CACHE_EXPIRE_HOURS);
+    }
+
+    private List<CachedMessage> toCachedMessages(List<Message> messages) {
+        List<CachedMessage> cachedMessages = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            cachedMessages.add(CachedMessage.from(message));
+        }
+        return cachedMessages;
+    }
+
+    private List<Message> toMessages(List<Object> cachedValues) {
+        List<Message> messages = new ArrayList<>(cachedValues.size());
+        for (Object value : cachedValues) {
+            if (value instanceof CachedMessage cachedMessage) {
+                Message message = cachedMessage.toMessage();
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        }
+        return messages;
+    }
+
     /**
      * 从消息列表中获取最近N条消息
      *
@@ -0,0 +1,41 @@
+package com.mq.mqaiagent.chatmemory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.Serializable;
+
+/**
+ * 缓存/待写日志中的消息
+ * Spring AI 的消息类型没有无参构造器，无法直接由 Jackson 反序列化，统一转成类型 + 文本存储
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachedMessage implements Serializable {
+
+    /**
+     * 消息类型（USER / ASSISTANT / SYSTEM）
+     */
+    private String messageType;
+
+    /**
+     * 消息文本
+     */
+    private String text;
+
+    public static CachedMessage from(Message message) {
+        return new CachedMessage(message.getMessageType().name(), message.getText());
+    }
+
+    /**
+     * 还原为 Spring AI 消息
+     *
+     * @return 消息，类型无法识别时返回null
+     */
+    public Message toMessage() {
+        return DatabaseChatMemory.createMessage(messageType, text);
+    }
+}
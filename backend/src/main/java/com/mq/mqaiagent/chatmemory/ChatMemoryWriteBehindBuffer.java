@@ -0,0 +1,371 @@
+package com.mq.mqaiagent.chatmemory;
+
+import com.mq.mqaiagent.mapper.ChatMessageMapper;
+import com.mq.mqaiagent.mapper.KeepReportMapper;
+import com.mq.mqaiagent.service.CacheService;
+import com.mq.mqaiagent.service.impl.CacheServiceImpl;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对话记忆写后缓冲（write-behind）
+ * 新消息先追加到 Redis 待写日志（列表），由后台任务按批次合并后写入数据库，
+ * 对话链路不再同步等待 MySQL。待写日志保存在 Redis 中，进程崩溃重启后会被重新回放。
+ * 一批条目全部写库成功后才从日志中移除，写库失败时保留并在下次刷写时重试。
+ * 每个条目带有唯一的写入ID，对话写库后记录已刷写到的写入ID，回放时跳过已写入的条目；
+ * 同一条目另存一份到对话自己的待写列表，读取时只扫描该对话的条目。
+ */
+@Component
+@Slf4j
+public class ChatMemoryWriteBehindBuffer {
+
+    /**
+     * 待写日志键
+     */
+    static final String PENDING_KEY = CacheServiceImpl.CHAT_WRITE_BEHIND_PREFIX + "pending";
+
+    /**
+     * 刷写锁键（多节点同时只有一个节点刷写）
+     */
+    static final String FLUSH_LOCK_KEY = PENDING_KEY + ":lock";
+
+    /**
+     * 已刷写标记过期时间（小时），超过此时间仍未从日志移除的条目不再能识别为已写入
+     */
+    private static final long FLUSHED_MARKER_EXPIRE_HOURS = 24;
+
+    /**
+     * 刷写锁超时时间（秒），防止持锁节点崩溃后锁无法释放
+     */
+    private static final long FLUSH_LOCK_SECONDS = 30;
+
+    @Resource
+    private KeepReportMapper keepReportMapper;
+
+    @Resource
+    private ChatMessageMapper chatMessageMapper;
+
+    @Resource
+    private CacheService cacheService;
+
+    @Resource
+    private ScheduledExecutorService scheduledExecutor;
+
+    @Value("${mq.chat-memory.storage:json}")
+    private String chatMemoryStorage;
+
+    /**
+     * 是否开启写后缓冲
+     */
+    @Value("${mq.chat-memory.write-behind.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 刷写间隔（毫秒）
+     */
+    @Value("${mq.chat-memory.write-behind.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    /**
+     * 单批最大刷写条数
+     */
+    @Value("${mq.chat-memory.write-behind.max-batch-size:200}")
+    private int maxBatchSize;
+
+    /**
+     * 实际写库的数据库对话记忆
+     */
+    private DatabaseChatMemory databaseChatMemory;
+
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * 统计信息
+     */
+    private final AtomicLong enqueuedWrites = new AtomicLong(0);
+    private final AtomicLong flushedWrites = new AtomicLong(0);
+    private final AtomicLong flushBatches = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        databaseChatMemory = DatabaseChatMemory.create(chatMemoryStorage, keepReportMapper, chatMessageMapper);
+        if (!enabled) {
+            return;
+        }
+        // 首次立即执行，回放上次进程退出前未刷写的日志
+        flushTask = scheduledExecutor.scheduleWithFixedDelay(this::flushQuietly,
+                0, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("对话记忆写后缓冲已开启，刷写间隔: {}ms, 单批上限: {}", flushIntervalMs, maxBatchSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            // 停机前尽量刷完
+            flushQuietly();
+        }
+    }
+
+    /**
+     * 是否开启写后缓冲
+     *
+     * @return 是否开启
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 追加待写消息
+     *
+     * @param conversationId 对话ID
+     * @param userId         用户ID（可为null）
+     * @param messages       新消息
+     * @return 是否写入待写日志成功，失败时调用方应同步写库
+     */
+    public boolean enqueue(String conversationId, Long userId, List<Message> messages) {
+        List<CachedMessage> pendingMessages = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            pendingMessages.add(CachedMessage.from(message));
+        }
+        PendingChatWrite write = new PendingChatWrite(UUID.randomUUID().toString(), conversationId, userId, pendingMessages);
+        if (cacheService.rightPushAll(PENDING_KEY, List.of(write)) < 0) {
+            return false;
+        }
+        // 先写日志再写对话列表：对话列表写入失败时消息仍会刷写，只是刷写前缓存未命中的读取看不到
+        if (cacheService.rightPushAll(conversationPendingKey(conversationId, userId), List.of(write)) < 0) {
+            log.warn("写入对话待写列表失败，conversationId: {}, userId: {}", conversationId, userId);
+        }
+        enqueuedWrites.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 读取对话尚未刷写的消息（按写入顺序），用于缓存未命中时补全数据库中还没有的消息
+     * 只读取该对话自己的待写列表，已写库但尚未从列表移除的条目会被跳过
+     *
+     * @param conversationId 对话ID
+     * @param userId         用户ID（可为null）
+     * @return 待写消息
+     */
+    public List<Message> pendingMessages(String conversationId, Long userId) {
+        String pendingKey = conversationPendingKey(conversationId, userId);
+        List<PendingChatWrite> writes = new ArrayList<>();
+        for (Object item : cacheService.range(pendingKey, 0, -1)) {
+            if (item instanceof PendingChatWrite write) {
+                writes.add(write);
+            }
+        }
+        if (writes.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Message> messages = new ArrayList<>();
+        for (PendingChatWrite write : skipFlushed(writes, cacheService.get(flushedMarkerKey(pendingKey), String.class))) {
+            messages.addAll(toMessages(write.getMessages()));
+        }
+        return messages;
+    }
+
+    /**
+     * 刷写待写日志：按批读取，同一对话的多次写入合并为一次写库，写完后从日志中移除
+     * 写库失败时抛出异常，该批条目保留在日志中；同一批中已写成功的对话已记录刷写标记，重试时跳过。
+     * 只有在写库之后、记录标记之前崩溃时才会重复写入。
+     *
+     * @return 本次刷写的写入条数
+     */
+    public int flush() {
+        String token = UUID.randomUUID().toString();
+        if (!cacheService.setIfAbsent(FLUSH_LOCK_KEY, token, FLUSH_LOCK_SECONDS)) {
+            return 0;
+        }
+        int flushed = 0;
+        try {
+            while (true) {
+                // 锁已过期并被其他节点获取时停止，避免两个节点刷写同一批条目
+                if (!token.equals(cacheService.get(FLUSH_LOCK_KEY, String.class))) {
+                    log.warn("对话记忆写后缓冲刷写锁已过期，停止本次刷写");
+                    break;
+                }
+                List<Object> batch = cacheService.range(PENDING_KEY, 0, maxBatchSize - 1);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                writeBatch(batch);
+                // 写库完成后再移除，崩溃时未移除的条目会在下次启动时回放
+                cacheService.trim(PENDING_KEY, batch.size(), -1);
+                flushed += batch.size();
+                flushedWrites.addAndGet(batch.size());
+                flushBatches.incrementAndGet();
+                if (batch.size() < maxBatchSize) {
+                    break;
+                }
+            }
+        } finally {
+            cacheService.deleteIfEquals(FLUSH_LOCK_KEY, token);
+        }
+        if (flushed > 0) {
+            log.debug("对话记忆写后缓冲刷写完成，条数: {}", flushed);
+        }
+        return flushed;
+    }
+
+    /**
+     * 获取统计信息
+     *
+     * @return 统计信息
+     */
+    public WriteBehindStats getStats() {
+        return new WriteBehindStats(enabled, cacheService.listSize(PENDING_KEY),
+                enqueuedWrites.get(), flushedWrites.get(), flushBatches.get());
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("对话记忆写后缓冲刷写失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 合并同一对话（对话ID + 用户ID）的写入，保持消息原有顺序
+     * 每个对话写库后记录其最后一个写入ID，并从对话待写列表中移除已写入的条目
+     */
+    private void writeBatch(List<Object> batch) {
+        Map<String, List<PendingChatWrite>> grouped = new LinkedHashMap<>();
+        for (Object item : batch) {
+            if (!(item instanceof PendingChatWrite write)) {
+                log.warn("忽略无法识别的待写条目: {}", item);
+                continue;
+            }
+            grouped.computeIfAbsent(conversationPendingKey(write.getConversationId(), write.getUserId()),
+                    k -> new ArrayList<>()).add(write);
+        }
+        for (Map.Entry<String, List<PendingChatWrite>> entry : grouped.entrySet()) {
+            String pendingKey = entry.getKey();
+            List<PendingChatWrite> writes = entry.getValue();
+            PendingChatWrite first = writes.get(0);
+            String lastWriteId = writes.get(writes.size() - 1).getWriteId();
+
+            // 上次刷写已写库、但未从日志移除的条目（部分失败或崩溃后回放）不再写入
+            List<PendingChatWrite> unflushed = skipFlushed(writes, cacheService.get(flushedMarkerKey(pendingKey), String.class));
+            if (!unflushed.isEmpty()) {
+                List<Message> messages = new ArrayList<>();
+                unflushed.forEach(write -> messages.addAll(toMessages(write.getMessages())));
+                // 写库失败时抛出异常，整批保留在待写日志中
+                databaseChatMemory.append(first.getConversationId(), first.getUserId(), messages);
+                if (lastWriteId != null
+                        && !cacheService.set(flushedMarkerKey(pendingKey), lastWriteId, FLUSHED_MARKER_EXPIRE_HOURS)) {
+                    log.warn("记录刷写标记失败，回放时可能重复写入，conversationId: {}", first.getConversationId());
+                }
+            }
+            trimConversationPending(pendingKey, lastWriteId);
+            // 缓存可能是在刷写前从数据库加载的，缺少待写消息，写库后让其失效
+            cacheService.delete(cacheService.generateChatMemoryKey(first.getConversationId(), first.getUserId()));
+        }
+    }
+
+    /**
+     * 从对话待写列表中移除写入ID及其之前的条目，之后追加的条目保留
+     */
+    private void trimConversationPending(String pendingKey, String lastWriteId) {
+        if (lastWriteId == null) {
+            return;
+        }
+        List<Object> items = cacheService.range(pendingKey, 0, -1);
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) instanceof PendingChatWrite write && lastWriteId.equals(write.getWriteId())) {
+                cacheService.trim(pendingKey, i + 1, -1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 跳过刷写标记及其之前的条目
+     * 同一对话的条目按写入顺序刷写，已写库的条目总是该对话条目的前缀，标记不在其中时说明均未写入
+     *
+     * @param writes          同一对话的条目（按写入顺序）
+     * @param flushedWriteId  已刷写到的写入ID，可为null
+     * @return 尚未写库的条目
+     */
+    static List<PendingChatWrite> skipFlushed(List<PendingChatWrite> writes, String flushedWriteId) {
+        if (flushedWriteId == null) {
+            return writes;
+        }
+        for (int i = writes.size() - 1; i >= 0; i--) {
+            if (flushedWriteId.equals(writes.get(i).getWriteId())) {
+                return writes.subList(i + 1, writes.size());
+            }
+        }
+        return writes;
+    }
+
+    /**
+     * 对话待写列表键
+     */
+    static String conversationPendingKey(String conversationId, Long userId) {
+        return PENDING_KEY + ":" + userId + ":" + conversationId;
+    }
+
+    /**
+     * 对话已刷写标记键，值为最后一个已写库条目的写入ID
+     */
+    private static String flushedMarkerKey(String pendingKey) {
+        return pendingKey + ":flushed";
+    }
+
+    private static List<Message> toMessages(List<CachedMessage> pendingMessages) {
+        List<Message> messages = new ArrayList<>(pendingMessages.size());
+        for (CachedMessage pendingMessage : pendingMessages) {
+            Message message = pendingMessage.toMessage();
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 待写条目
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PendingChatWrite implements Serializable {
+        /**
+         * 写入ID，用于识别已写库的条目（旧版本写入的条目为null）
+         */
+        private String writeId;
+        private String conversationId;
+        private Long userId;
+        private List<CachedMessage> messages;
+    }
+
+    /**
+     * 写后缓冲统计信息
+     */
+    public record WriteBehindStats(
+            boolean enabled,
+            long pendingWrites,
+            long enqueuedWrites,
+            long flushedWrites,
+            long flushBatches) {
+    }
+}
@@ -4,12 +4,14 @@ import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.mq.mqaiagent.mapper.ChatMessageMapper;
 import com.mq.mqaiagent.model.dto.keepReport.KeepReport;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 
 import java.util.*;
@@ -30,6 +32,27 @@ public class DatabaseChatMemory implements ChatMemory {
         this.KeepReportMapper = KeepReportMapper;
     }
 
+    /**
+     * 存储模式：追加写（chat_message 表）
+     */
+    public static final String STORAGE_APPEND_ONLY = "append-only";
+
+    /**
+     * 按存储模式创建数据库对话记忆
+     *
+     * @param storage           存储模式：json（默认）/ append-only
+     * @param keepReportMapper  会话数据库映射器
+     * @param chatMessageMapper 消息表数据库映射器（仅追加写模式使用）
+     * @return 数据库对话记忆
+     */
+    public static DatabaseChatMemory create(String storage, com.mq.mqaiagent.mapper.KeepReportMapper keepReportMapper,
+                                            ChatMessageMapper chatMessageMapper) {
+        if (STORAGE_APPEND_ONLY.equalsIgnoreCase(storage)) {
+            return new AppendOnlyChatMemory(keepReportMapper, chatMessageMapper);
+        }
+        return new DatabaseChatMemory(keepReportMapper);
+    }
+
     /**
      * 设置当前用户ID
      *
@@ -39,6 +62,15 @@ public class DatabaseChatMemory implements ChatMemory {
         this.currentUserId = userId;
     }
 
+    /**
+     * 获取当前用户ID
+     *
+     * @return 用户ID，未设置时为 null
+     */
+    protected Long getCurrentUserId() {
+        return currentUserId;
+    }
+
     /**
      * 向指定对话 ID 的记忆中添加消息列表。
      * 会将新消息追加到现有消息列表末尾，并持久化到数据库。
@@ -142,10 +174,21 @@ public class DatabaseChatMemory implements ChatMemory {
      */
     @Override
     public void clear(String conversationId) {
+        clear(conversationId, currentUserId);
+    }
+
+    /**
+     * 清除指定对话 ID 的所有记忆（支持用户ID），只删除该用户的记录。
+     *
+     * @param conversationId 对话的唯一标识符。
+     * @param userId         用户ID（可为null，为null时不按用户过滤）。
+     */
+    public void clear(String conversationId, Long userId) {
         try {
             // 构建查询条件
             LambdaQueryWrapper<KeepReport> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(KeepReport::getChatId, getSafeConversationId(conversationId));
+            queryWrapper.eq(KeepReport::getChatId, getSafeConversationId(conversationId))
+                    .eq(userId != null, KeepReport::getUserId, userId);
 
             // 删除对应的记录
             int deletedRows = KeepReportMapper.delete(queryWrapper);
@@ -167,34 +210,7 @@ public class DatabaseChatMemory implements ChatMemory {
      * @return 对话的消息列表。如果反序列化失败或记录不存在，则返回空列表。
      */
     private List<Message> getOrCreateConversation(String conversationId) {
-        String safeConversationId = getSafeConversationId(conversationId);
-        try {
-            // 构建查询条件
-            LambdaQueryWrapper<KeepReport> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(KeepReport::getChatId, safeConversationId);
-
-            // 查询数据库
-            KeepReport loveReport = KeepReportMapper.selectOne(queryWrapper);
-
-            if (loveReport != null && loveReport.getMessages() != null && !loveReport.getMessages().isBlank()) {
-                // 从数据库记录中反序列化完整的消息列表
-                try {
-                    // 解析存储的简化消息格式
-                    return deserializeMessages(loveReport.getMessages());
-                } catch (Exception e) {
-                    log.error("反序列化对话消息失败，对话ID: {}, 错误: {}", safeConversationId, e.getMessage(), e);
-                    // 反序列化失败，可能数据已损坏，返回空列表
-                    return new ArrayList<>();
-                }
-            } else {
-                log.debug("未找到对话记录或消息为空，对话ID: {}", safeConversationId);
-            }
-        } catch (Exception e) {
-            log.error("获取对话记录失败，对话ID: {}, 错误: {}", safeConversationId, e.getMessage(), e);
-        }
-
-        // 如果记录不存在或发生异常，返回新的空列表
-        return new ArrayList<>();
+        return getOrCreateConversation(conversationId, null);
     }
 
     /**
@@ -202,39 +218,18 @@ public class DatabaseChatMemory implements ChatMemory {
      * 如果对应的记录存在，则从中反序列化消息列表；否则，返回一个新的空列表。
      *
      * @param conversationId 对话的唯一标识符。
-     * @param userId         用户ID。
+     * @param userId         用户ID（为 null 时只按对话ID查询）。
      * @return 对话的消息列表。如果反序列化失败或记录不存在，则返回空列表。
      */
     private List<Message> getOrCreateConversation(String conversationId, Long userId) {
-        String safeConversationId = getSafeConversationId(conversationId);
         try {
-            // 构建查询条件
-            LambdaQueryWrapper<KeepReport> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(KeepReport::getChatId, safeConversationId)
-                    .eq(KeepReport::getUserId, userId);
-
-            // 查询数据库
-            KeepReport keepReport = KeepReportMapper.selectOne(queryWrapper);
-
-            if (keepReport != null && keepReport.getMessages() != null && !keepReport.getMessages().isBlank()) {
-                // 从数据库记录中反序列化完整的消息列表
-                try {
-                    // 解析存储的简化消息格式
-                    return deserializeMessages(keepReport.getMessages());
-                } catch (Exception e) {
-                    log.error("反序列化对话消息失败，对话ID: {}, 用户ID: {}, 错误: {}", safeConversationId, userId, e.getMessage(), e);
-                    // 反序列化失败，可能数据已损坏，返回空列表
-                    return new ArrayList<>();
-                }
-            } else {
-                log.debug("未找到对话记录或消息为空，对话ID: {}, 用户ID: {}", safeConversationId, userId);
-            }
+            return loadConversation(conversationId, userId);
         } catch (Exception e) {
-            log.error("获取对话记录失败，对话ID: {}, 用户ID: {}, 错误: {}", safeConversationId, userId, e.getMessage(), e);
+            log.error("获取对话记录失败，对话ID: {}, 用户ID: {}, 错误: {}",
+                    getSafeConversationId(conversationId), userId, e.getMessage(), e);
+            // 如果发生异常，返回新的空列表
+            return new ArrayList<>();
         }
-
-        // 如果记录不存在或发生异常，返回新的空列表
-        return new ArrayList<>();
     }
 
     /**
@@ -245,46 +240,7 @@ public class DatabaseChatMemory implements ChatMemory {
      * @param messages       要保存的完整消息列表。
      */
     private void saveConversation(String conversationId, List<Message> messages) {
-        String safeConversationId = getSafeConversationId(conversationId);
-        try {
-            // 将消息列表转换为简化的JSON格式
-            String messagesJson = serializeMessages(messages);
-
-            // 构建查询条件
-            LambdaQueryWrapper<KeepReport> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(KeepReport::getChatId, safeConversationId);
-
-            // 查询数据库中是否已存在该对话的记录
-            KeepReport existingReport = KeepReportMapper.selectOne(queryWrapper);
-
-            if (existingReport != null) {
-                // 更新现有记录的 messages 字段
-                existingReport.setMessages(messagesJson);
-                int updatedRows = KeepReportMapper.updateById(existingReport);
-                if (updatedRows > 0) {
-                    log.debug("成功更新对话记录: {}", safeConversationId);
-                } else {
-                    log.warn("更新对话记录失败（可能已被删除）: {}", safeConversationId);
-                }
-            } else {
-                // 创建新记录
-                KeepReport newReport = KeepReport.builder()
-                        .chatId(safeConversationId)
-                        .createTime(new Date())
-                        .updateTime(new Date())
-                        // 存储序列化后的完整消息列表
-                        .messages(messagesJson)
-                        .build();
-                int insertedRows = KeepReportMapper.insert(newReport);
-                if (insertedRows > 0) {
-                    log.debug("成功插入新对话记录: {}", safeConversationId);
-                } else {
-                    log.error("插入新对话记录失败: {}", safeConversationId);
-                }
-            }
-        } catch (Exception e) {
-            log.error("保存对话记录失败，对话ID: {}, 错误: {}", safeConversationId, e.getMessage(), e);
-        }
+        saveConversation(conversationId, null, messages);
     }
 
     /**
@@ -292,56 +248,109 @@ public class DatabaseChatMemory implements ChatMemory {
      * 会覆盖之前的记录。
      *
      * @param conversationId 对话的唯一标识符。
-     * @param userId         用户ID。
+     * @param userId         用户ID（为 null 时只按对话ID查询）。
      * @param messages       要保存的完整消息列表。
      */
     private void saveConversation(String conversationId, Long userId, List<Message> messages) {
-        String safeConversationId = getSafeConversationId(conversationId);
         try {
-            // 将消息列表转换为简化的JSON格式
-            String messagesJson = serializeMessages(messages);
+            storeConversation(conversationId, userId, messages);
+        } catch (Exception e) {
+            log.error("保存对话记录失败，对话ID: {}, 用户ID: {}, 错误: {}",
+                    getSafeConversationId(conversationId), userId, e.getMessage(), e);
+        }
+    }
 
-            // 获取最后一条消息内容用于列表展示
-            String lastMessage = getLastMessageContent(messages);
+    /**
+     * 向对话追加消息，写库失败时抛出异常而不是只记录日志。
+     * 供写后缓冲刷写使用：失败的批次保留在待写日志中，下次刷写时重试。
+     *
+     * @param conversationId 对话的唯一标识符。
+     * @param userId         用户ID（可为null）。
+     * @param messages       要追加的消息列表。
+     */
+    public void append(String conversationId, Long userId, List<Message> messages) {
+        List<Message> conversationMessages = loadConversation(conversationId, userId);
+        conversationMessages.addAll(messages);
+        storeConversation(conversationId, userId, conversationMessages);
+    }
 
-            // 构建查询条件
-            LambdaQueryWrapper<KeepReport> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(KeepReport::getChatId, safeConversationId)
-                    .eq(KeepReport::getUserId, userId);
+    /**
+     * 读取对话的完整消息列表，数据库访问失败时抛出异常。
+     * 反序列化失败（数据已损坏）时返回空列表。
+     */
+    private List<Message> loadConversation(String conversationId, Long userId) {
+        String safeConversationId = getSafeConversationId(conversationId);
+        // 构建查询条件
+        LambdaQueryWrapper<KeepReport> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(KeepReport::getChatId, safeConversationId)
+                .eq(userId != null, KeepReport::getUserId, userId);
+
+        // 查询数据库
+        KeepReport keepReport = KeepReportMapper.selectOne(queryWrapper);
+
+        if (keepReport != null && keepReport.getMessages() != null && !keepReport.getMessages().isBlank()) {
+            // 从数据库记录中反序列化完整的消息列表
+            try {
+                // 解析存储的简化消息格式
+                return deserializeMessages(keepReport.getMessages());
+            } catch (Exception e) {
+                log.error("反序列化对话消息失败，对话ID: {}, 用户ID: {}, 错误: {}", safeConversationId, userId, e.getMessage(), e);
+                // 反序列化失败，可能数据已损坏，返回空列表
+                return new ArrayList<>();
+            }
+        }
+        log.debug("未找到对话记录或消息为空，对话ID: {}, 用户ID: {}", safeConversationId, userId);
+        return new ArrayList<>();
+    }
 
-            // 查询数据库中是否已存在该对话的记录
-            KeepReport existingReport = KeepReportMapper.selectOne(queryWrapper);
+    /**
+     * 保存对话的完整消息列表，数据库访问失败时抛出异常。
+     */
+    private void storeConversation(String conversationId, Long userId, List<Message> messages) {
+        String safeConversationId = getSafeConversationId(conversationId);
+        // 将消息列表转换为简化的JSON格式
+        String messagesJson = serializeMessages(messages);
 
-            if (existingReport != null) {
-                // 更新现有记录的 messages 和 lastMessage 字段
-                existingReport.setMessages(messagesJson);
+        // 获取最后一条消息内容用于列表展示（仅记录有用户的对话）
+        String lastMessage = userId != null ? getLastMessageContent(messages) : null;
+
+        // 构建查询条件
+        LambdaQueryWrapper<KeepReport> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(KeepReport::getChatId, safeConversationId)
+                .eq(userId != null, KeepReport::getUserId, userId);
+
+        // 查询数据库中是否已存在该对话的记录
+        KeepReport existingReport = KeepReportMapper.selectOne(queryWrapper);
+
+        if (existingReport != null) {
+            // 更新现有记录的 messages 和 lastMessage 字段
+            existingReport.setMessages(messagesJson);
+            if (userId != null) {
                 existingReport.setLastMessage(lastMessage);
-                int updatedRows = KeepReportMapper.updateById(existingReport);
-                if (updatedRows > 0) {
-                    log.debug("成功更新对话记录: {}, 用户ID: {}", safeConversationId, userId);
-                } else {
-                    log.warn("更新对话记录失败（可能已被删除）: {}, 用户ID: {}", safeConversationId, userId);
-                }
+            }
+            int updatedRows = KeepReportMapper.updateById(existingReport);
+            if (updatedRows > 0) {
+                log.debug("成功更新对话记录: {}, 用户ID: {}", safeConversationId, userId);
             } else {
-                // 创建新记录
-                KeepReport newReport = KeepReport.builder()
-                        .chatId(safeConversationId)
-                        .userId(userId)
-                        .createTime(new Date())
-                        .updateTime(new Date())
-                        // 存储序列化后的完整消息列表
-                        .messages(messagesJson)
-                        .lastMessage(lastMessage)
-                        .build();
-                int insertedRows = KeepReportMapper.insert(newReport);
-                if (insertedRows > 0) {
-                    log.debug("成功插入新对话记录: {}, 用户ID: {}", safeConversationId, userId);
-                } else {
-                    log.error("插入新对话记录失败: {}, 用户ID: {}", safeConversationId, userId);
-                }
+                log.warn("更新对话记录失败（可能已被删除）: {}, 用户ID: {}", safeConversationId, userId);
+            }
+        } else {
+            // 创建新记录
+            KeepReport newReport = KeepReport.builder()
+                    .chatId(safeConversationId)
+                    .userId(userId)
+                    .createTime(new Date())
+                    .updateTime(new Date())
+                    // 存储序列化后的完整消息列表
+                    .messages(messagesJson)
+                    .lastMessage(lastMessage)
+                    .build();
+            int insertedRows = KeepReportMapper.insert(newReport);
+            if (insertedRows > 0) {
+                log.debug("成功插入新对话记录: {}, 用户ID: {}", safeConversationId, userId);
+            } else {
+                log.error("插入新对话记录失败: {}, 用户ID: {}", safeConversationId, userId);
             }
-        } catch (Exception e) {
-            log.error("保存对话记录失败，对话ID: {}, 用户ID: {}, 错误: {}", safeConversationId, userId, e.getMessage(), e);
         }
     }
 
@@ -351,7 +360,7 @@ public class DatabaseChatMemory implements ChatMemory {
      * @param messages 消息列表
      * @return 最后一条消息的内容，如果为空则返回默认文本
      */
-    private String getLastMessageContent(List<Message> messages) {
+    protected String getLastMessageContent(List<Message> messages) {
         if (messages == null || messages.isEmpty()) {
             return "暂无消息";
         }
@@ -373,7 +382,7 @@ public class DatabaseChatMemory implements ChatMemory {
      * @param conversationId 原始对话的唯一标识符。
      * @return 处理后的安全对话 ID，例如 "chat_your_conversation_id"。
      */
-    private String getSafeConversationId(String conversationId) {
+    protected String getSafeConversationId(String conversationId) {
         // 确保 conversationId 不为 null 或空
         if (conversationId == null || conversationId.isBlank()) {
             log.warn("接收到空的 conversationId，将使用默认值 'default_chat'");
@@ -446,7 +455,7 @@ public class DatabaseChatMemory implements ChatMemory {
      * @param json 要反序列化的JSON字符串
      * @return 反序列化后的消息列表
      */
-    private List<Message> deserializeMessages(String json) {
+    protected List<Message> deserializeMessages(String json) {
         List<Message> messages = new ArrayList<>();
         JSONArray jsonArray = JSON.parseArray(json);
 
@@ -482,4 +491,24 @@ public class DatabaseChatMemory implements ChatMemory {
         }
         return messages;
     }
+
+    /**
+     * 根据消息类型和文本内容还原消息对象
+     *
+     * @param messageType 消息类型名称
+     * @param content     文本内容
+     * @return 消息对象，不支持的类型返回 null
+     */
+    static Message createMessage(String messageType, String content) {
+        String text = content != null ? content : "";
+        return switch (MessageType.valueOf(messageType)) {
+            case USER -> new UserMessage(text);
+            case ASSISTANT -> new AssistantMessage(text, new HashMap<>());
+            case SYSTEM -> new SystemMessage(text);
+            default -> {
+                log.warn("不支持的消息类型: {}", messageType);
+                yield null;
+            }
+        };
+    }
 }
@@ -0,0 +1,82 @@
+package com.mq.mqaiagent.chatmemory;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 按请求区分用户的对话记忆
+ * 不再依赖对话记忆实例上可变的 currentUserId，而是由 {@link com.mq.mqaiagent.advisor.UserAwareChatMemoryAdvisor}
+ * 从 advisor 上下文参数中读取用户ID，编码进传入的对话ID（见 {@link #scopedConversationId}），
+ * 这里再解码后调用带用户ID的读写方法。因此同一个实例可以被所有用户共享。
+ */
+public class UserAwareChatMemory implements ChatMemory {
+
+    /**
+     * 对话ID与用户ID之间的分隔符
+     */
+    static final String USER_SEPARATOR = "#user:";
+
+    private final CachedDatabaseChatMemory delegate;
+
+    public UserAwareChatMemory(CachedDatabaseChatMemory delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * 生成带用户作用域的对话ID
+     *
+     * @param conversationId 对话ID
+     * @param userId         用户ID（可为null）
+     * @return userId 为 null 时返回原对话ID
+     */
+    public static String scopedConversationId(String conversationId, Long userId) {
+        return userId == null ? conversationId : conversationId + USER_SEPARATOR + userId;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        ScopedId scopedId = ScopedId.parse(conversationId);
+        if (scopedId.userId() == null) {
+            delegate.add(scopedId.conversationId(), messages);
+        } else {
+            delegate.add(scopedId.conversationId(), scopedId.userId(), messages);
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        ScopedId scopedId = ScopedId.parse(conversationId);
+        if (scopedId.userId() == null) {
+            return delegate.get(scopedId.conversationId(), lastN);
+        }
+        return delegate.get(scopedId.conversationId(), scopedId.userId(), lastN);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        ScopedId scopedId = ScopedId.parse(conversationId);
+        delegate.clear(scopedId.conversationId(), scopedId.userId());
+    }
+
+    /**
+     * 解码后的对话ID与用户ID
+     */
+    record ScopedId(String conversationId, Long userId) {
+
+        static ScopedId parse(String scopedConversationId) {
+            int separator = scopedConversationId.lastIndexOf(USER_SEPARATOR);
+            if (separator < 0) {
+                return new ScopedId(scopedConversationId, null);
+            }
+            try {
+                Long userId = Long.valueOf(scopedConversationId.substring(separator + USER_SEPARATOR.length()));
+                return new ScopedId(scopedConversationId.substring(0, separator), userId);
+            } catch (NumberFormatException e) {
+                // 对话ID本身包含分隔符，按普通对话ID处理
+                return new ScopedId(scopedConversationId, null);
+            }
+        }
+    }
+}
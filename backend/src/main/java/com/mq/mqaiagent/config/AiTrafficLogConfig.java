@@ -0,0 +1,72 @@
+package com.mq.mqaiagent.config;
+
+import com.mq.mqaiagent.advisor.AiTrafficLogger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * AI 请求日志配置
+ * 启动时把采样策略设置到 AiTrafficLogger，客户端类型未单独配置的项沿用默认值；
+ * 关闭时写完 AiTrafficLogger 队列中剩余的日志。
+ */
+@Configuration
+@ConfigurationProperties(prefix = "mq.ai-log")
+@Data
+@Slf4j
+public class AiTrafficLogConfig {
+
+    /**
+     * 是否记录请求内容（关闭时仍统计耗时和 token 用量）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 采样率，0 到 1
+     */
+    private double sampleRate = 1.0;
+
+    /**
+     * 请求和响应文本各自保留的最大字符数
+     */
+    private int maxChars = 2000;
+
+    /**
+     * 按客户端类型覆盖的策略
+     */
+    private Map<String, ClientPolicy> clients = new HashMap<>();
+
+    @Data
+    public static class ClientPolicy {
+
+        private Boolean enabled;
+
+        private Double sampleRate;
+
+        private Integer maxChars;
+    }
+
+    @PostConstruct
+    public void applyPolicies() {
+        AiTrafficLogger.Policy defaultPolicy = new AiTrafficLogger.Policy(enabled, sampleRate, maxChars);
+        Map<String, AiTrafficLogger.Policy> clientPolicies = new HashMap<>();
+        clients.forEach((clientType, policy) -> clientPolicies.put(clientType, new AiTrafficLogger.Policy(
+                policy.getEnabled() != null ? policy.getEnabled() : enabled,
+                policy.getSampleRate() != null ? policy.getSampleRate() : sampleRate,
+                policy.getMaxChars() != null ? policy.getMaxChars() : maxChars)));
+        AiTrafficLogger.getInstance().configure(defaultPolicy, clientPolicies);
+        log.info("AI 请求日志策略: 默认 {}，按客户端类型 {}", defaultPolicy, clientPolicies);
+    }
+
+    @PreDestroy
+    public void flush() {
+        AiTrafficLogger.getInstance().shutdown(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,104 @@
+package com.mq.mqaiagent.config;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限制并发数的虚拟线程执行器
+ * 每个任务一个虚拟线程，阻塞的模型调用、工具调用只挂起虚拟线程而不占用平台线程。
+ * 超过并发上限的任务不会阻塞提交方，而是在各自的虚拟线程中排队等待许可（挂起的虚拟线程开销很小），
+ * 从而限制同时访问下游服务的任务数。
+ */
+public class BoundedVirtualThreadExecutor extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+
+    private final Semaphore permits;
+
+    private final int maxConcurrency;
+
+    /**
+     * @param namePrefix     线程名前缀
+     * @param maxConcurrency 最大并发任务数
+     */
+    public BoundedVirtualThreadExecutor(String namePrefix, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+        this.permits = new Semaphore(maxConcurrency);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                // 等待许可时被中断（如 shutdownNow）：不能直接丢弃任务，否则等待其结果的调用方永远不会完成
+                Thread.currentThread().interrupt();
+                if (command instanceof FutureTask<?> futureTask) {
+                    futureTask.cancel(false);
+                } else {
+                    // 无法取消的任务仍然执行（不占用许可），保留中断标记让其中的阻塞调用尽快结束
+                    command.run();
+                }
+                return;
+            }
+            try {
+                command.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * @return 正在执行的任务数
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * @return 等待许可的任务数（估计值）
+     */
+    public int getQueuedCount() {
+        return permits.getQueueLength();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -1,11 +1,15 @@
 package com.mq.mqaiagent.config;
 
 import com.google.common.util.concurrent.RateLimiter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -48,10 +52,16 @@ public class RateLimiterConfig {
 
     /**
      * 异步任务执行器
-     * 用于处理异步任务，避免阻塞主线程
+     * 用于处理异步任务，避免阻塞主线程。
+     * 开启 mq.executor.virtual-threads 后改为每任务一个虚拟线程，并按配置限制并发数
      */
     @Bean(name = "aiTaskExecutor")
-    public ThreadPoolExecutor aiTaskExecutor() {
+    public ExecutorService aiTaskExecutor(
+            @Value("${mq.executor.virtual-threads:false}") boolean virtualThreads,
+            @Value("${mq.executor.ai-task.max-concurrency:200}") int maxConcurrency) {
+        if (virtualThreads) {
+            return new BoundedVirtualThreadExecutor("ai-task-", maxConcurrency);
+        }
         return new ThreadPoolExecutor(
                 10, // 核心线程数
                 50, // 最大线程数
@@ -63,6 +73,33 @@ public class RateLimiterConfig {
         );
     }
 
+    /**
+     * 智能体执行器
+     * 智能体每一步都会阻塞等待模型和工具调用，开启虚拟线程后每个会话占用一个虚拟线程，
+     * 并发会话数由 mq.executor.agent.max-concurrency 限制；未开启时沿用公共 ForkJoinPool
+     * 应用关闭时由 Spring 调用 close() 等待执行中的会话结束（公共 ForkJoinPool 的 close() 不生效）
+     */
+    @Bean(name = "agentExecutor")
+    public Executor agentExecutor(
+            @Value("${mq.executor.virtual-threads:false}") boolean virtualThreads,
+            @Value("${mq.executor.agent.max-concurrency:1000}") int maxConcurrency) {
+        if (virtualThreads) {
+            return new BoundedVirtualThreadExecutor("agent-", maxConcurrency);
+        }
+        return ForkJoinPool.commonPool();
+    }
+
+    /**
+     * 智能体并行工具执行器
+     * 同一步中的多个工具调用在虚拟线程中并行执行，所有智能体共享，
+     * 同时运行的工具数由 mq.executor.agent-tool.max-concurrency 限制
+     */
+    @Bean(name = "agentToolExecutor")
+    public ExecutorService agentToolExecutor(
+            @Value("${mq.executor.agent-tool.max-concurrency:200}") int maxConcurrency) {
+        return new BoundedVirtualThreadExecutor("agent-tool-", maxConcurrency);
+    }
+
     /**
      * 定时任务执行器
      * 用于清理过期的限流器等定时任务
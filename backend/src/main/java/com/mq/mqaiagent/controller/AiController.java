@@ -1,6 +1,7 @@
 package com.mq.mqaiagent.controller;
 
 import com.google.common.util.concurrent.RateLimiter;
+import com.mq.mqaiagent.agent.AgentContextManager;
 import com.mq.mqaiagent.agent.MqManus;
 import com.mq.mqaiagent.app.KeepApp;
 import com.mq.mqaiagent.common.ErrorCode;
@@ -11,6 +12,7 @@ import com.mq.mqaiagent.service.UserService;
 import jakarta.annotation.Resource;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -20,6 +22,7 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import reactor.core.publisher.Flux;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 
@@ -45,6 +48,60 @@ public class AiController {
     @Resource
     private com.mq.mqaiagent.pool.ChatClientPool chatClientPool;
 
+    @Resource
+    private Executor agentExecutor;
+
+    @Resource
+    private Executor agentToolExecutor;
+
+    /**
+     * 同一步中的多个工具调用是否并行执行
+     */
+    @Value("${mq.agent.parallel-tools.enabled:false}")
+    private boolean parallelToolCalls;
+
+    /**
+     * 并行执行时同时运行的工具数上限
+     */
+    @Value("${mq.agent.parallel-tools.max-parallelism:4}")
+    private int maxParallelTools;
+
+    /**
+     * 单个工具的超时时间（毫秒）
+     */
+    @Value("${mq.agent.parallel-tools.timeout-ms:60000}")
+    private long toolTimeoutMs;
+
+    /**
+     * 流式接口是否逐字输出智能体的思考内容（SSE thinking 事件）
+     */
+    @Value("${mq.agent.stream-thinking:true}")
+    private boolean streamThinking;
+
+    /**
+     * 智能体上下文字符预算（小于等于0时不压缩）
+     */
+    @Value("${mq.agent.context.max-chars:60000}")
+    private int contextMaxChars;
+
+    /**
+     * 原样保留的最近消息数
+     */
+    @Value("${mq.agent.context.keep-recent-messages:6}")
+    private int contextKeepRecentMessages;
+
+    /**
+     * 较早的工具结果保留的字符数
+     */
+    @Value("${mq.agent.context.old-tool-response-chars:2000}")
+    private int contextOldToolResponseChars;
+
+    /**
+     * 单个工具结果的字符上限
+     */
+    @Value("${mq.agent.context.max-tool-response-chars:20000}")
+    private int contextMaxToolResponseChars;
+
     /**
      * KeepApp 使用流式对话（支持用户认证）前端调用的接口
      *
@@ -123,7 +180,7 @@ public class AiController {
     public SseEmitter doChatWithManus(String message) {
         // 使用对象池创建MqManus实例（不支持记忆）
         MqManus mqManus = new MqManus(allTools, chatClientPool);
-        return mqManus.runStream(message);
+        return configureAgent(mqManus).runStream(message);
     }
 
     /**
@@ -140,6 +197,23 @@ public class AiController {
         User currentUser = userService.getLoginUser(request);
         // 使用对象池创建支持用户记忆的MqManus实例
         MqManus mqManus = new MqManus(allTools, chatClientPool, currentUser.getId());
-        return mqManus.runStream(message);
+        return configureAgent(mqManus).runStream(message);
+    }
+
+    /**
+     * 应用智能体的执行器、工具并行与上下文配置
+     */
+    private MqManus configureAgent(MqManus mqManus) {
+        mqManus.setExecutor(agentExecutor);
+        mqManus.setParallelToolCalls(parallelToolCalls);
+        mqManus.setToolExecutor(agentToolExecutor);
+        mqManus.setMaxParallelTools(maxParallelTools);
+        mqManus.setToolTimeoutMs(toolTimeoutMs);
+        mqManus.setStreamThinking(streamThinking);
+        mqManus.setContextManager(contextMaxChars > 0
+                ? new AgentContextManager(contextMaxChars, contextKeepRecentMessages,
+                        contextOldToolResponseChars, contextMaxToolResponseChars)
+                : null);
+        return mqManus;
     }
 }
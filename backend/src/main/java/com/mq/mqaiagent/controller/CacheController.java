@@ -4,6 +4,7 @@ import com.mq.mqaiagent.annotation.AuthCheck;
 import com.mq.mqaiagent.common.BaseResponse;
 import com.mq.mqaiagent.common.ResultUtils;
 import com.mq.mqaiagent.constant.UserConstant;
+import com.mq.mqaiagent.manager.InFlightRequestCoalescer;
 import com.mq.mqaiagent.service.AiResponseCacheService;
 import com.mq.mqaiagent.service.CacheMetricsService;
 import com.mq.mqaiagent.service.CacheService;
@@ -32,6 +33,9 @@ public class CacheController {
     @Resource
     private CacheMetricsService cacheMetricsService;
 
+    @Resource
+    private InFlightRequestCoalescer inFlightRequestCoalescer;
+
     /**
      * 获取缓存性能报告
      */
@@ -58,6 +62,8 @@ public class CacheController {
             status.put("chatMemoryCacheHitRate", cacheMetricsService.getChatMemoryCacheHitRate());
             status.put("aiResponseCacheHitRate", cacheMetricsService.getAiResponseCacheHitRate());
             status.put("savedApiCalls", cacheMetricsService.getSavedApiCalls());
+            status.put("nearCache", cacheService.getNearCacheStats());
+            status.put("singleFlight", inFlightRequestCoalescer.getStats());
 
             AiResponseCacheService.CacheStats aiCacheStats = aiResponseCacheService.getCacheStats();
             status.put("totalCachedQuestions", aiCacheStats.getTotalCachedQuestions());
@@ -182,6 +188,7 @@ public class CacheController {
 
             health.put("status", redisAvailable ? "UP" : "DOWN");
             health.put("redisAvailable", redisAvailable);
+            health.put("circuitBreaker", cacheService.getRedisHealthStats());
             health.put("timestamp", System.currentTimeMillis());
 
             if (redisAvailable) {
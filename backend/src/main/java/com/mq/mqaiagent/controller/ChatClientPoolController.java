@@ -1,5 +1,6 @@
 package com.mq.mqaiagent.controller;
 
+import com.mq.mqaiagent.advisor.AiTrafficLogger;
 import com.mq.mqaiagent.annotation.AuthCheck;
 import com.mq.mqaiagent.common.BaseResponse;
 import com.mq.mqaiagent.common.ResultUtils;
@@ -9,6 +10,8 @@ import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Map;
+
 /**
  * ChatClient 对象池监控控制器
  * 用于监控和管理 ChatClient 对象池的性能
@@ -116,6 +119,21 @@ public class ChatClientPoolController {
         }
     }
 
+    /**
+     * 获取按客户端类型汇总的 AI 请求指标（请求数、错误数、采样数、耗时、token 用量）
+     *
+     * @return 客户端类型到指标的映射
+     */
+    @GetMapping("/ai-traffic")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Map<String, AiTrafficLogger.MetricsSnapshot>> getAiTrafficMetrics() {
+        AiTrafficLogger trafficLogger = AiTrafficLogger.getInstance();
+        if (trafficLogger.getDroppedCount() > 0) {
+            log.warn("AI 请求日志队列已满，累计丢弃 {} 条", trafficLogger.getDroppedCount());
+        }
+        return ResultUtils.success(trafficLogger.getMetrics());
+    }
+
     /**
      * 评估性能等级
      */
@@ -1,8 +1,10 @@
 package com.mq.mqaiagent.controller;
 
+import com.mq.mqaiagent.annotation.AuthCheck;
 import com.mq.mqaiagent.common.BaseResponse;
 import com.mq.mqaiagent.common.ErrorCode;
 import com.mq.mqaiagent.common.ResultUtils;
+import com.mq.mqaiagent.constant.UserConstant;
 import com.mq.mqaiagent.exception.BusinessException;
 import com.mq.mqaiagent.model.dto.ChatHistoryDetailDTO;
 import com.mq.mqaiagent.model.dto.ChatHistoryListDTO;
@@ -129,4 +131,25 @@ public class ChatHistoryController {
             return ResultUtils.error(ErrorCode.SYSTEM_ERROR, "系统异常");
         }
     }
+
+    /**
+     * 将历史对话迁移到追加写消息表（管理员）
+     *
+     * @param batchSize 每批读取的对话数量
+     * @return 迁移的消息条数
+     */
+    @PostMapping("/migrate")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Integer> migrateToMessageTable(@RequestParam(defaultValue = "200") int batchSize) {
+        try {
+            if (batchSize <= 0) {
+                return ResultUtils.error(ErrorCode.PARAMS_ERROR, "批次大小必须大于0");
+            }
+            int migrated = chatHistoryService.migrateToMessageTable(batchSize);
+            return ResultUtils.success(migrated);
+        } catch (Exception e) {
+            log.error("迁移历史对话异常: {}", e.getMessage(), e);
+            return ResultUtils.error(ErrorCode.SYSTEM_ERROR, "系统异常");
+        }
+    }
 }
@@ -0,0 +1,5 @@
+package com.mq.mqaiagent.demo.invoke;
+
+public interface TestApiKey {
+    String API_KEY = "local";
+}
@@ -0,0 +1,269 @@
+package com.mq.mqaiagent.manager;
+
+import com.mq.mqaiagent.service.CacheService;
+import com.mq.mqaiagent.service.TextSimilarityService;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 相同问题的在途请求合并（single-flight）
+ * 缓存未命中的同一问题同时到达时，本节点只发起一次模型调用，其余请求等待并共享结果；
+ * 流式请求共享同一个上游 Flux，晚到的订阅者会先收到已输出的片段。
+ * 跨节点通过 Redis 锁协调：未拿到锁的节点等待持锁节点写入 AI 响应缓存后直接读取，
+ * 锁释放后仍无缓存（持锁节点失败）或等待超时时再自行调用模型。
+ */
+@Component
+@Slf4j
+public class InFlightRequestCoalescer {
+
+    /**
+     * 跨节点在途锁前缀
+     */
+    public static final String LOCK_PREFIX = "mq:inflight:";
+
+    @Resource
+    private CacheService cacheService;
+
+    @Resource
+    private TextSimilarityService textSimilarityService;
+
+    /**
+     * 在途锁过期时间（秒），需大于一次模型调用的耗时，避免持锁节点宕机后锁无法释放
+     */
+    @Value("${mq.cache.single-flight.lock-seconds:120}")
+    private long lockSeconds;
+
+    /**
+     * 等待其他节点结果的最长时间（毫秒）
+     */
+    @Value("${mq.cache.single-flight.wait-timeout-ms:30000}")
+    private long waitTimeoutMs;
+
+    /**
+     * 检查其他节点锁状态的间隔（毫秒）
+     */
+    @Value("${mq.cache.single-flight.poll-interval-ms:200}")
+    private long pollIntervalMs;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    /**
+     * 同步调用：key -> 共享结果
+     */
+    private final Map<String, CompletableFuture<String>> inFlightCalls = new ConcurrentHashMap<>();
+
+    /**
+     * 流式调用：key -> 共享的上游流
+     */
+    private final Map<String, Flux<String>> inFlightStreams = new ConcurrentHashMap<>();
+
+    private final AtomicLong modelCalls = new AtomicLong(0);
+
+    private final AtomicLong coalescedCalls = new AtomicLong(0);
+
+    private final AtomicLong remoteHits = new AtomicLong(0);
+
+    /**
+     * 生成合并键：登录用户按用户和对话隔离，匿名请求全局共享
+     * 模型调用会读取并写入请求所在对话的记忆，不同用户、同一用户的不同对话都不能共享同一次调用。
+     *
+     * @param question 用户问题
+     * @param chatId   对话ID
+     * @param userId   用户ID（可选）
+     * @return 合并键
+     */
+    public String keyOf(String question, String chatId, Long userId) {
+        String scope = userId != null ? "user:" + userId + ":chat:" + chatId : "global";
+        return scope + ":" + textSimilarityService.generateTextHash(question);
+    }
+
+    /**
+     * 合并执行同步调用
+     *
+     * @param key         合并键
+     * @param cacheLookup 读取 AI 响应缓存（用于获取其他节点的结果）
+     * @param call        实际的模型调用
+     * @return 模型响应
+     */
+    public String execute(String key, Supplier<String> cacheLookup, Supplier<String> call) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlightCalls.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedCalls.incrementAndGet();
+            log.debug("合并在途请求，key: {}", key);
+            return await(existing);
+        }
+        try {
+            String response = callWithLock(key, cacheLookup, call);
+            future.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightCalls.remove(key, future);
+        }
+    }
+
+    /**
+     * 合并执行流式调用
+     *
+     * @param key         合并键
+     * @param cacheLookup 读取 AI 响应缓存（用于获取其他节点的结果）
+     * @param replay      将缓存的回答转换为流
+     * @param upstream    实际的模型流式调用，写入 AI 响应缓存需包含在流中（缓存写完后再结束），
+     *                    在途锁在流结束后才释放，其他节点等到锁释放时即可读到缓存
+     * @return 共享的流式响应
+     */
+    public Flux<String> stream(String key, Supplier<String> cacheLookup,
+            Function<String, Flux<String>> replay, Supplier<Flux<String>> upstream) {
+        return Flux.defer(() -> {
+            AtomicBoolean created = new AtomicBoolean(false);
+            Flux<String> shared = inFlightStreams.computeIfAbsent(key, k -> {
+                created.set(true);
+                return createSharedStream(k, cacheLookup, replay, upstream);
+            });
+            if (!created.get()) {
+                coalescedCalls.incrementAndGet();
+                log.debug("合并在途流式请求，key: {}", key);
+            }
+            return shared;
+        });
+    }
+
+    private Flux<String> createSharedStream(String key, Supplier<String> cacheLookup,
+            Function<String, Flux<String>> replay, Supplier<Flux<String>> upstream) {
+        String lockKey = LOCK_PREFIX + key;
+        AtomicReference<Flux<String>> self = new AtomicReference<>();
+        Flux<String> source = Flux.defer(() -> {
+            String token = tryLock(lockKey);
+            if (token != null || cacheService == null) {
+                modelCalls.incrementAndGet();
+                return upstream.get().doFinally(signal -> unlock(lockKey, token));
+            }
+            // 其他节点正在生成，在弹性线程上等待，不阻塞流的线程
+            return Mono.fromCallable(() -> waitForRemote(lockKey, cacheLookup))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMapMany(replay)
+                    .switchIfEmpty(Flux.defer(() -> {
+                        modelCalls.incrementAndGet();
+                        return upstream.get();
+                    }));
+        });
+        // 上游结束（先于通知订阅者）或全部订阅者取消后移除，之后的请求重新走缓存或发起新调用
+        Flux<String> shared = source
+                .doOnTerminate(() -> inFlightStreams.remove(key, self.get()))
+                .doOnCancel(() -> inFlightStreams.remove(key, self.get()))
+                .replay()
+                .refCount();
+        self.set(shared);
+        return shared;
+    }
+
+    private String callWithLock(String key, Supplier<String> cacheLookup, Supplier<String> call) {
+        String lockKey = LOCK_PREFIX + key;
+        String token = tryLock(lockKey);
+        if (token == null && cacheService != null) {
+            String response = waitForRemote(lockKey, cacheLookup);
+            if (response != null) {
+                return response;
+            }
+        }
+        try {
+            modelCalls.incrementAndGet();
+            return call.get();
+        } finally {
+            unlock(lockKey, token);
+        }
+    }
+
+    /**
+     * 等待其他节点释放在途锁后读取缓存
+     * 只轮询锁是否存在，结束后读一次缓存，避免轮询时反复计入缓存未命中。
+     *
+     * @return 其他节点写入的响应，锁释放后仍无缓存或等待超时返回 null
+     */
+    private String waitForRemote(String lockKey, Supplier<String> cacheLookup) {
+        long deadline = System.currentTimeMillis() + waitTimeoutMs;
+        try {
+            while (cacheService.exists(lockKey)) {
+                if (System.currentTimeMillis() >= deadline) {
+                    log.warn("等待其他节点的在途请求超时，自行调用模型，lockKey: {}", lockKey);
+                    return null;
+                }
+                Thread.sleep(pollIntervalMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        String response = cacheLookup.get();
+        if (response != null) {
+            remoteHits.incrementAndGet();
+            log.debug("使用其他节点的在途请求结果，lockKey: {}", lockKey);
+        }
+        return response;
+    }
+
+    /**
+     * @return 加锁成功返回锁令牌，否则返回 null
+     */
+    private String tryLock(String lockKey) {
+        if (cacheService == null) {
+            return null;
+        }
+        String token = instanceId + ":" + UUID.randomUUID();
+        return cacheService.setIfAbsent(lockKey, token, lockSeconds) ? token : null;
+    }
+
+    private void unlock(String lockKey, String token) {
+        if (token == null) {
+            return;
+        }
+        // 只释放自己持有的锁（原子地比较并删除），锁已过期被其他节点获取时不误删
+        cacheService.deleteIfEquals(lockKey, token);
+    }
+
+    private static String await(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 获取合并统计
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("modelCalls", modelCalls.get());
+        stats.put("coalescedCalls", coalescedCalls.get());
+        stats.put("remoteHits", remoteHits.get());
+        stats.put("inFlightCalls", inFlightCalls.size());
+        stats.put("inFlightStreams", inFlightStreams.size());
+        return stats;
+    }
+}
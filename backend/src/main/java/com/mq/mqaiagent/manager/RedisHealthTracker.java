@@ -0,0 +1,205 @@
+package com.mq.mqaiagent.manager;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Redis 健康状态跟踪（熔断器）
+ * 后台定时 PING 探测，缓存操作只读取内存中的状态，不再每次调用前都 PING。
+ * <ul>
+ *     <li>CLOSED：正常，允许访问 Redis</li>
+ *     <li>OPEN：连续失败达到阈值后打开，快速失败，不访问 Redis</li>
+ *     <li>HALF_OPEN：打开超过冷却时间后由探测任务试探，成功则关闭，失败则重新打开</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class RedisHealthTracker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private ScheduledExecutorService scheduledExecutor;
+
+    /**
+     * 探测间隔（毫秒）
+     */
+    @Value("${mq.cache.redis-health.probe-interval-ms:5000}")
+    private long probeIntervalMs;
+
+    /**
+     * 连续失败多少次后打开熔断
+     */
+    @Value("${mq.cache.redis-health.failure-threshold:3}")
+    private int failureThreshold;
+
+    /**
+     * 熔断打开后的冷却时间（毫秒），之后进入半开试探
+     */
+    @Value("${mq.cache.redis-health.open-duration-ms:10000}")
+    private long openDurationMs;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+
+    private volatile long openedAt;
+
+    private volatile String lastError;
+
+    /**
+     * 进入各状态的次数
+     */
+    private final Map<State, AtomicLong> transitions = new EnumMap<>(State.class);
+
+    private final AtomicLong probeCount = new AtomicLong(0);
+
+    private ScheduledFuture<?> probeTask;
+
+    public RedisHealthTracker() {
+        for (State s : State.values()) {
+            transitions.put(s, new AtomicLong(0));
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        probeTask = scheduledExecutor.scheduleWithFixedDelay(this::probe, 0, probeIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Redis 健康探测已启动，间隔: {}ms, 失败阈值: {}, 冷却时间: {}ms",
+                probeIntervalMs, failureThreshold, openDurationMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (probeTask != null) {
+            probeTask.cancel(false);
+        }
+    }
+
+    /**
+     * Redis 当前是否可用（仅读取内存状态）
+     *
+     * @return 熔断未打开时返回true
+     */
+    public boolean isAvailable() {
+        return state.get() != State.OPEN;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * 记录一次访问失败，只统计连接失败、超时等 Redis 不可用的异常
+     *
+     * @param e 访问异常
+     */
+    public void recordFailure(Exception e) {
+        if (!isUnavailableError(e)) {
+            return;
+        }
+        lastError = e.getMessage();
+        int failures = consecutiveFailures.incrementAndGet();
+        State current = state.get();
+        if (current == State.HALF_OPEN || (current == State.CLOSED && failures >= failureThreshold)) {
+            open(current);
+        }
+    }
+
+    /**
+     * 记录一次访问成功，重置连续失败计数
+     * 每次缓存操作都会调用，计数已为 0 且熔断关闭时只做两次读，不产生写竞争
+     */
+    public void recordSuccess() {
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+        State current = state.get();
+        if (current != State.CLOSED && state.compareAndSet(current, State.CLOSED)) {
+            transitions.get(State.CLOSED).incrementAndGet();
+            log.info("Redis 恢复可用，熔断关闭");
+        }
+    }
+
+    /**
+     * 执行一次探测：熔断打开且未到冷却时间时跳过，到期后进入半开再探测
+     */
+    public void probe() {
+        State current = state.get();
+        if (current == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                return;
+            }
+            if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                transitions.get(State.HALF_OPEN).incrementAndGet();
+                log.info("Redis 熔断冷却结束，进入半开试探");
+            }
+        }
+        probeCount.incrementAndGet();
+        try {
+            redisTemplate.execute((RedisCallback<String>) RedisConnection::ping);
+            recordSuccess();
+        } catch (Exception e) {
+            log.warn("Redis 健康探测失败: {}", e.getMessage());
+            lastError = e.getMessage();
+            int failures = consecutiveFailures.incrementAndGet();
+            State afterProbe = state.get();
+            if (afterProbe == State.HALF_OPEN || failures >= failureThreshold) {
+                open(afterProbe);
+            }
+        }
+    }
+
+    /**
+     * 获取熔断器统计信息
+     *
+     * @return 状态、连续失败次数、各状态进入次数等
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.get().name());
+        stats.put("consecutiveFailures", consecutiveFailures.get());
+        stats.put("probeCount", probeCount.get());
+        Map<String, Long> transitionCounts = new LinkedHashMap<>();
+        transitions.forEach((s, count) -> transitionCounts.put(s.name(), count.get()));
+        stats.put("transitions", transitionCounts);
+        stats.put("lastError", lastError);
+        return stats;
+    }
+
+    private void open(State from) {
+        if (from != State.OPEN && state.compareAndSet(from, State.OPEN)) {
+            openedAt = System.currentTimeMillis();
+            transitions.get(State.OPEN).incrementAndGet();
+            log.warn("Redis 不可用，熔断打开，{}ms 后试探恢复，原因: {}", openDurationMs, lastError);
+        }
+    }
+
+    private boolean isUnavailableError(Exception e) {
+        return e instanceof DataAccessResourceFailureException || e instanceof QueryTimeoutException;
+    }
+}
@@ -0,0 +1,53 @@
+package com.mq.mqaiagent.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.mq.mqaiagent.model.entity.ChatMessage;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * @description 针对表【chat_message(对话消息表)】的数据库操作Mapper
+ * @Entity com.mq.mqaiagent.model.entity.ChatMessage
+ */
+public interface ChatMessageMapper extends BaseMapper<ChatMessage> {
+
+    /**
+     * 获取对话当前最大的消息序号（包括已逻辑删除的消息）
+     *
+     * @param chatId 对话ID
+     * @param userId 用户ID（匿名对话为 0）
+     * @return 最大序号，对话不存在时返回null
+     */
+    Integer selectMaxSeq(@Param("chatId") String chatId, @Param("userId") Long userId);
+
+    /**
+     * 获取对话中不超过指定序号的已占用序号（包括已逻辑删除的消息）
+     *
+     * @param chatId 对话ID
+     * @param userId 用户ID（匿名对话为 0）
+     * @param maxSeq 最大序号
+     * @return 已占用的序号
+     */
+    List<Integer> selectSeqs(@Param("chatId") String chatId, @Param("userId") Long userId,
+                             @Param("maxSeq") int maxSeq);
+
+    /**
+     * 按序号倒序获取最近 N 条消息
+     *
+     * @param chatId 对话ID
+     * @param userId 用户ID（匿名对话为 0）
+     * @param limit  条数
+     * @return 消息列表（新 -> 旧）
+     */
+    List<ChatMessage> selectLatest(@Param("chatId") String chatId, @Param("userId") Long userId,
+                                   @Param("limit") int limit);
+
+    /**
+     * 批量插入消息（单条 INSERT 多个 VALUES）
+     *
+     * @param messages 消息列表
+     * @return 插入行数
+     */
+    int insertBatch(@Param("list") List<ChatMessage> messages);
+}
@@ -0,0 +1,69 @@
+package com.mq.mqaiagent.model.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 对话消息实体类（追加写模式，每条消息一行）
+ * @TableName chat_message
+ */
+@TableName(value = "chat_message")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ChatMessage implements Serializable {
+    /**
+     * id
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 对话id
+     */
+    @TableField(value = "chatId")
+    private String chatId;
+
+    /**
+     * 创建用户id
+     */
+    @TableField(value = "userId")
+    private Long userId;
+
+    /**
+     * 消息序号（对话内自增，从 1 开始）
+     */
+    private Integer seq;
+
+    /**
+     * 消息类型：USER/ASSISTANT/SYSTEM
+     */
+    @TableField(value = "messageType")
+    private String messageType;
+
+    /**
+     * 消息内容
+     */
+    private String content;
+
+    /**
+     * 创建时间
+     */
+    private Date createTime;
+
+    /**
+     * 是否删除
+     */
+    @TableLogic
+    private Integer isDelete;
+
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+}
@@ -1,24 +1,36 @@
 package com.mq.mqaiagent.pool;
 
 import com.mq.mqaiagent.advisor.MyLoggerAdvisor;
+import com.mq.mqaiagent.advisor.UserAwareChatMemoryAdvisor;
 import com.mq.mqaiagent.chatmemory.CachedDatabaseChatMemory;
+import com.mq.mqaiagent.chatmemory.ChatMemoryWriteBehindBuffer;
+import com.mq.mqaiagent.chatmemory.DatabaseChatMemory;
+import com.mq.mqaiagent.chatmemory.UserAwareChatMemory;
+import com.mq.mqaiagent.mapper.ChatMessageMapper;
 import com.mq.mqaiagent.mapper.KeepReportMapper;
 import com.mq.mqaiagent.service.CacheService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.model.ChatModel;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ChatClient 对象池
- * 用于缓存和复用 ChatClient 实例，避免频繁创建对象造成的性能开销
+ * 用于缓存和复用 ChatClient 实例，避免频繁创建对象造成的性能开销。
+ * 基于 Caffeine（W-TinyLFU）实现有界缓存：超过最大数量时淘汰最不常用的实例，
+ * 超过访问/写入过期时间的实例由后台调度自动移除，移除时释放其持有的对话记忆。
  */
 @Component
 @Slf4j
@@ -30,29 +42,78 @@ public class ChatClientPool {
     @Resource
     private KeepReportMapper keepReportMapper;
 
+    @Resource
+    private ChatMessageMapper chatMessageMapper;
+
     @Resource
     private CacheService cacheService;
 
+    @Resource
+    private ChatMemoryWriteBehindBuffer chatMemoryWriteBehindBuffer;
+
+    /**
+     * 对话记忆存储模式：json（keep_report 整段 JSON，默认）/ append-only（chat_message 追加写）
+     */
+    @Value("${mq.chat-memory.storage:json}")
+    private String chatMemoryStorage;
+
+    /**
+     * 每个对话 Redis 缓存保留的最大消息数
+     */
+    @Value("${mq.chat-memory.cache-max-messages:100}")
+    private int chatMemoryCacheMaxMessages;
+
+    /**
+     * 最大缓存数量
+     */
+    @Value("${mq.chat-client-pool.max-size:1000}")
+    private long maxSize;
+
+    /**
+     * 不活跃阈值（分钟），超过此时间未访问的实例被移除
+     */
+    @Value("${mq.chat-client-pool.expire-after-access-minutes:30}")
+    private long expireAfterAccessMinutes;
+
+    /**
+     * 缓存过期时间（分钟），自创建起超过此时间的实例被移除
+     */
+    @Value("${mq.chat-client-pool.expire-after-write-minutes:60}")
+    private long expireAfterWriteMinutes;
+
     /**
      * ChatClient 缓存池
-     * Key: 缓存键（由用户ID、系统提示词、是否支持记忆等组成）
-     * Value: 缓存的 ChatClient 实例信息
+     * Key: 缓存键（由客户端类型、系统提示词、是否支持记忆组成，不区分用户）
+     * Value: 缓存的 ChatClient 实例及其对话记忆
      */
-    private final ConcurrentHashMap<String, CachedChatClient> clientCache = new ConcurrentHashMap<>();
+    private Cache<String, PooledChatClient> clientCache;
 
     /**
-     * 性能统计
+     * 按移除原因统计
      */
-    private final AtomicLong cacheHits = new AtomicLong(0);
-    private final AtomicLong cacheMisses = new AtomicLong(0);
-    private final AtomicLong totalCreated = new AtomicLong(0);
+    private final AtomicLong sizeEvictions = new AtomicLong(0);
+    private final AtomicLong expirations = new AtomicLong(0);
+    private final AtomicLong memoryClientEvictions = new AtomicLong(0);
 
     /**
-     * 缓存配置
+     * 初始化有界缓存
      */
-    private static final int MAX_CACHE_SIZE = 1000; // 最大缓存数量
-    private static final long CACHE_EXPIRE_MINUTES = 60; // 缓存过期时间（分钟）
-    private static final long INACTIVE_THRESHOLD_MINUTES = 30; // 不活跃阈值（分钟）
+    @PostConstruct
+    public void init() {
+        clientCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(Duration.ofMinutes(expireAfterAccessMinutes))
+                .expireAfterWrite(Duration.ofMinutes(expireAfterWriteMinutes))
+                // 过期实例由后台调度及时移除，不依赖后续访问触发
+                .scheduler(Scheduler.systemScheduler())
+                // 监听器只做计数和释放引用，在移除线程上直接执行
+                .executor(Runnable::run)
+                .removalListener(this::onRemoval)
+                .recordStats()
+                .build();
+        log.info("ChatClient 对象池初始化完成，最大数量: {}, 访问过期: {} 分钟, 写入过期: {} 分钟",
+                maxSize, expireAfterAccessMinutes, expireAfterWriteMinutes);
+    }
 
     /**
      * 获取或创建 KeepApp 专用的 ChatClient（不支持用户记忆）
@@ -61,20 +122,21 @@ public class ChatClientPool {
      * @return ChatClient 实例
      */
     public ChatClient getKeepAppClient(String systemPrompt) {
-        String cacheKey = generateCacheKey("keepapp", null, systemPrompt, false);
+        String cacheKey = generateCacheKey("keepapp", systemPrompt, false);
         return getOrCreateClient(cacheKey, () -> createKeepAppClient(systemPrompt));
     }
 
     /**
      * 获取或创建支持用户记忆的 KeepApp ChatClient
+     * 所有用户共享同一个实例，调用时需通过 advisor 参数
+     * {@link UserAwareChatMemoryAdvisor#CHAT_MEMORY_USER_ID_KEY} 传入用户ID
      * 
-     * @param userId       用户ID
      * @param systemPrompt 系统提示词
      * @return ChatClient 实例
      */
-    public ChatClient getKeepAppClientWithMemory(Long userId, String systemPrompt) {
-        String cacheKey = generateCacheKey("keepapp", userId, systemPrompt, true);
-        return getOrCreateClient(cacheKey, () -> createKeepAppClientWithMemory(userId, systemPrompt));
+    public ChatClient getKeepAppClientWithMemory(String systemPrompt) {
+        String cacheKey = generateCacheKey("keepapp", systemPrompt, true);
+        return getOrCreateClient(cacheKey, () -> createKeepAppClientWithMemory(systemPrompt));
     }
 
     /**
@@ -84,117 +146,130 @@ public class ChatClientPool {
      * @return ChatClient 实例
      */
     public ChatClient getMqManusClient(String systemPrompt) {
-        String cacheKey = generateCacheKey("mqmanus", null, systemPrompt, false);
+        String cacheKey = generateCacheKey("mqmanus", systemPrompt, false);
         return getOrCreateClient(cacheKey, () -> createMqManusClient(systemPrompt));
     }
 
     /**
      * 获取或创建支持记忆的 MqManus ChatClient
+     * 所有用户共享同一个实例，调用时需通过 advisor 参数
+     * {@link UserAwareChatMemoryAdvisor#CHAT_MEMORY_USER_ID_KEY} 传入用户ID
      * 
-     * @param userId       用户ID
      * @param systemPrompt 系统提示词
      * @return ChatClient 实例
      */
-    public ChatClient getMqManusClientWithMemory(Long userId, String systemPrompt) {
-        String cacheKey = generateCacheKey("mqmanus", userId, systemPrompt, true);
-        return getOrCreateClient(cacheKey, () -> createMqManusClientWithMemory(userId, systemPrompt));
+    public ChatClient getMqManusClientWithMemory(String systemPrompt) {
+        String cacheKey = generateCacheKey("mqmanus", systemPrompt, true);
+        return getOrCreateClient(cacheKey, () -> createMqManusClientWithMemory(systemPrompt));
     }
 
     /**
      * 通用的获取或创建 ChatClient 方法
+     * 同一键并发未命中时只创建一次实例
      * 
      * @param cacheKey      缓存键
      * @param clientFactory ChatClient 工厂方法
      * @return ChatClient 实例
      */
     private ChatClient getOrCreateClient(String cacheKey, ClientFactory clientFactory) {
-        CachedChatClient cachedClient = clientCache.get(cacheKey);
-        // 检查缓存是否命中且未过期
-        if (cachedClient != null && !cachedClient.isExpired()) {
-            cachedClient.updateLastAccessed(); // 更新最后访问时间
-            cacheHits.incrementAndGet();
-            log.debug("ChatClient 缓存命中，key: {}", cacheKey);
-            return cachedClient.getChatClient();
+        PooledChatClient pooledClient = clientCache.get(cacheKey, key -> {
+            PooledChatClient newClient = clientFactory.create();
+            log.debug("创建新的 ChatClient 实例，key: {}", key);
+            return newClient;
+        });
+        return pooledClient.chatClient();
+    }
+
+    /**
+     * 缓存实例被移除时的回调
+     * 对话记忆的数据都在 Redis/数据库和共享的写后缓冲中，实例本身不持有连接或线程，
+     * 移出缓存即释放引用，ChatClient 与对话记忆随之可以被回收。
+     * 不解除用户绑定：被移除前取出的实例可能仍在处理进行中的请求。
+     */
+    private void onRemoval(String cacheKey, PooledChatClient pooledClient, RemovalCause cause) {
+        if (cause == RemovalCause.SIZE) {
+            sizeEvictions.incrementAndGet();
+        } else if (cause == RemovalCause.EXPIRED) {
+            expirations.incrementAndGet();
         }
-        // 缓存未命中或已过期，创建新实例
-        cacheMisses.incrementAndGet();
-        totalCreated.incrementAndGet();
-        // 检查缓存大小，如果超过限制则清理
-        if (clientCache.size() >= MAX_CACHE_SIZE) {
-            cleanupExpiredClients();
+        if (pooledClient != null && pooledClient.chatMemory() != null) {
+            memoryClientEvictions.incrementAndGet();
         }
-        ChatClient newClient = clientFactory.create();
-        CachedChatClient newCachedClient = new CachedChatClient(newClient);
-        clientCache.put(cacheKey, newCachedClient);
-        log.debug("创建新的 ChatClient 实例，key: {}, 当前缓存大小: {}", cacheKey, clientCache.size());
-        return newClient;
+        log.debug("移除 ChatClient 实例，key: {}, cause: {}", cacheKey, cause);
     }
 
     /**
      * 创建 KeepApp 专用的 ChatClient（不支持记忆）
      */
-    private ChatClient createKeepAppClient(String systemPrompt) {
-        CachedDatabaseChatMemory chatMemory = new CachedDatabaseChatMemory(keepReportMapper, cacheService);
-        return ChatClient.builder(dashscopeChatModel)
+    private PooledChatClient createKeepAppClient(String systemPrompt) {
+        CachedDatabaseChatMemory chatMemory = createChatMemory();
+        ChatClient chatClient = ChatClient.builder(dashscopeChatModel)
                 .defaultSystem(systemPrompt)
                 .defaultAdvisors(
                         new MessageChatMemoryAdvisor(chatMemory),
-                        new MyLoggerAdvisor())
+                        new MyLoggerAdvisor("keep-app"))
                 .build();
+        return new PooledChatClient(chatClient, chatMemory);
     }
 
     /**
-     * 创建支持用户记忆的 KeepApp ChatClient
+     * 创建支持用户记忆的 KeepApp ChatClient（用户ID按请求从 advisor 参数读取）
      */
-    private ChatClient createKeepAppClientWithMemory(Long userId, String systemPrompt) {
-        CachedDatabaseChatMemory chatMemory = new CachedDatabaseChatMemory(keepReportMapper, cacheService);
-        chatMemory.setCurrentUserId(userId);
-        return ChatClient.builder(dashscopeChatModel)
+    private PooledChatClient createKeepAppClientWithMemory(String systemPrompt) {
+        CachedDatabaseChatMemory chatMemory = createChatMemory();
+        ChatClient chatClient = ChatClient.builder(dashscopeChatModel)
                 .defaultSystem(systemPrompt)
                 .defaultAdvisors(
-                        new MessageChatMemoryAdvisor(chatMemory),
-                        new MyLoggerAdvisor())
+                        new UserAwareChatMemoryAdvisor(new UserAwareChatMemory(chatMemory)),
+                        new MyLoggerAdvisor("keep-app"))
                 .build();
+        return new PooledChatClient(chatClient, chatMemory);
     }
 
     /**
      * 创建 MqManus 专用的 ChatClient（不支持记忆）
      */
-    private ChatClient createMqManusClient(String systemPrompt) {
-        return ChatClient.builder(dashscopeChatModel)
+    private PooledChatClient createMqManusClient(String systemPrompt) {
+        ChatClient chatClient = ChatClient.builder(dashscopeChatModel)
                 .defaultSystem(systemPrompt)
-                .defaultAdvisors(new MyLoggerAdvisor())
+                .defaultAdvisors(new MyLoggerAdvisor("mq-manus"))
                 .build();
+        return new PooledChatClient(chatClient, null);
     }
 
     /**
-     * 创建支持记忆的 MqManus ChatClient
+     * 创建支持记忆的 MqManus ChatClient（用户ID按请求从 advisor 参数读取）
      */
-    private ChatClient createMqManusClientWithMemory(Long userId, String systemPrompt) {
-        CachedDatabaseChatMemory chatMemory = new CachedDatabaseChatMemory(keepReportMapper, cacheService);
-        chatMemory.setCurrentUserId(userId);
-        return ChatClient.builder(dashscopeChatModel)
+    private PooledChatClient createMqManusClientWithMemory(String systemPrompt) {
+        CachedDatabaseChatMemory chatMemory = createChatMemory();
+        ChatClient chatClient = ChatClient.builder(dashscopeChatModel)
                 .defaultAdvisors(
-                        new MessageChatMemoryAdvisor(chatMemory),
-                        new MyLoggerAdvisor())
+                        new UserAwareChatMemoryAdvisor(new UserAwareChatMemory(chatMemory)),
+                        new MyLoggerAdvisor("mq-manus"))
                 .build();
+        return new PooledChatClient(chatClient, chatMemory);
+    }
+
+    /**
+     * 按配置的存储模式创建带缓存的对话记忆
+     */
+    private CachedDatabaseChatMemory createChatMemory() {
+        DatabaseChatMemory databaseChatMemory = DatabaseChatMemory.create(chatMemoryStorage, keepReportMapper, chatMessageMapper);
+        return new CachedDatabaseChatMemory(databaseChatMemory, cacheService, chatMemoryWriteBehindBuffer,
+                chatMemoryCacheMaxMessages);
     }
 
     /**
      * 生成缓存键
      * 
      * @param clientType   客户端类型（keepapp/mqmanus）
-     * @param userId       用户ID（可为null）
      * @param systemPrompt 系统提示词
      * @param withMemory   是否支持记忆
      * @return 缓存键
      */
-    private String generateCacheKey(String clientType, Long userId, String systemPrompt, boolean withMemory) {
+    private String generateCacheKey(String clientType, String systemPrompt, boolean withMemory) {
         StringBuilder keyBuilder = new StringBuilder();
         keyBuilder.append(clientType);
-        if (userId != null) {
-            keyBuilder.append(":user:").append(userId);
-        }
 
         // 使用系统提示词的哈希值避免键过长
         keyBuilder.append(":prompt:").append(systemPrompt.hashCode());
@@ -206,20 +281,12 @@ public class ChatClientPool {
     }
 
     /**
-     * 定时清理过期的 ChatClient 实例
+     * 立即执行待处理的过期清理（过期实例平时由后台调度自动移除）
      */
-    @Scheduled(fixedDelay = 300000) // 每5分钟执行一次
     public void cleanupExpiredClients() {
-        int beforeSize = clientCache.size();
-        clientCache.entrySet().removeIf(entry -> {
-            CachedChatClient cachedClient = entry.getValue();
-            boolean shouldRemove = cachedClient.isExpired() || cachedClient.isInactive();
-            if (shouldRemove) {
-                log.debug("清理过期的 ChatClient，key: {}", entry.getKey());
-            }
-            return shouldRemove;
-        });
-        int afterSize = clientCache.size();
+        long beforeSize = clientCache.estimatedSize();
+        clientCache.cleanUp();
+        long afterSize = clientCache.estimatedSize();
         if (beforeSize != afterSize) {
             log.info("ChatClient 缓存清理完成，清理前: {}, 清理后: {}, 清理数量: {}",
                     beforeSize, afterSize, beforeSize - afterSize);
@@ -230,30 +297,27 @@ public class ChatClientPool {
      * 获取缓存统计信息
      */
     public CacheStats getCacheStats() {
+        com.github.benmanes.caffeine.cache.stats.CacheStats stats = clientCache.stats();
         return new CacheStats(
-                cacheHits.get(),
-                cacheMisses.get(),
-                totalCreated.get(),
-                clientCache.size(),
-                calculateHitRate());
-    }
-
-    /**
-     * 计算缓存命中率
-     */
-    private double calculateHitRate() {
-        long hits = cacheHits.get();
-        long misses = cacheMisses.get();
-        long total = hits + misses;
-        return total == 0 ? 0.0 : (double) hits / total;
+                stats.hitCount(),
+                stats.missCount(),
+                stats.loadSuccessCount(),
+                (int) clientCache.estimatedSize(),
+                stats.hitRate(),
+                maxSize,
+                sizeEvictions.get(),
+                expirations.get(),
+                memoryClientEvictions.get(),
+                TimeUnit.NANOSECONDS.toMillis(stats.totalLoadTime()),
+                stats.averageLoadPenalty() / 1_000_000.0);
     }
 
     /**
      * 清空所有缓存（用于测试或紧急情况）
      */
     public void clearAll() {
-        int size = clientCache.size();
-        clientCache.clear();
+        long size = clientCache.estimatedSize();
+        clientCache.invalidateAll();
         log.warn("清空所有 ChatClient 缓存，清理数量: {}", size);
     }
 
@@ -262,48 +326,39 @@ public class ChatClientPool {
      */
     @FunctionalInterface
     private interface ClientFactory {
-        ChatClient create();
+        PooledChatClient create();
     }
 
     /**
-     * 缓存的 ChatClient 包装类
+     * 缓存的 ChatClient 及其对话记忆（无记忆的客户端为 null）
      */
-    private static class CachedChatClient {
-        private final ChatClient chatClient;
-        private final LocalDateTime createdTime;
-        private volatile LocalDateTime lastAccessedTime;
-
-        public CachedChatClient(ChatClient chatClient) {
-            this.chatClient = chatClient;
-            this.createdTime = LocalDateTime.now();
-            this.lastAccessedTime = LocalDateTime.now();
-        }
-
-        public ChatClient getChatClient() {
-            return chatClient;
-        }
-
-        public void updateLastAccessed() {
-            this.lastAccessedTime = LocalDateTime.now();
-        }
-
-        public boolean isExpired() {
-            return LocalDateTime.now().isAfter(createdTime.plusMinutes(CACHE_EXPIRE_MINUTES));
-        }
-
-        public boolean isInactive() {
-            return LocalDateTime.now().isAfter(lastAccessedTime.plusMinutes(INACTIVE_THRESHOLD_MINUTES));
-        }
+    private record PooledChatClient(ChatClient chatClient, CachedDatabaseChatMemory chatMemory) {
     }
 
     /**
      * 缓存统计信息
+     *
+     * @param evictionCount             因超过最大数量被淘汰的数量
+     * @param expiredCount              因过期被移除的数量
+     * @param memoryClientEvictionCount 带对话记忆的实例被移除的数量（记忆数据仍在 Redis/数据库中，移除只丢弃实例引用）
+     * @param totalLoadTimeMs           创建实例的总耗时（毫秒）
+     * @param averageLoadTimeMs         单次创建实例的平均耗时（毫秒）
      */
     public record CacheStats(
             long cacheHits,
             long cacheMisses,
             long totalCreated,
             int currentCacheSize,
-            double hitRate) {
+            double hitRate,
+            long maxSize,
+            long evictionCount,
+            long expiredCount,
+            long memoryClientEvictionCount,
+            long totalLoadTimeMs,
+            double averageLoadTimeMs) {
+
+        public CacheStats(long cacheHits, long cacheMisses, long totalCreated, int currentCacheSize, double hitRate) {
+            this(cacheHits, cacheMisses, totalCreated, currentCacheSize, hitRate, 0, 0, 0, 0, 0, 0.0);
+        }
     }
 }
@@ -3,11 +3,12 @@ package com.mq.mqaiagent.rag;
 import jakarta.annotation.Resource;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Path;
 import java.util.List;
 
 
@@ -17,13 +18,19 @@ public class KeepAppVectorStoreConfig  {
     @Resource
     private KeepAppDocumentLoader keepAppDocumentLoader;
 
+    /**
+     * 本地持久化向量库，启动时只为新增或变化的文档分片调用嵌入模型
+     */
     @Bean
-    VectorStore loveAppVectorStore(EmbeddingModel dashscopeEmbeddingModel) {
-        SimpleVectorStore simpleVectorStore = SimpleVectorStore.builder(dashscopeEmbeddingModel)
-                .build();
+    VectorStore loveAppVectorStore(EmbeddingModel dashscopeEmbeddingModel,
+                                   @Value("${mq.rag.vector-store.path:tmp/vector-store}") String path,
+                                   @Value("${mq.rag.vector-store.embedding-model:text-embedding-v1}") String embeddingModelName,
+                                   @Value("${mq.rag.vector-store.embed-batch-size:10}") int embedBatchSize) {
+        LocalVectorStore localVectorStore = new LocalVectorStore(Path.of(path), dashscopeEmbeddingModel,
+                embeddingModelName, embedBatchSize);
         // 加载文档
         List<Document> documents = keepAppDocumentLoader.loadMarkdowns();
-        simpleVectorStore.add(documents);
-        return simpleVectorStore;
+        localVectorStore.sync(documents);
+        return localVectorStore;
     }
 }
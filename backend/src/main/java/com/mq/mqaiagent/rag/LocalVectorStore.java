@@ -0,0 +1,510 @@
+package com.mq.mqaiagent.rag;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 本地持久化向量库
+ * 向量按行存放在二进制文件中并以内存映射方式读取，检索时直接扫描映射区域，不在堆上保留向量副本；
+ * 文本、元数据和分片内容哈希存放在 metadata.json 中。
+ * 启动时通过 {@link #sync(List)} 与当前文档对比内容哈希，只为新增或变化的分片调用嵌入模型。
+ * 每次写入生成新一代向量文件，元数据文件原子替换后才删除旧文件，中途失败时仍可读取上一代数据。
+ * 向量在写入前归一化，点积即余弦相似度。
+ */
+@Slf4j
+public class LocalVectorStore implements VectorStore {
+
+    static final String METADATA_FILE = "metadata.json";
+
+    private static final int MAGIC = 0x4D515653;
+
+    private static final int FORMAT_VERSION = 1;
+
+    // magic、version、dimensions、count 各占 4 字节
+    private static final int HEADER_BYTES = 16;
+
+    private final Path directory;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final String embeddingModelName;
+
+    private final int embedBatchSize;
+
+    private final SimpleVectorStoreFilterExpressionConverter filterConverter = new SimpleVectorStoreFilterExpressionConverter();
+
+    private final SpelExpressionParser expressionParser = new SpelExpressionParser();
+
+    private final long loadMs;
+
+    private volatile Snapshot snapshot;
+
+    private volatile SyncStats lastSyncStats;
+
+    /**
+     * @param directory          存储目录，不存在时创建
+     * @param embeddingModel     嵌入模型
+     * @param embeddingModelName 嵌入模型名称，与已存储的不一致时全部重新嵌入
+     * @param embedBatchSize     每次嵌入请求的分片数
+     */
+    public LocalVectorStore(Path directory, EmbeddingModel embeddingModel, String embeddingModelName,
+                            int embedBatchSize) {
+        this.directory = directory;
+        this.embeddingModel = embeddingModel;
+        this.embeddingModelName = embeddingModelName;
+        this.embedBatchSize = Math.max(1, embedBatchSize);
+        long start = System.nanoTime();
+        this.snapshot = load();
+        this.loadMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("本地向量库已加载: {}，{} 个分片，维度 {}，耗时 {} ms",
+                directory, snapshot.entries.size(), snapshot.dimensions, loadMs);
+    }
+
+    /**
+     * 同步结果（启动耗时指标）
+     *
+     * @param documents 同步后的分片数
+     * @param reused    内容未变、复用已有向量的分片数
+     * @param embedded  重新嵌入的分片数
+     * @param removed   删除的分片数（包括内容变化后被替换的旧分片）
+     * @param loadMs    打开并映射存储文件的耗时
+     * @param embedMs   调用嵌入模型的耗时
+     * @param totalMs   同步总耗时（不含加载）
+     */
+    public record SyncStats(int documents, int reused, int embedded, int removed,
+                            long loadMs, long embedMs, long totalMs) {
+    }
+
+    /**
+     * 使存储内容与给定分片一致：内容哈希已存在的分片复用向量，其余分片重新嵌入，不在给定分片中的旧分片删除
+     * 没有任何变化时不写文件。分片 ID 为内容哈希，内容相同的分片只保留一个。
+     *
+     * @param documents 当前全部分片
+     * @return 同步结果
+     */
+    public synchronized SyncStats sync(List<Document> documents) {
+        long start = System.nanoTime();
+        Snapshot current = snapshot;
+        Map<String, Integer> existing = new HashMap<>();
+        for (int i = 0; i < current.entries.size(); i++) {
+            existing.put(current.entries.get(i).hash(), i);
+        }
+
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        for (Document document : documents) {
+            if (document.getText() == null) {
+                continue;
+            }
+            String hash = contentHash(document.getText(), document.getMetadata());
+            entries.putIfAbsent(hash, new Entry(hash, hash, document.getText(), document.getMetadata()));
+        }
+        List<Entry> entryList = new ArrayList<>(entries.values());
+        List<float[]> vectors = new ArrayList<>(entryList.size());
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < entryList.size(); i++) {
+            Integer index = existing.get(entryList.get(i).hash());
+            vectors.add(index != null ? current.vector(index) : null);
+            if (index == null) {
+                pending.add(i);
+            }
+        }
+        int reused = entryList.size() - pending.size();
+        int removed = current.entries.size() - reused;
+
+        long embedStart = System.nanoTime();
+        List<float[]> embeddings = embed(pending.stream().map(i -> entryList.get(i).text()).toList());
+        for (int i = 0; i < pending.size(); i++) {
+            vectors.set(pending.get(i), embeddings.get(i));
+        }
+        long embedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - embedStart);
+
+        if (!pending.isEmpty() || removed > 0) {
+            persist(entryList, vectors);
+        }
+        SyncStats stats = new SyncStats(entryList.size(), reused, pending.size(), removed,
+                loadMs, embedMs, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        lastSyncStats = stats;
+        log.info("本地向量库同步完成: {} 个分片，复用 {}，重新嵌入 {}，删除 {}，加载 {} ms，嵌入 {} ms，同步 {} ms",
+                stats.documents(), stats.reused(), stats.embedded(), stats.removed(),
+                stats.loadMs(), stats.embedMs(), stats.totalMs());
+        return stats;
+    }
+
+    /**
+     * @return 最近一次同步的结果，尚未同步时为 null
+     */
+    public SyncStats getLastSyncStats() {
+        return lastSyncStats;
+    }
+
+    /**
+     * @return 当前分片数
+     */
+    public int size() {
+        return snapshot.entries.size();
+    }
+
+    @Override
+    public synchronized void add(List<Document> documents) {
+        List<Document> textDocuments = documents.stream().filter(document -> document.getText() != null).toList();
+        if (textDocuments.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = embed(textDocuments.stream().map(Document::getText).toList());
+        Set<String> ids = new HashSet<>();
+        textDocuments.forEach(document -> ids.add(document.getId()));
+        List<Entry> entries = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        Snapshot current = snapshot;
+        for (int i = 0; i < current.entries.size(); i++) {
+            if (!ids.contains(current.entries.get(i).id())) {
+                entries.add(current.entries.get(i));
+                vectors.add(current.vector(i));
+            }
+        }
+        for (int i = 0; i < textDocuments.size(); i++) {
+            Document document = textDocuments.get(i);
+            entries.add(new Entry(document.getId(), contentHash(document.getText(), document.getMetadata()),
+                    document.getText(), document.getMetadata()));
+            vectors.add(embeddings.get(i));
+        }
+        persist(entries, vectors);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        Set<String> ids = new HashSet<>(idList);
+        deleteWhere(entry -> ids.contains(entry.id()));
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Expression expression = expressionParser.parseExpression(filterConverter.convertExpression(filterExpression));
+        deleteWhere(entry -> matches(expression, entry));
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        Snapshot current = snapshot;
+        if (current.entries.isEmpty() || request.getQuery() == null) {
+            return Collections.emptyList();
+        }
+        float[] query = normalize(embeddingModel.embed(request.getQuery()));
+        if (query.length != current.dimensions) {
+            log.warn("查询向量维度 {} 与向量库维度 {} 不一致，请检查嵌入模型配置", query.length, current.dimensions);
+            return Collections.emptyList();
+        }
+        Predicate<Entry> filter = entry -> true;
+        if (request.hasFilterExpression()) {
+            Expression expression = expressionParser.parseExpression(
+                    filterConverter.convertExpression(request.getFilterExpression()));
+            filter = entry -> matches(expression, entry);
+        }
+
+        // 小顶堆保留得分最高的 topK 个
+        int topK = Math.max(1, request.getTopK());
+        PriorityQueue<ScoredEntry> top = new PriorityQueue<>(Comparator.comparingDouble(ScoredEntry::score));
+        for (int i = 0; i < current.entries.size(); i++) {
+            double score = current.dot(i, query);
+            if (score < request.getSimilarityThreshold()
+                    || (top.size() == topK && score <= top.peek().score())) {
+                continue;
+            }
+            Entry entry = current.entries.get(i);
+            if (!filter.test(entry)) {
+                continue;
+            }
+            top.offer(new ScoredEntry(entry, score));
+            if (top.size() > topK) {
+                top.poll();
+            }
+        }
+        List<Document> results = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            ScoredEntry scored = top.poll();
+            Map<String, Object> metadata = new HashMap<>(scored.entry().metadata());
+            metadata.put("distance", 1 - scored.score());
+            results.add(Document.builder()
+                    .id(scored.entry().id())
+                    .text(scored.entry().text())
+                    .metadata(metadata)
+                    .score(scored.score())
+                    .build());
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    private synchronized void deleteWhere(Predicate<Entry> condition) {
+        Snapshot current = snapshot;
+        List<Entry> entries = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < current.entries.size(); i++) {
+            if (!condition.test(current.entries.get(i))) {
+                entries.add(current.entries.get(i));
+                vectors.add(current.vector(i));
+            }
+        }
+        if (entries.size() < current.entries.size()) {
+            persist(entries, vectors);
+        }
+    }
+
+    private boolean matches(Expression expression, Entry entry) {
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        context.setVariable("metadata", entry.metadata());
+        return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+    }
+
+    /**
+     * 分批嵌入并归一化
+     */
+    private List<float[]> embed(List<String> texts) {
+        List<float[]> embeddings = new ArrayList<>(texts.size());
+        for (int from = 0; from < texts.size(); from += embedBatchSize) {
+            List<String> batch = texts.subList(from, Math.min(texts.size(), from + embedBatchSize));
+            for (float[] embedding : embeddingModel.embed(batch)) {
+                embeddings.add(normalize(embedding));
+            }
+        }
+        return embeddings;
+    }
+
+    /**
+     * 写入新一代向量文件，再原子替换元数据文件，最后删除旧的向量文件
+     */
+    private void persist(List<Entry> entries, List<float[]> vectors) {
+        int dimensions = vectors.isEmpty() ? 0 : vectors.get(0).length;
+        for (float[] vector : vectors) {
+            if (vector.length != dimensions) {
+                throw new IllegalStateException("向量维度不一致: " + vector.length + " / " + dimensions);
+            }
+        }
+        long generation = snapshot.generation + 1;
+        // 读取失败时代数从 0 开始，跳过仍然存在的旧文件
+        while (Files.exists(directory.resolve("vectors-" + generation + ".bin"))) {
+            generation++;
+        }
+        String vectorFile = "vectors-" + generation + ".bin";
+        try {
+            Files.createDirectories(directory);
+            writeVectors(directory.resolve(vectorFile), dimensions, vectors);
+
+            JSONArray entryArray = new JSONArray();
+            for (Entry entry : entries) {
+                entryArray.add(new JSONObject()
+                        .set("id", entry.id())
+                        .set("hash", entry.hash())
+                        .set("text", entry.text())
+                        .set("metadata", entry.metadata()));
+            }
+            JSONObject metadata = new JSONObject()
+                    .set("version", FORMAT_VERSION)
+                    .set("embeddingModel", embeddingModelName)
+                    .set("dimensions", dimensions)
+                    .set("generation", generation)
+                    .set("vectorFile", vectorFile)
+                    .set("entries", entryArray);
+            Path temp = directory.resolve(METADATA_FILE + ".tmp");
+            Files.writeString(temp, metadata.toString(), StandardCharsets.UTF_8);
+            Files.move(temp, directory.resolve(METADATA_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            snapshot = new Snapshot(List.copyOf(entries), dimensions, generation, map(directory.resolve(vectorFile)));
+        } catch (IOException e) {
+            throw new IllegalStateException("本地向量库写入失败: " + e.getMessage(), e);
+        }
+        deleteStaleVectorFiles(vectorFile);
+    }
+
+    private static void writeVectors(Path file, int dimensions, List<float[]> vectors) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                    .putInt(MAGIC).putInt(FORMAT_VERSION).putInt(dimensions).putInt(vectors.size())
+                    .flip();
+            writeFully(channel, header);
+            ByteBuffer row = ByteBuffer.allocate(dimensions * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (float[] vector : vectors) {
+                row.clear();
+                row.asFloatBuffer().put(vector);
+                writeFully(channel, row);
+            }
+            channel.force(true);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void deleteStaleVectorFiles(String currentFile) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "vectors-*.bin")) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals(currentFile)) {
+                    // 仍被映射时部分平台无法删除，留待下次写入时再删
+                    FileUtil.del(file.toFile());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("清理旧向量文件失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 读取已有存储，文件缺失、损坏或嵌入模型已更换时返回空库
+     */
+    private Snapshot load() {
+        Path metadataFile = directory.resolve(METADATA_FILE);
+        if (!Files.exists(metadataFile)) {
+            return Snapshot.EMPTY;
+        }
+        try {
+            JSONObject metadata = JSONUtil.parseObj(Files.readString(metadataFile, StandardCharsets.UTF_8));
+            long generation = metadata.getLong("generation", 0L);
+            if (!embeddingModelName.equals(metadata.getStr("embeddingModel"))) {
+                log.info("嵌入模型已从 {} 更换为 {}，全部分片将重新嵌入", metadata.getStr("embeddingModel"), embeddingModelName);
+                return new Snapshot(List.of(), 0, generation, null);
+            }
+            List<Entry> entries = new ArrayList<>();
+            for (JSONObject entry : metadata.getJSONArray("entries").jsonIter()) {
+                JSONObject entryMetadata = entry.getJSONObject("metadata");
+                entries.add(new Entry(entry.getStr("id"), entry.getStr("hash"), entry.getStr("text"),
+                        entryMetadata == null ? Map.of() : new LinkedHashMap<>(entryMetadata)));
+            }
+            int dimensions = metadata.getInt("dimensions");
+            FloatBuffer vectors = map(directory.resolve(metadata.getStr("vectorFile")));
+            if (vectors.capacity() != (long) dimensions * entries.size()) {
+                throw new IllegalStateException("向量数量与元数据不一致");
+            }
+            return new Snapshot(List.copyOf(entries), dimensions, generation, vectors);
+        } catch (Exception e) {
+            log.warn("本地向量库读取失败，将重新嵌入全部分片: {}", e.getMessage());
+            return Snapshot.EMPTY;
+        }
+    }
+
+    private static FloatBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("向量文件格式不正确: " + file.getFileName());
+            }
+            int dimensions = buffer.getInt(8);
+            int count = buffer.getInt(12);
+            if (buffer.limit() != HEADER_BYTES + (long) dimensions * count * Float.BYTES) {
+                throw new IOException("向量文件长度不正确: " + file.getFileName());
+            }
+            return buffer.position(HEADER_BYTES).slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+    }
+
+    /**
+     * 分片内容哈希：文本和元数据（按键排序）共同决定
+     */
+    static String contentHash(String text, Map<String, Object> metadata) {
+        return DigestUtil.sha256Hex(text + '\u0000' + JSONUtil.toJsonStr(new TreeMap<>(metadata)));
+    }
+
+    private static float[] normalize(float[] vector) {
+        double sum = 0.0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        if (sum == 0.0) {
+            return vector;
+        }
+        double norm = Math.sqrt(sum);
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private record Entry(String id, String hash, String text, Map<String, Object> metadata) {
+    }
+
+    private record ScoredEntry(Entry entry, double score) {
+    }
+
+    /**
+     * 某一代存储的只读视图，写入时整体替换，检索无需加锁
+     */
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(List.of(), 0, 0, null);
+
+        final List<Entry> entries;
+
+        final int dimensions;
+
+        final long generation;
+
+        // 映射的向量区域，第 i 个向量位于 [i * dimensions, (i + 1) * dimensions)
+        final FloatBuffer vectors;
+
+        Snapshot(List<Entry> entries, int dimensions, long generation, FloatBuffer vectors) {
+            this.entries = entries;
+            this.dimensions = dimensions;
+            this.generation = generation;
+            this.vectors = vectors;
+        }
+
+        float[] vector(int index) {
+            float[] vector = new float[dimensions];
+            vectors.get(index * dimensions, vector);
+            return vector;
+        }
+
+        double dot(int index, float[] query) {
+            int offset = index * dimensions;
+            double sum = 0.0;
+            for (int i = 0; i < dimensions; i++) {
+                sum += vectors.get(offset + i) * query[i];
+            }
+            return sum;
+        }
+    }
+}
@@ -20,6 +20,11 @@ public interface CacheMetricsService {
      */
     void recordAiResponseCacheHit();
 
+    /**
+     * 记录AI响应相似问题缓存命中（相似度或语义匹配命中，同时计入AI响应缓存命中）
+     */
+    void recordAiResponseSimilarCacheHit();
+
     /**
      * 记录AI响应缓存未命中
      */
@@ -81,6 +86,7 @@ public interface CacheMetricsService {
         private final long aiResponseCacheHits;
         private final long aiResponseCacheMisses;
         private final double aiResponseCacheHitRate;
+        private final long aiResponseSimilarCacheHits;
         private final int totalCachedQuestions;
 
         private final long savedApiCalls;
@@ -92,12 +98,22 @@ public interface CacheMetricsService {
                 double chatMemoryCacheHitRate, long aiResponseCacheHits,
                 long aiResponseCacheMisses, double aiResponseCacheHitRate,
                 int totalCachedQuestions, long savedApiCalls, boolean redisAvailable) {
+            this(chatMemoryCacheHits, chatMemoryCacheMisses, chatMemoryCacheHitRate, aiResponseCacheHits,
+                    aiResponseCacheMisses, aiResponseCacheHitRate, 0, totalCachedQuestions, savedApiCalls,
+                    redisAvailable);
+        }
+
+        public CachePerformanceReport(long chatMemoryCacheHits, long chatMemoryCacheMisses,
+                double chatMemoryCacheHitRate, long aiResponseCacheHits,
+                long aiResponseCacheMisses, double aiResponseCacheHitRate, long aiResponseSimilarCacheHits,
+                int totalCachedQuestions, long savedApiCalls, boolean redisAvailable) {
             this.chatMemoryCacheHits = chatMemoryCacheHits;
             this.chatMemoryCacheMisses = chatMemoryCacheMisses;
             this.chatMemoryCacheHitRate = chatMemoryCacheHitRate;
             this.aiResponseCacheHits = aiResponseCacheHits;
             this.aiResponseCacheMisses = aiResponseCacheMisses;
             this.aiResponseCacheHitRate = aiResponseCacheHitRate;
+            this.aiResponseSimilarCacheHits = aiResponseSimilarCacheHits;
             this.totalCachedQuestions = totalCachedQuestions;
             this.savedApiCalls = savedApiCalls;
             this.redisAvailable = redisAvailable;
@@ -129,6 +145,10 @@ public interface CacheMetricsService {
             return aiResponseCacheHitRate;
         }
 
+        public long getAiResponseSimilarCacheHits() {
+            return aiResponseSimilarCacheHits;
+        }
+
         public int getTotalCachedQuestions() {
             return totalCachedQuestions;
         }
@@ -150,14 +170,14 @@ public interface CacheMetricsService {
             return String.format(
                     "CachePerformanceReport{\n" +
                             "  对话记忆缓存: 命中=%d, 未命中=%d, 命中率=%.2f%%\n" +
-                            "  AI响应缓存: 命中=%d, 未命中=%d, 命中率=%.2f%%\n" +
+                            "  AI响应缓存: 命中=%d（相似问题命中=%d）, 未命中=%d, 命中率=%.2f%%\n" +
                             "  缓存问题总数: %d\n" +
                             "  节省API调用: %d次\n" +
                             "  Redis状态: %s\n" +
                             "  统计时间: %d\n" +
                             "}",
                     chatMemoryCacheHits, chatMemoryCacheMisses, chatMemoryCacheHitRate * 100,
-                    aiResponseCacheHits, aiResponseCacheMisses, aiResponseCacheHitRate * 100,
+                    aiResponseCacheHits, aiResponseSimilarCacheHits, aiResponseCacheMisses, aiResponseCacheHitRate * 100,
                     totalCachedQuestions, savedApiCalls,
                     redisAvailable ? "可用" : "不可用", timestamp);
         }
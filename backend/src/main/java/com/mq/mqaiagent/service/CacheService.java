@@ -1,5 +1,8 @@
 package com.mq.mqaiagent.service;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * @description 针对缓存操作的数据库操作Service
  */
@@ -67,6 +70,138 @@ public interface CacheService {
      */
     boolean expire(String key, long expireHours);
 
+    /**
+     * 仅当键不存在时设置缓存（可用作简单分布式锁）
+     *
+     * @param key           缓存键
+     * @param value         缓存值
+     * @param expireSeconds 过期时间（秒）
+     * @return 是否设置成功
+     */
+    boolean setIfAbsent(String key, Object value, long expireSeconds);
+
+    /**
+     * 仅当缓存值等于期望值时删除（原子操作），用于释放自己持有的锁
+     *
+     * @param key           缓存键
+     * @param expectedValue 期望值
+     * @return 是否删除
+     */
+    boolean deleteIfEquals(String key, Object expectedValue);
+
+    /**
+     * 向列表尾部追加元素（RPUSH）
+     *
+     * @param key    列表键
+     * @param values 要追加的元素
+     * @return 追加后的列表长度，失败返回-1
+     */
+    long rightPushAll(String key, List<?> values);
+
+    /**
+     * 仅当列表已存在时追加元素到列表尾部（RPUSHX），避免在缓存未加载时生成残缺列表
+     *
+     * @param key    列表键
+     * @param values 要追加的元素
+     * @return 追加后的列表长度，列表不存在返回0，失败返回-1
+     */
+    long rightPushAllIfPresent(String key, List<?> values);
+
+    /**
+     * 原子地用给定元素重建列表并设置过期时间（DEL + RPUSH + EXPIRE），元素为空时仅删除
+     *
+     * @param key         列表键
+     * @param values      新的列表元素
+     * @param expireHours 过期时间（小时）
+     * @return 重建后的列表长度，失败返回-1
+     */
+    long replaceList(String key, List<?> values, long expireHours);
+
+    /**
+     * 获取列表指定区间的元素（LRANGE）
+     *
+     * @param key   列表键
+     * @param start 起始下标（支持负数）
+     * @param end   结束下标（包含，支持负数）
+     * @return 元素列表，不存在或发生异常时返回空列表
+     */
+    List<Object> range(String key, long start, long end);
+
+    /**
+     * 裁剪列表，只保留指定区间的元素（LTRIM）
+     *
+     * @param key   列表键
+     * @param start 起始下标（支持负数）
+     * @param end   结束下标（包含，支持负数）
+     * @return 是否裁剪成功
+     */
+    boolean trim(String key, long start, long end);
+
+    /**
+     * 获取列表长度（LLEN）
+     *
+     * @param key 列表键
+     * @return 列表长度，发生异常时返回0
+     */
+    long listSize(String key);
+
+    /**
+     * 向有序集合添加成员并按分数裁剪（ZADD + ZREMRANGEBYRANK + EXPIRE，原子执行）
+     * 成员数超过上限时移除分数最低的成员。
+     *
+     * @param key         有序集合键
+     * @param member      成员
+     * @param score       分数
+     * @param maxSize     保留的最大成员数
+     * @param expireHours 过期时间（小时）
+     * @return 被裁剪掉的成员，发生异常时返回空列表
+     */
+    List<Object> sortedSetAddAndTrim(String key, Object member, double score, long maxSize, long expireHours);
+
+    /**
+     * 更新有序集合中已有成员的分数，成员不存在时不添加（ZADD XX）
+     *
+     * @param key    有序集合键
+     * @param member 成员
+     * @param score  新分数
+     * @return 是否更新成功
+     */
+    boolean sortedSetUpdateScore(String key, Object member, double score);
+
+    /**
+     * 按分数从高到低获取有序集合指定排名区间的成员（ZREVRANGE）
+     *
+     * @param key   有序集合键
+     * @param start 起始排名
+     * @param end   结束排名（包含，支持负数）
+     * @return 成员列表，不存在或发生异常时返回空列表
+     */
+    List<Object> sortedSetReverseRange(String key, long start, long end);
+
+    /**
+     * 从有序集合移除成员（ZREM）
+     *
+     * @param key    有序集合键
+     * @param member 成员
+     * @return 是否移除成功
+     */
+    boolean sortedSetRemove(String key, Object member);
+
+    /**
+     * 获取有序集合成员数（ZCARD）
+     *
+     * @param key 有序集合键
+     * @return 成员数，发生异常时返回0
+     */
+    long sortedSetSize(String key);
+
+    /**
+     * 获取近端缓存（本地 Caffeine 层）统计信息
+     *
+     * @return 各前缀策略的命中情况，未开启时只包含 enabled=false
+     */
+    Map<String, Object> getNearCacheStats();
+
     /**
      * 生成对话记忆缓存键
      *
@@ -85,9 +220,16 @@ public interface CacheService {
     String generateAiResponseKey(String questionHash);
 
     /**
-     * 检查Redis连接状态
+     * 检查Redis连接状态（读取熔断器的内存状态，不会每次都访问 Redis）
      *
      * @return 是否连接正常
      */
     boolean isRedisAvailable();
+
+    /**
+     * 获取 Redis 熔断器统计信息
+     *
+     * @return 当前状态、连续失败次数、各状态进入次数等
+     */
+    Map<String, Object> getRedisHealthStats();
 }
@@ -35,4 +35,13 @@ public interface ChatHistoryService {
      * @return 是否删除成功
      */
     boolean deleteChatHistory(Long userId, String chatId);
+
+    /**
+     * 将 keep_report 中的整段 JSON 消息迁移到 chat_message 表（追加写模式）
+     * 只补齐消息表中缺失的历史消息，可重复执行（切换存储模式前后均可）
+     *
+     * @param batchSize 每批读取的对话数量
+     * @return 迁移的消息条数
+     */
+    int migrateToMessageTable(int batchSize);
 }
@@ -1,5 +1,6 @@
 package com.mq.mqaiagent.service;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -8,7 +9,7 @@ import java.util.List;
 public interface TextSimilarityService {
 
     /**
-     * 计算两个文本的余弦相似度
+     * 计算两个文本的余弦相似度（MinHash 实现返回估算的 Jaccard 相似度，向量实现返回嵌入向量的余弦相似度）
      *
      * @param text1 第一个文本
      * @param text2 第二个文本
@@ -49,6 +50,99 @@ public interface TextSimilarityService {
      */
     List<TextSimilarityService.SimilarityResult> calculateSimilarities(String targetText, List<String> candidates);
 
+    /**
+     * 创建相似度索引
+     * 候选文本预先分词并建立倒排索引，查询时只计算与目标文本有共同特征的候选，适合反复查询同一批文本
+     *
+     * @return 空索引
+     */
+    SimilarityIndex createIndex();
+
+    /**
+     * 相似度索引，相似度计算方式与所属的相似度服务一致
+     */
+    interface SimilarityIndex {
+
+        /**
+         * 添加候选文本（已存在时忽略）
+         *
+         * @param text 候选文本
+         */
+        void add(String text);
+
+        /**
+         * 批量添加候选文本（已存在的忽略），需要远程计算特征的实现可按批处理
+         *
+         * @param texts 候选文本
+         * @return 已在索引中的文本（含之前已存在的），计算特征失败未能加入的文本不在其中，调用方可稍后重试
+         */
+        default List<String> addAll(Collection<String> texts) {
+            texts.forEach(this::add);
+            return texts.stream().filter(this::contains).toList();
+        }
+
+        /**
+         * 移除候选文本
+         *
+         * @param text 候选文本
+         */
+        void remove(String text);
+
+        /**
+         * 是否包含候选文本
+         *
+         * @param text 候选文本
+         * @return 是否包含
+         */
+        boolean contains(String text);
+
+        /**
+         * 候选文本数量
+         *
+         * @return 数量
+         */
+        int size();
+
+        /**
+         * 查询最相似的候选文本
+         *
+         * @param targetText 目标文本
+         * @param limit      最多返回条数
+         * @return 相似度大于0的结果，按相似度降序排列
+         */
+        List<TextSimilarityService.SimilarityResult> search(String targetText, int limit);
+
+        /**
+         * 预先计算目标文本的查询特征，同一相似度服务创建的索引之间可复用，避免对每个索引重复计算
+         *
+         * @param targetText 目标文本
+         * @return 查询
+         */
+        default SimilarityQuery prepareQuery(String targetText) {
+            return new SimilarityQuery(targetText, null);
+        }
+
+        /**
+         * 使用预先计算的查询特征查询最相似的候选文本
+         *
+         * @param query 由 {@link #prepareQuery(String)} 得到的查询
+         * @param limit 最多返回条数
+         * @return 相似度大于0的结果，按相似度降序排列
+         */
+        default List<TextSimilarityService.SimilarityResult> search(SimilarityQuery query, int limit) {
+            return search(query.text(), limit);
+        }
+    }
+
+    /**
+     * 相似度查询
+     *
+     * @param text      目标文本
+     * @param embedding 目标文本的单位向量，不依赖远程特征的实现为null，计算失败时为空数组
+     */
+    record SimilarityQuery(String text, float[] embedding) {
+    }
+
     /**
      * 相似度计算结果
      */
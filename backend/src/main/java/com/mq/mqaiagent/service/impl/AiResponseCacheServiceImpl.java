@@ -1,15 +1,21 @@
 package com.mq.mqaiagent.service.impl;
 
 import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.mq.mqaiagent.service.AiResponseCacheService;
+import com.mq.mqaiagent.service.CacheMetricsService;
 import com.mq.mqaiagent.service.CacheService;
 import com.mq.mqaiagent.service.TextSimilarityService;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @description 针对AI响应缓存操作的数据库操作Service实现
@@ -24,6 +30,13 @@ public class AiResponseCacheServiceImpl implements AiResponseCacheService {
     @Resource
     private TextSimilarityService textSimilarityService;
 
+    /**
+     * 缓存指标服务（其统计报告依赖本服务，延迟注入避免循环依赖）
+     */
+    @Resource
+    @Lazy
+    private CacheMetricsService cacheMetricsService;
+
     /**
      * AI响应缓存过期时间（小时）
      */
@@ -35,15 +48,43 @@ public class AiResponseCacheServiceImpl implements AiResponseCacheService {
     private static final long QUESTION_INDEX_CACHE_EXPIRE_HOURS = 24;
 
     /**
-     * 问题索引缓存键
+     * 问题索引分片键前缀（有序集合，分数为最近命中时间）
      */
-    private static final String QUESTION_INDEX_KEY = "mq:ai:agent:question:index";
+    private static final String QUESTION_INDEX_PREFIX = CacheServiceImpl.QUESTION_INDEX_PREFIX + "shard:";
 
     /**
-     * 最大缓存问题数量
+     * 全局分片最大缓存问题数量
      */
     private static final int MAX_CACHED_QUESTIONS = 1000;
 
+    /**
+     * 用户分片最大缓存问题数量
+     */
+    private static final int MAX_USER_CACHED_QUESTIONS = 200;
+
+    /**
+     * 本地最多保留的分片索引数量，长期不活跃的用户分片会被淘汰
+     */
+    private static final int MAX_LOCAL_SHARD_INDEXES = 1000;
+
+    /**
+     * 相似问题检索最多返回的候选数量
+     */
+    private static final int MAX_SIMILAR_CANDIDATES = 10;
+
+    /**
+     * 本地相似度索引与 Redis 问题索引的同步间隔（毫秒），用于感知其他节点新增的问题
+     */
+    private static final long SIMILARITY_INDEX_SYNC_INTERVAL_MS = 30_000;
+
+    /**
+     * 各分片的本地相似度索引（常驻内存，按增量维护）
+     */
+    private final Cache<String, ShardIndex> shardIndexes = Caffeine.newBuilder()
+            .maximumSize(MAX_LOCAL_SHARD_INDEXES)
+            .expireAfterAccess(Duration.ofMinutes(30))
+            .build();
+
     @Override
     public String getCachedResponse(String question, Long userId) {
         if (StrUtil.isBlank(question)) {
@@ -56,6 +97,8 @@ public class AiResponseCacheServiceImpl implements AiResponseCacheService {
             String exactResponse = cacheService.get(exactCacheKey, String.class);
             if (exactResponse != null) {
                 log.debug("AI响应精确缓存命中，question: {}", question.substring(0, Math.min(50, question.length())));
+                cacheMetricsService.recordAiResponseCacheHit();
+                touchQuestion(question, userId);
                 return exactResponse;
             }
 
@@ -65,10 +108,12 @@ public class AiResponseCacheServiceImpl implements AiResponseCacheService {
                 log.debug("AI响应相似缓存命中，question: {}", question.substring(0, Math.min(50, question.length())));
                 // 将相似问题的响应也缓存到当前问题的键下
                 cacheService.set(exactCacheKey, similarResponse, AI_RESPONSE_CACHE_EXPIRE_HOURS);
+                cacheMetricsService.recordAiResponseSimilarCacheHit();
                 return similarResponse;
             }
 
             log.debug("AI响应缓存未命中，question: {}", question.substring(0, Math.min(50, question.length())));
+            cacheMetricsService.recordAiResponseCacheMiss();
             return null;
 
         } catch (Exception e) {
@@ -132,8 +177,8 @@ public class AiResponseCacheServiceImpl implements AiResponseCacheService {
     @Override
     public AiResponseCacheService.CacheStats getCacheStats() {
         try {
-            List<String> questionIndex = getQuestionIndex();
-            int totalCachedQuestions = questionIndex.size();
+            // 只统计全局分片，用户分片分散在各自的键中
+            int totalCachedQuestions = (int) cacheService.sortedSetSize(questionShardKey(null));
 
             // 计算缓存命中率需要额外的统计数据，这里简化处理
             return new AiResponseCacheService.CacheStats(totalCachedQuestions, 0, 0.0);
@@ -160,34 +205,66 @@ public class AiResponseCacheServiceImpl implements AiResponseCacheService {
     }
 
     /**
-     * 查找相似问题的响应
+     * 查找相似问题的响应：先查用户分片，再查全局分片
      *
      * @param question 当前问题
      * @param userId   用户ID（可选）
      * @return 相似问题的响应，如果没有找到则返回null
      */
-    @SuppressWarnings("unchecked")
     private String findSimilarResponse(String question, Long userId) {
-        try {
-            List<String> questionIndex = getQuestionIndex();
-            if (questionIndex.isEmpty()) {
-                return null;
+        List<Long> shards = userId != null ? Arrays.asList(userId, null) : Collections.singletonList(null);
+        // 各分片的索引由同一相似度服务创建，查询特征（如嵌入向量）只计算一次
+        TextSimilarityService.SimilarityQuery query = null;
+        for (Long shardUserId : shards) {
+            TextSimilarityService.SimilarityIndex index = getShardIndex(shardUserId);
+            if (index != null && query == null) {
+                query = index.prepareQuery(question);
             }
+            String response = findSimilarResponseInShard(question, shardUserId, index, query);
+            if (response != null) {
+                return response;
+            }
+        }
+        return null;
+    }
 
-            // 计算与所有已缓存问题的相似度
-            List<TextSimilarityService.SimilarityResult> similarities = textSimilarityService
-                    .calculateSimilarities(question, questionIndex);
+    /**
+     * 在单个问题分片中查找相似问题的响应
+     *
+     * @param question    当前问题
+     * @param shardUserId 分片所属用户ID，null表示全局分片
+     * @param index       分片的本地相似度索引，相似度服务不支持索引时为null
+     * @param query       跨分片复用的查询，index为null时不使用
+     * @return 相似问题的响应，如果没有找到则返回null
+     */
+    private String findSimilarResponseInShard(String question, Long shardUserId,
+                                              TextSimilarityService.SimilarityIndex index,
+                                              TextSimilarityService.SimilarityQuery query) {
+        try {
+            List<TextSimilarityService.SimilarityResult> similarities;
+            if (index != null) {
+                // 倒排索引只计算与当前问题有共同特征的候选
+                similarities = index.search(query, MAX_SIMILAR_CANDIDATES);
+            } else {
+                List<String> shardQuestions = getShardQuestions(shardUserId);
+                if (shardQuestions.isEmpty()) {
+                    return null;
+                }
+                // 计算与分片内所有已缓存问题的相似度
+                similarities = textSimilarityService.calculateSimilarities(question, shardQuestions);
+            }
 
             // 查找第一个相似度超过阈值的问题
             for (TextSimilarityService.SimilarityResult result : similarities) {
                 if (result.isSimilar(textSimilarityService.getSimilarityThreshold())) {
-                    String similarCacheKey = generateCacheKey(result.getText(), userId);
+                    String similarCacheKey = generateCacheKey(result.getText(), shardUserId);
                     String cachedResponse = cacheService.get(similarCacheKey, String.class);
                     if (cachedResponse != null) {
                         log.debug("找到相似问题缓存，原问题: {}, 相似问题: {}, 相似度: {}",
                                 question.substring(0, Math.min(30, question.length())),
                                 result.getText().substring(0, Math.min(30, result.getText().length())),
                                 result.getSimilarity());
+                        touchQuestion(result.getText(), shardUserId);
                         return cachedResponse;
                     }
                 }
@@ -202,49 +279,71 @@ public class AiResponseCacheServiceImpl implements AiResponseCacheService {
     }
 
     /**
-     * 获取问题索引
+     * 获取问题分片键
      *
+     * @param userId 用户ID，null表示全局分片
+     * @return 分片键
+     */
+    private String questionShardKey(Long userId) {
+        if (userId != null) {
+            return QUESTION_INDEX_PREFIX + "user:" + userId;
+        }
+        return QUESTION_INDEX_PREFIX + "global";
+    }
+
+    private int maxShardQuestions(Long userId) {
+        return userId != null ? MAX_USER_CACHED_QUESTIONS : MAX_CACHED_QUESTIONS;
+    }
+
+    /**
+     * 获取分片内的问题，按最近命中时间从新到旧排列
+     *
+     * @param userId 用户ID，null表示全局分片
      * @return 问题列表
      */
-    @SuppressWarnings("unchecked")
-    private List<String> getQuestionIndex() {
-        try {
-            List<String> index = cacheService.get(QUESTION_INDEX_KEY, List.class);
-            return index != null ? index : new ArrayList<>();
-        } catch (Exception e) {
-            log.error("获取问题索引失败: {}", e.getMessage(), e);
-            return new ArrayList<>();
+    private List<String> getShardQuestions(Long userId) {
+        List<Object> members = cacheService.sortedSetReverseRange(questionShardKey(userId), 0,
+                maxShardQuestions(userId) - 1);
+        List<String> questions = new ArrayList<>(members.size());
+        for (Object member : members) {
+            if (member instanceof String question) {
+                questions.add(question);
+            }
         }
+        return questions;
     }
 
     /**
-     * 更新问题索引
+     * 更新问题索引：原子写入分片并按最近命中时间裁剪，O(log n)
      *
      * @param question 新问题
      * @param userId   用户ID（可选）
      */
     private void updateQuestionIndex(String question, Long userId) {
         try {
-            List<String> questionIndex = getQuestionIndex();
-
-            // 避免重复添加
-            if (!questionIndex.contains(question)) {
-                questionIndex.add(question);
-
-                // 限制索引大小，移除最旧的问题
-                if (questionIndex.size() > MAX_CACHED_QUESTIONS) {
-                    questionIndex = questionIndex.subList(
-                            questionIndex.size() - MAX_CACHED_QUESTIONS,
-                            questionIndex.size());
-                }
+            List<Object> evictedQuestions = cacheService.sortedSetAddAndTrim(questionShardKey(userId), question,
+                    System.currentTimeMillis(), maxShardQuestions(userId), QUESTION_INDEX_CACHE_EXPIRE_HOURS);
 
-                cacheService.set(QUESTION_INDEX_KEY, questionIndex, QUESTION_INDEX_CACHE_EXPIRE_HOURS);
+            // 本地索引只移除被裁剪的问题；新问题由下次同步加入，计算特征（可能是远程嵌入调用）不占用写缓存的请求
+            ShardIndex shard = shardIndexes.getIfPresent(questionShardKey(userId));
+            if (shard != null) {
+                evictedQuestions.forEach(evicted -> shard.remove(String.valueOf(evicted)));
             }
         } catch (Exception e) {
             log.error("更新问题索引失败: {}", e.getMessage(), e);
         }
     }
 
+    /**
+     * 命中后刷新问题的最近命中时间，使常用问题不被裁剪
+     *
+     * @param question 命中的问题
+     * @param userId   用户ID，null表示全局分片
+     */
+    private void touchQuestion(String question, Long userId) {
+        cacheService.sortedSetUpdateScore(questionShardKey(userId), question, System.currentTimeMillis());
+    }
+
     /**
      * 从问题索引中移除问题
      *
@@ -253,12 +352,103 @@ public class AiResponseCacheServiceImpl implements AiResponseCacheService {
      */
     private void removeFromQuestionIndex(String question, Long userId) {
         try {
-            List<String> questionIndex = getQuestionIndex();
-            if (questionIndex.remove(question)) {
-                cacheService.set(QUESTION_INDEX_KEY, questionIndex, QUESTION_INDEX_CACHE_EXPIRE_HOURS);
+            cacheService.sortedSetRemove(questionShardKey(userId), question);
+            ShardIndex shard = shardIndexes.getIfPresent(questionShardKey(userId));
+            if (shard != null) {
+                shard.remove(question);
             }
         } catch (Exception e) {
             log.error("从问题索引移除问题失败: {}", e.getMessage(), e);
         }
     }
+
+    /**
+     * 获取分片的本地相似度索引，首次使用或超过同步间隔时与 Redis 中的分片对齐
+     * 同一时刻只有一个线程执行同步，同步期间计算特征（可能是远程嵌入调用）不持有分片锁，
+     * 其他请求直接使用当前索引查询，新问题的特征计算完成后才加入索引
+     *
+     * @param userId 用户ID，null表示全局分片
+     * @return 相似度索引，相似度服务不支持索引时返回null
+     */
+    private TextSimilarityService.SimilarityIndex getShardIndex(Long userId) {
+        String shardKey = questionShardKey(userId);
+        ShardIndex shard = shardIndexes.getIfPresent(shardKey);
+        if (shard != null && shard.isFresh()) {
+            return shard.index;
+        }
+        if (shard == null) {
+            TextSimilarityService.SimilarityIndex index = textSimilarityService.createIndex();
+            if (index == null) {
+                return null;
+            }
+            shard = shardIndexes.get(shardKey, k -> new ShardIndex(index));
+        }
+        if (!shard.syncing.compareAndSet(false, true)) {
+            return shard.index;
+        }
+        try {
+            if (shard.isFresh()) {
+                return shard.index;
+            }
+            // 增量对齐：只添加新问题、移除已不在 Redis 分片中的问题
+            Set<String> latestQuestions = new HashSet<>(getShardQuestions(userId));
+            for (String indexed : new ArrayList<>(shard.indexedQuestions)) {
+                if (!latestQuestions.contains(indexed)) {
+                    shard.remove(indexed);
+                }
+            }
+            List<String> newQuestions = new ArrayList<>();
+            for (String latest : latestQuestions) {
+                if (!shard.indexedQuestions.contains(latest)) {
+                    newQuestions.add(latest);
+                }
+            }
+            if (!newQuestions.isEmpty()) {
+                // 只记录实际加入索引的问题，计算特征失败的问题在下次同步时重试
+                shard.indexedQuestions.addAll(shard.index.addAll(newQuestions));
+            }
+            shard.syncedAt = System.currentTimeMillis();
+            log.debug("相似度索引同步完成，分片: {}, 问题数: {}", shardKey, shard.index.size());
+            return shard.index;
+        } catch (Exception e) {
+            // 同步失败时沿用当前索引，未更新同步时间，下次查询重试
+            log.error("相似度索引同步失败，分片: {}, error: {}", shardKey, e.getMessage(), e);
+            return shard.index;
+        } finally {
+            shard.syncing.set(false);
+        }
+    }
+
+    /**
+     * 单个问题分片的本地相似度索引
+     */
+    private static class ShardIndex {
+
+        private final TextSimilarityService.SimilarityIndex index;
+
+        /**
+         * 已写入本地相似度索引的问题
+         */
+        private final Set<String> indexedQuestions = ConcurrentHashMap.newKeySet();
+
+        private volatile long syncedAt;
+
+        /**
+         * 是否有线程正在与 Redis 分片同步
+         */
+        private final AtomicBoolean syncing = new AtomicBoolean();
+
+        private ShardIndex(TextSimilarityService.SimilarityIndex index) {
+            this.index = index;
+        }
+
+        private boolean isFresh() {
+            return syncedAt > 0 && System.currentTimeMillis() - syncedAt < SIMILARITY_INDEX_SYNC_INTERVAL_MS;
+        }
+
+        private void remove(String question) {
+            index.remove(question);
+            indexedQuestions.remove(question);
+        }
+    }
 }
@@ -0,0 +1,171 @@
+package com.mq.mqaiagent.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.mq.mqaiagent.service.TextSimilarityService;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于字符 2-gram 的倒排索引
+ * 与 {@link TextSimilarityServiceImpl#calculateCosineSimilarity} 的计算结果一致：
+ * 候选文本入库时完成分词并预先计算向量模长，查询时只累加与目标文本共享 gram 的候选的点积。
+ */
+class BigramSimilarityIndex implements TextSimilarityService.SimilarityIndex {
+
+    /**
+     * 已入库的候选文本
+     *
+     * @param id     内部编号
+     * @param text   原始文本
+     * @param vector 词频向量
+     * @param norm   向量模长
+     */
+    private record Entry(int id, String text, Map<String, Integer> vector, double norm) {
+    }
+
+    private final Map<String, Entry> entriesByText = new HashMap<>();
+
+    private final Map<Integer, Entry> entriesById = new HashMap<>();
+
+    /**
+     * gram -> (候选编号 -> 词频)
+     */
+    private final Map<String, Map<Integer, Integer>> postings = new HashMap<>();
+
+    /**
+     * 未参与索引的文本（过短，与任何文本的相似度都为0）
+     */
+    private final Set<String> unindexedTexts = new HashSet<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int nextId;
+
+    @Override
+    public void add(String text) {
+        if (StrUtil.isBlank(text)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (entriesByText.containsKey(text) || unindexedTexts.contains(text)) {
+                return;
+            }
+            Map<String, Integer> vector = vectorOf(text);
+            if (vector.isEmpty()) {
+                unindexedTexts.add(text);
+                return;
+            }
+            Entry entry = new Entry(nextId++, text, vector, normOf(vector));
+            entriesByText.put(text, entry);
+            entriesById.put(entry.id(), entry);
+            vector.forEach((gram, count) ->
+                    postings.computeIfAbsent(gram, k -> new HashMap<>()).put(entry.id(), count));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String text) {
+        if (text == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            unindexedTexts.remove(text);
+            Entry entry = entriesByText.remove(text);
+            if (entry == null) {
+                return;
+            }
+            entriesById.remove(entry.id());
+            for (String gram : entry.vector().keySet()) {
+                Map<Integer, Integer> gramPostings = postings.get(gram);
+                if (gramPostings != null) {
+                    gramPostings.remove(entry.id());
+                    if (gramPostings.isEmpty()) {
+                        postings.remove(gram);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(String text) {
+        lock.readLock().lock();
+        try {
+            return entriesByText.containsKey(text) || unindexedTexts.contains(text);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entriesByText.size() + unindexedTexts.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<TextSimilarityService.SimilarityResult> search(String targetText, int limit) {
+        if (StrUtil.isBlank(targetText) || limit <= 0) {
+            return Collections.emptyList();
+        }
+        Map<String, Integer> targetVector = vectorOf(targetText);
+        if (targetVector.isEmpty()) {
+            return Collections.emptyList();
+        }
+        double targetNorm = normOf(targetVector);
+
+        lock.readLock().lock();
+        try {
+            // 只遍历与目标文本共享 gram 的候选，累加点积
+            Map<Integer, Double> dotProducts = new HashMap<>();
+            targetVector.forEach((gram, targetCount) -> {
+                Map<Integer, Integer> gramPostings = postings.get(gram);
+                if (gramPostings != null) {
+                    gramPostings.forEach((id, count) -> dotProducts.merge(id, (double) targetCount * count, Double::sum));
+                }
+            });
+
+            List<TextSimilarityService.SimilarityResult> results = new ArrayList<>(dotProducts.size());
+            dotProducts.forEach((id, dotProduct) -> {
+                Entry entry = entriesById.get(id);
+                results.add(new TextSimilarityService.SimilarityResult(entry.text(),
+                        dotProduct / (targetNorm * entry.norm())));
+            });
+            results.sort((r1, r2) -> Double.compare(r2.getSimilarity(), r1.getSimilarity()));
+            return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 构建词频向量，预处理后过短的文本返回空向量
+     */
+    private static Map<String, Integer> vectorOf(String text) {
+        String processedText = TextSimilarityServiceImpl.preprocessText(text);
+        if (processedText.length() < TextSimilarityServiceImpl.MIN_TEXT_LENGTH) {
+            return Collections.emptyMap();
+        }
+        return TextSimilarityServiceImpl.buildWordFrequencyVector(processedText);
+    }
+
+    private static double normOf(Map<String, Integer> vector) {
+        double sum = 0.0;
+        for (int count : vector.values()) {
+            sum += (double) count * count;
+        }
+        return Math.sqrt(sum);
+    }
+}
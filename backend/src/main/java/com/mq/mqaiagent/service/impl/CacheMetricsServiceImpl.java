@@ -42,6 +42,11 @@ public class CacheMetricsServiceImpl implements CacheMetricsService {
      */
     private final AtomicLong aiResponseCacheMisses = new AtomicLong(0);
 
+    /**
+     * AI响应相似问题缓存命中次数（包含在AI响应缓存命中次数中）
+     */
+    private final AtomicLong aiResponseSimilarCacheHits = new AtomicLong(0);
+
     /**
      * 节省的API调用次数
      */
@@ -72,6 +77,12 @@ public class CacheMetricsServiceImpl implements CacheMetricsService {
                 aiResponseCacheHits.get(), savedApiCalls.get());
     }
 
+    @Override
+    public void recordAiResponseSimilarCacheHit() {
+        aiResponseSimilarCacheHits.incrementAndGet();
+        recordAiResponseCacheHit();
+    }
+
     @Override
     public void recordAiResponseCacheMiss() {
         aiResponseCacheMisses.incrementAndGet();
@@ -124,6 +135,7 @@ public class CacheMetricsServiceImpl implements CacheMetricsService {
                 aiResponseCacheHits.get(),
                 aiResponseCacheMisses.get(),
                 getAiResponseCacheHitRate(),
+                aiResponseSimilarCacheHits.get(),
                 aiCacheStats.getTotalCachedQuestions(),
 
                 // 性能节省指标
@@ -139,6 +151,7 @@ public class CacheMetricsServiceImpl implements CacheMetricsService {
         chatMemoryCacheMisses.set(0);
         aiResponseCacheHits.set(0);
         aiResponseCacheMisses.set(0);
+        aiResponseSimilarCacheHits.set(0);
         savedApiCalls.set(0);
 
         log.info("缓存性能计数器已重置");
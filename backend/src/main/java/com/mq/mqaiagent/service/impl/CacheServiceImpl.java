@@ -1,12 +1,27 @@
 package com.mq.mqaiagent.service.impl;
 
+import com.mq.mqaiagent.manager.RedisHealthTracker;
 import com.mq.mqaiagent.service.CacheService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @description 针对缓存操作的数据库操作Service实现
@@ -18,6 +33,9 @@ public class CacheServiceImpl implements CacheService {
     @Resource
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Resource
+    private RedisHealthTracker redisHealthTracker;
+
     /**
      * 缓存键前缀
      */
@@ -33,18 +51,171 @@ public class CacheServiceImpl implements CacheService {
      */
     public static final String AI_RESPONSE_PREFIX = CACHE_PREFIX + "ai:response:";
 
+    /**
+     * 问题索引缓存键前缀
+     */
+    public static final String QUESTION_INDEX_PREFIX = CACHE_PREFIX + "question:";
+
+    /**
+     * 对话记忆写后缓冲键前缀
+     */
+    public static final String CHAT_WRITE_BEHIND_PREFIX = CACHE_PREFIX + "chat:write-behind:";
+
+    /**
+     * 近端缓存失效通知频道
+     */
+    static final String INVALIDATION_CHANNEL = CACHE_PREFIX + "cache:invalidate";
+
     /**
      * 默认缓存过期时间（小时）
      */
     private static final long DEFAULT_EXPIRE_HOURS = 24;
 
+    /**
+     * 有序集合添加并裁剪：ARGV = 成员, 分数, 最大成员数, 过期秒数；返回被裁剪的成员
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SORTED_SET_ADD_AND_TRIM_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+            local overflow = redis.call('ZCARD', KEYS[1]) - tonumber(ARGV[3])
+            local evicted = {}
+            if overflow > 0 then
+                evicted = redis.call('ZRANGE', KEYS[1], 0, overflow - 1)
+                redis.call('ZREMRANGEBYRANK', KEYS[1], 0, overflow - 1)
+            end
+            redis.call('EXPIRE', KEYS[1], ARGV[4])
+            return evicted
+            """, List.class);
+
+    /**
+     * 更新已有成员分数：ARGV = 成员, 分数；返回更新的成员数
+     */
+    private static final RedisScript<Long> SORTED_SET_UPDATE_SCORE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('ZSCORE', KEYS[1], ARGV[1]) then
+                redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+                return 1
+            end
+            return 0
+            """, Long.class);
+
+    /**
+     * 比较并删除：ARGV = 期望值；值相等时删除并返回 1
+     */
+    private static final RedisScript<Long> DELETE_IF_EQUALS_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    /**
+     * 列表存在时批量追加：ARGV = 元素；一次 RPUSHX 追加全部元素，返回追加后的长度，列表不存在返回 0
+     */
+    private static final RedisScript<Long> LIST_PUSH_IF_PRESENT_SCRIPT = new DefaultRedisScript<>("""
+            return redis.call('RPUSHX', KEYS[1], unpack(ARGV))
+            """, Long.class);
+
+    /**
+     * 原子重建列表：ARGV = 过期秒数, 元素...；返回重建后的长度
+     */
+    private static final RedisScript<Long> LIST_REPLACE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('DEL', KEYS[1])
+            if #ARGV < 2 then
+                return 0
+            end
+            local size = redis.call('RPUSH', KEYS[1], unpack(ARGV, 2))
+            redis.call('EXPIRE', KEYS[1], ARGV[1])
+            return size
+            """, Long.class);
+
+    /**
+     * 是否开启近端缓存（Caffeine）
+     */
+    @Value("${mq.cache.near.enabled:false}")
+    private boolean nearCacheEnabled;
+
+    @Value("${mq.cache.near.chat-memory.max-size:2000}")
+    private long chatMemoryNearMaxSize;
+
+    @Value("${mq.cache.near.chat-memory.ttl-seconds:30}")
+    private long chatMemoryNearTtlSeconds;
+
+    @Value("${mq.cache.near.ai-response.max-size:5000}")
+    private long aiResponseNearMaxSize;
+
+    @Value("${mq.cache.near.ai-response.ttl-seconds:60}")
+    private long aiResponseNearTtlSeconds;
+
+    /**
+     * 近端缓存，未开启时为null
+     */
+    private NearCache nearCache;
+
+    /**
+     * 失效通知监听容器
+     */
+    private RedisMessageListenerContainer invalidationListenerContainer;
+
+    /**
+     * 当前实例标识，忽略自己发出的失效通知
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final AtomicLong invalidationsPublished = new AtomicLong(0);
+    private final AtomicLong invalidationsReceived = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        if (!nearCacheEnabled) {
+            return;
+        }
+        nearCache = new NearCache(List.of(
+                new NearCache.Policy("chatMemory", List.of(CHAT_MEMORY_PREFIX),
+                        chatMemoryNearMaxSize, chatMemoryNearTtlSeconds),
+                new NearCache.Policy("aiResponse", List.of(AI_RESPONSE_PREFIX),
+                        aiResponseNearMaxSize, aiResponseNearTtlSeconds)));
+        try {
+            invalidationListenerContainer = new RedisMessageListenerContainer();
+            invalidationListenerContainer.setConnectionFactory(redisTemplate.getConnectionFactory());
+            invalidationListenerContainer.addMessageListener(this::onInvalidationMessage,
+                    new ChannelTopic(INVALIDATION_CHANNEL));
+            invalidationListenerContainer.afterPropertiesSet();
+            invalidationListenerContainer.start();
+        } catch (Exception e) {
+            // 订阅失败时仅依赖本地过期时间兜底
+            log.warn("近端缓存失效通知订阅失败，将仅依赖过期时间: {}", e.getMessage());
+        }
+        log.info("近端缓存已开启，对话记忆: {}条/{}s，AI响应: {}条/{}s",
+                chatMemoryNearMaxSize, chatMemoryNearTtlSeconds, aiResponseNearMaxSize, aiResponseNearTtlSeconds);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (invalidationListenerContainer != null) {
+            try {
+                invalidationListenerContainer.destroy();
+            } catch (Exception e) {
+                log.warn("近端缓存失效通知监听关闭失败: {}", e.getMessage());
+            }
+        }
+    }
+
     @Override
     public boolean set(String key, Object value, long expireHours) {
+        if (isCircuitOpen()) {
+            return false;
+        }
         try {
             redisTemplate.opsForValue().set(key, value, expireHours, TimeUnit.HOURS);
+            recordRedisSuccess();
             log.debug("缓存设置成功，key: {}, expireHours: {}", key, expireHours);
+            if (nearCache != null && nearCache.covers(key)) {
+                nearCache.put(key, value);
+                publishInvalidation(key);
+            }
             return true;
         } catch (Exception e) {
+            recordRedisFailure(e);
             log.error("缓存设置失败，key: {}, error: {}", key, e.getMessage(), e);
             return false;
         }
@@ -58,14 +229,29 @@ public class CacheServiceImpl implements CacheService {
     @Override
     public Object get(String key) {
         try {
+            if (nearCache != null) {
+                Object nearValue = nearCache.get(key);
+                if (nearValue != null) {
+                    log.debug("本地缓存命中，key: {}", key);
+                    return nearValue;
+                }
+            }
+            if (isCircuitOpen()) {
+                return null;
+            }
             Object value = redisTemplate.opsForValue().get(key);
+            recordRedisSuccess();
             if (value != null) {
                 log.debug("缓存命中，key: {}", key);
+                if (nearCache != null) {
+                    nearCache.put(key, value);
+                }
             } else {
                 log.debug("缓存未命中，key: {}", key);
             }
             return value;
         } catch (Exception e) {
+            recordRedisFailure(e);
             log.error("缓存获取失败，key: {}, error: {}", key, e.getMessage(), e);
             return null;
         }
@@ -88,11 +274,17 @@ public class CacheServiceImpl implements CacheService {
 
     @Override
     public boolean delete(String key) {
+        if (isCircuitOpen()) {
+            return false;
+        }
         try {
             Boolean result = redisTemplate.delete(key);
+            recordRedisSuccess();
+            invalidateNearCache(key);
             log.debug("缓存删除，key: {}, result: {}", key, result);
             return Boolean.TRUE.equals(result);
         } catch (Exception e) {
+            recordRedisFailure(e);
             log.error("缓存删除失败，key: {}, error: {}", key, e.getMessage(), e);
             return false;
         }
@@ -101,9 +293,17 @@ public class CacheServiceImpl implements CacheService {
     @Override
     public boolean exists(String key) {
         try {
+            if (nearCache != null && nearCache.get(key) != null) {
+                return true;
+            }
+            if (isCircuitOpen()) {
+                return false;
+            }
             Boolean result = redisTemplate.hasKey(key);
+            recordRedisSuccess();
             return Boolean.TRUE.equals(result);
         } catch (Exception e) {
+            recordRedisFailure(e);
             log.error("缓存存在性检查失败，key: {}, error: {}", key, e.getMessage(), e);
             return false;
         }
@@ -111,16 +311,290 @@ public class CacheServiceImpl implements CacheService {
 
     @Override
     public boolean expire(String key, long expireHours) {
+        if (isCircuitOpen()) {
+            return false;
+        }
         try {
             Boolean result = redisTemplate.expire(key, expireHours, TimeUnit.HOURS);
+            recordRedisSuccess();
             log.debug("缓存过期时间设置，key: {}, expireHours: {}, result: {}", key, expireHours, result);
             return Boolean.TRUE.equals(result);
         } catch (Exception e) {
+            recordRedisFailure(e);
             log.error("缓存过期时间设置失败，key: {}, error: {}", key, e.getMessage(), e);
             return false;
         }
     }
 
+    @Override
+    public boolean setIfAbsent(String key, Object value, long expireSeconds) {
+        if (isCircuitOpen()) {
+            return false;
+        }
+        try {
+            Boolean result = redisTemplate.opsForValue().setIfAbsent(key, value, expireSeconds, TimeUnit.SECONDS);
+            recordRedisSuccess();
+            if (Boolean.TRUE.equals(result)) {
+                invalidateNearCache(key);
+                return true;
+            }
+            return false;
+        } catch (Exception e) {
+            recordRedisFailure(e);
+            log.error("缓存条件设置失败，key: {}, error: {}", key, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean deleteIfEquals(String key, Object expectedValue) {
+        if (isCircuitOpen()) {
+            return false;
+        }
+        try {
+            Long deleted = redisTemplate.execute(DELETE_IF_EQUALS_SCRIPT, new StringRedisSerializer(),
+                    new GenericToStringSerializer<>(Long.class),
+                    List.of(key), serializeMember(expectedValue));
+            recordRedisSuccess();
+            if (deleted != null && deleted > 0) {
+                invalidateNearCache(key);
+                return true;
+            }
+            return false;
+        } catch (Exception e) {
+            recordRedisFailure(e);
+            log.error("缓存比较删除失败，key: {}, error: {}", key, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public long rightPushAll(String key, List<?> values) {
+        if (isCircuitOpen()) {
+            return -1;
+        }
+        try {
+            Long size = redisTemplate.opsForList().rightPushAll(key, values.toArray());
+            recordRedisSuccess();
+            invalidateNearCache(key);
+            log.debug("列表追加成功，key: {}, count: {}, size: {}", key, values.size(), size);
+            return size != null ? size : -1;
+        } catch (Exception e) {
+            recordRedisFailure(e);
+            log.error("列表追加失败，key: {}, error: {}", key, e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    @Override
+    public long rightPushAllIfPresent(String key, List<?> values) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        if (isCircuitOpen()) {
+            return -1;
+        }
+        try {
+            Long size = redisTemplate.execute(LIST_PUSH_IF_PRESENT_SCRIPT, new StringRedisSerializer(),
+                    new GenericToStringSerializer<>(Long.class),
+                    List.of(key), values.stream().map(this::serializeMember).toArray());
+            recordRedisSuccess();
+            if (size == null || size == 0) {
+                return 0;
+            }
+            // 追加成功后才失效，避免写入前的并发读取把旧列表重新放回近端缓存
+            invalidateNearCache(key);
+            return size;
+        } catch (Exception e) {
+            recordRedisFailure(e);
+            log.error("列表追加失败，key: {}, error: {}", key, e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    @Override
+    public long replaceList(String key, List<?> values, long expireHours) {
+        if (isCircuitOpen()) {
+            return -1;
+        }
+        try {
+            Object[] args = new Object[values.size() + 1];
+            args[0] = String.valueOf(TimeUnit.HOURS.toSeconds(expireHours));
+            for (int i = 0; i < values.size(); i++) {
+                args[i + 1] = serializeMember(values.get(i));
+            }
+            Long size = redisTemplate.execute(LIST_REPLACE_SCRIPT, new StringRedisSerializer(),
+                    new GenericToStringSerializer<>(Long.class), List.of(key), args);
+            recordRedisSuccess();
+            invalidateNearCache(key);
+            log.debug("列表重建成功，key: {}, size: {}", key, size);
+            return size != null ? size : -1;
+        } catch (Exception e) {
+            recordRedisFailure(e);
+            log.error("列表重建失败，key: {}, error: {}", key, e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    @Override
+    public List<Object> range(String key, long start, long end) {
+        try {
+            if (nearCache != null) {
+                List<Object> nearValues = nearCache.getRange(key, start, end);
+                if (nearValues != null) {
+                    return nearValues;
+                }
+            }
+            if (isCircuitOpen()) {
+                return Collections.emptyList();
+            }
+            List<Object> values = redisTemplate.opsForList().range(key, start, end);
+            recordRedisSuccess();
+            if (values == null) {
+                return Collections.emptyList();
+            }
+            if (nearCache != null) {
+                nearCache.putRange(key, start, end, values);
+            }
+            return values;
+        } catch (Exception e) {
+            recordRedisFailure(e);
+            log.error("列表读取失败，key: {}, error: {}", key, e.getMessage(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public boolean trim(String key, long start, long end) {
+        if (isCircuitOpen()) {
+            return false;
+        }
+        try {
+            redisTemplate.opsForList().trim(key, start, end);
+            recordRedisSuccess();
+            invalidateNearCache(key);
+            return true;
+        } catch (Exception e) {
+            recordRedisFailure(e);
+            log.error("列表裁剪失败，key: {}, error: {}", key, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public long listSize(String key) {
+        if (isCircuitOpen()) {
+            return 0;
+        }
+        try {
+            Long size = redisTemplate.opsForList().size(key);
+            recordRedisSuccess();
+            return size != null ? size : 0;
+        } catch (Exception e) {
+            recordRedisFailure(e);
+            log.error("列表长度获取失败，key: {}, error: {}", key, e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Object> sortedSetAddAndTrim(String key, Object member, double score, long maxSize, long expireHours) {
+        if (isCircuitOpen()) {
+            return Collections.emptyList();
+        }
+        try {
+            List<Object> evicted = redisTemplate.execute(SORTED_SET_ADD_AND_TRIM_SCRIPT, new StringRedisSerializer(),
+                    (RedisSerializer<List>) (RedisSerializer<?>) redisTemplate.getValueSerializer(),
+                    List.of(key), serializeMember(member), String.valueOf(score), String.valueOf(maxSize),
+                    String.valueOf(TimeUnit.HOURS.toSeconds(expireHours)));
+            recordRedisSuccess();
+            return evicted != null ? evicted : Collections.emptyList();
+        } catch (Exception e) {
+            recordRedisFailure(e);
+            log.error("有序集合添加失败，key: {}, error: {}", key, e.getMessage(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public boolean sortedSetUpdateScore(String key, Object member, double score) {
+        if (isCircuitOpen()) {
+            return false;
+        }
+        try {
+            Long updated = redisTemplate.execute(SORTED_SET_UPDATE_SCORE_SCRIPT, new StringRedisSerializer(),
+                    new GenericToStringSerializer<>(Long.class),
+                    List.of(key), serializeMember(member), String.valueOf(score));
+            recordRedisSuccess();
+            return updated != null && updated > 0;
+        } catch (Exception e) {
+            recordRedisFailure(e);
+            log.error("有序集合分数更新失败，key: {}, error: {}", key, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public List<Object> sortedSetReverseRange(String key, long start, long end) {
+        if (isCircuitOpen()) {
+            return Collections.emptyList();
+        }
+        try {
+            Set<Object> members = redisTemplate.opsForZSet().reverseRange(key, start, end);
+            recordRedisSuccess();
+            return members != null ? new ArrayList<>(members) : Collections.emptyList();
+        } catch (Exception e) {
+            recordRedisFailure(e);
+            log.error("有序集合读取失败，key: {}, error: {}", key, e.getMessage(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public boolean sortedSetRemove(String key, Object member) {
+        if (isCircuitOpen()) {
+            return false;
+        }
+        try {
+            Long removed = redisTemplate.opsForZSet().remove(key, member);
+            recordRedisSuccess();
+            return removed != null && removed > 0;
+        } catch (Exception e) {
+            recordRedisFailure(e);
+            log.error("有序集合移除失败，key: {}, error: {}", key, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public long sortedSetSize(String key) {
+        if (isCircuitOpen()) {
+            return 0;
+        }
+        try {
+            Long size = redisTemplate.opsForZSet().zCard(key);
+            recordRedisSuccess();
+            return size != null ? size : 0;
+        } catch (Exception e) {
+            recordRedisFailure(e);
+            log.error("有序集合大小获取失败，key: {}, error: {}", key, e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    @Override
+    public Map<String, Object> getNearCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", nearCache != null);
+        if (nearCache != null) {
+            stats.putAll(nearCache.stats());
+            stats.put("invalidationsPublished", invalidationsPublished.get());
+            stats.put("invalidationsReceived", invalidationsReceived.get());
+        }
+        return stats;
+    }
+
     @Override
     public String generateChatMemoryKey(String conversationId, Long userId) {
         if (userId != null) {
@@ -134,8 +608,19 @@ public class CacheServiceImpl implements CacheService {
         return AI_RESPONSE_PREFIX + questionHash;
     }
 
+    @Override
+    public Map<String, Object> getRedisHealthStats() {
+        if (redisHealthTracker == null) {
+            return new LinkedHashMap<>();
+        }
+        return redisHealthTracker.getStats();
+    }
+
     @Override
     public boolean isRedisAvailable() {
+        if (redisHealthTracker != null) {
+            return redisHealthTracker.isAvailable();
+        }
         try {
             redisTemplate.getConnectionFactory().getConnection().ping();
             return true;
@@ -144,4 +629,77 @@ public class CacheServiceImpl implements CacheService {
             return false;
         }
     }
+
+    /**
+     * 按值序列化器编码脚本参数中的成员，保证与 opsForZSet 读写的成员编码一致
+     */
+    @SuppressWarnings("unchecked")
+    private String serializeMember(Object member) {
+        byte[] bytes = ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(member);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : "";
+    }
+
+    /**
+     * 熔断是否打开（打开时快速失败，不访问 Redis）
+     */
+    private boolean isCircuitOpen() {
+        return redisHealthTracker != null && !redisHealthTracker.isAvailable();
+    }
+
+    /**
+     * 将访问成功报告给健康跟踪器，重置连续失败计数
+     */
+    private void recordRedisSuccess() {
+        if (redisHealthTracker != null) {
+            redisHealthTracker.recordSuccess();
+        }
+    }
+
+    /**
+     * 将访问异常报告给健康跟踪器
+     */
+    private void recordRedisFailure(Exception e) {
+        if (redisHealthTracker != null) {
+            redisHealthTracker.recordFailure(e);
+        }
+    }
+
+    /**
+     * 本地失效并通知其他节点失效（键不在近端缓存前缀内时不做任何事）
+     * 须在 Redis 写成功之后调用：写之前失效时，并发读取会在写入完成前把旧值重新放回近端缓存，直到过期才更新。
+     *
+     * @param key 缓存键
+     */
+    private void invalidateNearCache(String key) {
+        if (nearCache == null || !nearCache.covers(key)) {
+            return;
+        }
+        nearCache.invalidate(key);
+        publishInvalidation(key);
+    }
+
+    private void publishInvalidation(String key) {
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, instanceId + "|" + key);
+            invalidationsPublished.incrementAndGet();
+        } catch (Exception e) {
+            log.warn("近端缓存失效通知发送失败，key: {}, error: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * 处理其他节点发来的失效通知
+     */
+    void onInvalidationMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(body instanceof String payload) || nearCache == null) {
+            return;
+        }
+        int separator = payload.indexOf('|');
+        if (separator < 0 || instanceId.equals(payload.substring(0, separator))) {
+            return;
+        }
+        nearCache.invalidate(payload.substring(separator + 1));
+        invalidationsReceived.incrementAndGet();
+    }
 }
@@ -5,12 +5,17 @@ import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.mq.mqaiagent.chatmemory.AppendOnlyChatMemory;
+import com.mq.mqaiagent.chatmemory.DatabaseChatMemory;
+import com.mq.mqaiagent.mapper.ChatMessageMapper;
 import com.mq.mqaiagent.mapper.KeepReportMapper;
 import com.mq.mqaiagent.model.dto.keepReport.KeepReport;
 import com.mq.mqaiagent.model.dto.ChatHistoryDetailDTO;
 import com.mq.mqaiagent.model.dto.ChatHistoryListDTO;
+import com.mq.mqaiagent.model.entity.ChatMessage;
 import com.mq.mqaiagent.service.ChatHistoryService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.Resource;
@@ -28,6 +33,15 @@ public class ChatHistoryServiceImpl implements ChatHistoryService {
     @Resource
     private KeepReportMapper keepReportMapper;
 
+    @Resource
+    private ChatMessageMapper chatMessageMapper;
+
+    /**
+     * 对话记忆存储模式：json（keep_report 整段 JSON，默认）/ append-only（chat_message 追加写）
+     */
+    @Value("${mq.chat-memory.storage:json}")
+    private String chatMemoryStorage;
+
     @Override
     public List<ChatHistoryListDTO> getChatHistoryList(Long userId) {
         try {
@@ -67,14 +81,23 @@ public class ChatHistoryServiceImpl implements ChatHistoryService {
 
             // 查询数据库
             KeepReport keepReport = keepReportMapper.selectOne(queryWrapper);
-
-            if (keepReport == null || keepReport.getMessages() == null || keepReport.getMessages().isBlank()) {
-                log.warn("未找到对话记录或消息为空，用户ID: {}, 对话ID: {}", userId, chatId);
+            if (keepReport == null) {
+                log.warn("未找到对话记录，用户ID: {}, 对话ID: {}", userId, chatId);
                 return null;
             }
 
-            // 解析消息JSON
-            List<ChatHistoryDetailDTO.ChatMessageDTO> messages = parseMessages(keepReport.getMessages());
+            // 追加写模式的消息存放在 chat_message 表；切换后尚未读写过的对话仍只有 JSON 历史
+            // json 模式下只读 JSON，消息表中的行可能是较早迁移的过期副本
+            List<ChatHistoryDetailDTO.ChatMessageDTO> messages = isAppendOnlyStorage()
+                    ? listAppendedMessages(userId, chatId) : new ArrayList<>();
+            if (messages.isEmpty()) {
+                if (keepReport.getMessages() == null || keepReport.getMessages().isBlank()) {
+                    log.warn("对话消息为空，用户ID: {}, 对话ID: {}", userId, chatId);
+                    return null;
+                }
+                // 解析消息JSON
+                messages = parseMessages(keepReport.getMessages());
+            }
 
             return ChatHistoryDetailDTO.builder()
                     .chatId(chatId)
@@ -113,6 +136,71 @@ public class ChatHistoryServiceImpl implements ChatHistoryService {
         }
     }
 
+    @Override
+    public int migrateToMessageTable(int batchSize) {
+        AppendOnlyChatMemory appendOnlyChatMemory = new AppendOnlyChatMemory(keepReportMapper, chatMessageMapper);
+        int migratedMessages = 0;
+        int migratedConversations = 0;
+        long lastId = 0L;
+        while (true) {
+            // 按主键分批读取，避免一次性加载全部对话
+            LambdaQueryWrapper<KeepReport> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.gt(KeepReport::getId, lastId)
+                    .orderByAsc(KeepReport::getId)
+                    .last("limit " + batchSize);
+            List<KeepReport> batch = keepReportMapper.selectList(queryWrapper);
+            if (batch == null || batch.isEmpty()) {
+                break;
+            }
+            for (KeepReport report : batch) {
+                try {
+                    int count = appendOnlyChatMemory.migrateConversation(report);
+                    if (count > 0) {
+                        migratedMessages += count;
+                        migratedConversations++;
+                    }
+                } catch (Exception e) {
+                    log.error("迁移对话失败，对话ID: {}, 用户ID: {}, 错误: {}",
+                            report.getChatId(), report.getUserId(), e.getMessage(), e);
+                }
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+        log.info("对话消息迁移完成，迁移对话数: {}, 迁移消息数: {}", migratedConversations, migratedMessages);
+        return migratedMessages;
+    }
+
+    private boolean isAppendOnlyStorage() {
+        return DatabaseChatMemory.STORAGE_APPEND_ONLY.equalsIgnoreCase(chatMemoryStorage);
+    }
+
+    /**
+     * 读取追加写模式下的对话消息
+     *
+     * @param userId 用户ID
+     * @param chatId 对话ID
+     * @return 消息DTO列表，按序号升序
+     */
+    private List<ChatHistoryDetailDTO.ChatMessageDTO> listAppendedMessages(Long userId, String chatId) {
+        LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ChatMessage::getUserId, userId)
+                .eq(ChatMessage::getChatId, chatId)
+                .orderByAsc(ChatMessage::getSeq);
+        List<ChatMessage> rows = chatMessageMapper.selectList(queryWrapper);
+        if (rows == null || rows.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return rows.stream()
+                .map(row -> ChatHistoryDetailDTO.ChatMessageDTO.builder()
+                        .messageType(row.getMessageType())
+                        .message(row.getContent())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
     /**
      * 解析消息JSON为DTO列表
      *
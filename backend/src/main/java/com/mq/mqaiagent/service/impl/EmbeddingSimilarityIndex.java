@@ -0,0 +1,167 @@
+package com.mq.mqaiagent.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.mq.mqaiagent.service.TextSimilarityService;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 进程内向量索引
+ * 入库时计算并保存单位向量，查询时只需为目标文本调用一次嵌入模型，
+ * 再用最小堆在内存中取余弦相似度最高的 top-k。
+ */
+class EmbeddingSimilarityIndex implements TextSimilarityService.SimilarityIndex {
+
+    private final EmbeddingTextSimilarityServiceImpl similarityService;
+
+    /**
+     * 文本 -> 单位向量
+     */
+    private final Map<String, float[]> embeddings = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    EmbeddingSimilarityIndex(EmbeddingTextSimilarityServiceImpl similarityService) {
+        this.similarityService = similarityService;
+    }
+
+    @Override
+    public void add(String text) {
+        addAll(Collections.singletonList(text));
+    }
+
+    /**
+     * 按嵌入模型的单批上限分批计算向量，某一批失败时只跳过该批，其余批次照常加入
+     */
+    @Override
+    public List<String> addAll(Collection<String> texts) {
+        List<String> newTexts = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (String text : texts) {
+                if (StrUtil.isNotBlank(text) && !embeddings.containsKey(text) && !newTexts.contains(text)) {
+                    newTexts.add(text);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // 在锁外调用嵌入模型，避免远程调用阻塞查询
+        int batchSize = similarityService.getEmbedBatchSize();
+        for (int start = 0; start < newTexts.size(); start += batchSize) {
+            List<String> batch = newTexts.subList(start, Math.min(start + batchSize, newTexts.size()));
+            List<float[]> batchEmbeddings = similarityService.embedAll(batch);
+            if (batchEmbeddings.size() != batch.size()) {
+                continue;
+            }
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    embeddings.putIfAbsent(batch.get(i), batchEmbeddings.get(i));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        lock.readLock().lock();
+        try {
+            return texts.stream().filter(embeddings::containsKey).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String text) {
+        if (text == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            embeddings.remove(text);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(String text) {
+        lock.readLock().lock();
+        try {
+            return embeddings.containsKey(text);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return embeddings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<TextSimilarityService.SimilarityResult> search(String targetText, int limit) {
+        if (StrUtil.isBlank(targetText) || limit <= 0) {
+            return Collections.emptyList();
+        }
+        return search(prepareQuery(targetText), limit);
+    }
+
+    /**
+     * 目标文本只调用一次嵌入模型，得到的向量可用于同一服务创建的所有索引
+     */
+    @Override
+    public TextSimilarityService.SimilarityQuery prepareQuery(String targetText) {
+        if (StrUtil.isBlank(targetText)) {
+            return new TextSimilarityService.SimilarityQuery(targetText, new float[0]);
+        }
+        List<float[]> targetEmbeddings = similarityService.embedAll(List.of(targetText));
+        float[] targetEmbedding = targetEmbeddings.isEmpty() ? new float[0] : targetEmbeddings.get(0);
+        return new TextSimilarityService.SimilarityQuery(targetText, targetEmbedding);
+    }
+
+    @Override
+    public List<TextSimilarityService.SimilarityResult> search(TextSimilarityService.SimilarityQuery query, int limit) {
+        if (query.embedding() == null) {
+            return search(query.text(), limit);
+        }
+        float[] targetEmbedding = query.embedding();
+        if (targetEmbedding.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        // 最小堆保留相似度最高的 limit 个候选
+        PriorityQueue<TextSimilarityService.SimilarityResult> topK =
+                new PriorityQueue<>(Comparator.comparingDouble(TextSimilarityService.SimilarityResult::getSimilarity));
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, float[]> entry : embeddings.entrySet()) {
+                double similarity = EmbeddingTextSimilarityServiceImpl.dot(targetEmbedding, entry.getValue());
+                if (similarity <= 0.0) {
+                    continue;
+                }
+                if (topK.size() < limit) {
+                    topK.add(new TextSimilarityService.SimilarityResult(entry.getKey(), similarity));
+                } else if (similarity > topK.peek().getSimilarity()) {
+                    topK.poll();
+                    topK.add(new TextSimilarityService.SimilarityResult(entry.getKey(), similarity));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<TextSimilarityService.SimilarityResult> results = new ArrayList<>(topK);
+        results.sort((r1, r2) -> Double.compare(r2.getSimilarity(), r1.getSimilarity()));
+        return results;
+    }
+}
@@ -0,0 +1,159 @@
+package com.mq.mqaiagent.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.mq.mqaiagent.service.TextSimilarityService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @description 基于嵌入向量的文本相似度Service实现（语义缓存）
+ * 问题通过 EmbeddingModel 转换为向量，按余弦相似度匹配，能识别换一种说法的同义问题。
+ * 通过 mq.cache.similarity.algorithm=embedding 启用。
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "mq.cache.similarity.algorithm", havingValue = "embedding")
+public class EmbeddingTextSimilarityServiceImpl implements TextSimilarityService {
+
+    private final EmbeddingModel embeddingModel;
+
+    /**
+     * 相似度阈值（向量余弦相似度），超过此值认为两个问题语义相同
+     */
+    private final double similarityThreshold;
+
+    /**
+     * 单次调用嵌入模型的最大文本数
+     */
+    private final int embedBatchSize;
+
+    public EmbeddingTextSimilarityServiceImpl(EmbeddingModel dashscopeEmbeddingModel,
+            @Value("${mq.cache.similarity.embedding.threshold:0.9}") double similarityThreshold,
+            @Value("${mq.cache.similarity.embedding.batch-size:10}") int embedBatchSize) {
+        this.embeddingModel = dashscopeEmbeddingModel;
+        this.similarityThreshold = similarityThreshold;
+        this.embedBatchSize = Math.max(1, embedBatchSize);
+        log.info("向量相似度服务已启用，阈值: {}, 单批嵌入上限: {}", similarityThreshold, this.embedBatchSize);
+    }
+
+    @Override
+    public double calculateCosineSimilarity(String text1, String text2) {
+        if (StrUtil.isBlank(text1) || StrUtil.isBlank(text2)) {
+            return 0.0;
+        }
+        List<float[]> embeddings = embedAll(List.of(text1, text2));
+        if (embeddings.isEmpty()) {
+            return 0.0;
+        }
+        return Math.max(0.0, dot(embeddings.get(0), embeddings.get(1)));
+    }
+
+    @Override
+    public boolean isSimilar(String text1, String text2) {
+        double similarity = calculateCosineSimilarity(text1, text2);
+        boolean result = similarity >= similarityThreshold;
+
+        log.debug("文本相似度计算(向量): similarity={}, threshold={}, result={}",
+                similarity, similarityThreshold, result);
+
+        return result;
+    }
+
+    @Override
+    public String generateTextHash(String text) {
+        return TextSimilarityServiceImpl.textHashOf(text);
+    }
+
+    @Override
+    public double getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+
+    @Override
+    public List<TextSimilarityService.SimilarityResult> calculateSimilarities(String targetText,
+            List<String> candidates) {
+        if (StrUtil.isBlank(targetText) || candidates == null || candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> texts = new ArrayList<>(candidates.size() + 1);
+        texts.add(targetText);
+        texts.addAll(candidates);
+        List<float[]> embeddings = embedAll(texts);
+        if (embeddings.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        float[] targetEmbedding = embeddings.get(0);
+        List<TextSimilarityService.SimilarityResult> results = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            results.add(new TextSimilarityService.SimilarityResult(candidates.get(i),
+                    dot(targetEmbedding, embeddings.get(i + 1))));
+        }
+        return results.stream()
+                .filter(result -> result.getSimilarity() > 0.0)
+                .sorted((r1, r2) -> Double.compare(r2.getSimilarity(), r1.getSimilarity()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public SimilarityIndex createIndex() {
+        return new EmbeddingSimilarityIndex(this);
+    }
+
+    int getEmbedBatchSize() {
+        return embedBatchSize;
+    }
+
+    /**
+     * 批量计算归一化后的嵌入向量，超过单批上限时分多次调用嵌入模型
+     *
+     * @param texts 文本列表
+     * @return 与输入顺序一致的单位向量，任一批调用失败时返回空列表
+     */
+    List<float[]> embedAll(List<String> texts) {
+        try {
+            List<float[]> normalized = new ArrayList<>(texts.size());
+            for (int start = 0; start < texts.size(); start += embedBatchSize) {
+                List<String> batch = texts.subList(start, Math.min(start + embedBatchSize, texts.size()));
+                for (float[] embedding : embeddingModel.embed(batch)) {
+                    normalized.add(normalize(embedding));
+                }
+            }
+            return normalized;
+        } catch (Exception e) {
+            log.error("计算文本嵌入向量失败，文本数: {}, error: {}", texts.size(), e.getMessage(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 单位向量的点积即余弦相似度
+     */
+    static double dot(float[] vector1, float[] vector2) {
+        double sum = 0.0;
+        for (int i = 0; i < vector1.length; i++) {
+            sum += vector1[i] * vector2[i];
+        }
+        return sum;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        if (norm == 0.0) {
+            return vector;
+        }
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+}
@@ -0,0 +1,178 @@
+package com.mq.mqaiagent.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.mq.mqaiagent.service.TextSimilarityService;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于 MinHash 签名的 LSH 索引
+ * 签名按段存入分桶，查询时只对至少有一段签名完全相同的候选估算相似度。
+ */
+class MinHashSimilarityIndex implements TextSimilarityService.SimilarityIndex {
+
+    /**
+     * 已入库的候选文本
+     *
+     * @param id        内部编号
+     * @param text      原始文本
+     * @param signature MinHash 签名
+     */
+    private record Entry(int id, String text, int[] signature) {
+    }
+
+    private final MinHashTextSimilarityServiceImpl similarityService;
+
+    private final int bands;
+
+    private final int rows;
+
+    private final Map<String, Entry> entriesByText = new HashMap<>();
+
+    private final Map<Integer, Entry> entriesById = new HashMap<>();
+
+    /**
+     * 每段一个分桶表：段签名哈希 -> 候选编号
+     */
+    private final List<Map<Integer, Set<Integer>>> buckets;
+
+    /**
+     * 未参与索引的文本（过短，与任何文本的相似度都为0）
+     */
+    private final Set<String> unindexedTexts = new HashSet<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int nextId;
+
+    MinHashSimilarityIndex(MinHashTextSimilarityServiceImpl similarityService, int bands, int rows) {
+        this.similarityService = similarityService;
+        this.bands = bands;
+        this.rows = rows;
+        this.buckets = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    @Override
+    public void add(String text) {
+        if (StrUtil.isBlank(text)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (entriesByText.containsKey(text) || unindexedTexts.contains(text)) {
+                return;
+            }
+            int[] signature = similarityService.signatureOf(text);
+            if (signature == null) {
+                unindexedTexts.add(text);
+                return;
+            }
+            Entry entry = new Entry(nextId++, text, signature);
+            entriesByText.put(text, entry);
+            entriesById.put(entry.id(), entry);
+            for (int band = 0; band < bands; band++) {
+                buckets.get(band).computeIfAbsent(bandHash(signature, band), k -> new HashSet<>()).add(entry.id());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String text) {
+        if (text == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            unindexedTexts.remove(text);
+            Entry entry = entriesByText.remove(text);
+            if (entry == null) {
+                return;
+            }
+            entriesById.remove(entry.id());
+            for (int band = 0; band < bands; band++) {
+                Map<Integer, Set<Integer>> bandBuckets = buckets.get(band);
+                int bandHash = bandHash(entry.signature(), band);
+                Set<Integer> bucket = bandBuckets.get(bandHash);
+                if (bucket != null) {
+                    bucket.remove(entry.id());
+                    if (bucket.isEmpty()) {
+                        bandBuckets.remove(bandHash);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(String text) {
+        lock.readLock().lock();
+        try {
+            return entriesByText.containsKey(text) || unindexedTexts.contains(text);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entriesByText.size() + unindexedTexts.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<TextSimilarityService.SimilarityResult> search(String targetText, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        int[] targetSignature = similarityService.signatureOf(targetText);
+        if (targetSignature == null) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            // 任一段签名相同即为候选
+            Set<Integer> candidateIds = new HashSet<>();
+            for (int band = 0; band < bands; band++) {
+                Set<Integer> bucket = buckets.get(band).get(bandHash(targetSignature, band));
+                if (bucket != null) {
+                    candidateIds.addAll(bucket);
+                }
+            }
+
+            List<TextSimilarityService.SimilarityResult> results = new ArrayList<>(candidateIds.size());
+            for (Integer id : candidateIds) {
+                Entry entry = entriesById.get(id);
+                double similarity = MinHashTextSimilarityServiceImpl.estimateSimilarity(targetSignature, entry.signature());
+                if (similarity > 0.0) {
+                    results.add(new TextSimilarityService.SimilarityResult(entry.text(), similarity));
+                }
+            }
+            results.sort((r1, r2) -> Double.compare(r2.getSimilarity(), r1.getSimilarity()));
+            return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int bandHash(int[] signature, int band) {
+        int hash = 1;
+        for (int i = band * rows; i < (band + 1) * rows; i++) {
+            hash = 31 * hash + signature[i];
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,189 @@
+package com.mq.mqaiagent.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.mq.mqaiagent.service.TextSimilarityService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * @description 基于 MinHash + LSH 的文本相似度Service实现
+ * 文本按字符 2-gram 切分为集合，用 MinHash 签名估算 Jaccard 相似度；
+ * 索引将签名分为 bands 段（每段 rows 个值），任一段完全相同的文本才成为候选，
+ * 查询成本只与命中的桶大小有关，与候选总数无关。
+ * 通过 mq.cache.similarity.algorithm=minhash 启用。
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "mq.cache.similarity.algorithm", havingValue = "minhash")
+public class MinHashTextSimilarityServiceImpl implements TextSimilarityService {
+
+    /**
+     * 生成哈希函数种子的固定随机数种子，保证各节点、各次启动的签名一致
+     */
+    private static final long HASH_SEED = 0x5DEECE66DL;
+
+    /**
+     * LSH 分段数，越大召回率越高、候选越多
+     */
+    @Value("${mq.cache.similarity.minhash.bands:16}")
+    private int bands;
+
+    /**
+     * 每段包含的签名值个数，越大精确率越高、召回率越低
+     */
+    @Value("${mq.cache.similarity.minhash.rows:4}")
+    private int rows;
+
+    /**
+     * 相似度阈值（估算的 Jaccard 相似度），超过此值认为两个问题相似
+     */
+    @Value("${mq.cache.similarity.minhash.threshold:0.6}")
+    private double similarityThreshold;
+
+    private long[] hashSeeds;
+
+    public MinHashTextSimilarityServiceImpl() {
+    }
+
+    MinHashTextSimilarityServiceImpl(int bands, int rows, double similarityThreshold) {
+        this.bands = bands;
+        this.rows = rows;
+        this.similarityThreshold = similarityThreshold;
+        init();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (bands <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("MinHash 分段数和每段行数必须大于0");
+        }
+        Random random = new Random(HASH_SEED);
+        hashSeeds = new long[bands * rows];
+        for (int i = 0; i < hashSeeds.length; i++) {
+            hashSeeds[i] = random.nextLong();
+        }
+        log.info("MinHash 相似度服务已启用，分段数: {}, 每段行数: {}, 阈值: {}, 理论拐点相似度: {}",
+                bands, rows, similarityThreshold, String.format("%.3f", Math.pow(1.0 / bands, 1.0 / rows)));
+    }
+
+    /**
+     * 估算两个文本的相似度（MinHash 估算的 Jaccard 相似度）
+     *
+     * @param text1 第一个文本
+     * @param text2 第二个文本
+     * @return 相似度值，范围[0,1]，1表示完全相同
+     */
+    @Override
+    public double calculateCosineSimilarity(String text1, String text2) {
+        if (StrUtil.isBlank(text1) || StrUtil.isBlank(text2)) {
+            return 0.0;
+        }
+        return estimateSimilarity(signatureOf(text1), signatureOf(text2));
+    }
+
+    @Override
+    public boolean isSimilar(String text1, String text2) {
+        double similarity = calculateCosineSimilarity(text1, text2);
+        boolean result = similarity >= similarityThreshold;
+
+        log.debug("文本相似度计算(MinHash): similarity={}, threshold={}, result={}",
+                similarity, similarityThreshold, result);
+
+        return result;
+    }
+
+    @Override
+    public String generateTextHash(String text) {
+        return TextSimilarityServiceImpl.textHashOf(text);
+    }
+
+    @Override
+    public double getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+
+    @Override
+    public List<TextSimilarityService.SimilarityResult> calculateSimilarities(String targetText,
+            List<String> candidates) {
+        if (StrUtil.isBlank(targetText) || candidates == null || candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int[] targetSignature = signatureOf(targetText);
+        if (targetSignature == null) {
+            return Collections.emptyList();
+        }
+
+        return candidates.stream()
+                .map(candidate -> new TextSimilarityService.SimilarityResult(candidate,
+                        estimateSimilarity(targetSignature, signatureOf(candidate))))
+                .filter(result -> result.getSimilarity() > 0.0)
+                .sorted((r1, r2) -> Double.compare(r2.getSimilarity(), r1.getSimilarity()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public SimilarityIndex createIndex() {
+        return new MinHashSimilarityIndex(this, bands, rows);
+    }
+
+    /**
+     * 计算文本的 MinHash 签名
+     *
+     * @param text 原始文本
+     * @return 签名，预处理后过短的文本返回null
+     */
+    int[] signatureOf(String text) {
+        if (StrUtil.isBlank(text)) {
+            return null;
+        }
+        String processedText = TextSimilarityServiceImpl.preprocessText(text);
+        if (processedText.length() < TextSimilarityServiceImpl.MIN_TEXT_LENGTH) {
+            return null;
+        }
+        Set<String> shingles = TextSimilarityServiceImpl.buildWordFrequencyVector(processedText).keySet();
+
+        int[] signature = new int[hashSeeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (String shingle : shingles) {
+            long shingleHash = shingle.hashCode();
+            for (int i = 0; i < hashSeeds.length; i++) {
+                int hash = (int) (mix(shingleHash ^ hashSeeds[i]) >>> 33);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * 用签名中相同位置取值相等的比例估算 Jaccard 相似度
+     */
+    static double estimateSimilarity(int[] signature1, int[] signature2) {
+        if (signature1 == null || signature2 == null) {
+            return 0.0;
+        }
+        int matches = 0;
+        for (int i = 0; i < signature1.length; i++) {
+            if (signature1[i] == signature2[i]) {
+                matches++;
+            }
+        }
+        return (double) matches / signature1.length;
+    }
+
+    /**
+     * SplitMix64 混合函数，把种子异或后的值打散为独立的哈希
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
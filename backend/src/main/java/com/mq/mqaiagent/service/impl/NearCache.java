@@ -0,0 +1,165 @@
+package com.mq.mqaiagent.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内近端缓存（Caffeine），位于 Redis 之前
+ * 按键前缀配置容量与过期时间，未被任何前缀覆盖的键不做本地缓存。
+ * 本地副本只作为读加速，写操作仍以 Redis 为准，并通过失效通知保持多节点一致。
+ */
+class NearCache {
+
+    /**
+     * 前缀策略
+     *
+     * @param name       策略名称（用于统计展示）
+     * @param prefixes   覆盖的键前缀
+     * @param maxSize    最大条目数
+     * @param ttlSeconds 写入后过期时间（秒），作为丢失失效通知时的兜底
+     */
+    record Policy(String name, List<String> prefixes, long maxSize, long ttlSeconds) {
+    }
+
+    private final List<Tier> tiers = new ArrayList<>();
+
+    NearCache(List<Policy> policies) {
+        for (Policy policy : policies) {
+            Cache<String, Object> values = Caffeine.newBuilder()
+                    .maximumSize(policy.maxSize())
+                    .expireAfterWrite(Duration.ofSeconds(policy.ttlSeconds()))
+                    .recordStats()
+                    .build();
+            // 列表区间读取按 键 -> (区间 -> 结果) 存放，同一个键的所有区间一起失效
+            Cache<String, Map<String, List<Object>>> ranges = Caffeine.newBuilder()
+                    .maximumSize(policy.maxSize())
+                    .expireAfterWrite(Duration.ofSeconds(policy.ttlSeconds()))
+                    .recordStats()
+                    .build();
+            tiers.add(new Tier(policy, values, ranges, new LongAdder(), new LongAdder()));
+        }
+    }
+
+    /**
+     * 键是否被某个前缀策略覆盖
+     */
+    boolean covers(String key) {
+        return tierOf(key) != null;
+    }
+
+    Object get(String key) {
+        Tier tier = tierOf(key);
+        if (tier == null) {
+            return null;
+        }
+        return copyOf(tier.values().getIfPresent(key));
+    }
+
+    void put(String key, Object value) {
+        Tier tier = tierOf(key);
+        if (tier != null && value != null) {
+            tier.values().put(key, copyOf(value));
+        }
+    }
+
+    List<Object> getRange(String key, long start, long end) {
+        Tier tier = tierOf(key);
+        if (tier == null) {
+            return null;
+        }
+        Map<String, List<Object>> keyRanges = tier.ranges().asMap().get(key);
+        List<Object> values = keyRanges != null ? keyRanges.get(start + ":" + end) : null;
+        if (values == null) {
+            tier.rangeMisses().increment();
+            return null;
+        }
+        tier.rangeHits().increment();
+        return new ArrayList<>(values);
+    }
+
+    void putRange(String key, long start, long end, List<Object> values) {
+        Tier tier = tierOf(key);
+        if (tier != null && values != null && !values.isEmpty()) {
+            tier.ranges().asMap().computeIfAbsent(key, k -> new ConcurrentHashMap<>())
+                    .put(start + ":" + end, List.copyOf(values));
+        }
+    }
+
+    void invalidate(String key) {
+        Tier tier = tierOf(key);
+        if (tier != null) {
+            tier.values().invalidate(key);
+            tier.ranges().invalidate(key);
+        }
+    }
+
+    void invalidateAll() {
+        for (Tier tier : tiers) {
+            tier.values().invalidateAll();
+            tier.ranges().invalidateAll();
+        }
+    }
+
+    /**
+     * 各策略的本地缓存统计
+     */
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Tier tier : tiers) {
+            CacheStats valueStats = tier.values().stats();
+            CacheStats rangeStats = tier.ranges().stats();
+            long hits = valueStats.hitCount() + tier.rangeHits().sum();
+            long requests = hits + valueStats.missCount() + tier.rangeMisses().sum();
+
+            Map<String, Object> tierStats = new LinkedHashMap<>();
+            tierStats.put("prefixes", tier.policy().prefixes());
+            tierStats.put("size", tier.values().estimatedSize() + tier.ranges().estimatedSize());
+            tierStats.put("hitCount", hits);
+            tierStats.put("missCount", requests - hits);
+            tierStats.put("hitRate", requests == 0 ? 0.0 : (double) hits / requests);
+            tierStats.put("evictionCount", valueStats.evictionCount() + rangeStats.evictionCount());
+            stats.put(tier.policy().name(), tierStats);
+        }
+        return stats;
+    }
+
+    private Tier tierOf(String key) {
+        if (key == null) {
+            return null;
+        }
+        for (Tier tier : tiers) {
+            for (String prefix : tier.policy().prefixes()) {
+                if (key.startsWith(prefix)) {
+                    return tier;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 集合类型做浅拷贝，避免调用方修改返回值时污染本地副本
+     */
+    private static Object copyOf(Object value) {
+        if (value instanceof List<?> list) {
+            return new ArrayList<>(list);
+        }
+        if (value instanceof Map<?, ?> map) {
+            return new LinkedHashMap<>(map);
+        }
+        if (value instanceof Set<?> set) {
+            return new LinkedHashSet<>(set);
+        }
+        return value;
+    }
+
+    private record Tier(Policy policy, Cache<String, Object> values, Cache<String, Map<String, List<Object>>> ranges,
+                        LongAdder rangeHits, LongAdder rangeMisses) {
+    }
+}
@@ -3,6 +3,7 @@ package com.mq.mqaiagent.service.impl;
 import cn.hutool.core.util.StrUtil;
 import com.mq.mqaiagent.service.TextSimilarityService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
@@ -13,6 +14,7 @@ import java.util.stream.Collectors;
  */
 @Service
 @Slf4j
+@ConditionalOnProperty(name = "mq.cache.similarity.algorithm", havingValue = "cosine", matchIfMissing = true)
 public class TextSimilarityServiceImpl implements TextSimilarityService {
 
     /**
@@ -23,7 +25,7 @@ public class TextSimilarityServiceImpl implements TextSimilarityService {
     /**
      * 最小文本长度，低于此长度的文本不进行相似度计算
      */
-    private static final int MIN_TEXT_LENGTH = 5;
+    static final int MIN_TEXT_LENGTH = 5;
 
     @Override
     public double calculateCosineSimilarity(String text1, String text2) {
@@ -68,13 +70,7 @@ public class TextSimilarityServiceImpl implements TextSimilarityService {
 
     @Override
     public String generateTextHash(String text) {
-        if (StrUtil.isBlank(text)) {
-            return "empty";
-        }
-
-        // 预处理文本后计算哈希
-        String processedText = preprocessText(text);
-        return String.valueOf(processedText.hashCode());
+        return textHashOf(text);
     }
 
     @Override
@@ -97,13 +93,34 @@ public class TextSimilarityServiceImpl implements TextSimilarityService {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public SimilarityIndex createIndex() {
+        return new BigramSimilarityIndex();
+    }
+
+    /**
+     * 生成文本哈希，各相似度实现共用，切换算法不影响已有的精确缓存键
+     *
+     * @param text 原始文本
+     * @return 哈希值字符串
+     */
+    static String textHashOf(String text) {
+        if (StrUtil.isBlank(text)) {
+            return "empty";
+        }
+
+        // 预处理文本后计算哈希
+        String processedText = preprocessText(text);
+        return String.valueOf(processedText.hashCode());
+    }
+
     /**
      * 文本预处理
      *
      * @param text 原始文本
      * @return 预处理后的文本
      */
-    private String preprocessText(String text) {
+    static String preprocessText(String text) {
         if (StrUtil.isBlank(text)) {
             return "";
         }
@@ -126,7 +143,7 @@ public class TextSimilarityServiceImpl implements TextSimilarityService {
      * @param text 预处理后的文本
      * @return 词频向量
      */
-    private Map<String, Integer> buildWordFrequencyVector(String text) {
+    static Map<String, Integer> buildWordFrequencyVector(String text) {
         Map<String, Integer> vector = new HashMap<>();
 
         // 使用字符级别的n-gram（这里使用2-gram）
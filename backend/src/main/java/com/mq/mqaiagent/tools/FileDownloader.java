@@ -0,0 +1,301 @@
+package com.mq.mqaiagent.tools;
+
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 文件下载引擎
+ * 响应体经 NIO 通道边读边写入目标文件旁的 .part 临时文件，完成并校验通过后再移动到目标位置：
+ * 超过大小上限立即中止；传输中断时保留 .part 文件，并在旁边的 .part.validator 文件中记下响应的 ETag 或 Last-Modified，
+ * 下次下载同一目标时用 Range + If-Range 请求从断点继续，服务端内容已变化时返回 200，从头重新下载；
+ * 没有可用的校验器时不续传。下载过程中计算 SHA-256，可与期望的校验和比对。
+ */
+@Slf4j
+public class FileDownloader {
+
+    static final String PART_SUFFIX = ".part";
+
+    static final String VALIDATOR_SUFFIX = ".validator";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-\\d+/(\\d+|\\*)");
+
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-fA-F]{64}");
+
+    private final ToolHttpClient httpClient;
+
+    // 单个文件的大小上限（字节）
+    private final long maxBytes;
+
+    // 每下载多少字节上报一次进度
+    private final long progressIntervalBytes;
+
+    /**
+     * @param httpClient            共享的 HTTP 客户端
+     * @param maxBytes              单个文件的大小上限（字节）
+     * @param progressIntervalBytes 每下载多少字节上报一次进度
+     */
+    public FileDownloader(ToolHttpClient httpClient, long maxBytes, long progressIntervalBytes) {
+        this.httpClient = httpClient;
+        this.maxBytes = maxBytes;
+        this.progressIntervalBytes = Math.max(1, progressIntervalBytes);
+    }
+
+    /**
+     * 下载进度监听
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * @param downloaded 已下载的字节数（包括断点之前的部分）
+         * @param total      文件总字节数，未知时为 -1
+         */
+        void onProgress(long downloaded, long total);
+    }
+
+    /**
+     * 下载结果
+     *
+     * @param path    保存路径
+     * @param size    文件大小（字节）
+     * @param resumed 是否从断点继续下载
+     * @param sha256  文件的 SHA-256
+     */
+    public record DownloadResult(Path path, long size, boolean resumed, String sha256) {
+    }
+
+    /**
+     * 下载文件
+     *
+     * @param url            文件地址
+     * @param target         保存路径
+     * @param expectedSha256 期望的 SHA-256（可带 sha256: 前缀），为空时不校验
+     * @param listener       进度监听，可为 null
+     * @return 下载结果
+     * @throws IOException 请求失败、超过大小上限、传输中断或校验和不匹配
+     */
+    public DownloadResult download(String url, Path target, String expectedSha256, ProgressListener listener)
+            throws IOException {
+        String expected = normalizeChecksum(expectedSha256);
+        Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        Path validator = part.resolveSibling(part.getFileName() + VALIDATOR_SUFFIX);
+        DownloadResult result;
+        try {
+            result = transfer(url, part, validator, listener, true);
+        } catch (RestartRequiredException e) {
+            // 服务端内容与断点不一致，丢弃已下载的部分重新开始
+            log.info("无法从断点继续下载 {}: {}，重新下载", url, e.getMessage());
+            deletePart(part, validator);
+            result = transfer(url, part, validator, listener, false);
+        }
+        if (expected != null && !expected.equals(result.sha256())) {
+            deletePart(part, validator);
+            throw new IOException("校验和不匹配，期望 " + expected + "，实际 " + result.sha256());
+        }
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(validator);
+        return new DownloadResult(target, result.size(), result.resumed(), result.sha256());
+    }
+
+    private DownloadResult transfer(String url, Path part, Path validator, ProgressListener listener,
+                                    boolean allowResume) throws IOException {
+        long offset = allowResume && Files.exists(part) ? Files.size(part) : 0;
+        String ifRange = offset > 0 ? readValidator(validator) : null;
+        if (offset > maxBytes || (offset > 0 && ifRange == null)) {
+            // 超过上限或无法确认临时文件与服务端内容一致，不续传
+            deletePart(part, validator);
+            offset = 0;
+        }
+        Map<String, String> headers = offset > 0
+                ? Map.of("Range", "bytes=" + offset + "-", "If-Range", ifRange)
+                : Map.of();
+        // 多读 1 字节用于判断是否超过上限
+        long readLimit = maxBytes == Long.MAX_VALUE ? Long.MAX_VALUE : maxBytes + 1;
+        HttpResponse<InputStream> response = httpClient.openStream(url, headers, readLimit);
+        try (ReadableByteChannel in = Channels.newChannel(response.body())) {
+            int status = response.statusCode();
+            if (status == 416 && offset > 0) {
+                // 断点已在文件末尾：临时文件就是完整的文件
+                long total = parseTotal(response.headers().firstValue("Content-Range").orElse(""));
+                if (total != offset) {
+                    throw new RestartRequiredException("HTTP 416");
+                }
+                return new DownloadResult(part, offset, true, sha256Of(part));
+            }
+            if (status >= 400) {
+                throw new IOException("HTTP " + status);
+            }
+            boolean resumed = false;
+            long total = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            if (status == 206) {
+                String contentRange = response.headers().firstValue("Content-Range").orElse("");
+                Matcher matcher = CONTENT_RANGE.matcher(contentRange);
+                if (!matcher.find() || Long.parseLong(matcher.group(1)) != offset) {
+                    throw new RestartRequiredException("Content-Range 不匹配: " + contentRange);
+                }
+                resumed = true;
+                total = parseTotal(contentRange);
+            } else {
+                // 服务端不支持 Range 或内容已变化（If-Range 不匹配），从头开始
+                offset = 0;
+                writeValidator(validator, response);
+            }
+            if (total > maxBytes) {
+                deletePart(part, validator);
+                throw new IOException(sizeExceededMessage(total));
+            }
+            MessageDigest digest = newDigest();
+            if (resumed) {
+                updateDigest(digest, part);
+            }
+            long size = copy(in, part, validator, offset, resumed, total, digest, listener);
+            return new DownloadResult(part, size, resumed, HexUtil.encodeHexStr(digest.digest()));
+        }
+    }
+
+    /**
+     * 写入临时文件，返回文件大小；中断时已写入的部分保留在临时文件中
+     */
+    private long copy(ReadableByteChannel in, Path part, Path validator, long offset, boolean append, long total,
+                      MessageDigest digest, ProgressListener listener) throws IOException {
+        StandardOpenOption mode = append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+        long downloaded = offset;
+        long nextReport = offset + progressIntervalBytes;
+        try (FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                downloaded += buffer.remaining();
+                if (downloaded > maxBytes) {
+                    out.close();
+                    deletePart(part, validator);
+                    throw new IOException(sizeExceededMessage(downloaded));
+                }
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+                if (listener != null && downloaded >= nextReport) {
+                    listener.onProgress(downloaded, total);
+                    nextReport = downloaded + progressIntervalBytes;
+                }
+            }
+        }
+        if (total >= 0 && downloaded < total) {
+            throw new IOException("连接提前关闭，已下载 " + downloaded + "/" + total + " 字节");
+        }
+        if (listener != null) {
+            listener.onProgress(downloaded, total);
+        }
+        return downloaded;
+    }
+
+    /**
+     * 读取续传用的校验器，不存在时返回 null
+     */
+    private static String readValidator(Path validator) throws IOException {
+        if (!Files.exists(validator)) {
+            return null;
+        }
+        return StrUtil.emptyToNull(Files.readString(validator).trim());
+    }
+
+    /**
+     * 记下完整响应的强 ETag，没有时退而使用 Last-Modified；弱 ETag 不能用于 If-Range
+     */
+    private static void writeValidator(Path validator, HttpResponse<?> response) throws IOException {
+        String value = response.headers().firstValue("ETag")
+                .filter(etag -> !etag.startsWith("W/"))
+                .or(() -> response.headers().firstValue("Last-Modified"))
+                .orElse(null);
+        if (value == null) {
+            Files.deleteIfExists(validator);
+        } else {
+            Files.writeString(validator, value);
+        }
+    }
+
+    private static void deletePart(Path part, Path validator) throws IOException {
+        Files.deleteIfExists(part);
+        Files.deleteIfExists(validator);
+    }
+
+    private String sizeExceededMessage(long size) {
+        return "文件大小超过上限 " + maxBytes + " 字节（至少 " + size + " 字节）";
+    }
+
+    private static long parseTotal(String contentRange) {
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0) {
+            return -1;
+        }
+        String total = contentRange.substring(slash + 1).trim();
+        return StrUtil.isNumeric(total) ? Long.parseLong(total) : -1;
+    }
+
+    private static String normalizeChecksum(String checksum) {
+        if (StrUtil.isBlank(checksum)) {
+            return null;
+        }
+        String hex = StrUtil.removePrefixIgnoreCase(checksum.trim(), "sha256:");
+        if (!SHA256_HEX.matcher(hex).matches()) {
+            throw new IllegalArgumentException("校验和格式错误，应为 64 位十六进制的 SHA-256: " + checksum);
+        }
+        return hex.toLowerCase();
+    }
+
+    private static String sha256Of(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        updateDigest(digest, file);
+        return HexUtil.encodeHexStr(digest.digest());
+    }
+
+    private static void updateDigest(MessageDigest digest, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 断点与服务端返回的内容不一致，需要丢弃临时文件重新下载
+     */
+    private static class RestartRequiredException extends IOException {
+        RestartRequiredException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.mq.mqaiagent.tools;
+
+import cn.hutool.core.util.StrUtil;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 网页正文提取
+ * 使用 jsoup 的流式解析器逐个处理已闭合的元素：脚本、样式、导航等模板内容直接丢弃，
+ * 段落、标题、列表项等内容块转换为 Markdown 后立即从 DOM 中移除，大页面不会完整地保留在内存中。
+ * 解析结束后按内容块所在容器的文本量（不计链接密集的块）选出正文区域，输出不超过字符上限的 Markdown。
+ */
+public class HtmlContentExtractor {
+
+    /**
+     * 模板内容（脚本、样式、导航、页眉页脚等），其中的内容块全部丢弃
+     */
+    private static final Set<String> BOILERPLATE_TAGS = Set.of("script", "style", "noscript", "nav", "header",
+            "footer", "aside", "form", "iframe", "svg", "template", "button", "select", "object", "embed", "canvas");
+
+    /**
+     * 按 class/id 识别的模板内容（广告、分享、评论、菜单等）
+     */
+    private static final Pattern BOILERPLATE_NAME = Pattern.compile(
+            "(^|[\\s_-])(ad|ads|advert|banner|share|social|comment|comments|related|sidebar|menu|breadcrumb|nav|footer)([\\s_-]|$)",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 不按 class/id 判断的结构元素（如 body class="has-sidebar"）
+     */
+    private static final Set<String> STRUCTURAL_TAGS = Set.of("html", "body", "article", "main");
+
+    /**
+     * 内容块
+     */
+    private static final Set<String> BLOCK_TAGS = Set.of("p", "h1", "h2", "h3", "h4", "h5", "h6", "li", "pre",
+            "tr", "dt", "dd", "figcaption");
+
+    /**
+     * 参与正文评分的容器
+     */
+    private static final Set<String> CONTAINER_TAGS = Set.of("div", "section", "article", "main", "body");
+
+    /**
+     * 链接文本占比超过该值的块视为导航、推荐列表等，不计入正文
+     */
+    private static final double MAX_LINK_DENSITY = 0.5;
+
+    private static final String TRUNCATED_MARKER = "\n\n...[内容过长，已截断]";
+
+    private final int maxChars;
+
+    public HtmlContentExtractor(int maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * 从 HTML 字符串中提取正文
+     *
+     * @param html    HTML 内容
+     * @param baseUri 页面地址，用于把相对链接转换为绝对链接
+     * @return Markdown 格式的正文
+     */
+    public String extract(String html, String baseUri) {
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(html, baseUri)) {
+            return extract(parser);
+        }
+    }
+
+    /**
+     * 从字符流中提取正文
+     *
+     * @param reader  HTML 字符流
+     * @param baseUri 页面地址
+     * @return Markdown 格式的正文
+     */
+    public String extract(Reader reader, String baseUri) {
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(reader, baseUri)) {
+            return extract(parser);
+        }
+    }
+
+    /**
+     * 从流式解析器中提取正文
+     *
+     * @param parser 已开始解析的流式解析器（由调用方关闭）
+     * @return Markdown 格式的正文
+     */
+    public String extract(StreamParser parser) {
+        String title = null;
+        List<Block> blocks = new ArrayList<>();
+        try {
+            Iterator<Element> iterator = parser.iterator();
+            while (iterator.hasNext()) {
+                Element element = iterator.next();
+                String tag = element.normalName();
+                if ("title".equals(tag)) {
+                    title = element.text();
+                    element.remove();
+                } else if (isBoilerplate(element)) {
+                    element.remove();
+                } else if (BLOCK_TAGS.contains(tag)) {
+                    addBlock(blocks, element, toMarkdown(element));
+                    element.remove();
+                } else if (CONTAINER_TAGS.contains(tag)) {
+                    // 容器中没有被内容块包裹的文本（如直接写在 div 中的文字）
+                    addBlock(blocks, element, renderInline(element));
+                    if (!"body".equals(tag)) {
+                        element.remove();
+                    }
+                }
+            }
+        } catch (UncheckedIOException e) {
+            // 读取中断（如超过最大响应体积）时使用已解析的部分
+        }
+        return render(title, selectMainContent(blocks));
+    }
+
+    private static void addBlock(List<Block> blocks, Element element, String markdown) {
+        if (StrUtil.isBlank(markdown) || insideBoilerplate(element)) {
+            return;
+        }
+        String text = element.text();
+        int linkLength = 0;
+        for (Element link : element.select("a")) {
+            linkLength += link.text().length();
+        }
+        double linkDensity = text.isEmpty() ? 0 : (double) linkLength / text.length();
+        List<Element> containers = new ArrayList<>();
+        boolean inMain = false;
+        for (Element parent : element.parents()) {
+            String tag = parent.normalName();
+            if (CONTAINER_TAGS.contains(tag)) {
+                containers.add(parent);
+            }
+            if ("article".equals(tag) || "main".equals(tag) || "main".equals(parent.attr("role"))) {
+                inMain = true;
+            }
+        }
+        if (CONTAINER_TAGS.contains(element.normalName())) {
+            // 容器自身的文本归属于该容器
+            containers.add(0, element);
+            inMain |= "article".equals(element.normalName()) || "main".equals(element.normalName());
+        }
+        blocks.add(new Block(markdown, text.length(), linkDensity, containers, inMain));
+    }
+
+    /**
+     * 内容块在闭合时才被处理，此时外层的导航、页脚等还未闭合，需要检查祖先元素
+     * 正文区域（article/main）中的 header、footer 通常是标题和署名，予以保留
+     */
+    private static boolean insideBoilerplate(Element element) {
+        boolean inHeaderOrFooter = false;
+        for (Element parent : element.parents()) {
+            String tag = parent.normalName();
+            if ("article".equals(tag) || "main".equals(tag)) {
+                return false;
+            }
+            if ("header".equals(tag) || "footer".equals(tag)) {
+                inHeaderOrFooter = true;
+            } else if (isBoilerplate(parent)) {
+                return true;
+            }
+        }
+        return inHeaderOrFooter;
+    }
+
+    private static boolean isBoilerplate(Element element) {
+        String tag = element.normalName();
+        if (BOILERPLATE_TAGS.contains(tag)) {
+            return true;
+        }
+        if (STRUCTURAL_TAGS.contains(tag)) {
+            return false;
+        }
+        return BOILERPLATE_NAME.matcher(element.className()).find() || BOILERPLATE_NAME.matcher(element.id()).find();
+    }
+
+    /**
+     * 选出正文区域的内容块
+     * 页面标注了 article/main 时直接使用；否则按容器打分（块的文本长度计入所在容器，一半计入上一级容器），
+     * 取得分最高的容器及其子容器中的内容块。
+     */
+    private static List<Block> selectMainContent(List<Block> blocks) {
+        List<Block> mainBlocks = blocks.stream().filter(Block::inMain).toList();
+        if (!mainBlocks.isEmpty()) {
+            return mainBlocks;
+        }
+        Map<Element, Double> scores = new IdentityHashMap<>();
+        Element best = null;
+        for (Block block : blocks) {
+            if (block.linkDensity() > MAX_LINK_DENSITY) {
+                continue;
+            }
+            for (int i = 0; i < Math.min(2, block.containers().size()); i++) {
+                Element container = block.containers().get(i);
+                double score = scores.merge(container, block.textLength() / (i + 1.0), Double::sum);
+                if (best == null || score > scores.get(best)) {
+                    best = container;
+                }
+            }
+        }
+        if (best == null) {
+            return blocks;
+        }
+        Element mainContainer = best;
+        List<Block> selected = new ArrayList<>();
+        for (Block block : blocks) {
+            if (block.linkDensity() <= MAX_LINK_DENSITY
+                    && block.containers().stream().anyMatch(container -> container == mainContainer)) {
+                selected.add(block);
+            }
+        }
+        return selected;
+    }
+
+    private String render(String title, List<Block> blocks) {
+        StringBuilder markdown = new StringBuilder();
+        boolean hasHeading = !blocks.isEmpty() && blocks.get(0).markdown().startsWith("# ");
+        if (StrUtil.isNotBlank(title) && !hasHeading) {
+            markdown.append("# ").append(title.trim()).append("\n\n");
+        }
+        for (Block block : blocks) {
+            if (markdown.length() >= maxChars) {
+                break;
+            }
+            markdown.append(block.markdown()).append("\n\n");
+        }
+        String result = markdown.toString().trim();
+        if (result.length() > maxChars) {
+            return result.substring(0, maxChars) + TRUNCATED_MARKER;
+        }
+        return result;
+    }
+
+    private static String toMarkdown(Element element) {
+        String tag = element.normalName();
+        switch (tag) {
+            case "pre":
+                return "```\n" + element.wholeText().strip() + "\n```";
+            case "li":
+                return "- " + renderInline(element);
+            case "tr":
+                List<String> cells = new ArrayList<>();
+                for (Element cell : element.children()) {
+                    cells.add(renderInline(cell).replace("\n", " "));
+                }
+                return cells.isEmpty() ? "" : "| " + String.join(" | ", cells) + " |";
+            default:
+                if (tag.length() == 2 && tag.charAt(0) == 'h') {
+                    String text = renderInline(element);
+                    return text.isEmpty() ? "" : "#".repeat(tag.charAt(1) - '0') + " " + text;
+                }
+                return renderInline(element);
+        }
+    }
+
+    /**
+     * 把元素内的行内内容转换为 Markdown（链接、加粗、斜体、行内代码、换行）
+     */
+    private static String renderInline(Element element) {
+        StringBuilder out = new StringBuilder();
+        for (Node child : element.childNodes()) {
+            appendInline(child, out);
+        }
+        return out.toString()
+                .replaceAll("[ \\t\\x0B\\f\\r]+", " ")
+                .replaceAll(" ?\n ?", "\n")
+                .trim();
+    }
+
+    private static void appendInline(Node node, StringBuilder out) {
+        if (node instanceof TextNode textNode) {
+            out.append(textNode.text());
+            return;
+        }
+        if (!(node instanceof Element element)) {
+            return;
+        }
+        switch (element.normalName()) {
+            case "br" -> out.append('\n');
+            case "img", "script", "style", "noscript", "svg", "button" -> {
+            }
+            case "a" -> {
+                String text = renderInline(element);
+                String href = element.absUrl("href");
+                if (text.isEmpty() || href.isEmpty()) {
+                    out.append(text);
+                } else {
+                    out.append('[').append(text).append("](").append(href).append(')');
+                }
+            }
+            case "strong", "b" -> wrapInline(element, "**", out);
+            case "em", "i" -> wrapInline(element, "*", out);
+            case "code" -> wrapInline(element, "`", out);
+            default -> {
+                for (Node child : element.childNodes()) {
+                    appendInline(child, out);
+                }
+            }
+        }
+    }
+
+    private static void wrapInline(Element element, String marker, StringBuilder out) {
+        String text = renderInline(element);
+        if (!text.isEmpty()) {
+            out.append(marker).append(text).append(marker);
+        }
+    }
+
+    /**
+     * 已转换的内容块
+     *
+     * @param markdown    Markdown 文本
+     * @param textLength  纯文本长度
+     * @param linkDensity 链接文本占比
+     * @param containers  由近及远的祖先容器
+     * @param inMain      是否位于 article/main 中
+     */
+    private record Block(String markdown, int textLength, double linkDensity, List<Element> containers,
+            boolean inMain) {
+    }
+}
@@ -0,0 +1,263 @@
+package com.mq.mqaiagent.tools;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.cmap.StandardCMapCharsets;
+import com.itextpdf.kernel.colors.ColorConstants;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.canvas.draw.SolidLine;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.IBlockElement;
+import com.itextpdf.layout.element.LineSeparator;
+import com.itextpdf.layout.element.ListItem;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.element.Text;
+import com.itextpdf.layout.properties.ListNumberingType;
+import com.itextpdf.layout.properties.UnitValue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Markdown 转 PDF
+ * 支持标题、有序/无序列表、表格、引用、分隔线和段落，行内支持粗体（**text**）和代码（`code`）。
+ * 字体程序（解析得到的字形和度量数据）只加载一次；PdfFont 与文档绑定，每个文档基于同一个字体程序创建自己的 PdfFont。
+ */
+public class MarkdownPdfRenderer {
+
+    // 内置中文字体（需要 font-asian）
+    private static final String FONT_NAME = "STSongStd-Light";
+
+    private static final String FONT_ENCODING = "UniGB-UCS2-H";
+
+    private static final float[] HEADING_SIZES = {20, 17, 15, 13, 12, 12};
+
+    private static final Pattern HEADING = Pattern.compile("^(#{1,6})\\s+(.*?)\\s*#*\\s*$");
+
+    private static final Pattern BULLET_ITEM = Pattern.compile("^\\s*[-*+]\\s+(.*)$");
+
+    private static final Pattern ORDERED_ITEM = Pattern.compile("^\\s*\\d+[.)]\\s+(.*)$");
+
+    private static final Pattern TABLE_SEPARATOR = Pattern.compile("^\\s*\\|?\\s*:?-+:?\\s*(\\|\\s*:?-+:?\\s*)*\\|?\\s*$");
+
+    private static final Pattern RULE = Pattern.compile("^\\s*([-*_])(\\s*\\1){2,}\\s*$");
+
+    private static final Pattern INLINE = Pattern.compile("\\*\\*(.+?)\\*\\*|`([^`]+)`");
+
+    static {
+        // iText 为 UCS2/UTF16 CMap 共用一个全局的 CharsetEncoder，多个文档并发渲染时会相互破坏状态，
+        // 关闭后改用每个字体各自的 CMap 映射编码
+        StandardCMapCharsets.disableCharsetEncoders();
+    }
+
+    private volatile FontProgram fontProgram;
+
+    /**
+     * 渲染 PDF
+     *
+     * @param markdown Markdown 内容
+     * @param target   保存路径
+     * @return 页数
+     * @throws IOException 字体加载失败或写入文件失败
+     */
+    public int render(String markdown, Path target) throws IOException {
+        try (PdfWriter writer = new PdfWriter(target.toString());
+             PdfDocument pdf = new PdfDocument(writer);
+             Document document = new Document(pdf)) {
+            PdfFont font = PdfFontFactory.createFont(fontProgram(), FONT_ENCODING);
+            document.setFont(font);
+            for (IBlockElement element : toElements(markdown)) {
+                document.add(element);
+            }
+            return pdf.getNumberOfPages();
+        }
+    }
+
+    /**
+     * 首次使用时加载字体程序，之后复用
+     */
+    FontProgram fontProgram() throws IOException {
+        FontProgram program = fontProgram;
+        if (program == null) {
+            synchronized (this) {
+                program = fontProgram;
+                if (program == null) {
+                    program = FontProgramFactory.createFont(FONT_NAME);
+                    fontProgram = program;
+                }
+            }
+        }
+        return program;
+    }
+
+    /**
+     * 将 Markdown 按行解析为块元素
+     */
+    List<IBlockElement> toElements(String markdown) {
+        List<IBlockElement> elements = new ArrayList<>();
+        String[] lines = markdown == null ? new String[0] : markdown.replace("\r\n", "\n").split("\n");
+        StringBuilder paragraph = new StringBuilder();
+        int i = 0;
+        while (i < lines.length) {
+            String line = lines[i];
+            Matcher heading = HEADING.matcher(line);
+            boolean tableStart = line.trim().startsWith("|") && i + 1 < lines.length
+                    && TABLE_SEPARATOR.matcher(lines[i + 1]).matches();
+            boolean blockStart = line.isBlank() || heading.matches() || tableStart || RULE.matcher(line).matches()
+                    || BULLET_ITEM.matcher(line).matches() || ORDERED_ITEM.matcher(line).matches()
+                    || line.trim().startsWith(">");
+            if (!blockStart) {
+                // 普通文本行，连续的行合并为一个段落并保留换行
+                if (!paragraph.isEmpty()) {
+                    paragraph.append('\n');
+                }
+                paragraph.append(line.trim());
+                i++;
+                continue;
+            }
+            flushParagraph(paragraph, elements);
+            if (line.isBlank()) {
+                i++;
+            } else if (heading.matches()) {
+                int level = heading.group(1).length();
+                elements.add(inline(heading.group(2), true)
+                        .setFontSize(HEADING_SIZES[level - 1])
+                        .setMarginTop(level <= 2 ? 12 : 8)
+                        .setMarginBottom(4));
+                i++;
+            } else if (tableStart) {
+                i = parseTable(lines, i, elements);
+            } else if (RULE.matcher(line).matches()) {
+                elements.add(new LineSeparator(new SolidLine(0.5f)).setMarginTop(6).setMarginBottom(6));
+                i++;
+            } else if (line.trim().startsWith(">")) {
+                StringBuilder quote = new StringBuilder();
+                while (i < lines.length && lines[i].trim().startsWith(">")) {
+                    if (!quote.isEmpty()) {
+                        quote.append('\n');
+                    }
+                    quote.append(lines[i].trim().substring(1).trim());
+                    i++;
+                }
+                elements.add(inline(quote.toString(), false)
+                        .setFontColor(ColorConstants.DARK_GRAY)
+                        .setMarginLeft(12));
+            } else {
+                i = parseList(lines, i, elements);
+            }
+        }
+        flushParagraph(paragraph, elements);
+        return elements;
+    }
+
+    private void flushParagraph(StringBuilder paragraph, List<IBlockElement> elements) {
+        if (!paragraph.isEmpty()) {
+            elements.add(inline(paragraph.toString(), false));
+            paragraph.setLength(0);
+        }
+    }
+
+    /**
+     * 连续的同类列表项组成一个列表，返回列表之后的行号
+     */
+    private int parseList(String[] lines, int start, List<IBlockElement> elements) {
+        boolean ordered = ORDERED_ITEM.matcher(lines[start]).matches();
+        Pattern itemPattern = ordered ? ORDERED_ITEM : BULLET_ITEM;
+        com.itextpdf.layout.element.List list = ordered
+                ? new com.itextpdf.layout.element.List(ListNumberingType.DECIMAL)
+                : new com.itextpdf.layout.element.List().setListSymbol("• ");
+        list.setSymbolIndent(4).setMarginLeft(8);
+        int i = start;
+        while (i < lines.length) {
+            Matcher item = itemPattern.matcher(lines[i]);
+            if (!item.matches()) {
+                break;
+            }
+            ListItem listItem = new ListItem();
+            listItem.add(inline(item.group(1), false).setMargin(0));
+            list.add(listItem);
+            i++;
+        }
+        elements.add(list);
+        return i;
+    }
+
+    /**
+     * 表头、分隔行和之后连续的表格行组成一个表格，返回表格之后的行号
+     */
+    private int parseTable(String[] lines, int start, List<IBlockElement> elements) {
+        List<String> header = splitRow(lines[start]);
+        Table table = new Table(UnitValue.createPercentArray(header.size())).useAllAvailableWidth()
+                .setMarginTop(4).setMarginBottom(4);
+        for (String cell : header) {
+            table.addHeaderCell(new Cell().add(inline(cell, true)).setBackgroundColor(ColorConstants.LIGHT_GRAY));
+        }
+        int i = start + 2;
+        while (i < lines.length && lines[i].trim().startsWith("|")) {
+            List<String> row = splitRow(lines[i]);
+            for (int col = 0; col < header.size(); col++) {
+                table.addCell(new Cell().add(inline(col < row.size() ? row.get(col) : "", false)));
+            }
+            i++;
+        }
+        elements.add(table);
+        return i;
+    }
+
+    private static List<String> splitRow(String line) {
+        String row = line.trim();
+        if (row.startsWith("|")) {
+            row = row.substring(1);
+        }
+        if (row.endsWith("|")) {
+            row = row.substring(0, row.length() - 1);
+        }
+        List<String> cells = new ArrayList<>();
+        for (String cell : row.split("\\|", -1)) {
+            cells.add(cell.trim());
+        }
+        return cells;
+    }
+
+    /**
+     * 处理行内的粗体和代码标记
+     */
+    private static Paragraph inline(String text, boolean bold) {
+        Paragraph paragraph = new Paragraph();
+        Matcher matcher = INLINE.matcher(text);
+        int last = 0;
+        while (matcher.find()) {
+            if (matcher.start() > last) {
+                paragraph.add(text(text.substring(last, matcher.start()), bold));
+            }
+            if (matcher.group(1) != null) {
+                paragraph.add(text(matcher.group(1), true));
+            } else {
+                paragraph.add(text(matcher.group(2), bold).setFontColor(ColorConstants.DARK_GRAY));
+            }
+            last = matcher.end();
+        }
+        if (last < text.length()) {
+            paragraph.add(text(text.substring(last), bold));
+        }
+        return paragraph;
+    }
+
+    private static Text text(String content, boolean bold) {
+        Text text = new Text(content);
+        if (bold) {
+            // 中文字体没有粗体字形，模拟加粗
+            text.simulateBold();
+        }
+        return text;
+    }
+}
@@ -1,50 +1,80 @@
 package com.mq.mqaiagent.tools;
 
 import cn.hutool.core.io.FileUtil;
-import com.itextpdf.kernel.font.PdfFont;
-import com.itextpdf.kernel.font.PdfFontFactory;
-import com.itextpdf.kernel.pdf.PdfDocument;
-import com.itextpdf.kernel.pdf.PdfWriter;
-import com.itextpdf.layout.Document;
-import com.itextpdf.layout.element.Paragraph;
 import com.mq.mqaiagent.constant.FileConstant;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
-import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 public class PDFGenerationTool {
 
-    @Tool(description = "Generate a PDF file with given content")
+    private final PdfRenderService renderService;
+
+    // 提交后等待渲染完成的时间（毫秒），超时则返回任务 ID 供之后查询
+    private final long waitMs;
+
+    public PDFGenerationTool() {
+        this(PdfRenderService.defaultService(), 3000);
+    }
+
+    /**
+     * @param renderService PDF 生成服务
+     * @param waitMs        提交后等待渲染完成的时间（毫秒）
+     */
+    public PDFGenerationTool(PdfRenderService renderService, long waitMs) {
+        this.renderService = renderService;
+        this.waitMs = waitMs;
+    }
+
+    @Tool(description = "Generate a PDF file from Markdown content (headings, lists, tables are supported). "
+            + "If rendering takes long, a task ID is returned and the result can be checked with getPDFStatus")
     public String generatePDF(
             @ToolParam(description = "Name of the file to save the generated PDF") String fileName,
-            @ToolParam(description = "Content to be included in the PDF") String content) {
+            @ToolParam(description = "Markdown content to be included in the PDF") String content) {
         String fileDir = FileConstant.FILE_SAVE_DIR + "/pdf";
         String filePath = fileDir + "/" + fileName;
+        PdfRenderService.RenderTask task;
         try {
             // 创建目录
             FileUtil.mkdir(fileDir);
-            // 创建 PdfWriter 和 PdfDocument 对象
-            try (PdfWriter writer = new PdfWriter(filePath);
-                 PdfDocument pdf = new PdfDocument(writer);
-                 Document document = new Document(pdf)) {
-                // 自定义字体（需要人工下载字体文件到特定目录）
-//                String fontPath = Paths.get("src/main/resources/static/fonts/simsun.ttf")
-//                        .toAbsolutePath().toString();
-//                PdfFont font = PdfFontFactory.createFont(fontPath,
-//                        PdfFontFactory.EmbeddingStrategy.PREFER_EMBEDDED);
-                // 使用内置中文字体
-                PdfFont font = PdfFontFactory.createFont("STSongStd-Light", "UniGB-UCS2-H");
-                document.setFont(font);
-                // 创建段落
-                Paragraph paragraph = new Paragraph(content);
-                // 添加段落并关闭文档
-                document.add(paragraph);
-            }
-            return "PDF generated successfully to: " + filePath;
-        } catch (IOException e) {
+            // 在后台渲染，短时间内完成时直接返回结果
+            task = renderService.submit(content, Path.of(filePath));
+        } catch (RuntimeException e) {
             return "Error generating PDF: " + e.getMessage();
         }
+        try {
+            task.getCompletion().get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return "PDF generation is still running, task ID: " + task.getId()
+                    + ". Use getPDFStatus to check the result";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "PDF generation is still running, task ID: " + task.getId();
+        } catch (ExecutionException e) {
+            return "Error generating PDF: " + e.getCause().getMessage();
+        }
+        return describe(task);
+    }
+
+    @Tool(description = "Check the status of a PDF generation task")
+    public String getPDFStatus(@ToolParam(description = "Task ID returned by generatePDF") String taskId) {
+        PdfRenderService.RenderTask task = renderService.getTask(taskId);
+        if (task == null) {
+            return "PDF generation task not found: " + taskId;
+        }
+        return describe(task);
+    }
+
+    private static String describe(PdfRenderService.RenderTask task) {
+        return switch (task.getStatus()) {
+            case SUCCEEDED -> "PDF generated successfully to: " + task.getTarget() + " (" + task.getPages() + " pages)";
+            case FAILED -> "Error generating PDF: " + task.getError();
+            default -> "PDF generation is still running, task ID: " + task.getId();
+        };
     }
 }
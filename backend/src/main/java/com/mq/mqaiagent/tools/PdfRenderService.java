@@ -0,0 +1,157 @@
+package com.mq.mqaiagent.tools;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mq.mqaiagent.config.BoundedVirtualThreadExecutor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PDF 生成服务
+ * 渲染在有界的后台执行器中进行，提交后立即返回任务，智能体可以凭任务 ID 轮询状态，不必在一步中等待渲染完成。
+ * 任务在提交后保留一段时间供查询。
+ */
+@Slf4j
+public class PdfRenderService {
+
+    private final MarkdownPdfRenderer renderer;
+
+    private final Executor executor;
+
+    private final Cache<String, RenderTask> tasks;
+
+    private final LongAdder renderedDocuments = new LongAdder();
+
+    private final LongAdder renderedPages = new LongAdder();
+
+    private final LongAdder renderNanos = new LongAdder();
+
+    /**
+     * @param renderer Markdown 渲染器
+     * @param executor 执行渲染的后台执行器
+     * @param taskTtl  任务状态的保留时间
+     */
+    public PdfRenderService(MarkdownPdfRenderer renderer, Executor executor, Duration taskTtl) {
+        this.renderer = renderer;
+        this.executor = executor;
+        this.tasks = Caffeine.newBuilder()
+                .expireAfterWrite(taskTtl)
+                .build();
+    }
+
+    /**
+     * 未通过 Spring 注入时使用的默认服务
+     */
+    public static PdfRenderService defaultService() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    public enum Status {
+        PENDING, RUNNING, SUCCEEDED, FAILED
+    }
+
+    /**
+     * 渲染任务
+     */
+    @Getter
+    public static class RenderTask {
+
+        private final String id;
+
+        private final Path target;
+
+        private volatile Status status = Status.PENDING;
+
+        private volatile int pages;
+
+        private volatile long elapsedMs;
+
+        private volatile String error;
+
+        // 任务结束（成功或失败）时完成
+        private final CompletableFuture<RenderTask> completion = new CompletableFuture<>();
+
+        RenderTask(String id, Path target) {
+            this.id = id;
+            this.target = target;
+        }
+    }
+
+    /**
+     * 渲染统计
+     *
+     * @param documents 已渲染的文档数
+     * @param pages     已渲染的页数
+     * @param pagesPerSecond 平均每秒渲染的页数（按渲染耗时计算，不含排队时间）
+     */
+    public record RenderStats(long documents, long pages, double pagesPerSecond) {
+    }
+
+    /**
+     * 提交渲染任务
+     *
+     * @param markdown Markdown 内容
+     * @param target   保存路径
+     * @return 渲染任务
+     */
+    public RenderTask submit(String markdown, Path target) {
+        RenderTask task = new RenderTask(IdUtil.fastSimpleUUID(), target);
+        tasks.put(task.getId(), task);
+        executor.execute(() -> render(task, markdown));
+        return task;
+    }
+
+    /**
+     * 查询渲染任务
+     *
+     * @param id 任务 ID
+     * @return 渲染任务，不存在或已过期时为 null
+     */
+    public RenderTask getTask(String id) {
+        return id == null ? null : tasks.getIfPresent(id);
+    }
+
+    public RenderStats getStats() {
+        long pages = renderedPages.sum();
+        long nanos = renderNanos.sum();
+        double pagesPerSecond = nanos == 0 ? 0 : pages * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+        return new RenderStats(renderedDocuments.sum(), pages, pagesPerSecond);
+    }
+
+    private void render(RenderTask task, String markdown) {
+        task.status = Status.RUNNING;
+        long start = System.nanoTime();
+        try {
+            int pages = renderer.render(markdown, task.target);
+            long nanos = System.nanoTime() - start;
+            renderedDocuments.increment();
+            renderedPages.add(pages);
+            renderNanos.add(nanos);
+            task.pages = pages;
+            task.elapsedMs = TimeUnit.NANOSECONDS.toMillis(nanos);
+            task.status = Status.SUCCEEDED;
+            log.info("PDF 渲染完成: {}，{} 页，耗时 {} ms", task.target, pages, task.elapsedMs);
+        } catch (Exception e) {
+            task.elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            task.error = StrUtil.blankToDefault(e.getMessage(), e.getClass().getSimpleName());
+            task.status = Status.FAILED;
+            log.warn("PDF 渲染失败: {}，{}", task.target, task.error, e);
+        } finally {
+            task.completion.complete(task);
+        }
+    }
+
+    private static class DefaultHolder {
+        private static final PdfRenderService INSTANCE = new PdfRenderService(new MarkdownPdfRenderer(),
+                new BoundedVirtualThreadExecutor("pdf-", 2), Duration.ofHours(1));
+    }
+}
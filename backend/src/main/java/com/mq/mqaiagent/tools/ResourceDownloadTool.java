@@ -1,28 +1,60 @@
 package com.mq.mqaiagent.tools;
 
 import cn.hutool.core.io.FileUtil;
-import cn.hutool.http.HttpUtil;
+import cn.hutool.core.util.StrUtil;
 import com.mq.mqaiagent.constant.FileConstant;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
 import java.io.File;
+import java.nio.file.Path;
 
 
 public class ResourceDownloadTool {
 
-    @Tool(description = "Download a resource from a given URL")
-    public String downloadResource(@ToolParam(description = "URL of the resource to download") String url, @ToolParam(description = "Name of the file to save the downloaded resource") String fileName) {
+    private final FileDownloader downloader;
+
+    public ResourceDownloadTool() {
+        this(new FileDownloader(ToolHttpClient.defaultClient(), 100 * 1024 * 1024, 1024 * 1024));
+    }
+
+    public ResourceDownloadTool(FileDownloader downloader) {
+        this.downloader = downloader;
+    }
+
+    @Tool(description = "Download a resource from a given URL. An interrupted download resumes when called again with the same file name")
+    public String downloadResource(@ToolParam(description = "URL of the resource to download") String url,
+                                   @ToolParam(description = "Name of the file to save the downloaded resource") String fileName,
+                                   @ToolParam(description = "Expected SHA-256 checksum of the file, leave empty to skip verification", required = false) String sha256) {
         String fileDir = FileConstant.FILE_SAVE_DIR + "/download";
         String filePath = fileDir + "/" + fileName;
         try {
             // 创建目录
             FileUtil.mkdir(fileDir);
-            // 使用 Hutool 的 downloadFile 方法下载资源
-            HttpUtil.downloadFile(url, new File(filePath));
-            return "Resource downloaded successfully to: " + filePath;
+            // 边读边写入临时文件，进度转发到智能体的输出流
+            FileDownloader.DownloadResult result = downloader.download(url, Path.of(filePath), sha256,
+                    (downloaded, total) -> ToolProgress.report(progressMessage(fileName, downloaded, total)));
+            return "Resource downloaded successfully to: " + filePath
+                    + " (" + FileUtil.readableFileSize(result.size())
+                    + (result.resumed() ? ", resumed" : "")
+                    + ", sha256: " + result.sha256() + ")";
         } catch (Exception e) {
-            return "Error downloading resource: " + e.getMessage();
+            // 连接失败等异常的 message 可能为空
+            String message = "Error downloading resource: " + StrUtil.blankToDefault(e.getMessage(), e.getClass().getSimpleName());
+            File part = new File(filePath + FileDownloader.PART_SUFFIX);
+            if (part.exists()) {
+                message += " (" + FileUtil.readableFileSize(part.length())
+                        + " kept, call again with the same file name to resume)";
+            }
+            return message;
+        }
+    }
+
+    private static String progressMessage(String fileName, long downloaded, long total) {
+        if (total <= 0) {
+            return "下载 " + fileName + "：" + FileUtil.readableFileSize(downloaded);
         }
+        return "下载 " + fileName + "：" + FileUtil.readableFileSize(downloaded) + " / "
+                + FileUtil.readableFileSize(total) + "（" + downloaded * 100 / total + "%）";
     }
 }
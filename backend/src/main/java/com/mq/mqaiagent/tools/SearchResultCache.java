@@ -0,0 +1,82 @@
+package com.mq.mqaiagent.tools;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * 搜索结果缓存
+ * 智能体在多步执行中经常重复搜索相同的关键词，按“搜索引擎 + 规范化后的关键词”缓存格式化后的结果，
+ * 过期前直接返回，省去一次网络往返和搜索 API 调用额度。只缓存成功的结果。
+ */
+@Slf4j
+public class SearchResultCache {
+
+    private final Cache<String, String> cache;
+
+    /**
+     * @param ttl     缓存有效期
+     * @param maxSize 最大缓存条数
+     */
+    public SearchResultCache(Duration ttl, long maxSize) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 未通过 Spring 注入时使用的默认缓存
+     */
+    public static SearchResultCache defaultCache() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * 读取缓存，未命中时执行搜索
+     *
+     * @param engine 搜索引擎
+     * @param query  搜索关键词
+     * @param loader 实际的搜索，返回 null 表示本次结果不应缓存
+     * @return 搜索结果（loader 返回 null 时为 null）
+     * @throws Exception loader 抛出的异常，不会被缓存
+     */
+    public String get(String engine, String query, Callable<String> loader) throws Exception {
+        String key = keyOf(engine, query);
+        String cached = cache.getIfPresent(key);
+        if (cached != null) {
+            log.debug("命中搜索结果缓存: {}", key);
+            return cached;
+        }
+        String result = loader.call();
+        if (result != null) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * 规范化关键词：去除首尾空白、合并连续空白、统一小写
+     */
+    static String keyOf(String engine, String query) {
+        String normalized = query == null ? "" : query.trim().replaceAll("\\s+", " ").toLowerCase();
+        return engine + ":" + normalized;
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private static class DefaultHolder {
+        private static final SearchResultCache INSTANCE = new SearchResultCache(Duration.ofMinutes(30), 1000);
+    }
+}
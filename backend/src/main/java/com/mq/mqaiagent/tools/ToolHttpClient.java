@@ -0,0 +1,246 @@
+package com.mq.mqaiagent.tools;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * 智能体工具共用的 HTTP 客户端
+ * 基于 JDK HttpClient，所有工具共享同一个连接池（HTTP/1.1 keep-alive 与 HTTP/2 多路复用），
+ * 统一设置连接超时和请求超时，并限制对同一主机的并发请求数，避免多个智能体同时抓取时压垮对方站点。
+ */
+public class ToolHttpClient {
+
+    private static final String USER_AGENT = "Mozilla/5.0 (compatible; MqAiAgent/1.0)";
+
+    private final HttpClient httpClient;
+
+    private final Duration requestTimeout;
+
+    private final int maxConcurrentPerHost;
+
+    /**
+     * 主机 -> 并发许可
+     */
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    /**
+     * @param connectTimeoutMs     连接超时（毫秒）
+     * @param requestTimeoutMs     请求超时（毫秒），也是等待主机并发许可的最长时间
+     * @param maxConcurrentPerHost 同一主机的最大并发请求数
+     */
+    public ToolHttpClient(int connectTimeoutMs, int requestTimeoutMs, int maxConcurrentPerHost) {
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+    }
+
+    /**
+     * 未通过 Spring 注入时使用的默认客户端
+     */
+    public static ToolHttpClient defaultClient() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * 发送 GET 请求并读取文本响应
+     *
+     * @param url 请求地址
+     * @return 响应（任意状态码）
+     * @throws IOException 网络错误、超时或等待主机并发许可超时
+     */
+    public HttpResponse<String> get(String url) throws IOException {
+        return send(url, Map.of(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 发送 GET 请求，以流的方式读取响应体，读取超过 maxBytes 的部分被丢弃
+     * 主机并发许可在流关闭时释放，调用方必须关闭返回的流。
+     *
+     * @param url      请求地址
+     * @param headers  额外的请求头
+     * @param maxBytes 最多读取的字节数
+     * @return 响应（任意状态码）
+     * @throws IOException 网络错误、超时或等待主机并发许可超时
+     */
+    public HttpResponse<InputStream> openStream(String url, Map<String, String> headers, long maxBytes)
+            throws IOException {
+        URI uri = URI.create(url);
+        Semaphore permits = acquire(uri);
+        try {
+            HttpResponse<InputStream> response = httpClient.send(buildRequest(uri, headers),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            InputStream body = new TruncatingInputStream(response.body(), maxBytes, permits);
+            return new StreamResponse(response, body);
+        } catch (InterruptedException e) {
+            permits.release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("请求被中断: " + url);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private <T> HttpResponse<T> send(String url, Map<String, String> headers, HttpResponse.BodyHandler<T> handler)
+            throws IOException {
+        URI uri = URI.create(url);
+        Semaphore permits = acquire(uri);
+        try {
+            return httpClient.send(buildRequest(uri, headers), handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("请求被中断: " + url);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private HttpRequest buildRequest(URI uri, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .header("User-Agent", USER_AGENT)
+                .GET();
+        headers.forEach(builder::header);
+        return builder.build();
+    }
+
+    private Semaphore acquire(URI uri) throws IOException {
+        String host = String.valueOf(uri.getHost()).toLowerCase();
+        Semaphore permits = hostPermits.computeIfAbsent(host, h -> new Semaphore(maxConcurrentPerHost));
+        try {
+            if (!permits.tryAcquire(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("对 " + host + " 的并发请求过多，等待超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待主机并发许可时被中断: " + host);
+        }
+        return permits;
+    }
+
+    /**
+     * @param host 主机名
+     * @return 该主机正在进行的请求数
+     */
+    public int getActiveRequests(String host) {
+        Semaphore permits = hostPermits.get(host.toLowerCase());
+        return permits == null ? 0 : maxConcurrentPerHost - permits.availablePermits();
+    }
+
+    private static class DefaultHolder {
+        private static final ToolHttpClient INSTANCE = new ToolHttpClient(5000, 15000, 8);
+    }
+
+    /**
+     * 替换了响应体的流式响应
+     */
+    private record StreamResponse(HttpResponse<InputStream> delegate, InputStream body)
+            implements HttpResponse<InputStream> {
+
+        @Override
+        public int statusCode() {
+            return delegate.statusCode();
+        }
+
+        @Override
+        public HttpRequest request() {
+            return delegate.request();
+        }
+
+        @Override
+        public Optional<HttpResponse<InputStream>> previousResponse() {
+            return delegate.previousResponse();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return delegate.headers();
+        }
+
+        @Override
+        public URI uri() {
+            return delegate.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return delegate.version();
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return delegate.sslSession();
+        }
+    }
+
+    /**
+     * 最多读取指定字节数的输入流，超出部分视为结束；关闭时释放主机并发许可
+     */
+    private static class TruncatingInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private Semaphore permits;
+
+        TruncatingInputStream(InputStream in, long maxBytes, Semaphore permits) {
+            super(in);
+            this.remaining = maxBytes;
+            this.permits = permits;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                    permits = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.mq.mqaiagent.tools;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 工具执行进度
+ * 智能体在执行工具的线程上登记进度监听（流式运行时转发为 SSE 事件），工具执行过程中通过 report 上报进度。
+ * 未登记监听时 report 不做任何事，工具被直接调用或在测试中使用时无需关心。
+ */
+@Slf4j
+public final class ToolProgress {
+
+    private static final ThreadLocal<Consumer<String>> LISTENER = new ThreadLocal<>();
+
+    private ToolProgress() {
+    }
+
+    /**
+     * 在当前线程登记进度监听后执行工具调用，结束后恢复原来的监听
+     *
+     * @param listener 进度监听，为 null 时不上报
+     * @param action   工具调用
+     * @return 工具调用的结果
+     */
+    public static <T> T callWith(Consumer<String> listener, Supplier<T> action) {
+        Consumer<String> previous = LISTENER.get();
+        LISTENER.set(listener);
+        try {
+            return action.get();
+        } finally {
+            if (previous != null) {
+                LISTENER.set(previous);
+            } else {
+                LISTENER.remove();
+            }
+        }
+    }
+
+    /**
+     * 上报进度，监听抛出的异常不影响工具执行
+     *
+     * @param message 进度描述
+     */
+    public static void report(String message) {
+        Consumer<String> listener = LISTENER.get();
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.accept(message);
+        } catch (RuntimeException e) {
+            log.debug("上报工具进度失败: {}", e.getMessage());
+        }
+    }
+}
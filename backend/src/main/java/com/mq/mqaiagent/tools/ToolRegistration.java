@@ -1,11 +1,14 @@
 package com.mq.mqaiagent.tools;
 
+import com.mq.mqaiagent.config.BoundedVirtualThreadExecutor;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.ToolCallbacks;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 
 @Configuration
 public class ToolRegistration {
@@ -13,14 +16,60 @@ public class ToolRegistration {
     @Value("${search-api.api-key}")
     private String searchApiKey;
 
+    @Value("${mq.tools.crawl.max-chars:8000}")
+    private int crawlMaxChars;
+
+    @Value("${mq.tools.crawl.max-body-bytes:2097152}")
+    private int crawlMaxBodyBytes;
+
+    @Value("${mq.tools.download.max-bytes:104857600}")
+    private long downloadMaxBytes;
+
+    @Value("${mq.tools.download.progress-interval-bytes:1048576}")
+    private long downloadProgressIntervalBytes;
+
+    @Value("${mq.tools.pdf.wait-ms:3000}")
+    private long pdfWaitMs;
+
+    /**
+     * 工具共享的 HTTP 客户端（连接池、超时、单主机并发限制）
+     */
+    @Bean
+    public ToolHttpClient toolHttpClient(@Value("${mq.tools.http.connect-timeout-ms:5000}") int connectTimeoutMs,
+                                         @Value("${mq.tools.http.request-timeout-ms:15000}") int requestTimeoutMs,
+                                         @Value("${mq.tools.http.max-per-host:8}") int maxPerHost) {
+        return new ToolHttpClient(connectTimeoutMs, requestTimeoutMs, maxPerHost);
+    }
+
+    /**
+     * 搜索结果缓存
+     */
+    @Bean
+    public SearchResultCache searchResultCache(@Value("${mq.tools.search-cache.ttl-minutes:30}") long ttlMinutes,
+                                               @Value("${mq.tools.search-cache.max-size:1000}") long maxSize) {
+        return new SearchResultCache(Duration.ofMinutes(ttlMinutes), maxSize);
+    }
+
+    /**
+     * PDF 生成服务（后台渲染，复用字体程序）
+     */
+    @Bean
+    public PdfRenderService pdfRenderService(@Value("${mq.tools.pdf.max-concurrency:2}") int maxConcurrency,
+                                             @Value("${mq.tools.pdf.task-ttl-minutes:60}") long taskTtlMinutes) {
+        return new PdfRenderService(new MarkdownPdfRenderer(),
+                new BoundedVirtualThreadExecutor("pdf-", maxConcurrency), Duration.ofMinutes(taskTtlMinutes));
+    }
+
     @Bean
-    public ToolCallback[] allTools() {
+    public ToolCallback[] allTools(ToolHttpClient toolHttpClient, SearchResultCache searchResultCache,
+                                   PdfRenderService pdfRenderService) {
         FileOperationTool fileOperationTool = new FileOperationTool();
-        WebSearchTool webSearchTool = new WebSearchTool(searchApiKey);
-        WebCrawlingTool webCrawlingTool = new WebCrawlingTool();
-        ResourceDownloadTool resourceDownloadTool = new ResourceDownloadTool();
-        PDFGenerationTool pdfGenerationTool = new PDFGenerationTool();
-        GoogleWebSearchTool googleWebSearchTool = new GoogleWebSearchTool(searchApiKey);
+        WebSearchTool webSearchTool = new WebSearchTool(searchApiKey, toolHttpClient, searchResultCache);
+        WebCrawlingTool webCrawlingTool = new WebCrawlingTool(crawlMaxChars, crawlMaxBodyBytes, toolHttpClient);
+        ResourceDownloadTool resourceDownloadTool = new ResourceDownloadTool(
+                new FileDownloader(toolHttpClient, downloadMaxBytes, downloadProgressIntervalBytes));
+        PDFGenerationTool pdfGenerationTool = new PDFGenerationTool(pdfRenderService, pdfWaitMs);
+        GoogleWebSearchTool googleWebSearchTool = new GoogleWebSearchTool(searchApiKey, toolHttpClient, searchResultCache);
         TerminateTool terminateTool = new TerminateTool();
         return ToolCallbacks.from(
                 fileOperationTool,
@@ -1,22 +1,98 @@
 package com.mq.mqaiagent.tools;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
+import cn.hutool.core.util.StrUtil;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 public class WebCrawlingTool {
 
-    @Tool(description = "Crawl web pages")
+    private static final Pattern CHARSET = Pattern.compile("charset=[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+
+    // 未在响应头中声明编码时，在页面开头查找 <meta charset> 的范围（字节）
+    private static final int CHARSET_SNIFF_BYTES = 4096;
+
+    // 响应体读取上限（字节），超出部分不再读取
+    private final int maxBodyBytes;
+
+    private final ToolHttpClient httpClient;
+
+    private final HtmlContentExtractor contentExtractor;
+
+    public WebCrawlingTool() {
+        this(8000, 2 * 1024 * 1024, ToolHttpClient.defaultClient());
+    }
+
+    /**
+     * @param maxChars     返回正文的字符上限
+     * @param maxBodyBytes 响应体读取上限（字节）
+     * @param httpClient   共享的 HTTP 客户端
+     */
+    public WebCrawlingTool(int maxChars, int maxBodyBytes, ToolHttpClient httpClient) {
+        this.maxBodyBytes = maxBodyBytes;
+        this.httpClient = httpClient;
+        this.contentExtractor = new HtmlContentExtractor(maxChars);
+    }
+
+    @Tool(description = "Crawl a web page and return its main readable content as Markdown")
     public String crawl(@ToolParam(description = "URL of the web page to Crawl") String url){
         try {
-            Document doc = Jsoup.connect(url).get();
-            return doc.html();
-        } catch (IOException e) {
-            return "Error Crawl web pages: " + e.getMessage();
+            HttpResponse<InputStream> response = httpClient.openStream(url,
+                    Map.of("Accept", "text/html,application/xhtml+xml"), maxBodyBytes);
+            // 边读取边解析，不在内存中保留完整的页面
+            try (BufferedInputStream body = new BufferedInputStream(response.body())) {
+                if (response.statusCode() >= 400) {
+                    return "Error Crawl web pages: HTTP " + response.statusCode();
+                }
+                String contentType = response.headers().firstValue("Content-Type").orElse("");
+                if (!contentType.isEmpty() && !contentType.contains("html") && !contentType.startsWith("text/")) {
+                    return "Error Crawl web pages: unsupported content type " + contentType;
+                }
+                Reader reader = new InputStreamReader(body, detectCharset(contentType, body));
+                return contentExtractor.extract(reader, response.uri().toString());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // 连接失败等异常的 message 可能为空
+            return "Error Crawl web pages: " + StrUtil.blankToDefault(e.getMessage(), e.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * 依次使用响应头和页面开头 meta 中声明的编码，都没有时使用 UTF-8
+     */
+    private static Charset detectCharset(String contentType, BufferedInputStream body) throws IOException {
+        Charset charset = toCharset(contentType);
+        if (charset != null) {
+            return charset;
+        }
+        body.mark(CHARSET_SNIFF_BYTES);
+        byte[] head = body.readNBytes(CHARSET_SNIFF_BYTES);
+        body.reset();
+        charset = toCharset(new String(head, StandardCharsets.ISO_8859_1));
+        return charset != null ? charset : StandardCharsets.UTF_8;
+    }
+
+    private static Charset toCharset(String text) {
+        Matcher matcher = CHARSET.matcher(text);
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            return Charset.forName(matcher.group(1));
+        } catch (IllegalArgumentException e) {
+            return null;
         }
     }
 }
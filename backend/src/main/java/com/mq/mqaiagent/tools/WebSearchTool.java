@@ -1,15 +1,16 @@
 package com.mq.mqaiagent.tools;
 
-import cn.hutool.http.HttpUtil;
 import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 
@@ -20,36 +21,59 @@ public class WebSearchTool {
 
     private final String apiKey;
 
+    private final String searchApiUrl;
+
+    private final ToolHttpClient httpClient;
+
+    private final SearchResultCache searchCache;
+
     public WebSearchTool(String apiKey) {
+        this(apiKey, ToolHttpClient.defaultClient(), SearchResultCache.defaultCache());
+    }
+
+    public WebSearchTool(String apiKey, ToolHttpClient httpClient, SearchResultCache searchCache) {
+        this(apiKey, SEARCH_API_URL, httpClient, searchCache);
+    }
+
+    WebSearchTool(String apiKey, String searchApiUrl, ToolHttpClient httpClient, SearchResultCache searchCache) {
         this.apiKey = apiKey;
+        this.searchApiUrl = searchApiUrl;
+        this.httpClient = httpClient;
+        this.searchCache = searchCache;
     }
 
     @Tool(description = "Search for information from Baidu Search Engine")
     public String searchWeb(
             @ToolParam(description = "Search query keyword") String query) {
-        Map<String, Object> paramMap = new HashMap<>();
-        paramMap.put("q", query);
-        paramMap.put("api_key", apiKey);
-        paramMap.put("engine", "baidu");
         try {
-            String response = HttpUtil.get(SEARCH_API_URL, paramMap);
-            // 取出返回结果的前 5 条
-            JSONObject jsonObject = JSONUtil.parseObj(response);
-            // 提取 organic_results 部分
-            JSONArray organicResults = jsonObject.getJSONArray("organic_results");
-            List<Object> objects = organicResults.subList(0, 5);
-            // 拼接搜索结果为字符串
-            String result = objects.stream().map(obj -> {
-                JSONObject tmpJSONObject = (JSONObject) obj;
-                return tmpJSONObject.toString();
-            }).collect(Collectors.joining(","));
-            // 过滤结果，只保留 title、link 和 snippet 关键信息
-            result = result.replaceAll("\"description\":\".*?\"", "\"description\":\"\"")
-                    .replaceAll("\"title\":\".*?\"", "\"title\":\"\"")
-                    .replaceAll("\"link\":\".*?\"", "\"link\":\"\"");
-            return result;
+            return searchCache.get("baidu", query, () -> search(query));
         } catch (Exception e) {
             return "Error searching Baidu: " + e.getMessage();
         }
     }
+
+    private String search(String query) throws IOException {
+        String url = searchApiUrl + "?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8)
+                + "&api_key=" + URLEncoder.encode(apiKey, StandardCharsets.UTF_8)
+                + "&engine=baidu";
+        HttpResponse<String> response = httpClient.get(url);
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode());
+        }
+        // 取出返回结果的前 5 条
+        JSONObject jsonObject = JSONUtil.parseObj(response.body());
+        // 提取 organic_results 部分
+        JSONArray organicResults = jsonObject.getJSONArray("organic_results");
+        List<Object> objects = organicResults.subList(0, Math.min(5, organicResults.size()));
+        // 拼接搜索结果为字符串
+        String result = objects.stream().map(obj -> {
+            JSONObject tmpJSONObject = (JSONObject) obj;
+            return tmpJSONObject.toString();
+        }).collect(Collectors.joining(","));
+        // 过滤结果，只保留 title、link 和 snippet 关键信息
+        result = result.replaceAll("\"description\":\".*?\"", "\"description\":\"\"")
+                .replaceAll("\"title\":\".*?\"", "\"title\":\"\"")
+                .replaceAll("\"link\":\".*?\"", "\"link\":\"\"");
+        return result;
+    }
 }
@@ -0,0 +1,127 @@
+package com.mq.mqaiagent.advisor;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AiTrafficLoggerTest {
+
+    private final Logger trafficLog = (Logger) LoggerFactory.getLogger("AI_TRAFFIC");
+
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    @BeforeEach
+    void setUp() {
+        appender.start();
+        trafficLog.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        trafficLog.detachAppender(appender);
+    }
+
+    @Test
+    void testFinish_writesTruncatedJsonAsynchronously() throws Exception {
+        AiTrafficLogger trafficLogger = new AiTrafficLogger(10);
+        trafficLogger.configure(new AiTrafficLogger.Policy(true, 1.0, 5), Map.of());
+
+        AiTrafficLogger.Exchange exchange = trafficLogger.start("keep-app", "stream", "hello world");
+        exchange.onResponse(chunk("abc", null));
+        exchange.onResponse(chunk("defg", null));
+        exchange.onResponse(chunk("hij", new DefaultUsage(3, 7)));
+        exchange.finish();
+        exchange.finish();
+
+        JSONObject json = JSONUtil.parseObj(awaitLogged(1).get(0).getFormattedMessage());
+        assertEquals("keep-app", json.getStr("clientType"));
+        assertEquals("stream", json.getStr("mode"));
+        assertEquals("hello...[已截断]", json.getStr("request"));
+        assertEquals("abcde...[已截断]", json.getStr("response"));
+        assertEquals(3, json.getInt("promptTokens"));
+        assertEquals(7, json.getInt("completionTokens"));
+
+        AiTrafficLogger.MetricsSnapshot metrics = trafficLogger.getMetrics().get("keep-app");
+        assertEquals(1, metrics.requests());
+        assertEquals(1, metrics.sampled());
+        assertEquals(7, metrics.completionTokens());
+    }
+
+    @Test
+    void testStart_policyPerClientTypeAndMetricsWithoutSampling() {
+        AiTrafficLogger trafficLogger = new AiTrafficLogger(10);
+        trafficLogger.configure(AiTrafficLogger.Policy.DEFAULT,
+                Map.of("mq-manus", new AiTrafficLogger.Policy(true, 0.0, 100)));
+
+        AiTrafficLogger.Exchange exchange = trafficLogger.start("mq-manus", "call", "task");
+        assertFalse(exchange.isSampled());
+        exchange.onResponse(chunk("done", new DefaultUsage(10, 20)));
+        exchange.onError(new IllegalStateException("boom"));
+        exchange.finish();
+        assertTrue(trafficLogger.start("keep-app", "call", "hi").isSampled());
+
+        AiTrafficLogger.MetricsSnapshot metrics = trafficLogger.getMetrics().get("mq-manus");
+        assertEquals(1, metrics.requests());
+        assertEquals(1, metrics.errors());
+        assertEquals(0, metrics.sampled());
+        assertEquals(10, metrics.promptTokens());
+        assertTrue(appender.list.isEmpty());
+    }
+
+    @Test
+    void testShutdown_writesQueuedRecordsAndThenWritesSynchronously() {
+        AiTrafficLogger trafficLogger = new AiTrafficLogger(10);
+        trafficLogger.configure(AiTrafficLogger.Policy.DEFAULT, Map.of());
+        for (int i = 0; i < 3; i++) {
+            trafficLogger.start("keep-app", "call", "q" + i).finish();
+        }
+
+        trafficLogger.shutdown(Duration.ofSeconds(5));
+        assertEquals(3, appender.list.size());
+
+        trafficLogger.start("keep-app", "call", "late").finish();
+        assertEquals(4, appender.list.size());
+        assertEquals("late", JSONUtil.parseObj(appender.list.get(3).getFormattedMessage()).getStr("request"));
+    }
+
+    @Test
+    void testTruncate() {
+        assertNull(AiTrafficLogger.truncate(null, 3));
+        assertEquals("abc", AiTrafficLogger.truncate("abc", 3));
+        assertEquals("ab...[已截断]", AiTrafficLogger.truncate("abc", 2));
+    }
+
+    private List<ILoggingEvent> awaitLogged(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (appender.list.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, appender.list.size());
+        return appender.list;
+    }
+
+    static ChatResponse chunk(String text, DefaultUsage usage) {
+        ChatResponseMetadata.Builder metadata = ChatResponseMetadata.builder();
+        if (usage != null) {
+            metadata.usage(usage);
+        }
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))), metadata.build());
+    }
+}
@@ -2,13 +2,26 @@ package com.mq.mqaiagent.advisor;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
 import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
 import org.springframework.ai.chat.client.advisor.api.CallAroundAdvisorChain;
 import org.springframework.ai.chat.client.advisor.api.StreamAroundAdvisorChain;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
 import reactor.core.publisher.Flux;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -38,8 +51,10 @@ class ForbiddenWordAdvisorTest {
     }
 
     @Test
-    void testAroundCall_withProhibitedWord_throws() {
-        ForbiddenWordAdvisor advisor = new ForbiddenWordAdvisor();
+    void testAroundCall_withProhibitedWord_throws(@TempDir Path tempDir) throws IOException {
+        Path wordsFile = tempDir.resolve("words.txt");
+        Files.writeString(wordsFile, "badword\n");
+        ForbiddenWordAdvisor advisor = new ForbiddenWordAdvisor("file:" + wordsFile);
         AdvisedRequest request = mock(AdvisedRequest.class);
         when(request.userText()).thenReturn("this contains badword text");
         CallAroundAdvisorChain chain = mock(CallAroundAdvisorChain.class);
@@ -88,5 +103,85 @@ class ForbiddenWordAdvisorTest {
         AdvisedResponse actual = advisor.aroundCall(request, chain);
         assertSame(response, actual);
     }
-}
 
+    @Test
+    void testAroundCall_fullWidthProhibitedWord_throws(@TempDir Path tempDir) throws IOException {
+        Path wordsFile = tempDir.resolve("words.txt");
+        Files.writeString(wordsFile, "badword\n违禁词\n");
+        ForbiddenWordAdvisor advisor = new ForbiddenWordAdvisor("file:" + wordsFile);
+        AdvisedRequest request = mock(AdvisedRequest.class);
+        when(request.userText()).thenReturn("this contains ＢＡＤＷｏｒｄ text");
+        CallAroundAdvisorChain chain = mock(CallAroundAdvisorChain.class);
+
+        assertThrows(ForbiddenWordAdvisor.ProhibitedWordException.class,
+                () -> advisor.aroundCall(request, chain));
+        verify(chain, never()).nextAroundCall(any());
+    }
+
+    @Test
+    void testReload_picksUpModifiedWordFile(@TempDir Path tempDir) throws IOException {
+        Path wordsFile = tempDir.resolve("words.txt");
+        Files.writeString(wordsFile, "badword\n");
+        ForbiddenWordAdvisor advisor = new ForbiddenWordAdvisor("file:" + wordsFile, Duration.ZERO);
+        assertTrue(advisor.getMatcher().containsAny("badword"));
+        assertFalse(advisor.getMatcher().containsAny("newword"));
+
+        Files.writeString(wordsFile, "newword\n");
+        Files.setLastModifiedTime(wordsFile, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+        assertTrue(advisor.getMatcher().containsAny("newword"));
+        assertFalse(advisor.getMatcher().containsAny("badword"));
+    }
+
+    @Test
+    void testReload_fileRemoved_keepsPreviousWords(@TempDir Path tempDir) throws IOException {
+        Path wordsFile = tempDir.resolve("words.txt");
+        Files.writeString(wordsFile, "badword\n");
+        ForbiddenWordAdvisor advisor = new ForbiddenWordAdvisor("file:" + wordsFile, Duration.ZERO);
+
+        Files.delete(wordsFile);
+
+        assertTrue(advisor.getMatcher().containsAny("badword"));
+    }
+
+    @Test
+    void testAroundStream_prohibitedWordSplitAcrossChunks_stopsStream(@TempDir Path tempDir) throws IOException {
+        Path wordsFile = tempDir.resolve("words.txt");
+        Files.writeString(wordsFile, "badword\n");
+        ForbiddenWordAdvisor advisor = new ForbiddenWordAdvisor("file:" + wordsFile);
+        AdvisedRequest request = mock(AdvisedRequest.class);
+        when(request.userText()).thenReturn("safe content");
+        StreamAroundAdvisorChain chain = mock(StreamAroundAdvisorChain.class);
+        when(chain.nextAroundStream(any())).thenReturn(Flux.just(
+                chunk("this is B"), chunk("ad"), chunk("Ｗord"), chunk(" never sent")));
+        List<String> received = new ArrayList<>();
+
+        Flux<AdvisedResponse> flux = advisor.aroundStream(request, chain)
+                .doOnNext(response -> received.add(response.response().getResult().getOutput().getText()));
+
+        assertThrows(ForbiddenWordAdvisor.ProhibitedWordException.class, flux::blockLast);
+        assertEquals(List.of("this is B", "ad"), received);
+    }
+
+    @Test
+    void testAroundStream_cleanOutput_passesAllChunksAndStateIsPerSubscription(@TempDir Path tempDir) throws IOException {
+        Path wordsFile = tempDir.resolve("words.txt");
+        Files.writeString(wordsFile, "badword\n");
+        ForbiddenWordAdvisor advisor = new ForbiddenWordAdvisor("file:" + wordsFile);
+        AdvisedRequest request = mock(AdvisedRequest.class);
+        when(request.userText()).thenReturn("safe content");
+        StreamAroundAdvisorChain chain = mock(StreamAroundAdvisorChain.class);
+        // 单独一次订阅不包含违禁词；如果状态跨订阅保留，第二次订阅会拼出 "bad" + "word"
+        when(chain.nextAroundStream(any())).thenReturn(Flux.just(chunk("word bad"), chunk(""), mock(AdvisedResponse.class)));
+
+        Flux<AdvisedResponse> flux = advisor.aroundStream(request, chain);
+
+        assertEquals(3, flux.collectList().block().size());
+        assertEquals(3, flux.collectList().block().size());
+    }
+
+    private static AdvisedResponse chunk(String text) {
+        ChatResponse chatResponse = new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+        return new AdvisedResponse(chatResponse, Map.of());
+    }
+}
@@ -0,0 +1,124 @@
+package com.mq.mqaiagent.advisor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class ForbiddenWordMatcherTest {
+
+    @Test
+    void testFindFirst_overlappingWordsViaFailureLinks() {
+        ForbiddenWordMatcher matcher = ForbiddenWordMatcher.compile(List.of("he", "she", "his", "hers"));
+
+        assertEquals("she", matcher.findFirst("ushers"));
+        assertEquals("his", matcher.findFirst("this"));
+        assertNull(matcher.findFirst("hi tax? no: h-e s"));
+        assertTrue(matcher.containsAny("ahe"));
+    }
+
+    @Test
+    void testFindFirst_normalizesWidthAndCase() {
+        ForbiddenWordMatcher matcher = ForbiddenWordMatcher.compile(List.of("BadWord", "违禁词", " ", "ｆｏｏ１"));
+
+        assertEquals(3, matcher.size());
+        assertEquals("badword", matcher.findFirst("this contains ＢＡＤＷＯＲＤ text"));
+        assertEquals("foo1", matcher.findFirst("FOO1"));
+        assertEquals("违禁词", matcher.findFirst("包含违禁词的内容"));
+        assertFalse(matcher.containsAny("bad word"));
+    }
+
+    @Test
+    void testStep_stateCarriesAcrossChunks() {
+        ForbiddenWordMatcher matcher = ForbiddenWordMatcher.compile(List.of("badword"));
+        String match = null;
+        int state = ForbiddenWordMatcher.ROOT;
+        for (String chunk : List.of("this is b", "ad", "WO", "rd!")) {
+            for (int i = 0; i < chunk.length() && match == null; i++) {
+                state = matcher.step(state, chunk.charAt(i));
+                match = matcher.matchAt(state);
+            }
+        }
+        assertEquals("badword", match);
+    }
+
+    @Test
+    void testScanner_matchesAcrossFeeds() {
+        ForbiddenWordMatcher matcher = ForbiddenWordMatcher.compile(List.of("违禁词", "abc"));
+        ForbiddenWordMatcher.Scanner scanner = matcher.newScanner();
+
+        assertNull(scanner.feed("这里有违"));
+        assertNull(scanner.feed(null));
+        assertEquals("违禁词", scanner.feed("禁词内容"));
+        assertNull(matcher.newScanner().feed("禁词内容"));
+    }
+
+    @Test
+    void testCompile_emptyListNeverMatches() {
+        ForbiddenWordMatcher matcher = ForbiddenWordMatcher.compile(List.of());
+
+        assertFalse(matcher.containsAny("anything"));
+        assertNull(matcher.findFirst(null));
+    }
+
+    /**
+     * 吞吐量基准：2000 个违禁词、4KB 不含违禁词的文本（最常见的情况），对比原来逐词 toLowerCase + contains 的实现
+     * 耗时受机器负载影响，只输出到日志，不作断言
+     */
+    @Test
+    void benchmark_automatonVsLoop() {
+        Random random = new Random(7);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            words.add(randomText(random, 'a', 'm', 3 + random.nextInt(4)) + randomText(random, 'n', 'z', 1));
+        }
+        String text = randomText(random, 'a', 'm', 4096);
+        ForbiddenWordMatcher matcher = ForbiddenWordMatcher.compile(words);
+        int rounds = 200;
+        assertFalse(loopContains(words, text));
+
+        // 预热
+        for (int i = 0; i < rounds; i++) {
+            assertFalse(matcher.containsAny(text));
+            loopContains(words, text);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            matcher.containsAny(text);
+        }
+        long automatonNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            loopContains(words, text);
+        }
+        long loopNanos = System.nanoTime() - start;
+
+        log.info("违禁词匹配基准: 自动机 {} μs/次，逐词匹配 {} μs/次",
+                automatonNanos / rounds / 1000, loopNanos / rounds / 1000);
+    }
+
+    /**
+     * 原来的实现
+     */
+    private static boolean loopContains(List<String> words, String text) {
+        for (String word : words) {
+            if (text.toLowerCase().contains(word.toLowerCase())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String randomText(Random random, char from, char to, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) (from + random.nextInt(to - from + 1)));
+        }
+        return builder.toString();
+    }
+}
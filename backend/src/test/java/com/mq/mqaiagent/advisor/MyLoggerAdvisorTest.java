@@ -13,6 +13,9 @@ import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
 import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
 import org.springframework.ai.chat.client.advisor.api.CallAroundAdvisorChain;
 import org.springframework.ai.chat.client.advisor.api.StreamAroundAdvisorChain;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+
+import java.util.Map;
 
 class MyLoggerAdvisorTest {
 
@@ -54,5 +57,37 @@ class MyLoggerAdvisorTest {
         assertNotNull(flux);
         assertEquals(1, flux.collectList().block().size());
     }
-}
 
+    @Test
+    void testAroundStream_recordsOneExchangePerSubscription() {
+        AiTrafficLogger trafficLogger = new AiTrafficLogger(10);
+        MyLoggerAdvisor advisor = new MyLoggerAdvisor("keep-app", trafficLogger);
+        AdvisedRequest request = mock(AdvisedRequest.class);
+        when(request.userText()).thenReturn("hello");
+        StreamAroundAdvisorChain chain = mock(StreamAroundAdvisorChain.class);
+        when(chain.nextAroundStream(any())).thenReturn(Flux.just(
+                new AdvisedResponse(AiTrafficLoggerTest.chunk("wor", null), Map.of()),
+                new AdvisedResponse(AiTrafficLoggerTest.chunk("ld", new DefaultUsage(2, 4)), Map.of())));
+
+        Flux<AdvisedResponse> flux = advisor.aroundStream(request, chain);
+        assertTrue(trafficLogger.getMetrics().isEmpty());
+        assertEquals(2, flux.collectList().block().size());
+        assertEquals(2, flux.collectList().block().size());
+
+        AiTrafficLogger.MetricsSnapshot metrics = trafficLogger.getMetrics().get("keep-app");
+        assertEquals(2, metrics.requests());
+        assertEquals(8, metrics.completionTokens());
+    }
+
+    @Test
+    void testAroundCall_errorIsCounted() {
+        AiTrafficLogger trafficLogger = new AiTrafficLogger(10);
+        MyLoggerAdvisor advisor = new MyLoggerAdvisor("mq-manus", trafficLogger);
+        AdvisedRequest request = mock(AdvisedRequest.class);
+        CallAroundAdvisorChain chain = mock(CallAroundAdvisorChain.class);
+        when(chain.nextAroundCall(any())).thenThrow(new IllegalStateException("boom"));
+
+        assertThrows(IllegalStateException.class, () -> advisor.aroundCall(request, chain));
+        assertEquals(1, trafficLogger.getMetrics().get("mq-manus").errors());
+    }
+}
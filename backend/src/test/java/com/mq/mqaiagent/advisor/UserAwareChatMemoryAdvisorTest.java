@@ -0,0 +1,32 @@
+package com.mq.mqaiagent.advisor;
+
+import com.mq.mqaiagent.chatmemory.UserAwareChatMemory;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
+
+class UserAwareChatMemoryAdvisorTest {
+
+    private final UserAwareChatMemoryAdvisor advisor =
+            new UserAwareChatMemoryAdvisor(mock(UserAwareChatMemory.class));
+
+    @Test
+    void testConversationId_scopedByUserParam() {
+        assertEquals(UserAwareChatMemory.scopedConversationId("c1", 5L), advisor.doGetConversationId(Map.of(
+                CHAT_MEMORY_CONVERSATION_ID_KEY, "c1",
+                UserAwareChatMemoryAdvisor.CHAT_MEMORY_USER_ID_KEY, 5L)));
+        // 不同用户的同一对话ID互不相同
+        assertEquals(UserAwareChatMemory.scopedConversationId("c1", 6L), advisor.doGetConversationId(Map.of(
+                CHAT_MEMORY_CONVERSATION_ID_KEY, "c1",
+                UserAwareChatMemoryAdvisor.CHAT_MEMORY_USER_ID_KEY, "6")));
+    }
+
+    @Test
+    void testConversationId_withoutUserParam_unchanged() {
+        assertEquals("c1", advisor.doGetConversationId(Map.of(CHAT_MEMORY_CONVERSATION_ID_KEY, "c1")));
+    }
+}
@@ -0,0 +1,77 @@
+package com.mq.mqaiagent.agent;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentContextManagerTest {
+
+    private static final String NEXT = "next step";
+
+    private static List<Message> conversation(int steps, int toolResponseChars) {
+        List<Message> messages = new ArrayList<>();
+        messages.add(new UserMessage("帮我制定增肌计划"));
+        for (int i = 0; i < steps; i++) {
+            messages.add(new UserMessage(NEXT));
+            messages.add(new AssistantMessage("", Map.of(),
+                    List.of(new AssistantMessage.ToolCall("c" + i, "function", "crawl", "{}"))));
+            messages.add(new ToolResponseMessage(List.of(
+                    new ToolResponseMessage.ToolResponse("c" + i, "crawl", "x".repeat(toolResponseChars)))));
+        }
+        return messages;
+    }
+
+    private static String responseData(Message message) {
+        return ((ToolResponseMessage) message).getResponses().get(0).responseData();
+    }
+
+    @Test
+    void testCompact_truncatesOldToolResponsesAndKeepsRecentVerbatim() {
+        AgentContextManager manager = new AgentContextManager(100000, 3, 100, 5000);
+        List<Message> messages = conversation(3, 1000);
+
+        List<Message> compacted = manager.compact(messages, NEXT);
+
+        // 较早的两个“下一步提示”被移除，最近一个保留
+        assertEquals(messages.size() - 2, compacted.size());
+        assertEquals("帮我制定增肌计划", compacted.get(0).getText());
+        assertTrue(responseData(compacted.get(2)).startsWith("x".repeat(100) + "\n...[结果过长，已截断 900 字符]"));
+        assertEquals("x".repeat(1000), responseData(compacted.get(compacted.size() - 1)));
+        // 每个工具调用仍有对应的结果
+        assertEquals(3, compacted.stream().filter(m -> m instanceof ToolResponseMessage).count());
+        // 不修改传入的列表
+        assertEquals("x".repeat(1000), responseData(messages.get(3)));
+    }
+
+    @Test
+    void testCompact_overBudget_omitsOldestToolResponsesFirst() {
+        AgentContextManager manager = new AgentContextManager(2500, 3, 1000, 5000);
+
+        List<Message> compacted = manager.compact(conversation(3, 1000), NEXT);
+
+        assertTrue(responseData(compacted.get(2)).startsWith("[较早的工具结果已省略，原长度 1000 字符]"));
+        assertEquals("x".repeat(1000), responseData(compacted.get(4)));
+        assertTrue(AgentContextManager.sizeOf(compacted) <= 2500);
+    }
+
+    @Test
+    void testCompact_recentResponseCappedAndRepeatedCompactionIsStable() {
+        AgentContextManager manager = new AgentContextManager(100000, 3, 100, 500);
+
+        List<Message> once = manager.compact(conversation(2, 10000), NEXT);
+        List<Message> twice = manager.compact(once, NEXT);
+
+        String recent = responseData(once.get(once.size() - 1));
+        assertTrue(recent.startsWith("x".repeat(500)));
+        assertTrue(recent.length() < 600);
+        assertEquals(once, twice);
+    }
+}
@@ -1,6 +1,7 @@
 package com.mq.mqaiagent.agent;
 
 import com.mq.mqaiagent.agent.model.AgentState;
+import com.mq.mqaiagent.config.BoundedVirtualThreadExecutor;
 import org.junit.jupiter.api.Test;
 
 import java.util.concurrent.CountDownLatch;
@@ -110,4 +111,59 @@ class BaseAgentTest {
         }
         assertEquals(AgentState.ERROR, agent.getState());
     }
+
+    @Test
+    void testRunStream_usesConfiguredExecutor() throws Exception {
+        ThreadNameAgent agent = new ThreadNameAgent();
+        agent.setMaxSteps(1);
+        BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor("agent-test-", 2);
+        try {
+            agent.setExecutor(executor);
+            agent.runStream("p");
+            assertTrue(agent.stepped.await(5, TimeUnit.SECONDS));
+            assertTrue(agent.virtual);
+            assertTrue(agent.threadName.startsWith("agent-test-"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static class ThreadNameAgent extends BaseAgent {
+        final CountDownLatch stepped = new CountDownLatch(1);
+        volatile boolean virtual;
+        volatile String threadName;
+        @Override
+        public String step() {
+            virtual = Thread.currentThread().isVirtual();
+            threadName = Thread.currentThread().getName();
+            stepped.countDown();
+            return "ok";
+        }
+    }
+
+    @Test
+    void testRunStream_partialOutputOnlyAvailableWhileRunning() throws Exception {
+        PartialOutputAgent agent = new PartialOutputAgent();
+        agent.setMaxSteps(1);
+        agent.runStream("p");
+        assertTrue(agent.stepped.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && agent.getPartialOutputConsumer() != null) {
+            Thread.sleep(20);
+        }
+        assertTrue(agent.hadConsumer);
+        assertNull(agent.getPartialOutputConsumer());
+    }
+
+    static class PartialOutputAgent extends BaseAgent {
+        final CountDownLatch stepped = new CountDownLatch(1);
+        volatile boolean hadConsumer;
+        @Override
+        public String step() {
+            hadConsumer = getPartialOutputConsumer() != null;
+            emitPartialOutput("思考中");
+            stepped.countDown();
+            return "ok";
+        }
+    }
 }
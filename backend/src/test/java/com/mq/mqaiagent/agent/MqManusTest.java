@@ -49,15 +49,16 @@ class MqManusTest {
     }
 
     @Test
-    void testConstructor_withPool_andUserMemory_callsPoolWithUserId() {
+    void testConstructor_withPool_andUserMemory_usesSharedClientAndKeepsUserId() {
         ToolCallback[] tools = new ToolCallback[]{};
         ChatClientPool pool = mock(ChatClientPool.class);
         ChatClient client = mock(ChatClient.class);
-        when(pool.getMqManusClientWithMemory(eq(99L), anyString())).thenReturn(client);
+        when(pool.getMqManusClientWithMemory(anyString())).thenReturn(client);
 
         MqManus agent = new MqManus(tools, pool, 99L);
         assertEquals(client, agent.getChatClient());
-        verify(pool, times(1)).getMqManusClientWithMemory(eq(99L), anyString());
+        assertEquals(99L, agent.getUserId());
+        verify(pool, times(1)).getMqManusClientWithMemory(anyString());
     }
 }
 
@@ -7,14 +7,19 @@ import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionResult;
 import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
 import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -125,5 +130,182 @@ class ToolCallAgentTest {
         assertTrue(res.contains("工具 crawl 返回的结果：<html/>"));
         assertEquals(AgentState.FINISHED, agent.getState());
     }
-}
 
+    private static ToolCallback sleepingTool(String name, long sleepMs, String output) {
+        ToolCallback callback = namedTool(name);
+        when(callback.call(anyString(), any())).thenAnswer(invocation -> {
+            Thread.sleep(sleepMs);
+            return output + ":" + invocation.getArgument(0);
+        });
+        return callback;
+    }
+
+    /**
+     * 工具名只来自 getToolDefinition()，接口默认方法照常调用，ToolCallingManager 据此查找工具并调用 call(arguments, toolContext)
+     */
+    private static ToolCallback namedTool(String name) {
+        ToolCallback callback = mock(ToolCallback.class, Mockito.CALLS_REAL_METHODS);
+        doReturn(ToolDefinition.builder().name(name).description(name).inputSchema("{}").build())
+                .when(callback).getToolDefinition();
+        return callback;
+    }
+
+    private static ToolCallAgent parallelAgent(ToolCallback[] tools, List<AssistantMessage.ToolCall> toolCalls) {
+        ToolCallAgent agent = new ToolCallAgent(tools);
+        agent.setParallelToolCalls(true);
+        agent.setMaxParallelTools(4);
+        agent.setToolTimeoutMs(1000);
+        agent.getMessageList().add(new org.springframework.ai.chat.messages.UserMessage("q"));
+        ChatResponse chatResponse = mock(ChatResponse.class, Mockito.RETURNS_DEEP_STUBS);
+        when(chatResponse.hasToolCalls()).thenReturn(true);
+        when(chatResponse.getResult().getOutput()).thenReturn(new AssistantMessage("", java.util.Map.of(), toolCalls));
+        ReflectionTestUtils.setField(agent, "toolCallChatResponse", chatResponse);
+        return agent;
+    }
+
+    @Test
+    void testAct_parallel_runsConcurrentlyAndKeepsCallOrder() {
+        ToolCallback[] tools = {sleepingTool("search", 300, "s"), sleepingTool("crawl", 100, "c"),
+                sleepingTool("download", 200, "d")};
+        ToolCallAgent agent = parallelAgent(tools, List.of(
+                new AssistantMessage.ToolCall("1", "function", "search", "a"),
+                new AssistantMessage.ToolCall("2", "function", "crawl", "b"),
+                new AssistantMessage.ToolCall("3", "function", "download", "c")));
+
+        long start = System.nanoTime();
+        String res = agent.act();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMs < 550, "并行执行耗时应接近最慢的工具: " + elapsedMs);
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) agent.getMessageList().get(2);
+        assertEquals(List.of("1", "2", "3"), toolResponseMessage.getResponses().stream().map(ToolResponseMessage.ToolResponse::id).toList());
+        assertEquals("s:a", toolResponseMessage.getResponses().get(0).responseData());
+        assertEquals(3, agent.getMessageList().size());
+        assertTrue(res.indexOf("工具 search") < res.indexOf("工具 crawl"));
+        assertTrue(agent.getToolTimeSavedMs() >= 150);
+    }
+
+    @Test
+    void testAct_parallel_timeoutFailureAndUnknownToolAreIsolated() {
+        ToolCallback failing = namedTool("broken");
+        when(failing.call(anyString(), any())).thenThrow(new IllegalStateException("boom"));
+        ToolCallback[] tools = {sleepingTool("slow", 5000, "x"), failing, sleepingTool("doTerminate", 0, "done")};
+        ToolCallAgent agent = parallelAgent(tools, List.of(
+                new AssistantMessage.ToolCall("1", "function", "slow", "a"),
+                new AssistantMessage.ToolCall("2", "function", "broken", "b"),
+                new AssistantMessage.ToolCall("3", "function", "missing", "c"),
+                new AssistantMessage.ToolCall("4", "function", "doTerminate", "d")));
+        agent.setToolTimeoutMs(200);
+
+        long start = System.nanoTime();
+        agent.act();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMs < 2000, "超时的工具不应阻塞整个步骤: " + elapsedMs);
+        List<ToolResponseMessage.ToolResponse> responses =
+                ((ToolResponseMessage) agent.getMessageList().get(2)).getResponses();
+        assertTrue(responses.get(0).responseData().contains("超时"));
+        assertTrue(responses.get(1).responseData().contains("boom"));
+        assertTrue(responses.get(2).responseData().contains("未找到工具"));
+        assertEquals("done:d", responses.get(3).responseData());
+        assertEquals(AgentState.FINISHED, agent.getState());
+    }
+
+    @Test
+    void testAct_parallel_errorInToolDoesNotHang_andSharedExecutorIsUsed() {
+        ToolCallback erroring = namedTool("erroring");
+        when(erroring.call(anyString(), any())).thenThrow(new AssertionError("fatal"));
+        ToolCallback[] tools = {erroring, sleepingTool("ok", 0, "o")};
+        ToolCallAgent agent = parallelAgent(tools, List.of(
+                new AssistantMessage.ToolCall("1", "function", "erroring", "a"),
+                new AssistantMessage.ToolCall("2", "function", "ok", "b")));
+        AtomicInteger executed = new AtomicInteger();
+        agent.setToolExecutor(command -> {
+            executed.incrementAndGet();
+            Thread.ofVirtual().start(command);
+        });
+
+        agent.act();
+
+        List<ToolResponseMessage.ToolResponse> responses =
+                ((ToolResponseMessage) agent.getMessageList().get(2)).getResponses();
+        assertTrue(responses.get(0).responseData().contains("fatal"));
+        assertEquals("o:b", responses.get(1).responseData());
+        assertEquals(2, executed.get());
+    }
+
+    @Test
+    void testAct_parallel_returnDirectToolsFinishTheAgent() {
+        ToolCallback first = sleepingTool("first", 0, "f");
+        ToolCallback second = sleepingTool("second", 0, "s");
+        doReturn(ToolMetadata.builder().returnDirect(true).build()).when(first).getToolMetadata();
+        doReturn(ToolMetadata.builder().returnDirect(true).build()).when(second).getToolMetadata();
+        ToolCallAgent agent = parallelAgent(new ToolCallback[]{first, second}, List.of(
+                new AssistantMessage.ToolCall("1", "function", "first", "a"),
+                new AssistantMessage.ToolCall("2", "function", "second", "b")));
+
+        String res = agent.act();
+
+        assertTrue(res.contains("工具 first 返回的结果：f:a"));
+        assertEquals(AgentState.FINISHED, agent.getState());
+    }
+
+    private static ChatResponse chunk(String text, AssistantMessage.ToolCall... toolCalls) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text, java.util.Map.of(), List.of(toolCalls)))));
+    }
+
+    @Test
+    void testThink_streaming_emitsTextChunksAndMergesToolCalls() {
+        ToolCallAgent agent = new ToolCallAgent(new ToolCallback[]{});
+        agent.setSystemPrompt("sys");
+        List<String> partials = new ArrayList<>();
+        agent.setPartialOutputConsumer(partials::add);
+        ChatClient chatClient = mock(ChatClient.class, Mockito.RETURNS_DEEP_STUBS);
+        when(chatClient.prompt(any(Prompt.class)).system(anyString()).tools(any(ToolCallback[].class)).stream().chatResponse())
+                .thenReturn(Flux.just(
+                        chunk("我先"),
+                        chunk("搜索一下", new AssistantMessage.ToolCall("c1", "function", "searchWeb", "{\"q\":")),
+                        chunk("", new AssistantMessage.ToolCall("", "function", "", "\"增肌\"}"))));
+        agent.setChatClient(chatClient);
+
+        assertTrue(agent.think());
+
+        assertEquals(List.of("我先", "搜索一下"), partials);
+        AssistantMessage output = agent.getToolCallChatResponse().getResult().getOutput();
+        assertEquals("我先搜索一下", output.getText());
+        assertEquals(List.of(new AssistantMessage.ToolCall("c1", "function", "searchWeb", "{\"q\":\"增肌\"}")),
+                output.getToolCalls());
+        assertTrue(agent.getToolCallChatResponse().hasToolCalls());
+        assertEquals(1, agent.getContextStats().size());
+        verify(chatClient.prompt(any(Prompt.class)).system(anyString()).tools(any(ToolCallback[].class)), never()).call();
+    }
+
+    @Test
+    void testThink_streamingDisabled_usesBlockingCall() {
+        ToolCallAgent agent = new ToolCallAgent(new ToolCallback[]{});
+        agent.setSystemPrompt("sys");
+        agent.setStreamThinking(false);
+        agent.setPartialOutputConsumer(chunk -> fail("不应输出增量内容"));
+        ChatClient chatClient = mock(ChatClient.class, Mockito.RETURNS_DEEP_STUBS);
+        when(chatClient.prompt(any(Prompt.class)).system(anyString()).tools(any(ToolCallback[].class)).call().chatResponse())
+                .thenReturn(chunk("直接回答"));
+        agent.setChatClient(chatClient);
+
+        assertFalse(agent.think());
+        assertEquals("直接回答", agent.getMessageList().get(0).getText());
+    }
+
+    @Test
+    void testMergeToolCalls_separateIdsStaySeparate() {
+        List<AssistantMessage.ToolCall> merged = new ArrayList<>();
+        ToolCallAgent.mergeToolCalls(merged, List.of(
+                new AssistantMessage.ToolCall("a", "function", "searchWeb", "{}"),
+                new AssistantMessage.ToolCall("b", "function", "scrapeWebPage", "{")));
+        ToolCallAgent.mergeToolCalls(merged, List.of(new AssistantMessage.ToolCall("b", "function", "", "}")));
+        ToolCallAgent.mergeToolCalls(merged, null);
+
+        assertEquals(2, merged.size());
+        assertEquals("{}", merged.get(1).arguments());
+        assertEquals("scrapeWebPage", merged.get(1).name());
+    }
+}
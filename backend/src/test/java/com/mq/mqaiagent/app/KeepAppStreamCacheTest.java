@@ -0,0 +1,144 @@
+package com.mq.mqaiagent.app;
+
+import com.mq.mqaiagent.manager.InFlightRequestCoalescer;
+import com.mq.mqaiagent.pool.ChatClientPool;
+import com.mq.mqaiagent.service.AiResponseCacheService;
+import com.mq.mqaiagent.service.impl.TextSimilarityServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 流式对话的 AI 响应缓存
+ */
+class KeepAppStreamCacheTest {
+
+    private AiResponseCacheService aiResponseCacheService;
+    private ChatClientPool chatClientPool;
+    private ChatClient userClient;
+    private KeepApp keepApp;
+
+    @BeforeEach
+    void setUp() {
+        aiResponseCacheService = mock(AiResponseCacheService.class);
+        chatClientPool = mock(ChatClientPool.class);
+        userClient = mock(ChatClient.class, Mockito.RETURNS_DEEP_STUBS);
+        when(chatClientPool.getKeepAppClientWithMemory(anyString())).thenReturn(userClient);
+        InFlightRequestCoalescer coalescer = new InFlightRequestCoalescer();
+        ReflectionTestUtils.setField(coalescer, "textSimilarityService", new TextSimilarityServiceImpl());
+        keepApp = new KeepApp(null, null, null, aiResponseCacheService, chatClientPool, coalescer);
+        ReflectionTestUtils.setField(keepApp, "replayChunkSize", 4);
+        ReflectionTestUtils.setField(keepApp, "replayChunkDelayMs", 0L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubModelStream(Flux<String> stream) {
+        when(userClient.prompt().user(anyString()).advisors(any(Consumer.class)).stream().content()).thenReturn(stream);
+    }
+
+    @Test
+    void testCacheHit_replaysInChunksWithoutCallingModel() {
+        when(aiResponseCacheService.getCachedResponse(eq("增肌"), eq(1L))).thenReturn("多吃蛋白质，规律训练");
+
+        List<String> chunks = keepApp.doChatByStream("增肌", "c1", 1L).collectList().block();
+
+        assertEquals(List.of("多吃蛋白", "质，规律", "训练"), chunks);
+        verify(chatClientPool, never()).getKeepAppClientWithMemory(anyString());
+        verify(aiResponseCacheService, never()).cacheResponse(anyString(), anyString(), any());
+    }
+
+    @Test
+    void testCacheHit_pacedReplay() {
+        ReflectionTestUtils.setField(keepApp, "replayChunkDelayMs", 50L);
+        when(aiResponseCacheService.getCachedResponse(eq("增肌"), eq(1L))).thenReturn("12345678");
+
+        long start = System.nanoTime();
+        List<String> chunks = keepApp.doChatByStream("增肌", "c1", 1L).collectList().block();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(List.of("1234", "5678"), chunks);
+        assertTrue(elapsedMs >= 100, "每个分片之间应按配置的间隔输出");
+    }
+
+    @Test
+    void testCacheMiss_storesFullAnswerOnCompletion() {
+        stubModelStream(Flux.just("多吃", "蛋白质"));
+
+        List<String> chunks = keepApp.doChatByStream("增肌", "c1", 1L).collectList().block();
+
+        assertEquals(List.of("多吃", "蛋白质"), chunks);
+        verify(aiResponseCacheService, timeout(1000)).cacheResponse("增肌", "多吃蛋白质", 1L);
+    }
+
+    @Test
+    void testCacheMiss_errorOrCancel_skipsStorage() {
+        stubModelStream(Flux.just("多吃").concatWith(Flux.error(new RuntimeException("model error"))));
+        assertThrows(RuntimeException.class, () -> keepApp.doChatByStream("增肌", "c1", 1L).collectList().block());
+
+        // 客户端只读取第一段后断开
+        stubModelStream(Flux.just("多吃", "蛋白质", "规律训练"));
+        assertEquals(List.of("多吃"), keepApp.doChatByStream("减脂", "c1", 1L).take(1).collectList().block());
+
+        verify(aiResponseCacheService, after(200).never()).cacheResponse(anyString(), anyString(), any());
+    }
+
+    @Test
+    void testConcurrentCacheMiss_sharesOneUpstream() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        stubModelStream(Flux.just("多吃", "蛋白质")
+                .delayElements(Duration.ofMillis(50))
+                .doOnSubscribe(s -> subscriptions.incrementAndGet()));
+
+        Flux<String> first = keepApp.doChatByStream("增肌", "c1", 1L);
+        Flux<String> second = keepApp.doChatByStream("增肌", "c1", 1L);
+        List<List<String>> results = Flux.merge(first.collectList(), second.collectList()).collectList().block();
+
+        assertEquals(List.of(List.of("多吃", "蛋白质"), List.of("多吃", "蛋白质")), results);
+        assertEquals(1, subscriptions.get());
+        verify(aiResponseCacheService, timeout(1000).times(1)).cacheResponse("增肌", "多吃蛋白质", 1L);
+    }
+
+    @Test
+    void testConcurrentCacheMiss_differentUsers_callModelSeparately() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        stubModelStream(Flux.just("多吃", "蛋白质")
+                .delayElements(Duration.ofMillis(50))
+                .doOnSubscribe(s -> subscriptions.incrementAndGet()));
+
+        Flux<String> first = keepApp.doChatByStream("增肌", "c1", 1L);
+        Flux<String> second = keepApp.doChatByStream("增肌", "c2", 2L);
+        Flux.merge(first.collectList(), second.collectList()).collectList().block();
+
+        // 回答依赖各自的对话记忆，不同用户不共享上游，各自写入自己的缓存作用域
+        assertEquals(2, subscriptions.get());
+        verify(aiResponseCacheService, timeout(1000)).cacheResponse("增肌", "多吃蛋白质", 1L);
+        verify(aiResponseCacheService, timeout(1000)).cacheResponse("增肌", "多吃蛋白质", 2L);
+    }
+
+    @Test
+    void testConcurrentCacheMiss_sameUserDifferentChats_callModelSeparately() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        stubModelStream(Flux.just("多吃", "蛋白质")
+                .delayElements(Duration.ofMillis(50))
+                .doOnSubscribe(s -> subscriptions.incrementAndGet()));
+
+        Flux<String> first = keepApp.doChatByStream("增肌", "c1", 1L);
+        Flux<String> second = keepApp.doChatByStream("增肌", "c2", 1L);
+        Flux.merge(first.collectList(), second.collectList()).collectList().block();
+
+        // 每个对话的这一轮都要写入自己的对话记忆，不共享上游
+        assertEquals(2, subscriptions.get());
+    }
+}
@@ -162,7 +162,7 @@ class KeepAppTest {
         String chatId = UUID.randomUUID().toString();
         String message = "流式用户";
         ChatClient userClient = mock(ChatClient.class, Mockito.RETURNS_DEEP_STUBS);
-        when(chatClientPool.getKeepAppClientWithMemory(anyLong(), anyString())).thenReturn(userClient);
+        when(chatClientPool.getKeepAppClientWithMemory(anyString())).thenReturn(userClient);
         when(userClient.prompt().user(anyString()).advisors(any(Consumer.class)).stream().content())
                 .thenReturn(Flux.just("u1", "u2", "u3"));
         Flux<String> flux = keepApp.doChatByStream(message, chatId, 1L);
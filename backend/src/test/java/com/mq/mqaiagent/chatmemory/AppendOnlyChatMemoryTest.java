@@ -0,0 +1,272 @@
+package com.mq.mqaiagent.chatmemory;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.mq.mqaiagent.mapper.ChatMessageMapper;
+import com.mq.mqaiagent.mapper.KeepReportMapper;
+import com.mq.mqaiagent.model.dto.keepReport.KeepReport;
+import com.mq.mqaiagent.model.entity.ChatMessage;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AppendOnlyChatMemoryTest {
+
+    KeepReportMapper keepReportMapper;
+    ChatMessageMapper chatMessageMapper;
+    AppendOnlyChatMemory memory;
+
+    @BeforeAll
+    static void initTableInfo() {
+        // LambdaUpdateWrapper#set 需要实体的表信息缓存
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        TableInfoHelper.initTableInfo(assistant, KeepReport.class);
+        TableInfoHelper.initTableInfo(assistant, ChatMessage.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        keepReportMapper = mock(KeepReportMapper.class);
+        chatMessageMapper = mock(ChatMessageMapper.class);
+        memory = new AppendOnlyChatMemory(keepReportMapper, chatMessageMapper);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAdd_appendsRowsAfterMaxSeq_readingHistoryOnlyOnce() {
+        when(chatMessageMapper.selectMaxSeq("chat_conv1", 7L)).thenReturn(4);
+        when(keepReportMapper.update(isNull(), any())).thenReturn(1);
+
+        memory.add("conv1", 7L, List.of(new UserMessage("q"), new AssistantMessage("a")));
+        memory.add("conv1", 7L, List.of(new UserMessage("q2")));
+
+        ArgumentCaptor<List<ChatMessage>> captor = ArgumentCaptor.forClass(List.class);
+        verify(chatMessageMapper, times(2)).insertBatch(captor.capture());
+        List<ChatMessage> rows = captor.getAllValues().get(0);
+        assertEquals(2, rows.size());
+        assertEquals(5, rows.get(0).getSeq());
+        assertEquals("USER", rows.get(0).getMessageType());
+        assertEquals(6, rows.get(1).getSeq());
+        assertEquals("ASSISTANT", rows.get(1).getMessageType());
+        assertEquals("a", rows.get(1).getContent());
+        // 只在对话首次写入时检查一次 JSON 历史，也不创建新的会话头
+        verify(keepReportMapper, times(1)).selectOne(any());
+        verify(keepReportMapper, never()).insert(any(KeepReport.class));
+    }
+
+    @Test
+    void testAdd_newConversation_startsAtOne_andCreatesHeader() {
+        when(chatMessageMapper.selectMaxSeq(anyString(), any())).thenReturn(null);
+        when(keepReportMapper.update(isNull(), any())).thenReturn(0);
+        memory.setCurrentUserId(8L);
+
+        memory.add("conv2", List.of(new UserMessage("hello")));
+
+        verify(chatMessageMapper).insertBatch(argThat(rows -> rows.get(0).getSeq() == 1
+                && rows.get(0).getUserId() == 8L && "chat_conv2".equals(rows.get(0).getChatId())));
+        ArgumentCaptor<KeepReport> captor = ArgumentCaptor.forClass(KeepReport.class);
+        verify(keepReportMapper).insert(captor.capture());
+        assertEquals("hello", captor.getValue().getLastMessage());
+        assertEquals("[]", captor.getValue().getMessages());
+    }
+
+    @Test
+    void testAdd_duplicateSeq_retries() {
+        when(chatMessageMapper.selectMaxSeq(anyString(), any())).thenReturn(1, 2);
+        when(chatMessageMapper.insertBatch(anyList()))
+                .thenThrow(new DuplicateKeyException("dup"))
+                .thenReturn(1);
+        when(keepReportMapper.update(isNull(), any())).thenReturn(1);
+
+        memory.add("conv3", 9L, List.of(new UserMessage("x")));
+
+        verify(chatMessageMapper, times(2)).insertBatch(anyList());
+        verify(chatMessageMapper).insertBatch(argThat(rows -> rows.get(0).getSeq() == 3));
+    }
+
+    @Test
+    void testGet_usesBoundedQuery_andRestoresChronologicalOrder() {
+        when(chatMessageMapper.selectLatest("chat_conv4", 7L, 2)).thenReturn(List.of(
+                ChatMessage.builder().seq(3).messageType("ASSISTANT").content("a2").build(),
+                ChatMessage.builder().seq(2).messageType("USER").content("q2").build()));
+
+        List<Message> messages = memory.get("conv4", 7L, 2);
+
+        assertEquals(2, messages.size());
+        assertEquals("q2", messages.get(0).getText());
+        assertInstanceOf(AssistantMessage.class, messages.get(1));
+        assertEquals("a2", messages.get(1).getText());
+    }
+
+    @Test
+    void testGet_nonPositiveLastN_returnsEmpty_withoutQuery() {
+        assertTrue(memory.get("conv5", 7L, 0).isEmpty());
+        verifyNoInteractions(chatMessageMapper);
+    }
+
+    @Test
+    void testGet_mapperThrows_returnsEmpty() {
+        when(chatMessageMapper.selectLatest(anyString(), any(), anyInt())).thenThrow(new RuntimeException("db"));
+        assertTrue(memory.get("conv6", 7L, 10).isEmpty());
+    }
+
+    @Test
+    void testMigrateConversation_insertsAllMessages_andSkipsMigrated() {
+        List<ChatMessage> table = simulateTable();
+        KeepReport report = KeepReport.builder()
+                .chatId("chat_conv7").userId(7L)
+                .messages("[{\"messageType\":\"USER\",\"message\":\"q\"},{\"messageType\":\"ASSISTANT\",\"message\":{\"k\":1}}]")
+                .build();
+
+        assertEquals(2, memory.migrateConversation(report));
+        assertEquals(1, table.get(0).getSeq());
+        assertTrue(table.get(1).getContent().contains("\"k\""));
+
+        assertEquals(0, memory.migrateConversation(report));
+        verify(chatMessageMapper, times(1)).insertBatch(anyList());
+    }
+
+    @Test
+    void testMigrateConversation_rerun_copiesMessagesWrittenInJsonModeAfterFirstRun() {
+        List<ChatMessage> table = simulateTable();
+        KeepReport report = KeepReport.builder().chatId("chat_conv10").userId(7L)
+                .messages(json("q1", "a1")).build();
+        assertEquals(2, memory.migrateConversation(report));
+
+        // 迁移后仍在 json 模式下继续对话
+        report.setMessages(json("q1", "a1", "q2", "a2"));
+        assertEquals(2, new AppendOnlyChatMemory(keepReportMapper, chatMessageMapper).migrateConversation(report));
+
+        assertEquals(List.of("q1", "a1", "q2", "a2"), contents(table));
+        assertEquals(List.of(1, 2, 3, 4), table.stream().map(ChatMessage::getSeq).toList());
+    }
+
+    @Test
+    void testSwitchBeforeMigration_firstAccessMergesJsonHistory_andMigrationAddsNothing() {
+        List<ChatMessage> table = simulateTable();
+        KeepReport report = KeepReport.builder().chatId("chat_conv11").userId(7L)
+                .messages(json("q1", "a1")).build();
+        when(keepReportMapper.selectOne(any())).thenReturn(report);
+        when(keepReportMapper.update(isNull(), any())).thenReturn(1);
+
+        // 已切换到追加写模式，尚未执行迁移
+        assertEquals(List.of("q1", "a1"), memory.get("conv11", 7L, 10).stream().map(Message::getText).toList());
+        memory.add("conv11", 7L, List.of(new UserMessage("q2")));
+        assertEquals(0, new AppendOnlyChatMemory(keepReportMapper, chatMessageMapper).migrateConversation(report));
+
+        assertEquals(List.of("q1", "a1", "q2"), contents(table));
+        assertEquals(List.of(1, 2, 3), table.stream().map(ChatMessage::getSeq).toList());
+    }
+
+    @Test
+    void testClearThenAdd_continuesAfterDeletedSeq() {
+        List<ChatMessage> table = simulateTable();
+        when(chatMessageMapper.delete(any())).thenAnswer(invocation -> {
+            table.forEach(row -> row.setIsDelete(1));
+            return table.size();
+        });
+        when(keepReportMapper.update(isNull(), any())).thenReturn(1);
+
+        memory.add("conv8", 7L, List.of(new UserMessage("q1"), new AssistantMessage("a1")));
+        memory.clear("conv8");
+        memory.add("conv8", 7L, List.of(new UserMessage("q2")));
+
+        List<Message> messages = memory.get("conv8", 7L, 10);
+        assertEquals(1, messages.size());
+        assertEquals("q2", messages.get(0).getText());
+        assertEquals(3, table.get(2).getSeq());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testClear_onlyDeletesRowsOfThatUser() {
+        memory.clear("conv10", 7L);
+
+        ArgumentCaptor<LambdaQueryWrapper<ChatMessage>> messageCaptor = ArgumentCaptor.forClass(LambdaQueryWrapper.class);
+        verify(chatMessageMapper).delete(messageCaptor.capture());
+        assertTrue(messageCaptor.getValue().getSqlSegment().contains("userId"));
+        assertTrue(messageCaptor.getValue().getParamNameValuePairs().containsValue(7L));
+        ArgumentCaptor<LambdaQueryWrapper<KeepReport>> reportCaptor = ArgumentCaptor.forClass(LambdaQueryWrapper.class);
+        verify(keepReportMapper).delete(reportCaptor.capture());
+        assertTrue(reportCaptor.getValue().getSqlSegment().contains("userId"));
+        assertTrue(reportCaptor.getValue().getParamNameValuePairs().containsValue(7L));
+    }
+
+    @Test
+    void testAdd_anonymousUser_storedWithSentinelUserId() {
+        when(chatMessageMapper.selectMaxSeq("chat_conv9", AppendOnlyChatMemory.ANONYMOUS_USER_ID)).thenReturn(2);
+        when(keepReportMapper.update(isNull(), any())).thenReturn(1);
+
+        memory.add("conv9", null, List.of(new UserMessage("hi")));
+        memory.get("conv9", null, 5);
+
+        verify(chatMessageMapper).insertBatch(argThat(rows -> rows.get(0).getSeq() == 3
+                && rows.get(0).getUserId() == AppendOnlyChatMemory.ANONYMOUS_USER_ID));
+        verify(chatMessageMapper).selectLatest("chat_conv9", AppendOnlyChatMemory.ANONYMOUS_USER_ID, 5);
+    }
+
+    /**
+     * 模拟 chat_message：逻辑删除的行仍占用唯一键 (chatId, userId, seq)
+     */
+    private List<ChatMessage> simulateTable() {
+        List<ChatMessage> table = new ArrayList<>();
+        when(chatMessageMapper.selectMaxSeq(anyString(), any())).thenAnswer(invocation -> table.stream()
+                .filter(row -> row.getChatId().equals(invocation.getArgument(0))
+                        && row.getUserId().equals(invocation.getArgument(1)))
+                .map(ChatMessage::getSeq).max(Integer::compare).orElse(null));
+        when(chatMessageMapper.selectSeqs(anyString(), any(), anyInt())).thenAnswer(invocation -> table.stream()
+                .filter(row -> row.getChatId().equals(invocation.getArgument(0))
+                        && row.getUserId().equals(invocation.getArgument(1))
+                        && row.getSeq() <= invocation.<Integer>getArgument(2))
+                .map(ChatMessage::getSeq).toList());
+        when(chatMessageMapper.insertBatch(anyList())).thenAnswer(invocation -> {
+            List<ChatMessage> rows = invocation.getArgument(0);
+            for (ChatMessage row : rows) {
+                if (table.stream().anyMatch(existing -> existing.getChatId().equals(row.getChatId())
+                        && existing.getUserId().equals(row.getUserId()) && existing.getSeq().equals(row.getSeq()))) {
+                    throw new DuplicateKeyException("uk_chat_user_seq");
+                }
+            }
+            rows.forEach(row -> row.setIsDelete(0));
+            table.addAll(rows);
+            table.sort(Comparator.comparing(ChatMessage::getSeq));
+            return rows.size();
+        });
+        when(chatMessageMapper.selectLatest(anyString(), any(), anyInt())).thenAnswer(invocation -> table.stream()
+                .filter(row -> row.getIsDelete() == 0 && row.getUserId().equals(invocation.getArgument(1)))
+                .sorted(Comparator.comparing(ChatMessage::getSeq).reversed())
+                .limit(invocation.<Integer>getArgument(2))
+                .toList());
+        return table;
+    }
+
+    /**
+     * 生成 keep_report.messages 格式的 JSON，用户与助手消息交替
+     */
+    private static String json(String... texts) {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < texts.length; i++) {
+            items.add("{\"messageType\":\"" + (i % 2 == 0 ? "USER" : "ASSISTANT") + "\",\"message\":\"" + texts[i] + "\"}");
+        }
+        return "[" + String.join(",", items) + "]";
+    }
+
+    private static List<String> contents(List<ChatMessage> table) {
+        return table.stream().map(ChatMessage::getContent).toList();
+    }
+}
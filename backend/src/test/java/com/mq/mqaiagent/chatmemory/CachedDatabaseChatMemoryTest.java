@@ -5,7 +5,7 @@ import com.mq.mqaiagent.model.dto.keepReport.KeepReport;
 import com.mq.mqaiagent.service.CacheService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.ArgumentCaptor;
+import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
 
@@ -27,42 +27,46 @@ class CachedDatabaseChatMemoryTest {
         cache = mock(CacheService.class);
         memory = new CachedDatabaseChatMemory(mapper, cache);
         memory.setCurrentUserId(11L);
+        when(cache.generateChatMemoryKey(anyString(), any())).thenAnswer(
+                invocation -> "key:" + invocation.getArgument(1) + ":" + invocation.getArgument(0));
     }
 
     @Test
-    void testAdd_updatesCache() {
+    void testAdd_appendsToCacheList_withoutReloadingHistory() {
         when(cache.isRedisAvailable()).thenReturn(true);
-        when(mapper.selectOne(any())).thenReturn(null, null);
+        when(mapper.selectOne(any())).thenReturn(null);
         when(mapper.insert(any(KeepReport.class))).thenReturn(1);
-        // super.get(conversationId, userId, Integer.MAX_VALUE) used in updateCache
-        KeepReport stored = KeepReport.builder()
-                .chatId("chat_conv1").userId(11L)
-                .messages("[{\"messageType\":\"USER\",\"message\":\"x\"}]").build();
-        when(mapper.selectOne(any())).thenReturn(stored);
+        when(cache.rightPushAllIfPresent(eq("key:11:conv1"), anyList())).thenReturn(3L);
 
         memory.add("conv1", List.of(new UserMessage("x")));
 
-        verify(cache, atLeastOnce()).set(eq(cache.generateChatMemoryKey("conv1", 11L)), anyList(), anyLong());
+        verify(cache).rightPushAllIfPresent(eq("key:11:conv1"),
+                argThat(values -> values.size() == 1 && "x".equals(((CachedMessage) values.get(0)).getText())));
+        verify(cache).expire("key:11:conv1", 6L);
+        verify(cache, never()).trim(anyString(), anyLong(), anyLong());
+        verify(cache, never()).set(anyString(), any(), anyLong());
+        // 只有写库本身的读取，不再为刷新缓存重新读取完整历史
+        verify(mapper, times(2)).selectOne(any());
     }
 
     @Test
     void testGet_cacheHit_returnsLastN() {
         when(cache.isRedisAvailable()).thenReturn(true);
-        when(cache.get(anyString(), eq(List.class))).thenReturn(List.of(
-                new UserMessage("a"), new UserMessage("b"), new UserMessage("c")
-        ));
+        when(cache.range("key:11:conv2", -2, -1)).thenReturn(List.of(
+                new CachedMessage("USER", "b"), new CachedMessage("ASSISTANT", "c")));
 
         List<Message> last2 = memory.get("conv2", 2);
         assertEquals(2, last2.size());
         assertEquals("b", last2.get(0).getText());
-        assertEquals("c", last2.get(1).getText());
-        verify(cache, never()).set(anyString(), any(), anyLong());
+        assertInstanceOf(AssistantMessage.class, last2.get(1));
+        verify(cache, never()).replaceList(anyString(), anyList(), anyLong());
+        verifyNoInteractions(mapper);
     }
 
     @Test
     void testGet_cacheMiss_dbFallback_andWriteBack() {
         when(cache.isRedisAvailable()).thenReturn(true);
-        when(cache.get(anyString(), eq(List.class))).thenReturn(null);
+        when(cache.range(anyString(), anyLong(), anyLong())).thenReturn(List.of());
         KeepReport stored = KeepReport.builder()
                 .chatId("chat_conv3").userId(11L)
                 .messages("[{\"messageType\":\"USER\",\"message\":\"x\"},{\"messageType\":\"USER\",\"message\":\"y\"}]")
@@ -72,13 +76,15 @@ class CachedDatabaseChatMemoryTest {
         List<Message> last1 = memory.get("conv3", 1);
         assertEquals(1, last1.size());
         assertEquals("y", last1.get(0).getText());
-        verify(cache, atLeastOnce()).set(eq(cache.generateChatMemoryKey("conv3", 11L)), anyList(), anyLong());
+        verify(cache).replaceList(eq("key:11:conv3"), argThat(values -> values.size() == 2), eq(6L));
+        verify(cache, never()).delete(anyString());
+        verify(cache, never()).rightPushAll(anyString(), anyList());
     }
 
     @Test
     void testGet_cacheThrows_fallbackToDb() {
         when(cache.isRedisAvailable()).thenReturn(true);
-        when(cache.get(anyString(), eq(List.class))).thenThrow(new RuntimeException("cache err"));
+        when(cache.range(anyString(), anyLong(), anyLong())).thenThrow(new RuntimeException("cache err"));
         KeepReport stored = KeepReport.builder()
                 .chatId("chat_conv4").userId(11L)
                 .messages("[{\"messageType\":\"USER\",\"message\":\"m\"}]").build();
@@ -92,7 +98,7 @@ class CachedDatabaseChatMemoryTest {
     @Test
     void testGetWithUserId_cacheMiss_dbFallback_andWriteBack() {
         when(cache.isRedisAvailable()).thenReturn(true);
-        when(cache.get(anyString(), eq(List.class))).thenReturn(null);
+        when(cache.range(anyString(), anyLong(), anyLong())).thenReturn(List.of());
         KeepReport stored = KeepReport.builder()
                 .chatId("chat_conv5").userId(12L)
                 .messages("[{\"messageType\":\"USER\",\"message\":\"r\"}]").build();
@@ -101,7 +107,7 @@ class CachedDatabaseChatMemoryTest {
         List<Message> res = memory.get("conv5", 12L, 1);
         assertEquals(1, res.size());
         assertEquals("r", res.get(0).getText());
-        verify(cache, atLeastOnce()).set(eq(cache.generateChatMemoryKey("conv5", 12L)), anyList(), anyLong());
+        verify(cache).replaceList(eq("key:12:conv5"), anyList(), eq(6L));
     }
 
     @Test
@@ -112,18 +118,24 @@ class CachedDatabaseChatMemoryTest {
         assertDoesNotThrow(() -> memory.clearCache("conv6", 13L));
     }
 
+    @Test
+    void testClear_passesUserIdToDatabase() {
+        DatabaseChatMemory database = mock(DatabaseChatMemory.class);
+        CachedDatabaseChatMemory scopedMemory = new CachedDatabaseChatMemory(database, cache);
+
+        scopedMemory.clear("conv6", 13L);
+
+        verify(database).clear("conv6", 13L);
+        verify(cache).delete("key:13:conv6");
+    }
+
     @Test
     void testAdd_cacheUpdateFails_stillSucceeds() {
         when(cache.isRedisAvailable()).thenReturn(true);
-        when(mapper.selectOne(any())).thenReturn(null, null);
+        when(mapper.selectOne(any())).thenReturn(null);
         when(mapper.insert(any(KeepReport.class))).thenReturn(1);
         // 模拟缓存更新失败
-        doThrow(new RuntimeException("cache update failed")).when(cache).set(anyString(), anyList(), anyLong());
-
-        KeepReport stored = KeepReport.builder()
-                .chatId("chat_conv7").userId(11L)
-                .messages("[{\"messageType\":\"USER\",\"message\":\"test\"}]").build();
-        when(mapper.selectOne(any())).thenReturn(stored);
+        when(cache.rightPushAllIfPresent(anyString(), anyList())).thenThrow(new RuntimeException("cache update failed"));
 
         // 即使缓存更新失败，方法也应该成功（不抛出异常）
         assertDoesNotThrow(() -> memory.add("conv7", List.of(new UserMessage("test"))));
@@ -133,34 +145,35 @@ class CachedDatabaseChatMemoryTest {
     }
 
     @Test
-    void testGetLastNMessages_viaCacheHit() {
+    void testGet_lastNBeyondCacheCap_readsDbDirectly() {
+        CachedDatabaseChatMemory smallCache =
+                new CachedDatabaseChatMemory(new DatabaseChatMemory(mapper), cache, null, 2);
+        smallCache.setCurrentUserId(11L);
+        KeepReport stored = KeepReport.builder()
+                .chatId("chat_conv8").userId(11L)
+                .messages("[{\"messageType\":\"USER\",\"message\":\"m1\"},{\"messageType\":\"USER\",\"message\":\"m2\"},{\"messageType\":\"USER\",\"message\":\"m3\"}]")
+                .build();
+        when(mapper.selectOne(any())).thenReturn(stored);
+
+        // 请求条数超过缓存上限，缓存无法给出完整结果
+        assertEquals(3, smallCache.get("conv8", 3).size());
+        // 非正数条数同样直接交给数据库处理
+        smallCache.get("conv8", 0);
+        verify(cache, never()).range(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void testAdd_trimsCacheListToCap() {
+        CachedDatabaseChatMemory smallCache =
+                new CachedDatabaseChatMemory(new DatabaseChatMemory(mapper), cache, null, 2);
+        smallCache.setCurrentUserId(11L);
         when(cache.isRedisAvailable()).thenReturn(true);
-        // 设置缓存包含多条消息，测试 getLastNMessages 的行为
-        List<Message> fullMessages = List.of(
-                new UserMessage("msg1"),
-                new UserMessage("msg2"),
-                new UserMessage("msg3"),
-                new UserMessage("msg4"),
-                new UserMessage("msg5")
-        );
-        when(cache.get(anyString(), eq(List.class))).thenReturn(fullMessages);
-
-        // 请求最后3条消息
-        List<Message> last3 = memory.get("conv8", 3);
-        assertEquals(3, last3.size());
-        assertEquals("msg3", last3.get(0).getText());
-        assertEquals("msg4", last3.get(1).getText());
-        assertEquals("msg5", last3.get(2).getText());
-
-        // 请求最后10条消息（超过可用消息数）
-        List<Message> last10 = memory.get("conv8", 10);
-        assertEquals(5, last10.size()); // 应该返回所有5条消息
-
-        // 请求0条消息
-        List<Message> last0 = memory.get("conv8", 0);
-        assertEquals(5, last0.size()); // 应该返回所有消息
+        when(mapper.selectOne(any())).thenReturn(null);
+        when(cache.rightPushAllIfPresent(anyString(), anyList())).thenReturn(3L);
 
-        verify(cache, never()).set(anyString(), any(), anyLong());
+        smallCache.add("conv8", List.of(new UserMessage("m3")));
+
+        verify(cache).trim("key:11:conv8", -2, -1);
     }
 
     @Test
@@ -175,21 +188,78 @@ class CachedDatabaseChatMemoryTest {
     }
 
     @Test
-    void testUpdateCache_privateMethod_viaAdd() {
+    void testAppendCache_cacheNotLoaded_doesNotCreatePartialList() {
         when(cache.isRedisAvailable()).thenReturn(true);
-        when(mapper.selectOne(any())).thenReturn(null, null);
+        when(mapper.selectOne(any())).thenReturn(null);
         when(mapper.insert(any(KeepReport.class))).thenReturn(1);
-
-        KeepReport stored = KeepReport.builder()
-                .chatId("chat_conv10").userId(11L)
-                .messages("[{\"messageType\":\"USER\",\"message\":\"update_cache_test\"}]").build();
-        when(mapper.selectOne(any())).thenReturn(stored);
+        when(cache.rightPushAllIfPresent(anyString(), anyList())).thenReturn(0L);
 
         memory.add("conv10", List.of(new UserMessage("update_cache_test")));
 
-        // 验证 updateCache 被调用（通过 set 方法调用验证）
-        verify(cache, atLeastOnce()).set(eq(cache.generateChatMemoryKey("conv10", 11L)), anyList(), eq(6L));
+        verify(cache, never()).replaceList(anyString(), anyList(), anyLong());
+        verify(cache, never()).expire(anyString(), anyLong());
     }
 
-}
+    @Test
+    void testAdd_writeBehind_enqueuesAndAppendsCache_withoutDbWrite() {
+        ChatMemoryWriteBehindBuffer buffer = mock(ChatMemoryWriteBehindBuffer.class);
+        when(buffer.isEnabled()).thenReturn(true);
+        when(buffer.enqueue(anyString(), any(), anyList())).thenReturn(true);
+        when(cache.isRedisAvailable()).thenReturn(true);
+        when(cache.rightPushAllIfPresent(anyString(), anyList())).thenReturn(2L);
+        CachedDatabaseChatMemory writeBehindMemory =
+                new CachedDatabaseChatMemory(new DatabaseChatMemory(mapper), cache, buffer);
+        writeBehindMemory.setCurrentUserId(11L);
+
+        writeBehindMemory.add("conv11", List.of(new UserMessage("new")));
+
+        verify(buffer).enqueue(eq("conv11"), eq(11L), anyList());
+        verify(cache).rightPushAllIfPresent(eq("key:11:conv11"), argThat(values -> values.size() == 1));
+        verifyNoInteractions(mapper);
+    }
+
+    @Test
+    void testAdd_writeBehindEnqueueFails_fallsBackToDb() {
+        ChatMemoryWriteBehindBuffer buffer = mock(ChatMemoryWriteBehindBuffer.class);
+        when(buffer.isEnabled()).thenReturn(true);
+        when(buffer.enqueue(anyString(), any(), anyList())).thenReturn(false);
+        when(cache.isRedisAvailable()).thenReturn(true);
+        when(mapper.selectOne(any())).thenReturn(null);
+        CachedDatabaseChatMemory writeBehindMemory =
+                new CachedDatabaseChatMemory(new DatabaseChatMemory(mapper), cache, buffer);
+
+        writeBehindMemory.add("conv12", 11L, List.of(new UserMessage("x")));
+
+        verify(mapper).insert(any(KeepReport.class));
+    }
 
+    @Test
+    void testGet_cacheMissWithPendingWrites_overlaysPendingWithoutBackfill() {
+        ChatMemoryWriteBehindBuffer buffer = mock(ChatMemoryWriteBehindBuffer.class);
+        when(buffer.isEnabled()).thenReturn(true);
+        when(buffer.pendingMessages("conv13", 11L)).thenReturn(
+                List.of(new UserMessage("b"), new UserMessage("c")));
+        when(cache.isRedisAvailable()).thenReturn(true);
+        when(cache.range(anyString(), anyLong(), anyLong())).thenReturn(List.of());
+        when(mapper.selectOne(any())).thenReturn(KeepReport.builder()
+                .chatId("chat_conv13").userId(11L)
+                .messages("[{\"messageType\":\"USER\",\"message\":\"a\"},{\"messageType\":\"USER\",\"message\":\"b\"}]")
+                .build());
+        CachedDatabaseChatMemory writeBehindMemory =
+                new CachedDatabaseChatMemory(new DatabaseChatMemory(mapper), cache, buffer);
+
+        List<Message> res = writeBehindMemory.get("conv13", 11L, 10);
+
+        assertEquals(List.of("a", "b", "c"), res.stream().map(Message::getText).toList());
+        verify(cache, never()).replaceList(anyString(), anyList(), anyLong());
+    }
+
+    @Test
+    void testAppendPending_skipsMessagesAlreadyInDb() {
+        List<Message> db = List.of(new UserMessage("a"), new AssistantMessage("b"));
+        assertEquals(List.of("a", "b", "c"), CachedDatabaseChatMemory.appendPending(db,
+                List.of(new AssistantMessage("b"), new UserMessage("c"))).stream().map(Message::getText).toList());
+        assertEquals(List.of("a", "b", "b"), CachedDatabaseChatMemory.appendPending(db,
+                List.of(new UserMessage("b"))).stream().map(Message::getText).toList());
+    }
+}
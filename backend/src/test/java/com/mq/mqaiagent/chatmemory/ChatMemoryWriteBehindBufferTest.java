@@ -0,0 +1,217 @@
+package com.mq.mqaiagent.chatmemory;
+
+import com.mq.mqaiagent.chatmemory.ChatMemoryWriteBehindBuffer.PendingChatWrite;
+import com.mq.mqaiagent.service.CacheService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ChatMemoryWriteBehindBufferTest {
+
+    CacheService cacheService;
+    DatabaseChatMemory databaseChatMemory;
+    ChatMemoryWriteBehindBuffer buffer;
+    String lockToken;
+
+    @BeforeEach
+    void setUp() {
+        cacheService = mock(CacheService.class);
+        databaseChatMemory = mock(DatabaseChatMemory.class);
+        buffer = new ChatMemoryWriteBehindBuffer();
+        ReflectionTestUtils.setField(buffer, "cacheService", cacheService);
+        ReflectionTestUtils.setField(buffer, "databaseChatMemory", databaseChatMemory);
+        ReflectionTestUtils.setField(buffer, "enabled", true);
+        ReflectionTestUtils.setField(buffer, "maxBatchSize", 2);
+        when(cacheService.generateChatMemoryKey(anyString(), any())).thenAnswer(
+                invocation -> "key:" + invocation.getArgument(1) + ":" + invocation.getArgument(0));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEnqueue_pushesPendingWrite() {
+        when(cacheService.rightPushAll(eq(ChatMemoryWriteBehindBuffer.PENDING_KEY), anyList())).thenReturn(1L);
+
+        assertTrue(buffer.enqueue("conv1", 7L, List.of(new UserMessage("q"), new AssistantMessage("a"))));
+
+        ArgumentCaptor<List<Object>> captor = ArgumentCaptor.forClass(List.class);
+        verify(cacheService).rightPushAll(eq(ChatMemoryWriteBehindBuffer.PENDING_KEY), captor.capture());
+        PendingChatWrite write = (PendingChatWrite) captor.getValue().get(0);
+        assertNotNull(write.getWriteId());
+        assertEquals("conv1", write.getConversationId());
+        assertEquals(7L, write.getUserId());
+        assertEquals("ASSISTANT", write.getMessages().get(1).getMessageType());
+        // 同一条目另存到对话自己的待写列表
+        verify(cacheService).rightPushAll(ChatMemoryWriteBehindBuffer.conversationPendingKey("conv1", 7L), List.of(write));
+        assertEquals(1, buffer.getStats().enqueuedWrites());
+    }
+
+    @Test
+    void testEnqueue_redisFailure_returnsFalse() {
+        when(cacheService.rightPushAll(anyString(), anyList())).thenReturn(-1L);
+        assertFalse(buffer.enqueue("conv1", 7L, List.of(new UserMessage("q"))));
+        assertEquals(0, buffer.getStats().enqueuedWrites());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlush_mergesSameConversation_andTrimsAfterWrite() {
+        holdLock();
+        when(cacheService.range(ChatMemoryWriteBehindBuffer.PENDING_KEY, 0, 1)).thenReturn(
+                List.of(pending("conv1", 7L, "q1"), pending("conv1", 7L, "q2")),
+                List.of(pending("conv2", null, "q3")));
+
+        assertEquals(3, buffer.flush());
+
+        ArgumentCaptor<List<Message>> captor = ArgumentCaptor.forClass(List.class);
+        verify(databaseChatMemory).append(eq("conv1"), eq(7L), captor.capture());
+        assertEquals(List.of("q1", "q2"), captor.getValue().stream().map(Message::getText).toList());
+        verify(databaseChatMemory).append(eq("conv2"), isNull(), anyList());
+        verify(cacheService).trim(ChatMemoryWriteBehindBuffer.PENDING_KEY, 2, -1);
+        verify(cacheService).trim(ChatMemoryWriteBehindBuffer.PENDING_KEY, 1, -1);
+        verify(cacheService).delete("key:7:conv1");
+        // 每个对话记录最后一个已写库的写入ID
+        verify(cacheService).set(eq(ChatMemoryWriteBehindBuffer.conversationPendingKey("conv1", 7L) + ":flushed"), eq("q2"), anyLong());
+        verify(cacheService).set(eq(ChatMemoryWriteBehindBuffer.conversationPendingKey("conv2", null) + ":flushed"), eq("q3"), anyLong());
+        verify(cacheService).deleteIfEquals(ChatMemoryWriteBehindBuffer.FLUSH_LOCK_KEY, lockToken);
+        assertEquals(2, buffer.getStats().flushBatches());
+    }
+
+    @Test
+    void testFlush_lockHeldByOtherNode_skips() {
+        when(cacheService.setIfAbsent(anyString(), any(), anyLong())).thenReturn(false);
+
+        assertEquals(0, buffer.flush());
+        verify(cacheService, never()).range(anyString(), anyLong(), anyLong());
+        verifyNoInteractions(databaseChatMemory);
+    }
+
+    @Test
+    void testFlush_dbFailure_keepsPendingAndReleasesLock() {
+        holdLock();
+        when(cacheService.range(anyString(), anyLong(), anyLong())).thenReturn(List.of(pending("conv1", 7L, "q1")));
+        doThrow(new RuntimeException("db")).when(databaseChatMemory).append(anyString(), anyLong(), anyList());
+
+        assertThrows(RuntimeException.class, () -> buffer.flush());
+        verify(cacheService, never()).trim(anyString(), anyLong(), anyLong());
+        verify(cacheService).deleteIfEquals(ChatMemoryWriteBehindBuffer.FLUSH_LOCK_KEY, lockToken);
+        assertEquals(0, buffer.getStats().flushedWrites());
+    }
+
+    @Test
+    void testFlush_lockLostBetweenBatches_stops() {
+        holdLock();
+        when(cacheService.get(ChatMemoryWriteBehindBuffer.FLUSH_LOCK_KEY, String.class))
+                .thenAnswer(invocation -> lockToken)
+                .thenReturn("other-node");
+        when(cacheService.range(ChatMemoryWriteBehindBuffer.PENDING_KEY, 0, 1)).thenReturn(
+                List.of(pending("conv1", 7L, "q1"), pending("conv1", 7L, "q2")));
+
+        assertEquals(2, buffer.flush());
+        verify(databaseChatMemory, times(1)).append(anyString(), anyLong(), anyList());
+        verify(cacheService, times(1)).range(eq(ChatMemoryWriteBehindBuffer.PENDING_KEY), anyLong(), anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlush_replayAfterPartialFailure_skipsWrittenConversation() {
+        holdLock();
+        storeMarkers();
+        List<Object> batch = List.of(pending("conv1", 7L, "q1"), pending("conv2", 7L, "q2"));
+        when(cacheService.range(ChatMemoryWriteBehindBuffer.PENDING_KEY, 0, 1)).thenReturn(batch, batch, List.of());
+        doThrow(new RuntimeException("db")).doNothing()
+                .when(databaseChatMemory).append(eq("conv2"), anyLong(), anyList());
+
+        assertThrows(RuntimeException.class, () -> buffer.flush());
+        assertEquals(2, buffer.flush());
+
+        // conv1 在第一次刷写时已写库，回放时不再写入
+        verify(databaseChatMemory, times(1)).append(eq("conv1"), anyLong(), anyList());
+        verify(databaseChatMemory, times(2)).append(eq("conv2"), anyLong(), anyList());
+        verify(cacheService, times(1)).trim(ChatMemoryWriteBehindBuffer.PENDING_KEY, 2, -1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlush_crashBeforeTrim_replaysOnlyUnflushedWrites() {
+        holdLock();
+        Map<String, String> markers = storeMarkers();
+        String pendingKey = ChatMemoryWriteBehindBuffer.conversationPendingKey("conv1", 7L);
+        // 上次刷写 q1 已写库并记录标记，但在移除日志条目前崩溃
+        markers.put(pendingKey + ":flushed", "q1");
+        when(cacheService.range(ChatMemoryWriteBehindBuffer.PENDING_KEY, 0, 1)).thenReturn(
+                List.of(pending("conv1", 7L, "q1"), pending("conv1", 7L, "q2")), List.of());
+        when(cacheService.range(pendingKey, 0, -1)).thenReturn(
+                List.of(pending("conv1", 7L, "q1"), pending("conv1", 7L, "q2"), pending("conv1", 7L, "q3")));
+
+        buffer.flush();
+
+        ArgumentCaptor<List<Message>> captor = ArgumentCaptor.forClass(List.class);
+        verify(databaseChatMemory).append(eq("conv1"), eq(7L), captor.capture());
+        assertEquals(List.of("q2"), captor.getValue().stream().map(Message::getText).toList());
+        assertEquals("q2", markers.get(pendingKey + ":flushed"));
+        // 对话待写列表只移除已写库的条目，之后追加的 q3 保留
+        verify(cacheService).trim(pendingKey, 2, -1);
+    }
+
+    @Test
+    void testPendingMessages_readsOnlyConversationList_andSkipsFlushed() {
+        String pendingKey = ChatMemoryWriteBehindBuffer.conversationPendingKey("conv1", 7L);
+        when(cacheService.range(pendingKey, 0, -1)).thenReturn(List.of(
+                pending("conv1", 7L, "q1"), pending("conv1", 7L, "q2"), pending("conv1", 7L, "q3")));
+        when(cacheService.get(pendingKey + ":flushed", String.class)).thenReturn("q1");
+
+        assertEquals(List.of("q2", "q3"),
+                buffer.pendingMessages("conv1", 7L).stream().map(Message::getText).toList());
+        assertTrue(buffer.pendingMessages("conv1", null).isEmpty());
+        verify(cacheService, never()).range(eq(ChatMemoryWriteBehindBuffer.PENDING_KEY), anyLong(), anyLong());
+    }
+
+    /**
+     * 用内存中的 Map 模拟刷写标记的读写
+     */
+    private Map<String, String> storeMarkers() {
+        Map<String, String> markers = new HashMap<>();
+        when(cacheService.get(endsWith(":flushed"), eq(String.class)))
+                .thenAnswer(invocation -> markers.get(invocation.<String>getArgument(0)));
+        when(cacheService.set(endsWith(":flushed"), any(), anyLong())).thenAnswer(invocation -> {
+            markers.put(invocation.getArgument(0), invocation.getArgument(1));
+            return true;
+        });
+        return markers;
+    }
+
+    /**
+     * 模拟获取刷写锁，锁中保存的 token 记录在 lockToken
+     */
+    private void holdLock() {
+        when(cacheService.setIfAbsent(eq(ChatMemoryWriteBehindBuffer.FLUSH_LOCK_KEY), any(), anyLong()))
+                .thenAnswer(invocation -> {
+                    lockToken = invocation.getArgument(1);
+                    return true;
+                });
+        when(cacheService.get(ChatMemoryWriteBehindBuffer.FLUSH_LOCK_KEY, String.class))
+                .thenAnswer(invocation -> lockToken);
+    }
+
+    /**
+     * 测试中以消息文本作为写入ID
+     */
+    private PendingChatWrite pending(String conversationId, Long userId, String text) {
+        List<CachedMessage> messages = new ArrayList<>();
+        messages.add(new CachedMessage("USER", text));
+        return new PendingChatWrite(text, conversationId, userId, messages);
+    }
+}
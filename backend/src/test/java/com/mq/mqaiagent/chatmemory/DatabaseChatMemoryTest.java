@@ -65,6 +65,16 @@ class DatabaseChatMemoryTest {
         verify(mapper).updateById(any(KeepReport.class));
     }
 
+    @Test
+    void testAppend_dbFailure_throws() {
+        when(mapper.selectOne(any(LambdaQueryWrapper.class))).thenReturn(null);
+        when(mapper.insert(any(KeepReport.class))).thenThrow(new RuntimeException("db"));
+
+        assertThrows(RuntimeException.class, () -> memory.append("convE", 7L, List.of(new UserMessage("x"))));
+        // add 仍然吞掉异常
+        assertDoesNotThrow(() -> memory.add("convE", 7L, List.of(new UserMessage("x"))));
+    }
+
     @Test
     void testGet_returnsLastNMessages_withoutUserId() {
         // First insert via add to capture KeepReport
@@ -0,0 +1,62 @@
+package com.mq.mqaiagent.chatmemory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UserAwareChatMemoryTest {
+
+    CachedDatabaseChatMemory delegate;
+    UserAwareChatMemory memory;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(CachedDatabaseChatMemory.class);
+        memory = new UserAwareChatMemory(delegate);
+    }
+
+    @Test
+    void testScopedConversationId_routesToUserOverloads() {
+        List<Message> messages = List.of(new UserMessage("x"));
+        String conv1User7 = UserAwareChatMemory.scopedConversationId("conv1", 7L);
+
+        memory.add(conv1User7, messages);
+        memory.get(conv1User7, 10);
+        memory.clear(conv1User7);
+
+        verify(delegate).add("conv1", 7L, messages);
+        verify(delegate).get("conv1", 7L, 10);
+        verify(delegate).clear("conv1", 7L);
+    }
+
+    @Test
+    void testPlainConversationId_routesToAnonymousMethods() {
+        List<Message> messages = List.of(new UserMessage("x"));
+        assertEquals("conv1", UserAwareChatMemory.scopedConversationId("conv1", null));
+
+        memory.add("conv1", messages);
+        memory.get("conv1", 10);
+
+        verify(delegate).add("conv1", messages);
+        verify(delegate).get("conv1", 10);
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    void testParse_conversationIdContainingSeparator() {
+        UserAwareChatMemory.ScopedId nested = UserAwareChatMemory.ScopedId.parse(
+                UserAwareChatMemory.scopedConversationId("a#user:b", 3L));
+        assertEquals("a#user:b", nested.conversationId());
+        assertEquals(3L, nested.userId());
+
+        UserAwareChatMemory.ScopedId plain = UserAwareChatMemory.ScopedId.parse("a#user:b");
+        assertEquals("a#user:b", plain.conversationId());
+        assertNull(plain.userId());
+    }
+}
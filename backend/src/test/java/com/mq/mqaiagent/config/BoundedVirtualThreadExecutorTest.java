@@ -0,0 +1,100 @@
+package com.mq.mqaiagent.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedVirtualThreadExecutorTest {
+
+    private final BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor("test-", 2);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testExecute_capsConcurrencyWithoutBlockingSubmitter() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(10);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        // 提交不会因为并发上限而阻塞
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (executor.getQueuedCount() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, executor.getActiveCount());
+        assertEquals(8, executor.getQueuedCount());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+        // 许可在任务结束后才归还，稍等最后的任务退出
+        deadline = System.currentTimeMillis() + 2000;
+        while (executor.getActiveCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    void testSubmit_runsOnVirtualThread() throws Exception {
+        assertTrue(executor.submit(() -> Thread.currentThread().isVirtual()).get(5, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> new BoundedVirtualThreadExecutor("x-", 0));
+    }
+
+    @Test
+    void testShutdownNow_tasksWaitingForPermitAreCancelledOrRun() throws Exception {
+        BoundedVirtualThreadExecutor single = new BoundedVirtualThreadExecutor("single-", 1);
+        // 占住唯一的许可，被中断也不退出，保证排队的任务在等待许可时被中断
+        CountDownLatch blocking = new CountDownLatch(1);
+        single.execute(() -> {
+            while (blocking.getCount() > 0) {
+                try {
+                    blocking.await();
+                } catch (InterruptedException ignored) {
+                    // 继续等待
+                }
+            }
+        });
+        Future<String> queuedFuture = single.submit(() -> "never");
+        CompletableFuture<String> queuedAsync = CompletableFuture.supplyAsync(() -> "ran", single);
+        long deadline = System.currentTimeMillis() + 2000;
+        while (single.getQueuedCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        single.shutdownNow();
+
+        assertThrows(CancellationException.class, () -> queuedFuture.get(5, TimeUnit.SECONDS));
+        assertEquals("ran", queuedAsync.get(5, TimeUnit.SECONDS));
+        blocking.countDown();
+        assertTrue(single.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
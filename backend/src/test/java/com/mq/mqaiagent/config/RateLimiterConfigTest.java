@@ -2,9 +2,16 @@ package com.mq.mqaiagent.config;
 
 import com.google.common.util.concurrent.RateLimiter;
 import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -38,5 +45,38 @@ class RateLimiterConfigTest {
         }
         assertTrue(results.stream().anyMatch(b -> !b));
     }
-}
 
+    @Test
+    void testExecutors_switchToVirtualThreads() {
+        RateLimiterConfig config = new RateLimiterConfig();
+
+        ExecutorService platform = config.aiTaskExecutor(false, 200);
+        ExecutorService virtual = config.aiTaskExecutor(true, 200);
+        try {
+            assertInstanceOf(ThreadPoolExecutor.class, platform);
+            assertInstanceOf(BoundedVirtualThreadExecutor.class, virtual);
+        } finally {
+            platform.shutdownNow();
+            virtual.shutdownNow();
+        }
+
+        assertSame(ForkJoinPool.commonPool(), config.agentExecutor(false, 1000));
+        Executor agentExecutor = config.agentExecutor(true, 1000);
+        assertEquals(1000, ((BoundedVirtualThreadExecutor) agentExecutor).getMaxConcurrency());
+        ((BoundedVirtualThreadExecutor) agentExecutor).shutdownNow();
+    }
+
+    @Test
+    void testAgentExecutor_shutDownWithContext() {
+        BoundedVirtualThreadExecutor agentExecutor;
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.getEnvironment().getPropertySources()
+                    .addFirst(new MapPropertySource("test", Map.of("mq.executor.virtual-threads", "true")));
+            context.register(RateLimiterConfig.class);
+            context.refresh();
+            agentExecutor = context.getBean("agentExecutor", BoundedVirtualThreadExecutor.class);
+            assertFalse(agentExecutor.isShutdown());
+        }
+        assertTrue(agentExecutor.isShutdown());
+    }
+}
@@ -1,5 +1,6 @@
 package com.mq.mqaiagent.controller;
 
+import com.mq.mqaiagent.manager.InFlightRequestCoalescer;
 import com.mq.mqaiagent.service.AiResponseCacheService;
 import com.mq.mqaiagent.service.CacheMetricsService;
 import com.mq.mqaiagent.service.CacheService;
@@ -36,6 +37,7 @@ class CacheControllerTest {
         setPrivateField(cacheController, "cacheService", cacheService);
         setPrivateField(cacheController, "aiResponseCacheService", aiResponseCacheService);
         setPrivateField(cacheController, "cacheMetricsService", cacheMetricsService);
+        setPrivateField(cacheController, "inFlightRequestCoalescer", new InFlightRequestCoalescer());
         mockMvc = MockMvcBuilders.standaloneSetup(cacheController)
                 .setControllerAdvice(new GlobalExceptionHandler())
                 .build();
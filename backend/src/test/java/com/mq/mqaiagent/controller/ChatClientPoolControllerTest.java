@@ -1,5 +1,7 @@
 package com.mq.mqaiagent.controller;
 
+import com.mq.mqaiagent.annotation.AuthCheck;
+import com.mq.mqaiagent.constant.UserConstant;
 import com.mq.mqaiagent.pool.ChatClientPool;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,6 +11,8 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import com.mq.mqaiagent.exception.GlobalExceptionHandler;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
@@ -51,6 +55,20 @@ class ChatClientPoolControllerTest {
                 .andExpect(content().string(org.hamcrest.Matchers.containsString("获取统计信息失败")));
     }
 
+    @Test
+    void testGetAiTrafficMetrics_success() throws Exception {
+        mockMvc.perform(get("/pool/ai-traffic").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("\"code\":0")));
+    }
+
+    @Test
+    void testGetAiTrafficMetrics_requiresAdmin() throws Exception {
+        AuthCheck authCheck = ChatClientPoolController.class.getMethod("getAiTrafficMetrics").getAnnotation(AuthCheck.class);
+        assertNotNull(authCheck);
+        assertEquals(UserConstant.ADMIN_ROLE, authCheck.mustRole());
+    }
+
     @Test
     void testManualCleanup_success() throws Exception {
         ChatClientPool.CacheStats before = new ChatClientPool.CacheStats(10, 5, 7, 20, 0.66);
@@ -0,0 +1,198 @@
+package com.mq.mqaiagent.manager;
+
+import com.mq.mqaiagent.service.CacheService;
+import com.mq.mqaiagent.service.impl.TextSimilarityServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class InFlightRequestCoalescerTest {
+
+    CacheService cacheService;
+    InFlightRequestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        cacheService = mock(CacheService.class);
+        coalescer = new InFlightRequestCoalescer();
+        ReflectionTestUtils.setField(coalescer, "cacheService", cacheService);
+        ReflectionTestUtils.setField(coalescer, "textSimilarityService", new TextSimilarityServiceImpl());
+        ReflectionTestUtils.setField(coalescer, "lockSeconds", 60L);
+        ReflectionTestUtils.setField(coalescer, "waitTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(coalescer, "pollIntervalMs", 10L);
+    }
+
+    @Test
+    void testKeyOf_normalizedAndScopedByUserAndChat() {
+        assertEquals(coalescer.keyOf("How to build muscle?", "c1", 1L), coalescer.keyOf("how to  build muscle", "c1", 1L));
+        assertNotEquals(coalescer.keyOf("如何增肌", "c1", 1L), coalescer.keyOf("如何增肌", "c1", 2L));
+        // 同一用户的不同对话各自读写自己的记忆
+        assertNotEquals(coalescer.keyOf("如何增肌", "c1", 1L), coalescer.keyOf("如何增肌", "c2", 1L));
+        assertTrue(coalescer.keyOf("如何增肌", "c1", null).startsWith("global:"));
+    }
+
+    @Test
+    void testExecute_sameQuestionFromDifferentUsers_notShared() throws Exception {
+        when(cacheService.setIfAbsent(anyString(), anyString(), anyLong())).thenReturn(true);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> userA = executor.submit(() -> coalescer.execute(coalescer.keyOf("如何增肌", "c1", 1L),
+                    () -> null, () -> {
+                        calls.incrementAndGet();
+                        bothStarted.countDown();
+                        awaitQuietly(bothStarted);
+                        return "answer for A";
+                    }));
+            Future<String> userB = executor.submit(() -> coalescer.execute(coalescer.keyOf("如何增肌", "c1", 2L),
+                    () -> null, () -> {
+                        calls.incrementAndGet();
+                        bothStarted.countDown();
+                        awaitQuietly(bothStarted);
+                        return "answer for B";
+                    }));
+            assertEquals("answer for A", userA.get(2, TimeUnit.SECONDS));
+            assertEquals("answer for B", userB.get(2, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        // 两个用户的调用同时在途，各自调用模型
+        assertEquals(2, calls.get());
+        assertEquals(0L, coalescer.getStats().get("coalescedCalls"));
+    }
+
+    @Test
+    void testExecute_concurrentIdenticalRequests_shareOneCall() throws Exception {
+        AtomicReference<Object> lockToken = new AtomicReference<>();
+        when(cacheService.setIfAbsent(anyString(), anyString(), anyLong())).thenAnswer(invocation -> {
+            lockToken.set(invocation.getArgument(1));
+            return true;
+        });
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> coalescer.execute("k", () -> null, () -> {
+                    calls.incrementAndGet();
+                    awaitQuietly(release);
+                    return "answer";
+                })));
+            }
+            // 等待所有请求进入在途状态后再放行模型调用
+            while ((long) coalescer.getStats().get("coalescedCalls") < 3) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertEquals("answer", future.get(1, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, coalescer.getStats().get("inFlightCalls"));
+        verify(cacheService).deleteIfEquals(InFlightRequestCoalescer.LOCK_PREFIX + "k", lockToken.get());
+    }
+
+    @Test
+    void testExecute_failurePropagatesAndIsNotRemembered() {
+        when(cacheService.setIfAbsent(anyString(), anyString(), anyLong())).thenReturn(true);
+        assertThrows(IllegalStateException.class, () -> coalescer.execute("k", () -> null, () -> {
+            throw new IllegalStateException("model error");
+        }));
+        assertEquals("ok", coalescer.execute("k", () -> null, () -> "ok"));
+    }
+
+    @Test
+    void testExecute_lockHeldByOtherNode_usesItsCachedResult() {
+        String lockKey = InFlightRequestCoalescer.LOCK_PREFIX + "k";
+        when(cacheService.setIfAbsent(eq(lockKey), anyString(), anyLong())).thenReturn(false);
+        when(cacheService.exists(lockKey)).thenReturn(true, true, false);
+
+        String response = coalescer.execute("k", () -> "remote answer", () -> fail("不应调用模型"));
+
+        assertEquals("remote answer", response);
+        assertEquals(1L, coalescer.getStats().get("remoteHits"));
+        verify(cacheService, never()).deleteIfEquals(anyString(), any());
+    }
+
+    @Test
+    void testExecute_otherNodeFailed_fallsBackToOwnCall() {
+        when(cacheService.setIfAbsent(anyString(), anyString(), anyLong())).thenReturn(false);
+        when(cacheService.exists(anyString())).thenReturn(false);
+
+        assertEquals("own answer", coalescer.execute("k", () -> null, () -> "own answer"));
+        assertEquals(1L, coalescer.getStats().get("modelCalls"));
+    }
+
+    @Test
+    void testStream_concurrentSubscribers_shareOneUpstream() {
+        when(cacheService.setIfAbsent(anyString(), anyString(), anyLong())).thenReturn(true);
+        AtomicInteger subscriptions = new AtomicInteger();
+        Flux<String> upstream = Flux.just("多吃", "蛋白质")
+                .delayElements(Duration.ofMillis(50))
+                .doOnSubscribe(s -> subscriptions.incrementAndGet());
+
+        Flux<String> first = coalescer.stream("k", () -> null, Flux::just, () -> upstream);
+        Flux<String> second = coalescer.stream("k", () -> null, Flux::just, () -> upstream);
+        List<List<String>> results = Flux.merge(first.collectList(), second.collectList()).collectList().block();
+
+        assertEquals(List.of(List.of("多吃", "蛋白质"), List.of("多吃", "蛋白质")), results);
+        assertEquals(1, subscriptions.get());
+        assertEquals(0, coalescer.getStats().get("inFlightStreams"));
+    }
+
+    @Test
+    void testStream_lockHeldByOtherNode_replaysCachedResult() {
+        when(cacheService.setIfAbsent(anyString(), anyString(), anyLong())).thenReturn(false);
+        when(cacheService.exists(anyString())).thenReturn(true, false);
+
+        List<String> chunks = coalescer.stream("k", () -> "remote answer", Flux::just,
+                () -> Flux.error(new AssertionError("不应调用模型"))).collectList().block();
+
+        assertEquals(List.of("remote answer"), chunks);
+    }
+
+    @Test
+    void testStream_lockReleasedAfterUpstreamCompletes() {
+        when(cacheService.setIfAbsent(anyString(), anyString(), anyLong())).thenReturn(true);
+        List<String> events = new CopyOnWriteArrayList<>();
+        when(cacheService.deleteIfEquals(anyString(), any())).thenAnswer(invocation -> {
+            events.add("unlock");
+            return true;
+        });
+        // 上游在最后写入缓存，写完后才结束
+        Flux<String> upstream = Flux.just("多吃").concatWith(Mono.<String>fromRunnable(() -> events.add("cached"))
+                .subscribeOn(Schedulers.boundedElastic()));
+
+        assertEquals(List.of("多吃"), coalescer.stream("k", () -> null, Flux::just, () -> upstream).collectList().block());
+
+        verify(cacheService, timeout(1000)).deleteIfEquals(eq(InFlightRequestCoalescer.LOCK_PREFIX + "k"), any());
+        assertEquals(List.of("cached", "unlock"), events);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.mq.mqaiagent.manager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class RedisHealthTrackerTest {
+
+    RedisTemplate<String, Object> redisTemplate;
+    RedisHealthTracker tracker;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        tracker = new RedisHealthTracker();
+        ReflectionTestUtils.setField(tracker, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(tracker, "failureThreshold", 2);
+        ReflectionTestUtils.setField(tracker, "openDurationMs", 0L);
+    }
+
+    @Test
+    void testConnectionFailures_openCircuit_afterThreshold() {
+        tracker.recordFailure(new RedisConnectionFailureException("down"));
+        assertTrue(tracker.isAvailable());
+        tracker.recordFailure(new RedisConnectionFailureException("down"));
+        assertFalse(tracker.isAvailable());
+        assertEquals(RedisHealthTracker.State.OPEN, tracker.getState());
+    }
+
+    @Test
+    void testSuccess_resetsConsecutiveFailures() {
+        tracker.recordFailure(new RedisConnectionFailureException("down"));
+        tracker.recordSuccess();
+        tracker.recordFailure(new RedisConnectionFailureException("down"));
+        assertTrue(tracker.isAvailable());
+        assertEquals(1, tracker.getStats().get("consecutiveFailures"));
+    }
+
+    @Test
+    void testNonConnectionErrors_doNotOpenCircuit() {
+        tracker.recordFailure(new IllegalStateException("WRONGTYPE"));
+        tracker.recordFailure(new IllegalStateException("WRONGTYPE"));
+        assertTrue(tracker.isAvailable());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testProbe_halfOpenSuccess_closesCircuit() {
+        tracker.recordFailure(new RedisConnectionFailureException("down"));
+        tracker.recordFailure(new RedisConnectionFailureException("down"));
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn("PONG");
+
+        tracker.probe();
+
+        assertEquals(RedisHealthTracker.State.CLOSED, tracker.getState());
+        Map<String, Long> transitions = (Map<String, Long>) tracker.getStats().get("transitions");
+        assertEquals(1L, transitions.get("OPEN"));
+        assertEquals(1L, transitions.get("HALF_OPEN"));
+        assertEquals(1L, transitions.get("CLOSED"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testProbe_halfOpenFailure_reopens() {
+        tracker.recordFailure(new RedisConnectionFailureException("down"));
+        tracker.recordFailure(new RedisConnectionFailureException("down"));
+        when(redisTemplate.execute(any(RedisCallback.class))).thenThrow(new RedisConnectionFailureException("still down"));
+
+        tracker.probe();
+
+        assertEquals(RedisHealthTracker.State.OPEN, tracker.getState());
+        assertEquals("still down", tracker.getStats().get("lastError"));
+    }
+
+    @Test
+    void testProbe_openWithinCooldown_skipsPing() {
+        ReflectionTestUtils.setField(tracker, "openDurationMs", 60_000L);
+        tracker.recordFailure(new RedisConnectionFailureException("down"));
+        tracker.recordFailure(new RedisConnectionFailureException("down"));
+
+        tracker.probe();
+
+        verifyNoInteractions(redisTemplate);
+        assertFalse(tracker.isAvailable());
+    }
+}
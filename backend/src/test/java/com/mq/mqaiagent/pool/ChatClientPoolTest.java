@@ -9,10 +9,6 @@ import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.test.util.ReflectionTestUtils;
 
-import java.time.LocalDateTime;
-import java.lang.reflect.Constructor;
-import java.util.concurrent.ConcurrentHashMap;
-
 import static org.junit.jupiter.api.Assertions.*;
 
 class ChatClientPoolTest {
@@ -31,7 +27,10 @@ class ChatClientPoolTest {
         ReflectionTestUtils.setField(pool, "dashscopeChatModel", chatModel);
         ReflectionTestUtils.setField(pool, "keepReportMapper", keepReportMapper);
         ReflectionTestUtils.setField(pool, "cacheService", cacheService);
-        pool.clearAll();
+        ReflectionTestUtils.setField(pool, "maxSize", 1000L);
+        ReflectionTestUtils.setField(pool, "expireAfterAccessMinutes", 30L);
+        ReflectionTestUtils.setField(pool, "expireAfterWriteMinutes", 60L);
+        pool.init();
     }
 
     @Test
@@ -47,12 +46,13 @@ class ChatClientPoolTest {
     }
 
     @Test
-    void getKeepAppClientWithMemory_differentUserId_returnsDifferentInstances() {
-        ChatClient a1 = pool.getKeepAppClientWithMemory(1L, "sys");
-        ChatClient a2 = pool.getKeepAppClientWithMemory(2L, "sys");
+    void getKeepAppClientWithMemory_sharedAcrossUsers_differentFromPlainClient() {
+        ChatClient a1 = pool.getKeepAppClientWithMemory("sys");
+        ChatClient a2 = pool.getKeepAppClientWithMemory("sys");
         assertNotNull(a1);
-        assertNotNull(a2);
-        assertNotSame(a1, a2);
+        assertSame(a1, a2);
+        assertNotSame(a1, pool.getKeepAppClient("sys"));
+        assertNotSame(a1, pool.getKeepAppClientWithMemory("other"));
     }
 
     @Test
@@ -63,22 +63,22 @@ class ChatClientPoolTest {
     }
 
     @Test
-    void getMqManusClientWithMemory_cacheMissThenHit_andDifferentUsersDifferentInstances() {
-        ChatClient u11a = pool.getMqManusClientWithMemory(11L, "sys");
-        ChatClient u11b = pool.getMqManusClientWithMemory(11L, "sys");
-        ChatClient u12 = pool.getMqManusClientWithMemory(12L, "sys");
-        assertNotNull(u11a);
-        assertSame(u11a, u11b);
-        assertNotSame(u11a, u12);
+    void getMqManusClientWithMemory_cacheMissThenHit_oneClientPerPrompt() {
+        ChatClient a = pool.getMqManusClientWithMemory("sys");
+        ChatClient b = pool.getMqManusClientWithMemory("sys");
+        assertNotNull(a);
+        assertSame(a, b);
+        assertNotSame(a, pool.getMqManusClient("sys"));
+        assertEquals(2, pool.getCacheStats().cacheMisses());
     }
 
     @Test
     void createMqManusClientWithMemory_reflection_returnsNewInstances() {
         try {
-            var m = ChatClientPool.class.getDeclaredMethod("createMqManusClientWithMemory", Long.class, String.class);
+            var m = ChatClientPool.class.getDeclaredMethod("createMqManusClientWithMemory", String.class);
             m.setAccessible(true);
-            ChatClient c1 = (ChatClient) m.invoke(pool, 20L, "sys");
-            ChatClient c2 = (ChatClient) m.invoke(pool, 21L, "sys");
+            Object c1 = m.invoke(pool, "sys");
+            Object c2 = m.invoke(pool, "sys");
             assertNotNull(c1);
             assertNotNull(c2);
             assertNotSame(c1, c2);
@@ -88,37 +88,40 @@ class ChatClientPoolTest {
     }
 
     @Test
-    void cleanupExpiredClients_removesExpiredAndInactive() {
-        ConcurrentHashMap<String, Object> map =
-                (ConcurrentHashMap<String, Object>) ReflectionTestUtils.getField(pool, "clientCache");
-        ChatClient c1 = Mockito.mock(ChatClient.class);
-        ChatClient c2 = Mockito.mock(ChatClient.class);
-        ChatClient c3 = Mockito.mock(ChatClient.class);
-        try {
-            Class<?> cachedClass = Class.forName("com.mq.mqaiagent.pool.ChatClientPool$CachedChatClient");
-            Constructor<?> ctor = cachedClass.getDeclaredConstructor(ChatClient.class);
-            ctor.setAccessible(true);
-            Object cached1 = ctor.newInstance(c1);
-            Object cached2 = ctor.newInstance(c2);
-            Object cached3 = ctor.newInstance(c3);
-        map.put("expired", cached1);
-        map.put("inactive", cached2);
-        map.put("active", cached3);
-        ReflectionTestUtils.setField(cached1, "createdTime", LocalDateTime.now().minusMinutes(120));
-        ReflectionTestUtils.setField(cached2, "lastAccessedTime", LocalDateTime.now().minusMinutes(120));
+    void cleanupExpiredClients_removesInactiveAndCountsMemoryClients() {
+        ReflectionTestUtils.setField(pool, "expireAfterAccessMinutes", 0L);
+        pool.init();
+        pool.getKeepAppClientWithMemory("sys");
+        pool.getMqManusClient("sys");
         pool.cleanupExpiredClients();
-        assertFalse(map.containsKey("expired"));
-        assertFalse(map.containsKey("inactive"));
-        assertTrue(map.containsKey("active"));
-        } catch (Exception e) {
-            fail(e);
+        ChatClientPool.CacheStats stats = pool.getCacheStats();
+        assertEquals(0, stats.currentCacheSize());
+        assertEquals(2, stats.expiredCount());
+        assertEquals(1, stats.memoryClientEvictionCount());
+    }
+
+    @Test
+    void maxSize_evictsAndReportsMetrics() {
+        ReflectionTestUtils.setField(pool, "maxSize", 2L);
+        pool.init();
+        for (int i = 1; i <= 5; i++) {
+            pool.getKeepAppClientWithMemory("sys" + i);
         }
+        pool.cleanupExpiredClients();
+        ChatClientPool.CacheStats stats = pool.getCacheStats();
+        assertTrue(stats.currentCacheSize() <= 2);
+        assertEquals(5 - stats.currentCacheSize(), stats.evictionCount());
+        assertEquals(stats.evictionCount(), stats.memoryClientEvictionCount());
+        assertEquals(5, stats.totalCreated());
+        assertEquals(2, stats.maxSize());
+        assertTrue(stats.totalLoadTimeMs() >= 0);
+        assertTrue(stats.averageLoadTimeMs() > 0.0);
     }
 
     @Test
     void clearAll_emptiesCache() {
         pool.getKeepAppClient("s1");
-        pool.getKeepAppClientWithMemory(10L, "s2");
+        pool.getKeepAppClientWithMemory("s2");
         assertTrue(pool.getCacheStats().currentCacheSize() >= 2);
         pool.clearAll();
         assertEquals(0, pool.getCacheStats().currentCacheSize());
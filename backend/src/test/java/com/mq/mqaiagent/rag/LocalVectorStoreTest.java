@@ -0,0 +1,178 @@
+package com.mq.mqaiagent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class LocalVectorStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final CountingEmbeddingModel embeddingModel = new CountingEmbeddingModel();
+
+    private static final List<Document> DOCUMENTS = List.of(
+            new Document("深蹲时膝盖不要超过脚尖", Map.of("filename", "训练方法类常见问题.md")),
+            new Document("增肌期每天蛋白质摄入约每公斤体重 1.6 克", Map.of("filename", "营养管理类常见问题.md")),
+            new Document("热身可以降低运动损伤的风险", Map.of("filename", "损伤预防类常见问题.md")));
+
+    @Test
+    void testSync_reopenReusesStoredVectors() {
+        LocalVectorStore store = newStore("text-embedding-v1");
+        LocalVectorStore.SyncStats first = store.sync(DOCUMENTS);
+        assertEquals(3, first.embedded());
+        int callsAfterFirstSync = embeddingModel.embeddedTexts;
+
+        LocalVectorStore reopened = newStore("text-embedding-v1");
+        LocalVectorStore.SyncStats second = reopened.sync(DOCUMENTS);
+
+        assertEquals(new LocalVectorStore.SyncStats(3, 3, 0, 0, second.loadMs(), second.embedMs(), second.totalMs()),
+                second);
+        assertEquals(callsAfterFirstSync, embeddingModel.embeddedTexts);
+        List<Document> results = reopened.similaritySearch(SearchRequest.builder().query("蛋白质摄入").topK(1).build());
+        assertEquals(1, results.size());
+        assertEquals("营养管理类常见问题.md", results.get(0).getMetadata().get("filename"));
+        assertTrue(results.get(0).getScore() > 0);
+    }
+
+    @Test
+    void testSync_onlyChangedChunksAreEmbedded() throws Exception {
+        newStore("text-embedding-v1").sync(DOCUMENTS);
+        embeddingModel.embeddedTexts = 0;
+
+        List<Document> changed = List.of(DOCUMENTS.get(0),
+                new Document("热身和拉伸可以降低运动损伤的风险", Map.of("filename", "损伤预防类常见问题.md")));
+        LocalVectorStore store = newStore("text-embedding-v1");
+        LocalVectorStore.SyncStats stats = store.sync(changed);
+
+        assertEquals(1, stats.reused());
+        assertEquals(1, stats.embedded());
+        assertEquals(2, stats.removed());
+        assertEquals(1, embeddingModel.embeddedTexts);
+        assertEquals(2, store.size());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(List.of("metadata.json", "vectors-2.bin"),
+                    files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+    }
+
+    @Test
+    void testOpen_modelChangeOrCorruptionReembedsEverything() throws Exception {
+        newStore("text-embedding-v1").sync(DOCUMENTS);
+
+        assertEquals(3, newStore("text-embedding-v2").sync(DOCUMENTS).embedded());
+
+        Files.writeString(tempDir.resolve(LocalVectorStore.METADATA_FILE), "{broken");
+        LocalVectorStore store = newStore("text-embedding-v2");
+        assertEquals(0, store.size());
+        assertEquals(3, store.sync(DOCUMENTS).embedded());
+        assertEquals(3, newStore("text-embedding-v2").size());
+    }
+
+    @Test
+    void testAddDeleteAndFilteredSearch() {
+        LocalVectorStore store = newStore("text-embedding-v1");
+        store.add(List.of(new Document("a", "深蹲训练要点", Map.of("filename", "训练方法类常见问题.md")),
+                new Document("b", "深蹲前的饮食", Map.of("filename", "营养管理类常见问题.md"))));
+
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("深蹲")
+                .filterExpression(b.eq("filename", "营养管理类常见问题.md").build()).build());
+        assertEquals(List.of("b"), results.stream().map(Document::getId).toList());
+
+        store.delete(List.of("a"));
+        store.delete(b.eq("filename", "营养管理类常见问题.md").build());
+        assertEquals(0, newStore("text-embedding-v1").size());
+        assertTrue(store.similaritySearch(SearchRequest.builder().query("深蹲").build()).isEmpty());
+    }
+
+    /**
+     * 启动耗时基准：500 个分片，对比每次全部嵌入到 SimpleVectorStore 与重启后增量同步的嵌入次数和耗时
+     */
+    @Test
+    void benchmark_restartSync() {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            documents.add(new Document("第 " + i + " 个问题：" + DOCUMENTS.get(i % DOCUMENTS.size()).getText(),
+                    Map.of("filename", "常见问题-" + i % 6 + ".md")));
+        }
+
+        long start = System.nanoTime();
+        SimpleVectorStore.builder(embeddingModel).build().add(documents);
+        long simpleMs = (System.nanoTime() - start) / 1_000_000;
+        int simpleEmbeddings = embeddingModel.embeddedTexts;
+
+        newStore("text-embedding-v1").sync(documents);
+        embeddingModel.embeddedTexts = 0;
+        start = System.nanoTime();
+        LocalVectorStore.SyncStats stats = newStore("text-embedding-v1").sync(documents);
+        long restartMs = (System.nanoTime() - start) / 1_000_000;
+
+        log.info("向量库启动基准: {} 个分片，全部嵌入 {} 次 / {} ms，重启增量同步嵌入 {} 次 / {} ms（加载 {} ms）",
+                documents.size(), simpleEmbeddings, simpleMs, embeddingModel.embeddedTexts, restartMs, stats.loadMs());
+        assertEquals(documents.size(), simpleEmbeddings);
+        assertEquals(0, embeddingModel.embeddedTexts);
+        assertEquals(stats.documents(), stats.reused());
+    }
+
+    private LocalVectorStore newStore(String embeddingModelName) {
+        return new LocalVectorStore(tempDir, embeddingModel, embeddingModelName, 2);
+    }
+
+    /**
+     * 按字符哈希计数的嵌入模型，记录嵌入的文本数
+     */
+    private static class CountingEmbeddingModel implements EmbeddingModel {
+
+        private static final int DIMENSIONS = 256;
+
+        int embeddedTexts;
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            List<String> texts = request.getInstructions();
+            for (int i = 0; i < texts.size(); i++) {
+                embeddings.add(new Embedding(embed(texts.get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(String text) {
+            embeddedTexts++;
+            float[] vector = new float[DIMENSIONS];
+            text.codePoints()
+                    .filter(Character::isLetterOrDigit)
+                    .forEach(codePoint -> vector[Math.floorMod(codePoint * 31, DIMENSIONS)] += 1);
+            return vector;
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return DIMENSIONS;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.mq.mqaiagent.service.impl;
 
+import com.mq.mqaiagent.service.CacheMetricsService;
 import com.mq.mqaiagent.service.CacheService;
 import com.mq.mqaiagent.service.TextSimilarityService;
 import org.junit.jupiter.api.Test;
@@ -7,10 +8,15 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -25,6 +31,9 @@ class AiResponseCacheServiceImplTest {
     @Mock
     private TextSimilarityService textSimilarityService;
 
+    @Mock
+    private CacheMetricsService cacheMetricsService;
+
     @InjectMocks
     private AiResponseCacheServiceImpl service;
 
@@ -35,12 +44,11 @@ class AiResponseCacheServiceImplTest {
         when(textSimilarityService.generateTextHash(question)).thenReturn("h1");
         when(cacheService.generateAiResponseKey("h1")).thenReturn("mq:ai:agent:ai:response:h1");
         when(cacheService.set(anyString(), eq(response), anyLong())).thenReturn(true);
-        when(cacheService.get(eq("mq:ai:agent:question:index"), eq(List.class))).thenReturn(new ArrayList<>());
 
         boolean result = service.cacheResponse(question, response, null);
         assertTrue(result);
         verify(cacheService, times(1)).set(eq("mq:ai:agent:ai:response:h1"), eq(response), eq(12L));
-        verify(cacheService, times(1)).set(eq("mq:ai:agent:question:index"), any(List.class), eq(24L));
+        verify(cacheService, times(1)).sortedSetAddAndTrim(eq("mq:ai:agent:question:shard:global"), eq(question), anyDouble(), eq(1000L), eq(24L));
     }
 
     @Test
@@ -53,6 +61,7 @@ class AiResponseCacheServiceImplTest {
         String resp = service.getCachedResponse(question, null);
         assertEquals("cached", resp);
         verify(cacheService, times(1)).get(eq("mq:ai:agent:ai:response:h1"), eq(String.class));
+        verify(cacheMetricsService, times(1)).recordAiResponseCacheHit();
     }
 
     @Test
@@ -63,8 +72,8 @@ class AiResponseCacheServiceImplTest {
         when(cacheService.generateAiResponseKey("h1")).thenReturn("mq:ai:agent:ai:response:h1");
         when(cacheService.get(eq("mq:ai:agent:ai:response:h1"), eq(String.class))).thenReturn(null);
 
-        when(cacheService.get(eq("mq:ai:agent:question:index"), eq(List.class)))
-                .thenReturn(Arrays.asList(candidate));
+        when(cacheService.sortedSetReverseRange(eq("mq:ai:agent:question:shard:global"), eq(0L), eq(999L)))
+                .thenReturn(List.of(candidate));
         TextSimilarityService.SimilarityResult sr = new TextSimilarityService.SimilarityResult(candidate, 0.9);
         when(textSimilarityService.calculateSimilarities(eq(question), anyList()))
                 .thenReturn(Arrays.asList(sr));
@@ -85,19 +94,15 @@ class AiResponseCacheServiceImplTest {
         when(textSimilarityService.generateTextHash(question)).thenReturn("h1");
         when(cacheService.generateAiResponseKey("h1")).thenReturn("mq:ai:agent:ai:response:h1");
         when(cacheService.delete(eq("mq:ai:agent:ai:response:h1"))).thenReturn(true);
-        List<String> idx = new ArrayList<>();
-        idx.add(question);
-        when(cacheService.get(eq("mq:ai:agent:question:index"), eq(List.class))).thenReturn(idx);
 
         boolean result = service.clearCache(question, null);
         assertTrue(result);
-        verify(cacheService, times(1)).set(eq("mq:ai:agent:question:index"), any(List.class), eq(24L));
+        verify(cacheService, times(1)).sortedSetRemove(eq("mq:ai:agent:question:shard:global"), eq(question));
     }
 
     @Test
     void testGetCacheStats_ok() {
-        when(cacheService.get(eq("mq:ai:agent:question:index"), eq(List.class)))
-                .thenReturn(Arrays.asList("q1", "q2"));
+        when(cacheService.sortedSetSize(eq("mq:ai:agent:question:shard:global"))).thenReturn(2L);
         var stats = service.getCacheStats();
         assertEquals(2, stats.getTotalCachedQuestions());
         assertEquals(0, stats.getTotalRequests());
@@ -126,12 +131,13 @@ class AiResponseCacheServiceImplTest {
         when(textSimilarityService.generateTextHash(q)).thenReturn("ha");
         when(cacheService.generateAiResponseKey("ha")).thenReturn("mq:ai:agent:ai:response:ha");
         when(cacheService.get(eq("mq:ai:agent:ai:response:ha"), eq(String.class))).thenReturn(null);
-        when(cacheService.get(eq("mq:ai:agent:question:index"), eq(List.class)))
-                .thenReturn(Arrays.asList("问题B"));
+        when(cacheService.sortedSetReverseRange(eq("mq:ai:agent:question:shard:global"), eq(0L), eq(999L)))
+                .thenReturn(List.of("问题B"));
         when(textSimilarityService.calculateSimilarities(eq(q), anyList()))
                 .thenReturn(Arrays.asList(new TextSimilarityService.SimilarityResult("问题B", 0.2)));
         when(textSimilarityService.getSimilarityThreshold()).thenReturn(0.75);
         assertNull(service.getCachedResponse(q, null));
+        verify(cacheMetricsService, times(1)).recordAiResponseCacheMiss();
     }
 
     @Test
@@ -162,4 +168,159 @@ class AiResponseCacheServiceImplTest {
         when(cacheService.delete(eq("mq:ai:agent:ai:response:h"))).thenThrow(new RuntimeException("fail"));
         assertFalse(service.clearCache(q, null));
     }
+
+    @Test
+    void testGetCachedResponse_similarHit_viaSimilarityIndex() {
+        String question = "我想增肌，请给我一些建议";
+        String candidate = "我想增肌，请给我建议";
+        when(textSimilarityService.createIndex()).thenReturn(new BigramSimilarityIndex());
+        when(textSimilarityService.getSimilarityThreshold()).thenReturn(0.7);
+        when(textSimilarityService.generateTextHash(question)).thenReturn("h1");
+        when(textSimilarityService.generateTextHash(candidate)).thenReturn("h2");
+        when(cacheService.generateAiResponseKey(anyString()))
+                .thenAnswer(invocation -> "mq:ai:agent:ai:response:" + invocation.getArgument(0));
+        when(cacheService.sortedSetReverseRange(eq("mq:ai:agent:question:shard:global"), eq(0L), eq(999L)))
+                .thenReturn(List.of(candidate, "今天天气怎么样"));
+        when(cacheService.get(eq("mq:ai:agent:ai:response:h1"), eq(String.class))).thenReturn(null);
+        when(cacheService.get(eq("mq:ai:agent:ai:response:h2"), eq(String.class))).thenReturn("resp2");
+
+        assertEquals("resp2", service.getCachedResponse(question, null));
+        assertEquals("resp2", service.getCachedResponse(question, null));
+
+        verify(cacheMetricsService, times(2)).recordAiResponseSimilarCacheHit();
+        // 索引在同步间隔内常驻内存，不再逐条计算相似度
+        verify(textSimilarityService, never()).calculateSimilarities(anyString(), anyList());
+        verify(cacheService, times(1)).sortedSetReverseRange(eq("mq:ai:agent:question:shard:global"), eq(0L), eq(999L));
+        // 命中后刷新相似问题的最近命中时间
+        verify(cacheService, times(2)).sortedSetUpdateScore(eq("mq:ai:agent:question:shard:global"), eq(candidate), anyDouble());
+    }
+
+    @Test
+    void testGetCachedResponse_userShardFirst_thenGlobal() {
+        String question = "我想增肌，请给我一些建议";
+        String candidate = "我想增肌，请给我建议";
+        String userShard = "mq:ai:agent:question:shard:user:7";
+        when(textSimilarityService.createIndex()).thenAnswer(invocation -> new BigramSimilarityIndex());
+        when(textSimilarityService.getSimilarityThreshold()).thenReturn(0.7);
+        when(textSimilarityService.generateTextHash(question)).thenReturn("h1");
+        when(textSimilarityService.generateTextHash(candidate)).thenReturn("h2");
+        when(cacheService.generateAiResponseKey(anyString()))
+                .thenAnswer(invocation -> "mq:ai:agent:ai:response:" + invocation.getArgument(0));
+        when(cacheService.get(eq("mq:ai:agent:ai:response:7:h1"), eq(String.class))).thenReturn(null);
+        // 用户分片没有相似问题，全局分片有
+        when(cacheService.sortedSetReverseRange(eq(userShard), eq(0L), eq(199L))).thenReturn(List.of("今天天气怎么样"));
+        when(cacheService.sortedSetReverseRange(eq("mq:ai:agent:question:shard:global"), eq(0L), eq(999L))).thenReturn(List.of(candidate));
+        when(cacheService.get(eq("mq:ai:agent:ai:response:h2"), eq(String.class))).thenReturn("global-resp");
+
+        assertEquals("global-resp", service.getCachedResponse(question, 7L));
+        verify(cacheService, times(1)).set(eq("mq:ai:agent:ai:response:7:h1"), eq("global-resp"), eq(12L));
+        verify(cacheService, times(1)).sortedSetUpdateScore(eq("mq:ai:agent:question:shard:global"), eq(candidate), anyDouble());
+    }
+
+    @Test
+    void testCacheResponse_userShard_evictedQuestionsLeaveLocalIndex() {
+        String userShard = "mq:ai:agent:question:shard:user:7";
+        when(textSimilarityService.createIndex()).thenAnswer(invocation -> new BigramSimilarityIndex());
+        when(textSimilarityService.generateTextHash(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(cacheService.generateAiResponseKey(anyString()))
+                .thenAnswer(invocation -> "mq:ai:agent:ai:response:" + invocation.getArgument(0));
+        when(cacheService.set(anyString(), anyString(), anyLong())).thenReturn(true);
+        when(cacheService.sortedSetReverseRange(eq(userShard), eq(0L), eq(199L))).thenReturn(List.of("我想增肌，请给我建议"));
+        when(cacheService.sortedSetAddAndTrim(eq(userShard), eq("我想减脂，请给我建议"), anyDouble(), eq(200L), eq(24L)))
+                .thenReturn(List.of("我想增肌，请给我建议"));
+
+        // 首次查询建立用户分片的本地索引
+        assertNull(service.getCachedResponse("今天天气怎么样呢", 7L));
+        assertTrue(service.cacheResponse("我想减脂，请给我建议", "resp", 7L));
+
+        // 被裁剪的问题从本地索引移除，不再发起响应读取
+        assertNull(service.getCachedResponse("我想增肌，请给我一些建议", 7L));
+        verify(cacheService, never()).get(eq("mq:ai:agent:ai:response:7:我想增肌，请给我建议"), eq(String.class));
+    }
+
+    @Test
+    void testGetCachedResponse_embeddingIndex_embedsQueryOncePerLookup() {
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel();
+        EmbeddingTextSimilarityServiceImpl embeddingService = new EmbeddingTextSimilarityServiceImpl(embeddingModel, 0.8, 10);
+        when(textSimilarityService.createIndex()).thenAnswer(invocation -> embeddingService.createIndex());
+        when(textSimilarityService.generateTextHash(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(cacheService.sortedSetReverseRange(eq("mq:ai:agent:question:shard:user:7"), eq(0L), eq(199L)))
+                .thenReturn(List.of("今天天气怎么样"));
+        when(cacheService.sortedSetReverseRange(eq("mq:ai:agent:question:shard:global"), eq(0L), eq(999L)))
+                .thenReturn(List.of("深蹲要点"));
+
+        // 首次查询：两个分片各同步一次，查询向量只计算一次
+        assertNull(service.getCachedResponse("我想增肌", 7L));
+        assertEquals(3, embeddingModel.callCount);
+
+        // 索引已是最新，未命中时用户分片与全局分片共用一次嵌入调用
+        assertNull(service.getCachedResponse("我想减脂", 7L));
+        assertEquals(4, embeddingModel.callCount);
+    }
+
+    @Test
+    void testGetCachedResponse_lookupNotBlockedWhileShardResyncs() throws Exception {
+        CountDownLatch embeddingStarted = new CountDownLatch(1);
+        CountDownLatch releaseEmbedding = new CountDownLatch(1);
+        StubEmbeddingModel slowModel = new StubEmbeddingModel() {
+            @Override
+            public EmbeddingResponse call(EmbeddingRequest request) {
+                if (request.getInstructions().contains("我想要快速增肌")) {
+                    embeddingStarted.countDown();
+                    try {
+                        releaseEmbedding.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.call(request);
+            }
+        };
+        EmbeddingTextSimilarityServiceImpl embeddingService = new EmbeddingTextSimilarityServiceImpl(slowModel, 0.8, 10);
+        when(textSimilarityService.createIndex()).thenAnswer(invocation -> embeddingService.createIndex());
+        when(textSimilarityService.getSimilarityThreshold()).thenReturn(0.8);
+        when(textSimilarityService.generateTextHash(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(cacheService.generateAiResponseKey(anyString()))
+                .thenAnswer(invocation -> "mq:ai:agent:ai:response:" + invocation.getArgument(0));
+        when(cacheService.sortedSetReverseRange(eq("mq:ai:agent:question:shard:global"), eq(0L), eq(999L)))
+                .thenReturn(List.of("我想要快速增肌"));
+        when(cacheService.get(anyString(), eq(String.class))).thenReturn(null);
+        when(cacheService.get(eq("mq:ai:agent:ai:response:我想要快速增肌"), eq(String.class))).thenReturn("resp");
+
+        // 同步线程卡在远程嵌入调用上
+        CompletableFuture<String> syncing = CompletableFuture.supplyAsync(() -> service.getCachedResponse("今天天气怎么样", null));
+        assertTrue(embeddingStarted.await(5, TimeUnit.SECONDS));
+
+        // 其他请求不等待同步，使用当前索引直接返回
+        CompletableFuture<String> lookup = CompletableFuture.supplyAsync(() -> service.getCachedResponse("我想快速增肌", null));
+        assertNull(lookup.get(1, TimeUnit.SECONDS));
+        assertFalse(syncing.isDone());
+
+        // 同步完成后新问题加入索引
+        releaseEmbedding.countDown();
+        assertNull(syncing.get(5, TimeUnit.SECONDS));
+        assertEquals("resp", service.getCachedResponse("我想快速增肌", null));
+        verify(cacheService, times(1)).sortedSetReverseRange(eq("mq:ai:agent:question:shard:global"), eq(0L), eq(999L));
+    }
+
+    @Test
+    void testCacheResponse_embeddingIndex_leavesNewQuestionForNextSync() {
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel();
+        EmbeddingTextSimilarityServiceImpl embeddingService = new EmbeddingTextSimilarityServiceImpl(embeddingModel, 0.8, 10);
+        when(textSimilarityService.createIndex()).thenAnswer(invocation -> embeddingService.createIndex());
+        when(textSimilarityService.generateTextHash(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(cacheService.generateAiResponseKey(anyString()))
+                .thenAnswer(invocation -> "mq:ai:agent:ai:response:" + invocation.getArgument(0));
+        when(cacheService.set(anyString(), anyString(), anyLong())).thenReturn(true);
+        when(cacheService.sortedSetReverseRange(eq("mq:ai:agent:question:shard:global"), eq(0L), eq(999L)))
+                .thenReturn(List.of("深蹲要点"));
+
+        // 首次查询建立全局分片的本地索引
+        assertNull(service.getCachedResponse("今天天气怎么样", null));
+        int callsAfterSync = embeddingModel.callCount;
+
+        // 写缓存只写 Redis 分片，不在请求线程上调用嵌入模型
+        assertTrue(service.cacheResponse("我想要快速增肌", "resp", null));
+        assertEquals(callsAfterSync, embeddingModel.callCount);
+    }
 }
@@ -0,0 +1,66 @@
+package com.mq.mqaiagent.service.impl;
+
+import com.mq.mqaiagent.service.TextSimilarityService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BigramSimilarityIndexTest {
+
+    private final TextSimilarityServiceImpl textSimilarityService = new TextSimilarityServiceImpl();
+
+    @Test
+    void testSearch_matchesBruteForceCosine() {
+        List<String> questions = List.of(
+                "我想增肌，请给我建议",
+                "我想减脂，请给我建议",
+                "今天天气怎么样",
+                "How to build muscle fast?",
+                "增肌期间应该怎么吃");
+        TextSimilarityService.SimilarityIndex index = textSimilarityService.createIndex();
+        questions.forEach(index::add);
+
+        String target = "我想增肌，请给我一些建议";
+        List<TextSimilarityService.SimilarityResult> expected =
+                textSimilarityService.calculateSimilarities(target, questions);
+        List<TextSimilarityService.SimilarityResult> actual = index.search(target, 10);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getText(), actual.get(i).getText());
+            assertEquals(expected.get(i).getSimilarity(), actual.get(i).getSimilarity(), 1e-9);
+        }
+    }
+
+    @Test
+    void testSearch_onlyReturnsCandidatesSharingGrams_andRespectsLimit() {
+        TextSimilarityService.SimilarityIndex index = textSimilarityService.createIndex();
+        index.add("我想增肌，请给我建议");
+        index.add("我想增肌，请给我计划");
+        index.add("今天天气怎么样");
+
+        List<TextSimilarityService.SimilarityResult> results = index.search("我想增肌，请给我建议", 1);
+
+        assertEquals(1, results.size());
+        assertEquals("我想增肌，请给我建议", results.get(0).getText());
+        assertEquals(1.0, results.get(0).getSimilarity(), 1e-9);
+        assertTrue(index.search("完全无关的内容啊", 10).isEmpty());
+    }
+
+    @Test
+    void testRemove_dropsPostings() {
+        TextSimilarityService.SimilarityIndex index = textSimilarityService.createIndex();
+        index.add("我想增肌，请给我建议");
+        index.add("短");
+        assertEquals(2, index.size());
+        assertTrue(index.contains("短"));
+
+        index.remove("我想增肌，请给我建议");
+        index.remove("短");
+
+        assertEquals(0, index.size());
+        assertTrue(index.search("我想增肌，请给我建议", 10).isEmpty());
+    }
+}
@@ -39,6 +39,20 @@ class CacheMetricsServiceImplTest {
         assertEquals(3, service.getSavedApiCalls());
     }
 
+    @Test
+    void testRecordSimilarHit_countsAsHitAndSavedCall() {
+        when(aiResponseCacheService.getCacheStats()).thenReturn(new AiResponseCacheService.CacheStats(1, 0, 0.0));
+        service.recordAiResponseCacheHit();
+        service.recordAiResponseSimilarCacheHit();
+        service.recordAiResponseCacheMiss();
+
+        CacheMetricsService.CachePerformanceReport report = service.getPerformanceReport();
+        assertEquals(2, report.getAiResponseCacheHits());
+        assertEquals(1, report.getAiResponseSimilarCacheHits());
+        assertEquals(2, report.getSavedApiCalls());
+        assertEquals(2.0 / 3.0, report.getAiResponseCacheHitRate());
+    }
+
     @Test
     void testGetPerformanceReport_ok() {
         when(aiResponseCacheService.getCacheStats()).thenReturn(new AiResponseCacheService.CacheStats(5, 0, 0.0));
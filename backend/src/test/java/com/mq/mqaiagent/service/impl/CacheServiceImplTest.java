@@ -1,13 +1,20 @@
 package com.mq.mqaiagent.service.impl;
 
+import com.mq.mqaiagent.manager.RedisHealthTracker;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ListOperations;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -115,4 +122,288 @@ class CacheServiceImplTest {
         when(factory.getConnection()).thenThrow(new RuntimeException("conn fail"));
         assertFalse(service.isRedisAvailable());
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testListOps_ok() {
+        ListOperations<String, Object> listOps = mock(ListOperations.class);
+        when(redisTemplate.opsForList()).thenReturn(listOps);
+        when(listOps.rightPushAll(eq("l"), any(Object[].class))).thenReturn(2L);
+        when(listOps.range("l", 0, 1)).thenReturn(List.of("a", "b"));
+        when(listOps.size("l")).thenReturn(2L);
+
+        assertEquals(2L, service.rightPushAll("l", List.of("a", "b")));
+        assertEquals(List.of("a", "b"), service.range("l", 0, 1));
+        assertTrue(service.trim("l", 1, -1));
+        verify(listOps).trim("l", 1, -1);
+        assertEquals(2L, service.listSize("l"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testListOps_exception_returnsFallbacks() {
+        ListOperations<String, Object> listOps = mock(ListOperations.class);
+        when(redisTemplate.opsForList()).thenReturn(listOps);
+        when(listOps.rightPushAll(anyString(), any(Object[].class))).thenThrow(new RuntimeException("fail"));
+        when(listOps.range(anyString(), anyLong(), anyLong())).thenThrow(new RuntimeException("fail"));
+        doThrow(new RuntimeException("fail")).when(listOps).trim(anyString(), anyLong(), anyLong());
+
+        assertEquals(-1L, service.rightPushAll("l", List.of("a")));
+        assertTrue(service.range("l", 0, -1).isEmpty());
+        assertFalse(service.trim("l", 0, -1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSortedSetOps_ok() {
+        ZSetOperations<String, Object> zSetOps = mock(ZSetOperations.class);
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOps);
+        when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) RedisSerializer.json());
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                eq(List.of("z")), eq("\"q3\""), eq("3.0"), eq("2"), eq("3600"))).thenReturn(List.of("q1"));
+        when(zSetOps.reverseRange("z", 0, 1)).thenReturn(new LinkedHashSet<>(List.of("q3", "q2")));
+        when(zSetOps.remove("z", "q2")).thenReturn(1L);
+        when(zSetOps.zCard("z")).thenReturn(1L);
+
+        // 超出上限时返回被裁剪的最旧成员
+        assertEquals(List.of("q1"), service.sortedSetAddAndTrim("z", "q3", 3.0, 2, 1));
+        assertEquals(List.of("q3", "q2"), service.sortedSetReverseRange("z", 0, 1));
+        assertTrue(service.sortedSetRemove("z", "q2"));
+        assertEquals(1L, service.sortedSetSize("z"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSortedSetOps_exception_returnsFallbacks() {
+        ZSetOperations<String, Object> zSetOps = mock(ZSetOperations.class);
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOps);
+        when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) RedisSerializer.json());
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                anyList(), any(Object[].class))).thenThrow(new RuntimeException("fail"));
+        when(zSetOps.reverseRange(anyString(), anyLong(), anyLong())).thenThrow(new RuntimeException("fail"));
+
+        assertTrue(service.sortedSetAddAndTrim("z", "q", 1.0, 10, 1).isEmpty());
+        assertFalse(service.sortedSetUpdateScore("z", "q", 2.0));
+        assertTrue(service.sortedSetReverseRange("z", 0, -1).isEmpty());
+    }
+
+    @Test
+    void testSetIfAbsent_ok() {
+        when(valueOps.setIfAbsent(eq("lock"), eq("1"), eq(30L), eq(TimeUnit.SECONDS))).thenReturn(true, false);
+        assertTrue(service.setIfAbsent("lock", "1", 30L));
+        assertFalse(service.setIfAbsent("lock", "1", 30L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testDeleteIfEquals_comparesSerializedValue() {
+        when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) RedisSerializer.json());
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                eq(List.of("lock")), eq("\"t1\""))).thenReturn(1L);
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                eq(List.of("lock")), eq("\"t2\""))).thenReturn(0L);
+
+        assertTrue(service.deleteIfEquals("lock", "t1"));
+        assertFalse(service.deleteIfEquals("lock", "t2"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRightPushAllIfPresent_sendsSingleRpushx() {
+        when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) RedisSerializer.json());
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                eq(List.of("l")), eq("\"a\""), eq("\"b\""))).thenReturn(4L);
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                eq(List.of("m")), eq("\"a\""), eq("\"b\""))).thenReturn(0L);
+
+        assertEquals(4L, service.rightPushAllIfPresent("l", List.of("a", "b")));
+        assertEquals(0L, service.rightPushAllIfPresent("m", List.of("a", "b")));
+        assertEquals(0L, service.rightPushAllIfPresent("l", List.of()));
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), any(RedisSerializer.class),
+                any(RedisSerializer.class), anyList(), any(Object[].class));
+        verify(redisTemplate, never()).opsForList();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReplaceList_rebuildsInOneScript() {
+        when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) RedisSerializer.json());
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                eq(List.of("l")), eq("21600"), eq("\"a\""), eq("\"b\""))).thenReturn(2L);
+
+        assertEquals(2L, service.replaceList("l", List.of("a", "b"), 6));
+        verify(redisTemplate, never()).delete(anyString());
+        verify(redisTemplate, never()).opsForList();
+    }
+
+    @Test
+    void testNearCache_hitSkipsRedis_andWritesPublishInvalidation() {
+        enableNearCache();
+        String key = CacheServiceImpl.AI_RESPONSE_PREFIX + "h";
+        when(valueOps.get(key)).thenReturn("v");
+
+        assertEquals("v", service.get(key));
+        assertEquals("v", service.get(key));
+        verify(valueOps, times(1)).get(key);
+
+        service.delete(key);
+        verify(redisTemplate).convertAndSend(eq(CacheServiceImpl.INVALIDATION_CHANNEL), contains(key));
+        when(valueOps.get(key)).thenReturn("v2");
+        assertEquals("v2", service.get(key));
+    }
+
+    @Test
+    void testNearCache_uncoveredKey_alwaysReadsRedis() {
+        enableNearCache();
+        when(valueOps.get("health:check")).thenReturn("v");
+
+        service.get("health:check");
+        service.get("health:check");
+        service.delete("health:check");
+
+        verify(valueOps, times(2)).get("health:check");
+        verify(redisTemplate, never()).convertAndSend(anyString(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testNearCache_remoteInvalidation_dropsLocalCopy() {
+        enableNearCache();
+        String key = CacheServiceImpl.CHAT_MEMORY_PREFIX + "1:conv";
+        ListOperations<String, Object> listOps = mock(ListOperations.class);
+        when(redisTemplate.opsForList()).thenReturn(listOps);
+        when(listOps.range(key, -2, -1)).thenReturn(List.of("a", "b"));
+        RedisSerializer<Object> serializer = mock(RedisSerializer.class);
+        doReturn(serializer).when(redisTemplate).getValueSerializer();
+        when(serializer.deserialize(any())).thenReturn("other-node|" + key);
+
+        service.range(key, -2, -1);
+        service.range(key, -2, -1);
+        verify(listOps, times(1)).range(key, -2, -1);
+
+        service.onInvalidationMessage(mock(org.springframework.data.redis.connection.Message.class), null);
+        service.range(key, -2, -1);
+        verify(listOps, times(2)).range(key, -2, -1);
+        assertEquals(1L, service.getNearCacheStats().get("invalidationsReceived"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testNearCache_readDuringListWrite_doesNotKeepStaleCopy() {
+        enableNearCache();
+        String key = CacheServiceImpl.CHAT_MEMORY_PREFIX + "1:conv";
+        ListOperations<String, Object> listOps = mock(ListOperations.class);
+        when(redisTemplate.opsForList()).thenReturn(listOps);
+        when(listOps.range(key, 0, -1)).thenReturn(List.of("a"));
+        // 写命令执行期间另一个请求读取，此时 Redis 里还是旧列表
+        when(listOps.rightPushAll(eq(key), any(Object[].class))).thenAnswer(invocation -> {
+            assertEquals(List.of("a"), service.range(key, 0, -1));
+            when(listOps.range(key, 0, -1)).thenReturn(List.of("a", "b"));
+            return 2L;
+        });
+
+        service.rightPushAll(key, List.of("b"));
+
+        assertEquals(List.of("a", "b"), service.range(key, 0, -1));
+        verify(redisTemplate).convertAndSend(eq(CacheServiceImpl.INVALIDATION_CHANNEL), contains(key));
+    }
+
+    @Test
+    void testNearCache_readDuringDelete_doesNotKeepStaleCopy() {
+        enableNearCache();
+        String key = CacheServiceImpl.AI_RESPONSE_PREFIX + "h";
+        when(valueOps.get(key)).thenReturn("v");
+        when(redisTemplate.delete(key)).thenAnswer(invocation -> {
+            assertEquals("v", service.get(key));
+            when(valueOps.get(key)).thenReturn(null);
+            return true;
+        });
+
+        assertTrue(service.delete(key));
+
+        assertNull(service.get(key));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testNearCache_failedWrite_publishesNothing() {
+        enableNearCache();
+        String key = CacheServiceImpl.CHAT_MEMORY_PREFIX + "1:conv";
+        ListOperations<String, Object> listOps = mock(ListOperations.class);
+        when(redisTemplate.opsForList()).thenReturn(listOps);
+        when(listOps.rightPushAll(eq(key), any(Object[].class))).thenThrow(new RuntimeException("fail"));
+        doThrow(new RuntimeException("fail")).when(listOps).trim(eq(key), anyLong(), anyLong());
+        when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) RedisSerializer.json());
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                anyList(), any(Object[].class))).thenReturn(0L).thenThrow(new RuntimeException("fail"));
+
+        service.rightPushAll(key, List.of("a"));
+        service.trim(key, 0, -1);
+        service.rightPushAllIfPresent(key, List.of("a"));
+        service.replaceList(key, List.of("a"), 1);
+
+        verify(redisTemplate, never()).convertAndSend(anyString(), any());
+    }
+
+    private void enableNearCache() {
+        ReflectionTestUtils.setField(service, "nearCache", new NearCache(List.of(
+                new NearCache.Policy("chatMemory", List.of(CacheServiceImpl.CHAT_MEMORY_PREFIX), 100, 60),
+                new NearCache.Policy("aiResponse", List.of(CacheServiceImpl.AI_RESPONSE_PREFIX), 100, 60))));
+    }
+
+    @Test
+    void testCircuitOpen_failsFastWithoutRedis() {
+        RedisHealthTracker tracker = mock(RedisHealthTracker.class);
+        when(tracker.isAvailable()).thenReturn(false);
+        ReflectionTestUtils.setField(service, "redisHealthTracker", tracker);
+
+        assertFalse(service.isRedisAvailable());
+        assertNull(service.get("k"));
+        assertFalse(service.set("k", "v", 1L));
+        assertTrue(service.range("l", 0, -1).isEmpty());
+        verifyNoInteractions(valueOps);
+        verify(redisTemplate, never()).getConnectionFactory();
+    }
+
+    @Test
+    void testCircuitOpen_nearCacheStillAnswersReads() {
+        enableNearCache();
+        RedisHealthTracker tracker = mock(RedisHealthTracker.class);
+        when(tracker.isAvailable()).thenReturn(true, false);
+        ReflectionTestUtils.setField(service, "redisHealthTracker", tracker);
+        String key = CacheServiceImpl.AI_RESPONSE_PREFIX + "h";
+        when(valueOps.get(key)).thenReturn("v");
+        assertEquals("v", service.get(key));
+
+        // 熔断打开后，本地缓存中的键仍然可见，其余键快速失败
+        assertTrue(service.exists(key));
+        assertEquals("v", service.get(key));
+        assertFalse(service.exists(CacheServiceImpl.AI_RESPONSE_PREFIX + "other"));
+        verify(redisTemplate, never()).hasKey(anyString());
+    }
+
+    @Test
+    void testRedisFailure_reportedToTracker() {
+        RedisHealthTracker tracker = mock(RedisHealthTracker.class);
+        when(tracker.isAvailable()).thenReturn(true);
+        ReflectionTestUtils.setField(service, "redisHealthTracker", tracker);
+        RuntimeException failure = new RuntimeException("fail");
+        when(valueOps.get("k")).thenThrow(failure);
+
+        assertNull(service.get("k"));
+        verify(tracker).recordFailure(failure);
+    }
+
+    @Test
+    void testRedisSuccess_reportedToTracker() {
+        RedisHealthTracker tracker = mock(RedisHealthTracker.class);
+        when(tracker.isAvailable()).thenReturn(true);
+        ReflectionTestUtils.setField(service, "redisHealthTracker", tracker);
+        when(valueOps.get("k")).thenReturn("v");
+
+        assertEquals("v", service.get("k"));
+        assertTrue(service.set("k", "v", 1L));
+        verify(tracker, times(2)).recordSuccess();
+        verify(tracker, never()).recordFailure(any());
+    }
 }
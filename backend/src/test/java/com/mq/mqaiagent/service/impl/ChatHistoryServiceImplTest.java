@@ -1,21 +1,24 @@
 package com.mq.mqaiagent.service.impl;
 
+import com.mq.mqaiagent.mapper.ChatMessageMapper;
 import com.mq.mqaiagent.mapper.KeepReportMapper;
 import com.mq.mqaiagent.model.dto.ChatHistoryDetailDTO;
 import com.mq.mqaiagent.model.dto.ChatHistoryListDTO;
 import com.mq.mqaiagent.model.dto.keepReport.KeepReport;
+import com.mq.mqaiagent.model.entity.ChatMessage;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -24,6 +27,9 @@ class ChatHistoryServiceImplTest {
     @Mock
     private KeepReportMapper keepReportMapper;
 
+    @Mock
+    private ChatMessageMapper chatMessageMapper;
+
     @InjectMocks
     private ChatHistoryServiceImpl service;
 
@@ -72,6 +78,63 @@ class ChatHistoryServiceImplTest {
         assertTrue(dto.getMessages().get(1).getMessage().contains("content"));
     }
 
+    @Test
+    void testGetChatHistoryDetail_appendOnlyRows_preferredOverJson() {
+        ReflectionTestUtils.setField(service, "chatMemoryStorage", "append-only");
+        KeepReport report = new KeepReport();
+        report.setMessages("[]");
+        when(keepReportMapper.selectOne(any())).thenReturn(report);
+        ChatMessage q = ChatMessage.builder().seq(1).messageType("USER").content("q").build();
+        ChatMessage a = ChatMessage.builder().seq(2).messageType("ASSISTANT").content("a").build();
+        when(chatMessageMapper.selectList(any())).thenReturn(List.of(q, a));
+
+        ChatHistoryDetailDTO dto = service.getChatHistoryDetail(1L, "cid");
+        assertNotNull(dto);
+        assertEquals(2, dto.getMessages().size());
+        assertEquals("USER", dto.getMessages().get(0).getMessageType());
+        assertEquals("a", dto.getMessages().get(1).getMessage());
+    }
+
+    @Test
+    void testGetChatHistoryDetail_jsonMode_ignoresMigratedRows() {
+        ReflectionTestUtils.setField(service, "chatMemoryStorage", "json");
+        KeepReport report = new KeepReport();
+        report.setMessages("[{\"messageType\":\"USER\",\"message\":\"q\"},{\"messageType\":\"ASSISTANT\",\"message\":\"a\"}]");
+        when(keepReportMapper.selectOne(any())).thenReturn(report);
+
+        ChatHistoryDetailDTO dto = service.getChatHistoryDetail(1L, "cid");
+        assertNotNull(dto);
+        assertEquals(2, dto.getMessages().size());
+        verifyNoInteractions(chatMessageMapper);
+    }
+
+    @Test
+    void testGetChatHistoryDetail_appendOnlyWithoutRows_fallsBackToJson() {
+        ReflectionTestUtils.setField(service, "chatMemoryStorage", "append-only");
+        KeepReport report = new KeepReport();
+        report.setMessages("[{\"messageType\":\"USER\",\"message\":\"q\"}]");
+        when(keepReportMapper.selectOne(any())).thenReturn(report);
+        when(chatMessageMapper.selectList(any())).thenReturn(List.of());
+
+        ChatHistoryDetailDTO dto = service.getChatHistoryDetail(1L, "cid");
+        assertNotNull(dto);
+        assertEquals("q", dto.getMessages().get(0).getMessage());
+    }
+
+    @Test
+    void testMigrateToMessageTable_pagesUntilShortBatch() {
+        KeepReport r1 = KeepReport.builder().id(1L).chatId("chat_a").userId(1L)
+                .messages("[{\"messageType\":\"USER\",\"message\":\"hi\"}]").build();
+        KeepReport r2 = KeepReport.builder().id(2L).chatId("chat_b").userId(1L).messages("[]").build();
+        when(keepReportMapper.selectList(any())).thenReturn(List.of(r1, r2), List.of());
+        when(chatMessageMapper.selectSeqs(anyString(), any(), anyInt())).thenReturn(List.of());
+        when(chatMessageMapper.insertBatch(anyList())).thenReturn(1);
+
+        assertEquals(1, service.migrateToMessageTable(2));
+        verify(keepReportMapper, times(2)).selectList(any());
+        verify(chatMessageMapper, times(1)).insertBatch(anyList());
+    }
+
     @Test
     void testDeleteChatHistory_ok() {
         when(keepReportMapper.update(any(), any())).thenReturn(1);
@@ -0,0 +1,112 @@
+package com.mq.mqaiagent.service.impl;
+
+import com.mq.mqaiagent.service.TextSimilarityService;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EmbeddingTextSimilarityServiceImplTest {
+
+    private final StubEmbeddingModel embeddingModel = new StubEmbeddingModel();
+
+    private final EmbeddingTextSimilarityServiceImpl textSimilarityService =
+            new EmbeddingTextSimilarityServiceImpl(embeddingModel, 0.8, 10);
+
+    @Test
+    void testCalculateSimilarities_rankedByCosine() {
+        List<TextSimilarityService.SimilarityResult> results = textSimilarityService.calculateSimilarities(
+                "我想快速增肌", List.of("今天天气怎么样", "我想要快速增肌", "我想快速增肌"));
+
+        assertEquals("我想快速增肌", results.get(0).getText());
+        assertEquals(1.0, results.get(0).getSimilarity(), 1e-6);
+        assertEquals("我想要快速增肌", results.get(1).getText());
+        assertTrue(textSimilarityService.isSimilar("我想快速增肌", "我想要快速增肌"));
+        assertFalse(textSimilarityService.isSimilar("我想快速增肌", "今天天气怎么样"));
+        assertEquals(TextSimilarityServiceImpl.textHashOf("我想快速增肌"), textSimilarityService.generateTextHash("我想快速增肌"));
+    }
+
+    @Test
+    void testIndexSearch_topKAndBatchedEmbedding() {
+        TextSimilarityService.SimilarityIndex index = textSimilarityService.createIndex();
+        index.addAll(List.of("我想要快速增肌", "我想快速减脂", "今天天气怎么样"));
+        assertEquals(1, embeddingModel.callCount);
+        index.add("我想要快速增肌");
+        assertEquals(1, embeddingModel.callCount);
+        assertEquals(3, index.size());
+
+        List<TextSimilarityService.SimilarityResult> results = index.search("我想快速增肌", 2);
+
+        assertEquals(2, results.size());
+        assertEquals("我想要快速增肌", results.get(0).getText());
+        assertTrue(results.get(0).isSimilar(textSimilarityService.getSimilarityThreshold()));
+        assertTrue(results.get(0).getSimilarity() >= results.get(1).getSimilarity());
+        // 查询只为目标文本计算一次向量
+        assertEquals(2, embeddingModel.callCount);
+
+        index.remove("我想要快速增肌");
+        assertFalse(index.contains("我想要快速增肌"));
+        assertNotEquals("我想要快速增肌", index.search("我想快速增肌", 1).get(0).getText());
+    }
+
+    @Test
+    void testEmbeddingFailure_returnsNoMatch() {
+        EmbeddingModel failingModel = mock(EmbeddingModel.class);
+        when(failingModel.embed(anyList())).thenThrow(new RuntimeException("embedding unavailable"));
+        EmbeddingTextSimilarityServiceImpl service = new EmbeddingTextSimilarityServiceImpl(failingModel, 0.8, 10);
+
+        TextSimilarityService.SimilarityIndex index = service.createIndex();
+        index.add("我想要快速增肌");
+
+        assertEquals(0, index.size());
+        assertTrue(index.search("我想快速增肌", 5).isEmpty());
+        assertEquals(0.0, service.calculateCosineSimilarity("我想快速增肌", "我想要快速增肌"));
+    }
+
+    @Test
+    void testIndexAddAll_embedsInBatches_andReportsOnlyIndexedTexts() {
+        StubEmbeddingModel partlyFailingModel = new StubEmbeddingModel() {
+            @Override
+            public EmbeddingResponse call(EmbeddingRequest request) {
+                if (request.getInstructions().contains("嵌入失败的问题")) {
+                    callCount++;
+                    throw new RuntimeException("embedding unavailable");
+                }
+                return super.call(request);
+            }
+        };
+        EmbeddingTextSimilarityServiceImpl service = new EmbeddingTextSimilarityServiceImpl(partlyFailingModel, 0.8, 2);
+        TextSimilarityService.SimilarityIndex index = service.createIndex();
+        index.add("我想快速减脂");
+
+        List<String> indexed = index.addAll(List.of("我想快速减脂", "我想要快速增肌", "嵌入失败的问题", "今天天气怎么样", "深蹲要点"));
+
+        // 已存在的文本不重新嵌入，其余 4 条按每批 2 条分两次调用，失败的一批不计入
+        assertEquals(3, partlyFailingModel.callCount);
+        assertEquals(List.of("我想快速减脂", "今天天气怎么样", "深蹲要点"), indexed);
+        assertEquals(3, index.size());
+        assertFalse(index.contains("我想要快速增肌"));
+    }
+
+    @Test
+    void testPreparedQuery_reusedAcrossIndexes() {
+        TextSimilarityService.SimilarityIndex userIndex = textSimilarityService.createIndex();
+        TextSimilarityService.SimilarityIndex globalIndex = textSimilarityService.createIndex();
+        userIndex.addAll(List.of("今天天气怎么样"));
+        globalIndex.addAll(List.of("我想要快速增肌"));
+        int callsBeforeQuery = embeddingModel.callCount;
+
+        TextSimilarityService.SimilarityQuery query = userIndex.prepareQuery("我想快速增肌");
+
+        assertTrue(userIndex.search(query, 5).isEmpty());
+        assertEquals("我想要快速增肌", globalIndex.search(query, 5).get(0).getText());
+        assertEquals(callsBeforeQuery + 1, embeddingModel.callCount);
+    }
+}
@@ -0,0 +1,62 @@
+package com.mq.mqaiagent.service.impl;
+
+import com.mq.mqaiagent.service.TextSimilarityService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MinHashTextSimilarityServiceImplTest {
+
+    private final MinHashTextSimilarityServiceImpl textSimilarityService =
+            new MinHashTextSimilarityServiceImpl(16, 4, 0.6);
+
+    @Test
+    void testCalculateSimilarity_estimatesJaccard() {
+        assertEquals(1.0, textSimilarityService.calculateCosineSimilarity("我想增肌，请给我建议", "我想增肌，请给我建议"));
+        // 2-gram 集合的真实 Jaccard 相似度为 8/12
+        double similarity = textSimilarityService.calculateCosineSimilarity("我想增肌，请给我一些建议", "我想增肌，请给我建议");
+        assertEquals(8.0 / 12, similarity, 0.2);
+        assertTrue(textSimilarityService.isSimilar("我想增肌，请给我一些建议", "我想增肌，请给我建议"));
+        assertFalse(textSimilarityService.isSimilar("我想增肌，请给我建议", "今天天气怎么样"));
+        assertEquals(0.0, textSimilarityService.calculateCosineSimilarity("短", "我想增肌，请给我建议"));
+    }
+
+    @Test
+    void testGenerateTextHash_sameAsCosineImplementation() {
+        TextSimilarityServiceImpl cosine = new TextSimilarityServiceImpl();
+        assertEquals(cosine.generateTextHash(" Hello, World "), textSimilarityService.generateTextHash(" Hello, World "));
+        assertEquals("empty", textSimilarityService.generateTextHash(" "));
+    }
+
+    @Test
+    void testIndexSearch_findsNearDuplicates_andSkipsUnrelated() {
+        TextSimilarityService.SimilarityIndex index = textSimilarityService.createIndex();
+        index.add("我想增肌，请给我建议");
+        index.add("今天天气怎么样");
+        index.add("How to build muscle fast?");
+        index.add("短");
+        assertEquals(4, index.size());
+
+        List<TextSimilarityService.SimilarityResult> results = index.search("我想增肌，请给我一些建议", 10);
+
+        assertFalse(results.isEmpty());
+        assertEquals("我想增肌，请给我建议", results.get(0).getText());
+        assertTrue(results.get(0).isSimilar(textSimilarityService.getSimilarityThreshold()));
+        assertTrue(results.stream().noneMatch(r -> r.getText().equals("今天天气怎么样")));
+        assertTrue(index.search("短", 10).isEmpty());
+    }
+
+    @Test
+    void testIndexRemove_dropsBuckets() {
+        TextSimilarityService.SimilarityIndex index = textSimilarityService.createIndex();
+        index.add("我想增肌，请给我建议");
+        assertTrue(index.contains("我想增肌，请给我建议"));
+
+        index.remove("我想增肌，请给我建议");
+
+        assertEquals(0, index.size());
+        assertTrue(index.search("我想增肌，请给我建议", 10).isEmpty());
+    }
+}
@@ -0,0 +1,72 @@
+package com.mq.mqaiagent.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearCacheTest {
+
+    NearCache nearCache;
+
+    @BeforeEach
+    void setUp() {
+        nearCache = new NearCache(List.of(
+                new NearCache.Policy("chatMemory", List.of("chat:"), 10, 60),
+                new NearCache.Policy("aiResponse", List.of("ai:", "question:"), 10, 60)));
+    }
+
+    @Test
+    void testOnlyCoveredPrefixesAreCached() {
+        nearCache.put("chat:1", "v1");
+        nearCache.put("question:index", "v2");
+        nearCache.put("other:1", "v3");
+
+        assertEquals("v1", nearCache.get("chat:1"));
+        assertEquals("v2", nearCache.get("question:index"));
+        assertFalse(nearCache.covers("other:1"));
+        assertNull(nearCache.get("other:1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCollectionValues_areCopied() {
+        List<String> index = new ArrayList<>(List.of("q1"));
+        nearCache.put("question:index", index);
+        index.add("q2");
+
+        List<String> cached = (List<String>) nearCache.get("question:index");
+        assertEquals(List.of("q1"), cached);
+        cached.add("q3");
+        assertEquals(List.of("q1"), nearCache.get("question:index"));
+    }
+
+    @Test
+    void testRanges_invalidatedTogetherWithKey() {
+        nearCache.putRange("chat:1", -2, -1, List.of("a", "b"));
+        nearCache.putRange("chat:1", -1, -1, List.of("b"));
+        assertEquals(List.of("a", "b"), nearCache.getRange("chat:1", -2, -1));
+        assertNull(nearCache.getRange("chat:1", 0, -1));
+
+        nearCache.invalidate("chat:1");
+        assertNull(nearCache.getRange("chat:1", -2, -1));
+        assertNull(nearCache.getRange("chat:1", -1, -1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStats_perPolicy() {
+        nearCache.put("ai:h1", "r");
+        nearCache.get("ai:h1");
+        nearCache.get("ai:h2");
+
+        Map<String, Object> aiStats = (Map<String, Object>) nearCache.stats().get("aiResponse");
+        assertEquals(1L, aiStats.get("hitCount"));
+        assertEquals(1L, aiStats.get("missCount"));
+        assertEquals(0.5, aiStats.get("hitRate"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.mq.mqaiagent.service.impl;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本地测试用嵌入模型：按字符哈希到固定维度计数，不访问远程服务
+ * 含有相同字符越多的文本向量越接近，足以验证向量检索与阈值逻辑。
+ */
+class StubEmbeddingModel implements EmbeddingModel {
+
+    private static final int DIMENSIONS = 1024;
+
+    /**
+     * 远程调用次数（每次 call 计一次）
+     */
+    int callCount;
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        callCount++;
+        List<Embedding> embeddings = new ArrayList<>();
+        List<String> texts = request.getInstructions();
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new Embedding(embed(texts.get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[DIMENSIONS];
+        text.codePoints()
+                .filter(Character::isLetterOrDigit)
+                .forEach(codePoint -> vector[Math.floorMod(codePoint * 31, DIMENSIONS)] += 1);
+        return vector;
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return DIMENSIONS;
+    }
+}
@@ -0,0 +1,220 @@
+package com.mq.mqaiagent.tools;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileDownloaderTest {
+
+    private static final byte[] DATA = new byte[300 * 1024];
+
+    static {
+        new Random(42).nextBytes(DATA);
+    }
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private String baseUrl;
+    private final List<String> rangeHeaders = new CopyOnWriteArrayList<>();
+    private final List<String> ifRangeHeaders = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean interruptNext = new AtomicBoolean();
+    private volatile String etag = "\"v1\"";
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/file", exchange -> serve(exchange, true));
+        server.createContext("/no-range", exchange -> serve(exchange, false));
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * 返回 DATA，支持 Range 时按请求的起始位置返回 206，If-Range 与当前 ETag 不一致时忽略 Range 返回 200；
+     * interruptNext 时只发送一半内容后断开连接
+     */
+    private void serve(HttpExchange exchange, boolean supportRange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        rangeHeaders.add(String.valueOf(range));
+        ifRangeHeaders.add(String.valueOf(ifRange));
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (ifRange != null && !ifRange.equals(etag)) {
+            range = null;
+        }
+        int start = 0;
+        if (supportRange && range != null) {
+            start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            if (start >= DATA.length) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + DATA.length);
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + start + "-" + (DATA.length - 1) + "/" + DATA.length);
+        }
+        int length = DATA.length - start;
+        exchange.sendResponseHeaders(supportRange && range != null ? 206 : 200, length);
+        OutputStream body = exchange.getResponseBody();
+        if (interruptNext.getAndSet(false)) {
+            body.write(DATA, start, length / 2);
+            body.flush();
+            // 不写完就关闭，模拟传输中断
+            exchange.close();
+            return;
+        }
+        body.write(DATA, start, length);
+        body.close();
+    }
+
+    private FileDownloader newDownloader(long maxBytes) {
+        return new FileDownloader(new ToolHttpClient(1000, 5000, 4), maxBytes, 64 * 1024);
+    }
+
+    @Test
+    void testDownload_streamsToTargetAndReportsProgress() throws IOException {
+        List<long[]> progress = new ArrayList<>();
+        Path target = tempDir.resolve("data.bin");
+
+        FileDownloader.DownloadResult result = newDownloader(1024 * 1024).download(baseUrl + "/file", target,
+                "sha256:" + DigestUtil.sha256Hex(DATA).toUpperCase(), (downloaded, total) -> progress.add(new long[]{downloaded, total}));
+
+        assertArrayEquals(DATA, Files.readAllBytes(target));
+        assertFalse(Files.exists(tempDir.resolve("data.bin.part")));
+        assertEquals(DATA.length, result.size());
+        assertFalse(result.resumed());
+        assertEquals(DigestUtil.sha256Hex(DATA), result.sha256());
+        assertTrue(progress.size() >= 4);
+        assertArrayEquals(new long[]{DATA.length, DATA.length}, progress.get(progress.size() - 1));
+    }
+
+    @Test
+    void testDownload_resumesFromPartialFileAfterInterruption() throws IOException {
+        FileDownloader downloader = newDownloader(1024 * 1024);
+        Path target = tempDir.resolve("data.bin");
+        Path part = tempDir.resolve("data.bin.part");
+        interruptNext.set(true);
+
+        assertThrows(IOException.class, () -> downloader.download(baseUrl + "/file", target, null, null));
+        long kept = Files.size(part);
+        assertTrue(kept > 0 && kept < DATA.length);
+
+        FileDownloader.DownloadResult result = downloader.download(baseUrl + "/file", target,
+                DigestUtil.sha256Hex(DATA), null);
+        assertTrue(result.resumed());
+        assertEquals("bytes=" + kept + "-", rangeHeaders.get(1));
+        assertEquals("\"v1\"", ifRangeHeaders.get(1));
+        assertArrayEquals(DATA, Files.readAllBytes(target));
+        assertFalse(Files.exists(tempDir.resolve("data.bin.part.validator")));
+    }
+
+    @Test
+    void testDownload_contentChangedSinceInterruption_restartsFromZero() throws IOException {
+        FileDownloader downloader = newDownloader(1024 * 1024);
+        Path target = tempDir.resolve("data.bin");
+        interruptNext.set(true);
+        assertThrows(IOException.class, () -> downloader.download(baseUrl + "/file", target, null, null));
+
+        etag = "\"v2\"";
+        FileDownloader.DownloadResult result = downloader.download(baseUrl + "/file", target,
+                DigestUtil.sha256Hex(DATA), null);
+
+        assertFalse(result.resumed());
+        assertEquals("\"v1\"", ifRangeHeaders.get(1));
+        assertArrayEquals(DATA, Files.readAllBytes(target));
+    }
+
+    @Test
+    void testDownload_partialFileWithoutValidator_isNotResumed() throws IOException {
+        Path target = tempDir.resolve("data.bin");
+        Files.write(tempDir.resolve("data.bin.part"), new byte[]{1, 2, 3});
+
+        FileDownloader.DownloadResult result = newDownloader(1024 * 1024).download(baseUrl + "/file", target, null, null);
+
+        assertFalse(result.resumed());
+        assertEquals(List.of("null"), rangeHeaders);
+        assertArrayEquals(DATA, Files.readAllBytes(target));
+    }
+
+    @Test
+    void testDownload_completePartialFileIsNotDownloadedAgain() throws IOException {
+        Path target = tempDir.resolve("data.bin");
+        Files.write(tempDir.resolve("data.bin.part"), DATA);
+        Files.writeString(tempDir.resolve("data.bin.part.validator"), etag);
+
+        FileDownloader.DownloadResult result = newDownloader(1024 * 1024).download(baseUrl + "/file", target, null, null);
+
+        assertTrue(result.resumed());
+        assertEquals(DigestUtil.sha256Hex(DATA), result.sha256());
+        assertArrayEquals(DATA, Files.readAllBytes(target));
+    }
+
+    @Test
+    void testDownload_serverWithoutRangeSupportRestartsFromZero() throws IOException {
+        Path target = tempDir.resolve("data.bin");
+        Files.write(tempDir.resolve("data.bin.part"), new byte[]{1, 2, 3});
+
+        FileDownloader.DownloadResult result = newDownloader(1024 * 1024).download(baseUrl + "/no-range", target, null, null);
+
+        assertFalse(result.resumed());
+        assertArrayEquals(DATA, Files.readAllBytes(target));
+    }
+
+    @Test
+    void testDownload_exceedsMaxSize_failsAndDeletesPartialFile() {
+        Path target = tempDir.resolve("data.bin");
+
+        IOException e = assertThrows(IOException.class,
+                () -> newDownloader(100 * 1024).download(baseUrl + "/file", target, null, null));
+
+        assertTrue(e.getMessage().contains("超过上限"));
+        assertFalse(Files.exists(target));
+        assertFalse(Files.exists(tempDir.resolve("data.bin.part")));
+    }
+
+    @Test
+    void testDownload_checksumMismatch_failsAndDeletesPartialFile() {
+        Path target = tempDir.resolve("data.bin");
+
+        IOException e = assertThrows(IOException.class,
+                () -> newDownloader(1024 * 1024).download(baseUrl + "/file", target, "0".repeat(64), null));
+
+        assertTrue(e.getMessage().contains("校验和不匹配"));
+        assertFalse(Files.exists(target));
+        assertFalse(Files.exists(tempDir.resolve("data.bin.part")));
+    }
+
+    @Test
+    void testDownload_invalidChecksumFormat_rejectedBeforeRequest() {
+        assertThrows(IllegalArgumentException.class,
+                () -> newDownloader(1024 * 1024).download(baseUrl + "/file", tempDir.resolve("data.bin"), "abc", null));
+        assertTrue(rangeHeaders.isEmpty());
+    }
+}
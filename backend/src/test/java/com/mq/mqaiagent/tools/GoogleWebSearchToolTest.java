@@ -1,14 +1,25 @@
 package com.mq.mqaiagent.tools;
 
-import cn.hutool.http.HttpRequest;
-import cn.hutool.http.HttpResponse;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.MockedStatic;
-import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class GoogleWebSearchToolTest {
 
+    private HttpServer server;
+    private final List<String> requestUris = new CopyOnWriteArrayList<>();
+
     @Test
     void googleSearch_invalidKey_returnsFailureMessage() {
         GoogleWebSearchTool tool = new GoogleWebSearchTool("invalid_key");
@@ -22,36 +33,70 @@ class GoogleWebSearchToolTest {
     }
 
     @Test
-    void googleSearch_status200_parsesResults() {
-        GoogleWebSearchTool tool = new GoogleWebSearchTool("any_key");
-        HttpResponse mockResp = Mockito.mock(HttpResponse.class);
-        Mockito.when(mockResp.getStatus()).thenReturn(200);
+    void googleSearch_status200_parsesResultsAndCachesThem() {
         String body = """
         {"organic_results":[
           {"title":"T1","link":"L1","snippet":"S1"},
           {"title":"T2","link":"L2","snippet":"S2"}
         ]}
         """;
-        Mockito.when(mockResp.body()).thenReturn(body);
-        HttpRequest mockReq = Mockito.mock(HttpRequest.class);
-        Mockito.when(mockReq.execute()).thenReturn(mockResp);
-        try (MockedStatic<HttpRequest> mocked = Mockito.mockStatic(HttpRequest.class)) {
-            mocked.when(() -> HttpRequest.get(Mockito.anyString())).thenReturn(mockReq);
-            String result = tool.googleSearch("query");
-            assertNotNull(result);
-            assertTrue(result.contains("标题"));
-            assertTrue(result.contains("链接"));
-            assertTrue(result.contains("摘要"));
-        }
+        startServer(200, body);
+        GoogleWebSearchTool tool = newTool();
+
+        String result = tool.googleSearch("query");
+        assertTrue(result.contains("标题: T1"));
+        assertTrue(result.contains("链接: L2"));
+        assertTrue(result.contains("摘要: S1"));
+        assertTrue(requestUris.get(0).contains("q=query"));
+
+        // 相同关键词命中缓存，不再请求
+        assertEquals(result, tool.googleSearch("  Query "));
+        assertEquals(1, requestUris.size());
+    }
+
+    @Test
+    void googleSearch_errorStatus_returnsFailureMessageAndIsNotCached() {
+        startServer(500, "oops");
+        GoogleWebSearchTool tool = newTool();
+
+        assertEquals("请求失败或无返回内容", tool.googleSearch("q"));
+        assertEquals("请求失败或无返回内容", tool.googleSearch("q"));
+        assertEquals(2, requestUris.size());
     }
 
     @Test
     void googleSearch_httpThrows_throwsRuntimeException() {
-        GoogleWebSearchTool tool = new GoogleWebSearchTool("any_key");
-        try (MockedStatic<HttpRequest> mocked = Mockito.mockStatic(HttpRequest.class)) {
-            mocked.when(() -> HttpRequest.get(Mockito.anyString()))
-                    .thenThrow(new RuntimeException("net error"));
-            assertThrows(RuntimeException.class, () -> tool.googleSearch("q"));
+        GoogleWebSearchTool tool = new GoogleWebSearchTool("any_key", "http://localhost:1/search.json",
+                new ToolHttpClient(500, 1000, 2), new SearchResultCache(Duration.ofMinutes(1), 10));
+        assertThrows(RuntimeException.class, () -> tool.googleSearch("q"));
+    }
+
+    private GoogleWebSearchTool newTool() {
+        return new GoogleWebSearchTool("any_key", "http://localhost:" + server.getAddress().getPort() + "/search.json",
+                new ToolHttpClient(1000, 2000, 2), new SearchResultCache(Duration.ofMinutes(1), 10));
+    }
+
+    private void startServer(int status, String body) {
+        try {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.createContext("/", exchange -> {
+            requestUris.add(exchange.getRequestURI().toString());
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop(0);
         }
     }
 }
@@ -0,0 +1,83 @@
+package com.mq.mqaiagent.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlContentExtractorTest {
+
+    private static String extractFixture(String name, int maxChars) throws IOException {
+        InputStream in = HtmlContentExtractorTest.class.getResourceAsStream("/html/" + name);
+        assertNotNull(in, "fixture not found: " + name);
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return new HtmlContentExtractor(maxChars).extract(reader, "https://fitness.example.com/post/42");
+        }
+    }
+
+    @Test
+    void testExtract_article_keepsMainContentAsMarkdown() throws IOException {
+        String markdown = extractFixture("article.html", 10000);
+
+        assertTrue(markdown.startsWith("# 增肌训练指南\n\n作者：健身教练小王"), markdown);
+        assertTrue(markdown.contains("增肌的关键在于**渐进超负荷**和充足的*蛋白质*摄入，"
+                + "详见[蛋白质指南](https://fitness.example.com/nutrition/protein)。"));
+        assertTrue(markdown.contains("## 训练安排"));
+        assertTrue(markdown.contains("- 每周训练 4 次，每个肌群每周练 2 次"));
+        assertTrue(markdown.contains("```\n周一：胸 + 三头\n周二：背 + 二头\n```"));
+        assertTrue(markdown.contains("| 卧推 | 4 |"));
+    }
+
+    @Test
+    void testExtract_article_dropsBoilerplate() throws IOException {
+        String markdown = extractFixture("article.html", 10000);
+
+        assertFalse(markdown.contains("track"));
+        assertFalse(markdown.contains("font-family"));
+        assertFalse(markdown.contains("关于我们"));
+        assertFalse(markdown.contains("热门文章"));
+        assertFalse(markdown.contains("新手如何减脂"));
+        assertFalse(markdown.contains("版权所有"));
+        assertFalse(markdown.contains("广告"));
+    }
+
+    @Test
+    void testExtract_divLayout_picksDensestContainer() throws IOException {
+        String markdown = extractFixture("div-layout.html", 10000);
+
+        assertTrue(markdown.startsWith("# 跑步与膝盖健康"), markdown);
+        assertTrue(markdown.contains("很多人担心跑步会伤膝盖。"));
+        assertTrue(markdown.contains("跑前充分热身，跑后做好拉伸"));
+        assertTrue(markdown.contains("应当停止训练并咨询专业医生。"));
+        assertFalse(markdown.contains("登录"));
+        assertFalse(markdown.contains("相关阅读"));
+        assertFalse(markdown.contains("联系我们"));
+    }
+
+    @Test
+    void testExtract_respectsMaxChars() throws IOException {
+        String markdown = extractFixture("article.html", 30);
+
+        assertTrue(markdown.endsWith("...[内容过长，已截断]"));
+        assertEquals(30, markdown.indexOf("\n\n...[内容过长，已截断]"));
+    }
+
+    @Test
+    void testExtract_largePage_streamsWithoutKeepingBlocks() {
+        StringBuilder html = new StringBuilder("<html><body><div id='content'>");
+        for (int i = 0; i < 20000; i++) {
+            html.append("<p>第").append(i).append("段内容</p>");
+        }
+        html.append("</div></body></html>");
+
+        String markdown = new HtmlContentExtractor(200).extract(html.toString(), "https://example.com/");
+
+        assertTrue(markdown.startsWith("第0段内容\n\n第1段内容"));
+        assertTrue(markdown.length() < 250);
+    }
+}
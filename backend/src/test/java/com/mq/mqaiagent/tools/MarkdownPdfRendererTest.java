@@ -0,0 +1,86 @@
+package com.mq.mqaiagent.tools;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfTextExtractor;
+import com.itextpdf.layout.element.IBlockElement;
+import com.itextpdf.layout.element.LineSeparator;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarkdownPdfRendererTest {
+
+    static final String REPORT = """
+            # 健身周报
+
+            本周完成 **4 次**训练，总时长 `240` 分钟。
+
+            ## 训练记录
+
+            | 日期 | 项目 | 组数 |
+            | --- | :---: | ---: |
+            | 周一 | Bench Press | 5 |
+            | 周三 | Squat | 4 |
+
+            ## 下周建议
+            1. 增加有氧训练
+            2. 保证睡眠
+
+            - 饮水 2L
+            - 蛋白质 120g
+
+            > 循序渐进，避免受伤
+            ---
+            """;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testToElements_parsesMarkdownBlocks() {
+        List<IBlockElement> elements = new MarkdownPdfRenderer().toElements(REPORT);
+
+        assertEquals(9, elements.size());
+        assertInstanceOf(Paragraph.class, elements.get(0));
+        Table table = assertInstanceOf(Table.class, elements.get(3));
+        assertEquals(3, table.getNumberOfColumns());
+        assertEquals(2, table.getNumberOfRows());
+        com.itextpdf.layout.element.List ordered = assertInstanceOf(com.itextpdf.layout.element.List.class, elements.get(5));
+        assertEquals(2, ordered.getChildren().size());
+        assertInstanceOf(com.itextpdf.layout.element.List.class, elements.get(6));
+        assertInstanceOf(LineSeparator.class, elements.get(8));
+    }
+
+    @Test
+    void testRender_writesStructuredPdf() throws IOException {
+        Path target = tempDir.resolve("report.pdf");
+
+        int pages = new MarkdownPdfRenderer().render(REPORT + "\n" + "训练内容\n".repeat(200), target);
+
+        assertTrue(pages > 1);
+        try (PdfDocument pdf = new PdfDocument(new PdfReader(target.toString()))) {
+            assertEquals(pages, pdf.getNumberOfPages());
+            String firstPage = PdfTextExtractor.getTextFromPage(pdf.getPage(1));
+            assertTrue(firstPage.contains("Bench Press"));
+            assertTrue(firstPage.contains("健身周报"));
+        }
+    }
+
+    @Test
+    void testFontProgram_loadedOnce() throws IOException {
+        MarkdownPdfRenderer renderer = new MarkdownPdfRenderer();
+
+        renderer.render("# a", tempDir.resolve("a.pdf"));
+        renderer.render("# b", tempDir.resolve("b.pdf"));
+
+        assertSame(renderer.fontProgram(), renderer.fontProgram());
+    }
+}
@@ -0,0 +1,110 @@
+package com.mq.mqaiagent.tools;
+
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Paragraph;
+import com.mq.mqaiagent.config.BoundedVirtualThreadExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class PdfRenderServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor("pdf-test-", 2);
+
+    private final PdfRenderService service = new PdfRenderService(new MarkdownPdfRenderer(), executor, Duration.ofMinutes(1));
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testSubmit_rendersInBackgroundAndCanBePolled() throws Exception {
+        PdfRenderService.RenderTask task = service.submit(MarkdownPdfRendererTest.REPORT, tempDir.resolve("report.pdf"));
+
+        assertSame(task, service.getTask(task.getId()));
+        task.getCompletion().get(10, TimeUnit.SECONDS);
+
+        assertEquals(PdfRenderService.Status.SUCCEEDED, task.getStatus());
+        assertEquals(1, task.getPages());
+        assertTrue(Files.size(tempDir.resolve("report.pdf")) > 0);
+        assertEquals(1, service.getStats().documents());
+    }
+
+    @Test
+    void testSubmit_failureIsRecordedOnTask() throws Exception {
+        PdfRenderService.RenderTask task = service.submit("# a", tempDir.resolve("missing/report.pdf"));
+        task.getCompletion().get(10, TimeUnit.SECONDS);
+
+        assertEquals(PdfRenderService.Status.FAILED, task.getStatus());
+        assertNotNull(task.getError());
+        assertEquals(0, service.getStats().documents());
+        assertNull(service.getTask("unknown"));
+    }
+
+    /**
+     * 吞吐量基准：同一批多页报告分别用复用字体程序的服务和每次新建字体的方式渲染，输出每秒页数
+     */
+    @Test
+    void benchmark_pagesPerSecond() throws Exception {
+        String report = MarkdownPdfRendererTest.REPORT + "\n" + "训练内容与饮食记录\n".repeat(300);
+        int documents = 20;
+        // 预热
+        service.submit(report, tempDir.resolve("warmup.pdf")).getCompletion().get(30, TimeUnit.SECONDS);
+
+        long start = System.nanoTime();
+        List<PdfRenderService.RenderTask> tasks = new ArrayList<>();
+        for (int i = 0; i < documents; i++) {
+            tasks.add(service.submit(report, tempDir.resolve("cached-" + i + ".pdf")));
+        }
+        int pages = 0;
+        for (PdfRenderService.RenderTask task : tasks) {
+            pages += task.getCompletion().get(60, TimeUnit.SECONDS).getPages();
+            assertEquals(PdfRenderService.Status.SUCCEEDED, task.getStatus(), task.getError());
+        }
+        double servicePagesPerSecond = pages / ((System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        int baselinePages = 0;
+        for (int i = 0; i < documents; i++) {
+            baselinePages += renderWithNewFont(report, tempDir.resolve("baseline-" + i + ".pdf"));
+        }
+        double baselinePagesPerSecond = baselinePages / ((System.nanoTime() - start) / 1e9);
+
+        log.info("PDF 渲染基准: {} 个文档 / {} 页，服务 {} 页/秒（单次渲染平均 {} 页/秒），逐个同步渲染 {} 页/秒",
+                documents, pages, String.format("%.1f", servicePagesPerSecond),
+                String.format("%.1f", service.getStats().pagesPerSecond()), String.format("%.1f", baselinePagesPerSecond));
+        assertTrue(pages > documents);
+        assertEquals(documents + 1, service.getStats().documents());
+    }
+
+    /**
+     * 原有的渲染方式：每次按名称创建字体，整段文本作为一个段落
+     */
+    private static int renderWithNewFont(String content, Path target) throws Exception {
+        try (PdfWriter writer = new PdfWriter(target.toString());
+             PdfDocument pdf = new PdfDocument(writer);
+             Document document = new Document(pdf)) {
+            document.setFont(PdfFontFactory.createFont("STSongStd-Light", "UniGB-UCS2-H"));
+            document.add(new Paragraph(content));
+            return pdf.getNumberOfPages();
+        }
+    }
+}
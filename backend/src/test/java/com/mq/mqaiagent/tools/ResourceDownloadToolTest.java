@@ -16,14 +16,14 @@ class ResourceDownloadToolTest {
         ResourceDownloadTool tool = new ResourceDownloadTool();
         String url = "https://mq-picture-1324656182.cos.ap-guangzhou.myqcloud.com/public/1904924220320710658/2025-03-28_iUvVuGlBbzd4RDOB.webp";
         String name = "test.png";
-        String result = tool.downloadResource(url, name);
+        String result = tool.downloadResource(url, name, null);
         assertNotNull(result);
     }
 
     @Test
     void downloadResource_error_returnsMessage() {
         ResourceDownloadTool tool = new ResourceDownloadTool();
-        String result = tool.downloadResource("http://invalid.invalid/file.png", "bad.png");
+        String result = tool.downloadResource("http://invalid.invalid/file.png", "bad.png", null);
         assertNotNull(result);
         assertTrue(result.startsWith("Error downloading resource: "));
     }
@@ -0,0 +1,47 @@
+package com.mq.mqaiagent.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchResultCacheTest {
+
+    @Test
+    void testGet_sameNormalizedQuery_loadsOnce() throws Exception {
+        SearchResultCache cache = new SearchResultCache(Duration.ofMinutes(1), 100);
+        AtomicInteger loads = new AtomicInteger();
+        Callable<String> loader = () -> "r" + loads.incrementAndGet();
+
+        assertEquals("r1", cache.get("google", "Spring  AI", loader));
+        assertEquals("r1", cache.get("google", " spring ai ", loader));
+        assertEquals("r2", cache.get("baidu", "spring ai", loader));
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getStats().hitCount());
+    }
+
+    @Test
+    void testGet_nullAndFailuresAreNotCached() throws Exception {
+        SearchResultCache cache = new SearchResultCache(Duration.ofMinutes(1), 100);
+
+        assertNull(cache.get("google", "q", () -> null));
+        assertThrows(IOException.class, () -> cache.get("google", "q", () -> {
+            throw new IOException("timeout");
+        }));
+        assertEquals("ok", cache.get("google", "q", () -> "ok"));
+    }
+
+    @Test
+    void testGet_expiresAfterTtl() throws Exception {
+        SearchResultCache cache = new SearchResultCache(Duration.ofMillis(50), 100);
+        cache.get("google", "q", () -> "old");
+        Thread.sleep(100);
+
+        assertEquals("new", cache.get("google", "q", () -> "new"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.mq.mqaiagent.tools;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolHttpClientTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            if (exchange.getRequestURI().getPath().equals("/slow")) {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+            byte[] body = "0123456789".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testGet_reusesKeepAliveConnection() throws IOException {
+        ToolHttpClient client = new ToolHttpClient(1000, 2000, 4);
+        for (int i = 0; i < 5; i++) {
+            HttpResponse<String> response = client.get(baseUrl + "/ping");
+            assertEquals(200, response.statusCode());
+            assertEquals("0123456789", response.body());
+        }
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    void testOpenStream_truncatesBodyAndReleasesPermitOnClose() throws IOException {
+        ToolHttpClient client = new ToolHttpClient(1000, 2000, 4);
+        HttpResponse<InputStream> response = client.openStream(baseUrl + "/file", Map.of(), 4);
+        try (InputStream body = response.body()) {
+            assertEquals(1, client.getActiveRequests("localhost"));
+            assertEquals("0123", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(0, client.getActiveRequests("localhost"));
+    }
+
+    @Test
+    void testGet_perHostConcurrencyLimit() throws Exception {
+        ToolHttpClient client = new ToolHttpClient(1000, 5000, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<HttpResponse<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(executor.submit(() -> client.get(baseUrl + "/slow")));
+            }
+            for (Future<HttpResponse<String>> future : futures) {
+                assertEquals(200, future.get(5, TimeUnit.SECONDS).statusCode());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, maxInFlight.get());
+        assertEquals(0, client.getActiveRequests("localhost"));
+    }
+}
@@ -0,0 +1,38 @@
+package com.mq.mqaiagent.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolProgressTest {
+
+    @Test
+    void testReport_onlyReachesListenerDuringCall() {
+        List<String> messages = new ArrayList<>();
+
+        ToolProgress.report("before");
+        String result = ToolProgress.callWith(messages::add, () -> {
+            ToolProgress.report("50%");
+            return "done";
+        });
+        ToolProgress.report("after");
+
+        assertEquals("done", result);
+        assertEquals(List.of("50%"), messages);
+    }
+
+    @Test
+    void testReport_listenerFailureDoesNotBreakTool() {
+        String result = ToolProgress.callWith(message -> {
+            throw new IllegalStateException("connection closed");
+        }, () -> {
+            ToolProgress.report("50%");
+            return "done";
+        });
+
+        assertEquals("done", result);
+    }
+}
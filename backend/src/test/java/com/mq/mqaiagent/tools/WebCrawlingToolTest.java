@@ -26,6 +26,21 @@ class WebCrawlingToolTest {
             @Override
             public void handle(HttpExchange exchange) throws IOException {
                 String response = "<html><body>Hello Tool</body></html>";
+                if (exchange.getRequestURI().getPath().equals("/article")) {
+                    response = "<html><head><script>var tracker = 1;</script></head><body><nav><a href='/'>Home</a></nav>"
+                            + "<article><h1>Title</h1><p>" + "content ".repeat(2000) + "</p></article></body></html>";
+                }
+                if (exchange.getRequestURI().getPath().equals("/gbk")) {
+                    byte[] bytes = "<html><head><meta charset=\"gbk\"></head><body><p>中文页面</p></body></html>"
+                            .getBytes(java.nio.charset.Charset.forName("GBK"));
+                    exchange.getResponseHeaders().set("Content-Type", "text/html");
+                    exchange.sendResponseHeaders(200, bytes.length);
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(bytes);
+                    }
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
                 exchange.sendResponseHeaders(200, response.getBytes().length);
                 try (OutputStream os = exchange.getResponseBody()) {
                     os.write(response.getBytes());
@@ -57,5 +72,20 @@ class WebCrawlingToolTest {
         assertNotNull(html);
         assertTrue(html.startsWith("Error Crawl web pages: "));
     }
-}
 
+    @Test
+    void testCrawl_returnsCappedReadableText() {
+        WebCrawlingTool tool = new WebCrawlingTool(500, 1024 * 1024, new ToolHttpClient(1000, 5000, 2));
+        String text = tool.crawl("http://localhost:" + port + "/article");
+        assertTrue(text.startsWith("# Title\n\ncontent content"), text);
+        assertFalse(text.contains("tracker"));
+        assertFalse(text.contains("Home"));
+        assertTrue(text.length() < 600);
+    }
+
+    @Test
+    void testCrawl_detectsCharsetFromMetaTag() {
+        WebCrawlingTool tool = new WebCrawlingTool();
+        assertEquals("中文页面", tool.crawl("http://localhost:" + port + "/gbk"));
+    }
+}
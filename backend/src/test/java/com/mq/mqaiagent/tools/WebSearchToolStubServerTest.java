@@ -0,0 +1,83 @@
+package com.mq.mqaiagent.tools;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 网页搜索工具针对本地桩服务的测试（不依赖 Spring 上下文与真实搜索接口）
+ */
+class WebSearchToolStubServerTest {
+
+    @Test
+    void searchWeb_stubServer_parsesAndFiltersFields() throws IOException {
+        String body = """
+        {
+          "organic_results": [
+            {"title":"T1","link":"L1","description":"D1"},
+            {"title":"T2","link":"L2","description":"D2"},
+            {"title":"T3","link":"L3","description":"D3"},
+            {"title":"T4","link":"L4","description":"D4"},
+            {"title":"T5","link":"L5","description":"D5"},
+            {"title":"T6","link":"L6","description":"D6"}
+          ]
+        }
+        """;
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = startServer(200, body, requests);
+        try {
+            WebSearchTool webSearchTool = newTool(server);
+            String result = webSearchTool.searchWeb("query");
+            assertNotNull(result);
+            assertFalse(result.contains("T1"));
+            assertFalse(result.contains("L1"));
+            assertFalse(result.contains("D1"));
+            assertTrue(result.contains("\"description\":\"\""));
+            assertTrue(result.contains("\"title\":\"\""));
+            assertTrue(result.contains("\"link\":\"\""));
+            // 重复搜索命中缓存
+            assertEquals(result, webSearchTool.searchWeb("query"));
+            assertEquals(1, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void searchWeb_stubServerError_returnsErrorMessage() throws IOException {
+        HttpServer server = startServer(500, "boom", new AtomicInteger());
+        try {
+            String result = newTool(server).searchWeb("q");
+            assertTrue(result.startsWith("Error searching Baidu: "));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static WebSearchTool newTool(HttpServer server) {
+        return new WebSearchTool("any_key", "http://localhost:" + server.getAddress().getPort() + "/api/v1/search",
+                new ToolHttpClient(1000, 2000, 2), new SearchResultCache(Duration.ofMinutes(1), 10));
+    }
+
+    private static HttpServer startServer(int status, String body, AtomicInteger requests) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+        return server;
+    }
+}